@@ -0,0 +1,113 @@
+package com.gsr.session;
+
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Blocking analytics API for a single client. A session is meant to be used from its own virtual thread: every call
+ * submits one request to the engine and parks the calling thread until the answer is back, which costs no platform
+ * thread while waiting.
+ *
+ * Sessions are not thread safe. Give every client a session of its own.
+ */
+public class AnalyticsSession implements AutoCloseable {
+
+    private final AnalyticsSessionManager manager;
+    private final int sessionId;
+    private long requestsCompleted;
+    private boolean closed;
+
+    AnalyticsSession(AnalyticsSessionManager manager, int sessionId) {
+        this.manager = manager;
+        this.sessionId = sessionId;
+    }
+
+    public double averagePrice(CcyPair pair, Side side, int levels) throws InterruptedException {
+        return query(RequestType.AveragePrice, pair, side, levels);
+    }
+
+    public double averageQuantity(CcyPair pair, Side side, int levels) throws InterruptedException {
+        return query(RequestType.AverageQuantity, pair, side, levels);
+    }
+
+    public double vwap(CcyPair pair, Side side, int levels) throws InterruptedException {
+        return query(RequestType.Vwap, pair, side, levels);
+    }
+
+    /**
+     * Request analytics at normal priority, and wait for as long as it takes
+     *
+     * @return the result, NaN if the engine shed the request
+     */
+    public double query(RequestType type, CcyPair pair, Side side, int levels) throws InterruptedException {
+        SessionRequest request = submit(type, pair, side, levels, RequestPriority.Normal, 0);
+        try {
+            return await(request, Long.MAX_VALUE);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Request without timeout timed out", e);
+        }
+    }
+
+    /**
+     * Request analytics and wait at most the given time. The timeout is passed on to the engine as the request's
+     * deadline, so an answer which would arrive too late is not computed in the first place.
+     *
+     * @return the result, NaN if the engine shed the request or it expired in the engine
+     * @throws TimeoutException if no answer arrived in time
+     */
+    public double query(RequestType type, CcyPair pair, Side side, int levels, RequestPriority priority, Duration timeout)
+            throws InterruptedException, TimeoutException {
+        long timeoutNanos = timeout.toNanos();
+        SessionRequest request = submit(type, pair, side, levels, priority, System.nanoTime() + timeoutNanos);
+        return await(request, timeoutNanos);
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public long getRequestsCompleted() {
+        return requestsCompleted;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            manager.onSessionClosed(this);
+        }
+    }
+
+    private SessionRequest submit(RequestType type, CcyPair pair, Side side, int levels, RequestPriority priority, long deadlineNanos)
+            throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Session " + sessionId + " is closed");
+        }
+        return manager.submit(type, pair, side, levels, priority, deadlineNanos);
+    }
+
+    /**
+     * Helper method to wait for the answer. If the session stops waiting, the request's future is cancelled, which
+     * takes it out of flight.
+     */
+    private double await(SessionRequest request, long timeoutNanos) throws InterruptedException, TimeoutException {
+        try {
+            double result = request.getFuture().get(timeoutNanos, TimeUnit.NANOSECONDS);
+            requestsCompleted += 1;
+            return result;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Session manager shut down while request was in flight", e.getCause());
+        } catch (TimeoutException | InterruptedException e) {
+            request.getFuture().cancel(false);
+            throw e;
+        }
+    }
+}
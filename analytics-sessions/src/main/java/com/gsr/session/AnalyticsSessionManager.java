@@ -0,0 +1,176 @@
+package com.gsr.session;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+
+/**
+ * Session layer between lightweight analytics clients and the engine's non blocking request and response queues.
+ *
+ * Every connected client runs on a virtual thread of its own and uses a blocking {@link AnalyticsSession}. Requests are
+ * handed to the engine's analytics request queue as they are, and a single platform thread -- the dispatcher -- takes
+ * the answers off the response queue and completes the waiting session. Waiting sessions are parked virtual threads,
+ * so tens of thousands of clients cost memory, not platform threads.
+ *
+ * The number of requests in flight is bounded. Sessions over the limit park before submitting, which keeps the
+ * engine's unbounded queues from growing without limit when clients outpace the books. A request leaves the count when
+ * its future completes in any way -- answered, timed out and cancelled by its session, or failed on shutdown -- so a
+ * request the engine never answers doesn't hold its permit forever. Answers which come back after their session gave
+ * up are counted as late.
+ *
+ * The manager needs the engine's response queue to itself: anything on it which was not submitted through a session
+ * is counted and dropped, and the first one is reported.
+ */
+public class AnalyticsSessionManager {
+
+    private final Queue<Request> analyticsRequestQueue;
+    private final BlockingQueue<Request> analyticsResponseQueue;
+    private final Semaphore inFlightPermits;
+    private final Set<SessionRequest> inFlight = ConcurrentHashMap.newKeySet();
+    private final ThreadFactory sessionThreadFactory = Thread.ofVirtual().name("Analytics Session-", 0).factory();
+    private final Thread dispatcherThread;
+
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final AtomicInteger nextSessionId = new AtomicInteger();
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final AtomicLong foreignResponses = new AtomicLong();
+    private final AtomicLong lateResponses = new AtomicLong();
+
+    private volatile boolean runningFlag = true;
+
+    /**
+     * @param analyticsRequestQueue  the engine's inbound analytics queue, as given to the distributor
+     * @param analyticsResponseQueue the engine's analytics response queue, as given to the distributor
+     * @param maxInFlight            maximum number of requests in the engine at any time, across all sessions
+     */
+    public AnalyticsSessionManager(Queue<Request> analyticsRequestQueue, BlockingQueue<Request> analyticsResponseQueue, int maxInFlight) {
+        this.analyticsRequestQueue = analyticsRequestQueue;
+        this.analyticsResponseQueue = analyticsResponseQueue;
+        this.inFlightPermits = new Semaphore(maxInFlight);
+
+        this.dispatcherThread = new Thread(this::dispatch, "Analytics Session Dispatcher");
+        this.dispatcherThread.setDaemon(true);
+        this.dispatcherThread.start();
+    }
+
+    /**
+     * Open a session for a client which brings its own thread
+     */
+    public AnalyticsSession open() {
+        if (!runningFlag) {
+            throw new IllegalStateException("Session manager is shut down");
+        }
+        openSessions.incrementAndGet();
+        return new AnalyticsSession(this, nextSessionId.getAndIncrement());
+    }
+
+    /**
+     * Connect a client: open a session and run the client on a virtual thread of its own. The session is closed when
+     * the client returns.
+     *
+     * @return the client's thread, e.g. to join it
+     */
+    public Thread connect(Consumer<AnalyticsSession> client) {
+        AnalyticsSession session = open();
+        Thread thread = sessionThreadFactory.newThread(() -> {
+            try (session) {
+                client.accept(session);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Stop dispatching. Sessions still waiting for an answer fail with an exception.
+     */
+    public void shutdown() {
+        runningFlag = false;
+        dispatcherThread.interrupt();
+        IllegalStateException shutDown = new IllegalStateException("Session manager shut down");
+        inFlight.forEach(r -> r.getFuture().completeExceptionally(shutDown));
+    }
+
+    public int getOpenSessions() {
+        return openSessions.get();
+    }
+
+    public int getRequestsInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * @return number of responses which did not originate from a session, and were dropped
+     */
+    public long getForeignResponses() {
+        return foreignResponses.get();
+    }
+
+    /**
+     * @return number of responses which arrived after their session stopped waiting, and were dropped
+     */
+    public long getLateResponses() {
+        return lateResponses.get();
+    }
+
+    SessionRequest submit(RequestType type, CcyPair pair, Side side, int levels, RequestPriority priority, long deadlineNanos)
+            throws InterruptedException {
+        inFlightPermits.acquire();
+        if (!runningFlag) {
+            inFlightPermits.release();
+            throw new IllegalStateException("Session manager is shut down");
+        }
+
+        SessionRequest request = new SessionRequest(nextRequestId.getAndIncrement(), levels, type, side, pair, priority, deadlineNanos);
+        inFlight.add(request);
+        request.getFuture().whenComplete((result, failure) -> release(request));
+        analyticsRequestQueue.add(request);
+        return request;
+    }
+
+    /**
+     * Helper method to take a request out of flight once its future is done, however it got done
+     */
+    private void release(SessionRequest request) {
+        if (inFlight.remove(request)) {
+            inFlightPermits.release();
+        }
+    }
+
+    void onSessionClosed(AnalyticsSession session) {
+        openSessions.decrementAndGet();
+    }
+
+    private void dispatch() {
+        while (runningFlag) {
+            Request response;
+            try {
+                response = analyticsResponseQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (response instanceof SessionRequest request) {
+                if (!request.complete()) {
+                    lateResponses.incrementAndGet();
+                }
+            } else if (foreignResponses.incrementAndGet() == 1) {
+                System.out.println("ERROR: Response to request " + response.getId()
+                        + " which was not submitted through a session dropped, further ones are only counted");
+            }
+        }
+    }
+}
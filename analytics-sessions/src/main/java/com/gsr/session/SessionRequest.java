@@ -0,0 +1,36 @@
+package com.gsr.session;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Analytics request issued by a session. It travels through the engine like any other request, and carries the future
+ * its session is parked on, so the dispatcher can hand the result straight back without any lookup.
+ */
+final class SessionRequest extends Request {
+
+    private final CompletableFuture<Double> result = new CompletableFuture<>();
+
+    SessionRequest(int id, int levels, RequestType type, Side side, CcyPair pair, RequestPriority priority, long deadlineNanos) {
+        super(id, levels, type, side, pair, priority, deadlineNanos);
+    }
+
+    CompletableFuture<Double> getFuture() {
+        return result;
+    }
+
+    /**
+     * Called by the dispatcher once the engine has answered. Expired and shed requests complete with NaN.
+     *
+     * @return false if the session already stopped waiting for the answer
+     */
+    boolean complete() {
+        return result.complete(isExpired() ? Double.NaN : getResult());
+    }
+}
@@ -0,0 +1,121 @@
+package com.gsr.session;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnalyticsSessionManagerTest {
+
+    private final ConcurrentLinkedQueue<Request> requestQueue = new ConcurrentLinkedQueue<>();
+    private final LinkedBlockingQueue<Request> responseQueue = new LinkedBlockingQueue<>();
+    private AnalyticsSessionManager manager;
+    private Thread engine;
+    private volatile boolean engineRunning = true;
+    private volatile boolean engineAnswering = true;
+
+    @Before
+    public void setUp() {
+        manager = new AnalyticsSessionManager(requestQueue, responseQueue, 256);
+
+        //Stand in for the distributor and books: answers every request with its level count
+        engine = new Thread(() -> {
+            while (engineRunning) {
+                Request request = requestQueue.poll();
+                if (request == null || !engineAnswering) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                request.populateResult(request.getLevels());
+                responseQueue.add(request);
+            }
+        }, "Test Engine");
+        engine.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        engineRunning = false;
+        engine.join();
+        manager.shutdown();
+    }
+
+    @Test
+    public void testManyConcurrentClients() throws InterruptedException {
+        int clients = 10_000;
+        AtomicInteger correct = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            int levels = 1 + i % 10;
+            threads.add(manager.connect(session -> {
+                try {
+                    if (session.vwap(CcyPair.BTCUSD, Side.Bid, levels) == levels
+                            && session.averagePrice(CcyPair.ETHUSD, Side.Offer, levels) == levels) {
+                        correct.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(clients, correct.get());
+        assertEquals(0, manager.getOpenSessions());
+        assertEquals(0, manager.getRequestsInFlight());
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testQueryTimesOut() throws Exception {
+        engineAnswering = false;
+        try (AnalyticsSession session = manager.open()) {
+            session.query(RequestType.AverageQuantity, CcyPair.SOLUSD, Side.Bid, 3, RequestPriority.High, Duration.ofMillis(50));
+        }
+    }
+
+    @Test
+    public void testTimedOutRequestsLeaveFlight() throws InterruptedException {
+        engineAnswering = false;
+        try (AnalyticsSession session = manager.open()) {
+            //More than the manager has permits for, the engine never answers any of them
+            for (int i = 0; i < 300; i++) {
+                try {
+                    session.query(RequestType.Vwap, CcyPair.BTCUSD, Side.Bid, 2, RequestPriority.Normal, Duration.ofMillis(1));
+                } catch (TimeoutException e) {
+                    //Expected
+                }
+            }
+            assertEquals(0, manager.getRequestsInFlight());
+
+            engineAnswering = true;
+            assertEquals(5, session.vwap(CcyPair.BTCUSD, Side.Bid, 5), 0);
+        }
+    }
+
+    @Test
+    public void testForeignResponsesAreDropped() throws InterruptedException {
+        responseQueue.add(new Request(-1, 1, RequestType.Vwap, Side.Bid, CcyPair.BTCUSD));
+
+        try (AnalyticsSession session = manager.open()) {
+            assertEquals(4, session.averageQuantity(CcyPair.BTCUSD, Side.Offer, 4), 0);
+        }
+        assertEquals(1, manager.getForeignResponses());
+    }
+}
@@ -0,0 +1,143 @@
+package com.gsr.vector;
+
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.engine.MarketDataListener;
+import com.gsr.engine.OrderBookProcessor;
+
+import java.util.Arrays;
+
+
+/**
+ * Copy of a book side in contiguous primitive arrays, ordered from the top of the book, kept up to date as the book
+ * applies market data. Runs on the book thread as its market data listener.
+ *
+ * Prices and quantities are kept as longs for the exact sums, and as doubles for the weighted sums, so that the
+ * kernels never convert. Levels are found by binary search. Adding or removing a level shifts the levels behind it,
+ * which is cheap near the top of the book, where most of the activity is.
+ */
+public class ArrayBookMirror implements MarketDataListener {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final boolean descending;
+    private long[] prices = new long[INITIAL_CAPACITY];
+    private long[] quantities = new long[INITIAL_CAPACITY];
+    private double[] doublePrices = new double[INITIAL_CAPACITY];
+    private double[] doubleQuantities = new double[INITIAL_CAPACITY];
+    private int count;
+
+    /**
+     * @param side side of the book, bids are ordered from the highest price, offers from the lowest
+     */
+    public ArrayBookMirror(Side side) {
+        this.descending = side == Side.Bid;
+    }
+
+    @Override
+    public void onMessageApplied(OrderBookProcessor book, Message message) {
+        if (message.getType() == MessageType.ClearBook) {
+            count = 0;
+        } else {
+            //Books are consolidated across venues, so mirror the level's total rather than the message's quantity
+            set(message.getPrice(), book.getQuantityAt(message.getPrice()));
+        }
+    }
+
+    /**
+     * Set the quantity at a price, adding or removing the level as needed
+     *
+     * @param quantity quantity at the price, 0 if there is no level at it any more
+     */
+    public void set(long price, long quantity) {
+        int index = indexOf(price);
+        if (index >= 0) {
+            if (quantity == 0) {
+                remove(index);
+            } else {
+                quantities[index] = quantity;
+                doubleQuantities[index] = quantity;
+            }
+        } else if (quantity != 0) {
+            insert(-index - 1, price, quantity);
+        }
+    }
+
+    public int getLevelCount() {
+        return count;
+    }
+
+    long[] prices() {
+        return prices;
+    }
+
+    long[] quantities() {
+        return quantities;
+    }
+
+    double[] doublePrices() {
+        return doublePrices;
+    }
+
+    double[] doubleQuantities() {
+        return doubleQuantities;
+    }
+
+    /**
+     * Binary search in book order
+     *
+     * @return index of the price, or -(insertion point) - 1 if it is not in the book
+     */
+    private int indexOf(long price) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middlePrice = prices[middle];
+            if (middlePrice == price) {
+                return middle;
+            }
+            if (descending ? middlePrice > price : middlePrice < price) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insert(int index, long price, long quantity) {
+        if (count == prices.length) {
+            grow();
+        }
+        int moved = count - index;
+        System.arraycopy(prices, index, prices, index + 1, moved);
+        System.arraycopy(quantities, index, quantities, index + 1, moved);
+        System.arraycopy(doublePrices, index, doublePrices, index + 1, moved);
+        System.arraycopy(doubleQuantities, index, doubleQuantities, index + 1, moved);
+
+        prices[index] = price;
+        quantities[index] = quantity;
+        doublePrices[index] = price;
+        doubleQuantities[index] = quantity;
+        count += 1;
+    }
+
+    private void remove(int index) {
+        int moved = count - index - 1;
+        System.arraycopy(prices, index + 1, prices, index, moved);
+        System.arraycopy(quantities, index + 1, quantities, index, moved);
+        System.arraycopy(doublePrices, index + 1, doublePrices, index, moved);
+        System.arraycopy(doubleQuantities, index + 1, doubleQuantities, index, moved);
+        count -= 1;
+    }
+
+    private void grow() {
+        int capacity = prices.length * 2;
+        prices = Arrays.copyOf(prices, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        doublePrices = Arrays.copyOf(doublePrices, capacity);
+        doubleQuantities = Arrays.copyOf(doubleQuantities, capacity);
+    }
+}
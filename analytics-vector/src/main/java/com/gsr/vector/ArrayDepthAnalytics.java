@@ -0,0 +1,54 @@
+package com.gsr.vector;
+
+
+/**
+ * The depth analytics of a book side, computed with {@link DepthKernels} over its {@link ArrayBookMirror}. Results
+ * match those of the linked list walks in the engine's processors, edge cases included.
+ */
+class ArrayDepthAnalytics {
+
+    private final ArrayBookMirror mirror;
+    private final DepthKernels kernels;
+
+    ArrayDepthAnalytics(ArrayBookMirror mirror, DepthKernels kernels) {
+        this.mirror = mirror;
+        this.kernels = kernels;
+    }
+
+    double averagePrice(int levels) {
+        if (mirror.getLevelCount() == 0) {
+            //We don't have any price for this side of this pair
+            return 0;
+        }
+        int count = levelsAvailable(levels);
+
+        //Division by 100 to bring the long representation into double based decimal
+        return (double) kernels.sum(mirror.prices(), count) / (count * 100);
+    }
+
+    long accumulatedQuantity(int levels) {
+        return kernels.sum(mirror.quantities(), levelsAvailable(levels));
+    }
+
+    double vwap(int levels) {
+        int count = levelsAvailable(levels);
+        double totalPriceWeight = kernels.dot(mirror.doublePrices(), mirror.doubleQuantities(), count);
+
+        //Division by 100 to bring the long representation into double based decimal
+        return totalPriceWeight / (kernels.sum(mirror.quantities(), count) * 100);
+    }
+
+    int cumulativeQuantities(long[] target, int levels) {
+        int count = Math.min(target.length, levelsAvailable(levels));
+        kernels.prefixSum(mirror.quantities(), target, count);
+        return count;
+    }
+
+    DepthKernels getKernels() {
+        return kernels;
+    }
+
+    private int levelsAvailable(int levels) {
+        return Math.max(0, Math.min(levels, mirror.getLevelCount()));
+    }
+}
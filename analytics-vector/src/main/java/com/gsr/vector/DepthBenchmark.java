@@ -0,0 +1,68 @@
+package com.gsr.vector;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.engine.BidOrderBookProcessor;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.feed.ObjectPool;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * Times full depth analytics on a deep book: the engine's linked list walks against the array mirror with scalar and
+ * with vector kernels. The books are driven on the calling thread, their threads are never launched.
+ */
+public class DepthBenchmark {
+
+    private static final int ITERATIONS = 20_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        OrderBookProcessor linked = new BidOrderBookProcessor(CcyPair.BTCUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+        OrderBookProcessor scalar = new VectorBidOrderBookProcessor(CcyPair.BTCUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ScalarDepthKernels());
+        OrderBookProcessor vector = new VectorBidOrderBookProcessor(CcyPair.BTCUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+
+        for (OrderBookProcessor book : new OrderBookProcessor[]{linked, scalar, vector}) {
+            for (int level = 0; level < depth; level++) {
+                Message message = messagePool.acquireObject();
+                message.setType(MessageType.AddOrUpdatePriceLevel);
+                message.setPair(CcyPair.BTCUSD);
+                message.setSide(Side.Bid);
+                message.setPrice(1_000_000 - level);
+                message.setQuantity(1 + level % 97);
+                message.setVenue(0);
+                book.applyMarketData(message);
+            }
+        }
+
+        System.out.println("Depth " + depth + ", vector kernels: " + ((VectorBidOrderBookProcessor) vector).getKernels().name());
+        for (int round = 0; round < ROUNDS; round++) {
+            System.out.printf("Round %d: linked list %,d ns, arrays %,d ns, vector %,d ns per query set%n", round,
+                    time(linked, depth), time(scalar, depth), time(vector, depth));
+        }
+    }
+
+    /**
+     * Helper method to time a vwap, an average price and a quantity query over the full depth
+     */
+    private static long time(OrderBookProcessor book, int depth) {
+        double sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += book.calculateVwapOverLevels(depth);
+            sink += book.calculateAveragePrice(depth);
+            sink += book.calculateAccumulatedQuantityOverLevels(depth);
+        }
+        long perIteration = (System.nanoTime() - start) / ITERATIONS;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return perIteration;
+    }
+}
@@ -0,0 +1,45 @@
+package com.gsr.vector;
+
+
+/**
+ * The loops behind the depth analytics, over the contiguous level arrays of an {@link ArrayBookMirror}.
+ *
+ * There are two implementations: one on the incubating Vector API, and plain scalar loops for JVMs started without
+ * the jdk.incubator.vector module, or with -Dgsr.vector=false. {@link #best()} picks the vector one when it can.
+ */
+public interface DepthKernels {
+
+    /**
+     * @return sum of the first count values
+     */
+    long sum(long[] values, int count);
+
+    /**
+     * @return sum of the products of the first count pairs of values
+     */
+    double dot(double[] a, double[] b, int count);
+
+    /**
+     * Running totals: target[i] is the sum of values[0] to values[i]
+     */
+    void prefixSum(long[] values, long[] target, int count);
+
+    /**
+     * @return short name, for reporting which implementation is in use
+     */
+    String name();
+
+    /**
+     * @return the vector kernels if the Vector API is available and not switched off, the scalar ones otherwise
+     */
+    static DepthKernels best() {
+        if (!"false".equals(System.getProperty("gsr.vector"))) {
+            try {
+                return new VectorDepthKernels();
+            } catch (LinkageError e) {
+                //The jdk.incubator.vector module was not added to the JVM
+            }
+        }
+        return new ScalarDepthKernels();
+    }
+}
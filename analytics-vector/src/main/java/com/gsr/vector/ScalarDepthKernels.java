@@ -0,0 +1,41 @@
+package com.gsr.vector;
+
+
+/**
+ * Plain loops, for JVMs without the Vector API. Still a good deal faster than walking the book's linked list, as the
+ * levels are contiguous in memory.
+ */
+public class ScalarDepthKernels implements DepthKernels {
+
+    @Override
+    public long sum(long[] values, int count) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += values[i];
+        }
+        return total;
+    }
+
+    @Override
+    public double dot(double[] a, double[] b, int count) {
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            total += a[i] * b[i];
+        }
+        return total;
+    }
+
+    @Override
+    public void prefixSum(long[] values, long[] target, int count) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += values[i];
+            target[i] = total;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,69 @@
+package com.gsr.vector;
+
+import com.gsr.analytics.Request;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.Side;
+import com.gsr.engine.BidOrderBookProcessor;
+import com.gsr.engine.MarketDataListener;
+import com.gsr.feed.ObjectPool;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * Bid side of an order book with its depth analytics computed over contiguous arrays, with SIMD where available.
+ * The book itself is the engine's, the arrays mirror it through a market data listener.
+ */
+public class VectorBidOrderBookProcessor extends BidOrderBookProcessor {
+
+    private final ArrayBookMirror mirror = new ArrayBookMirror(Side.Bid);
+    private final ArrayDepthAnalytics analytics;
+
+    public VectorBidOrderBookProcessor(CcyPair pair, ObjectPool<Message> messageObjectPool, ConcurrentLinkedQueue<Message> distributorInboundQueue, ConcurrentLinkedQueue<Request> requestQueue, ConcurrentLinkedQueue<Request> responseQueue) {
+        this(pair, messageObjectPool, distributorInboundQueue, requestQueue, responseQueue, DepthKernels.best());
+    }
+
+    public VectorBidOrderBookProcessor(CcyPair pair, ObjectPool<Message> messageObjectPool, ConcurrentLinkedQueue<Message> distributorInboundQueue, ConcurrentLinkedQueue<Request> requestQueue, ConcurrentLinkedQueue<Request> responseQueue, DepthKernels kernels) {
+        super(pair, messageObjectPool, distributorInboundQueue, requestQueue, responseQueue);
+        this.analytics = new ArrayDepthAnalytics(mirror, kernels);
+        super.setMarketDataListener(mirror);
+    }
+
+    /**
+     * The mirror needs the listener slot, so other listeners are called after it
+     */
+    @Override
+    public void setMarketDataListener(MarketDataListener marketDataListener) {
+        super.setMarketDataListener(MarketDataListener.both(mirror, marketDataListener));
+    }
+
+    @Override
+    public double calculateAveragePrice(int levels) {
+        return analytics.averagePrice(levels);
+    }
+
+    @Override
+    public long calculateAccumulatedQuantityOverLevels(int levels) {
+        return analytics.accumulatedQuantity(levels);
+    }
+
+    @Override
+    public double calculateVwapOverLevels(int levels) {
+        return analytics.vwap(levels);
+    }
+
+    /**
+     * Running total of the quantity from the top of the book down. Only to be called from the order book thread.
+     *
+     * @param target array to fill, target[i] being the quantity over the top i + 1 levels
+     * @return number of levels filled in, less than asked for if the book or the array is shallower
+     */
+    public int calculateCumulativeQuantities(long[] target, int levels) {
+        return analytics.cumulativeQuantities(target, levels);
+    }
+
+    public DepthKernels getKernels() {
+        return analytics.getKernels();
+    }
+}
@@ -0,0 +1,82 @@
+package com.gsr.vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * Kernels on the Vector API, using the widest vectors the CPU has. Lanes are accumulated in a vector and only reduced
+ * at the end, and the tail which doesn't fill a vector is done with scalar code.
+ *
+ * Sums of longs are exact, like the scalar ones. The dot product adds its terms in a different order than a scalar
+ * loop, so the last bits of its result may differ.
+ */
+public class VectorDepthKernels implements DepthKernels {
+
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public long sum(long[] values, int count) {
+        int upperBound = LONGS.loopBound(count);
+        LongVector totals = LongVector.zero(LONGS);
+        int i = 0;
+        for (; i < upperBound; i += LONGS.length()) {
+            totals = totals.add(LongVector.fromArray(LONGS, values, i));
+        }
+
+        long total = totals.reduceLanes(VectorOperators.ADD);
+        for (; i < count; i++) {
+            total += values[i];
+        }
+        return total;
+    }
+
+    @Override
+    public double dot(double[] a, double[] b, int count) {
+        int upperBound = DOUBLES.loopBound(count);
+        DoubleVector totals = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (; i < upperBound; i += DOUBLES.length()) {
+            totals = DoubleVector.fromArray(DOUBLES, a, i).fma(DoubleVector.fromArray(DOUBLES, b, i), totals);
+        }
+
+        double total = totals.reduceLanes(VectorOperators.ADD);
+        for (; i < count; i++) {
+            total += a[i] * b[i];
+        }
+        return total;
+    }
+
+    /**
+     * Each vector is scanned in log2(lanes) steps, adding the vector to itself shifted up by 1, 2, 4... lanes. The
+     * total of everything before it is then added to every lane.
+     */
+    @Override
+    public void prefixSum(long[] values, long[] target, int count) {
+        int upperBound = LONGS.loopBound(count);
+        long carry = 0;
+        int i = 0;
+        for (; i < upperBound; i += LONGS.length()) {
+            LongVector scan = LongVector.fromArray(LONGS, values, i);
+            for (int shift = 1; shift < LONGS.length(); shift <<= 1) {
+                scan = scan.add(scan.unslice(shift));
+            }
+            scan = scan.add(carry);
+            scan.intoArray(target, i);
+            carry = scan.lane(LONGS.length() - 1);
+        }
+
+        for (; i < count; i++) {
+            carry += values[i];
+            target[i] = carry;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector " + LONGS.vectorBitSize() + " bit";
+    }
+}
@@ -0,0 +1,115 @@
+package com.gsr.vector;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.Side;
+import com.gsr.engine.BidOrderBookProcessor;
+import com.gsr.engine.OfferOrderBookProcessor;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.feed.MessageSerializerImpl;
+import com.gsr.feed.ObjectPool;
+import com.gsr.load.SyntheticFeedGenerator;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class VectorOrderBookProcessorTest {
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final Queue<Message> parsedMessages = new ArrayDeque<>();
+    private final MessageSerializerImpl serializer = new MessageSerializerImpl(parsedMessages, messagePool, 0, 0, MESSAGE_DELIMITER, KEY_VALUE_DELIMITER);
+
+    @Test
+    public void testDeepBooksMatchTheLinkedListBooks() {
+        for (DepthKernels kernels : new DepthKernels[]{new ScalarDepthKernels(), DepthKernels.best()}) {
+            OrderBookProcessor linkedBid = new BidOrderBookProcessor(CcyPair.ETHUSD, messagePool, queue(), queue(), queue());
+            OrderBookProcessor linkedOffer = new OfferOrderBookProcessor(CcyPair.ETHUSD, messagePool, queue(), queue(), queue());
+            VectorBidOrderBookProcessor vectorBid = new VectorBidOrderBookProcessor(CcyPair.ETHUSD, messagePool, queue(), queue(), queue(), kernels);
+            VectorOfferOrderBookProcessor vectorOffer = new VectorOfferOrderBookProcessor(CcyPair.ETHUSD, messagePool, queue(), queue(), queue(), kernels);
+
+            SyntheticFeedGenerator generator = new SyntheticFeedGenerator(3, CcyPair.ETHUSD);
+            generator.setDepth(700);
+            generator.setUpdateMix(60, 30, 10);
+            Random random = new Random(9);
+
+            for (int i = 0; i < 20_000; i++) {
+                String line = generator.next();
+                boolean bid = apply(line, linkedBid, linkedOffer);
+                apply(line, vectorBid, vectorOffer);
+
+                if (i % 97 == 0) {
+                    int levels = random.nextInt(800);
+                    assertSameAnalytics(bid ? linkedBid : linkedOffer, bid ? vectorBid : vectorOffer, levels);
+                }
+            }
+
+            long[] cumulative = new long[800];
+            int filled = vectorBid.calculateCumulativeQuantities(cumulative, 800);
+            for (int level = 0; level < filled; level++) {
+                assertEquals(linkedBid.calculateAccumulatedQuantityOverLevels(level + 1), cumulative[level]);
+            }
+            assertEquals(Math.min(800, filledLevels(linkedBid)), filled);
+        }
+    }
+
+    @Test
+    public void testKernelsAgree() {
+        DepthKernels scalar = new ScalarDepthKernels();
+        DepthKernels best = DepthKernels.best();
+        Random random = new Random(1);
+
+        for (int count = 0; count < 70; count++) {
+            long[] longs = new long[count];
+            double[] a = new double[count];
+            double[] b = new double[count];
+            for (int i = 0; i < count; i++) {
+                longs[i] = random.nextInt(1_000_000);
+                a[i] = random.nextInt(1_000_000);
+                b[i] = random.nextInt(1000);
+            }
+            assertEquals(scalar.sum(longs, count), best.sum(longs, count));
+            assertEquals(scalar.dot(a, b, count), best.dot(a, b, count), 1e-9 * Math.abs(scalar.dot(a, b, count)));
+
+            long[] expected = new long[count];
+            long[] actual = new long[count];
+            scalar.prefixSum(longs, expected, count);
+            best.prefixSum(longs, actual, count);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    private void assertSameAnalytics(OrderBookProcessor expected, OrderBookProcessor actual, int levels) {
+        assertEquals(expected.calculateAccumulatedQuantityOverLevels(levels), actual.calculateAccumulatedQuantityOverLevels(levels));
+        assertEquals(expected.calculateAveragePrice(levels), actual.calculateAveragePrice(levels), 1e-9);
+        double vwap = expected.calculateVwapOverLevels(levels);
+        assertEquals(vwap, actual.calculateVwapOverLevels(levels), Double.isNaN(vwap) ? 0 : 1e-9 * vwap);
+    }
+
+    private int filledLevels(OrderBookProcessor book) {
+        long[] prices = new long[10_000];
+        return book.copyTopLevels(prices, new long[prices.length]);
+    }
+
+    /**
+     * @return whether the line was for the bid side
+     */
+    private boolean apply(String line, OrderBookProcessor bid, OrderBookProcessor offer) {
+        serializer.onMessage(line);
+        Message message = parsedMessages.poll();
+        boolean isBid = message.getSide() == Side.Bid;
+        (isBid ? bid : offer).applyMarketData(message);
+        return isBid;
+    }
+
+    private static <T> ConcurrentLinkedQueue<T> queue() {
+        return new ConcurrentLinkedQueue<>();
+    }
+}
@@ -0,0 +1,28 @@
+#!/usr/bin/env bash
+#
+# Launch the order book replicator from the Maven build output.
+#
+#   bin/run-engine.sh [--cds] [--warmup] <market data file on the class path>
+#
+# --cds starts the JVM from an application class data sharing archive, so the engine classes are loaded pre parsed
+# and verified instead of from the jar. The archive is recorded on first use by a warm up only run, and reused after
+# that. Delete target/engine.jsa after a rebuild. Requires JDK 13 or later at runtime.
+#
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+CLASSPATH="$ROOT/target/classes"
+ARCHIVE="$ROOT/target/engine.jsa"
+MAIN=com.gsr.application.OrderBookReplicatorRunner
+JAVA_OPTS=${JAVA_OPTS:-"-Xms512m -Xmx512m -XX:+AlwaysPreTouch"}
+
+if [[ "${1:-}" == "--cds" ]]; then
+    shift
+    if [[ ! -f "$ARCHIVE" ]]; then
+        echo "Recording class data sharing archive $ARCHIVE"
+        java $JAVA_OPTS -XX:ArchiveClassesAtExit="$ARCHIVE" -cp "$CLASSPATH" "$MAIN" --warmup-only
+    fi
+    JAVA_OPTS="$JAVA_OPTS -XX:SharedArchiveFile=$ARCHIVE"
+fi
+
+exec java $JAVA_OPTS -cp "$CLASSPATH" "$MAIN" "$@"
@@ -0,0 +1,257 @@
+package com.gsr.analytics;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.util.Arrays;
+
+import static com.gsr.data.Constants.MAX_VENUES;
+
+
+/**
+ * Many analytics queries in one submission, e.g. everything a dashboard shows on a refresh.
+ *
+ * Queries are added before the batch is submitted to the distributor like any other request. The distributor hands
+ * every book side its {@link Part} of the batch, the book side answers all of its queries in a single pass over its
+ * levels, and once the last part is back the batch itself comes out of the analytics response queue, with every
+ * query answered. The batch's own result is the number of queries in it.
+ *
+ * The parts are created as queries are added, so splitting the batch doesn't allocate on the distributor thread.
+ * Priority and deadline apply to every part. A part which expires leaves its queries with a NaN result and marks the
+ * whole batch expired, the other parts are answered as usual.
+ */
+public class BatchRequest extends Request {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Part[] parts = new Part[CcyPair.values().length * Side.values().length];
+
+    private RequestType[] types = new RequestType[INITIAL_CAPACITY];
+    private CcyPair[] pairs = new CcyPair[INITIAL_CAPACITY];
+    private Side[] sides = new Side[INITIAL_CAPACITY];
+    private int[] levels = new int[INITIAL_CAPACITY];
+    private int[] venues = new int[INITIAL_CAPACITY];
+    private double[] results = new double[INITIAL_CAPACITY];
+    private int queryCount;
+
+    //Only touched by the distributor. Parts travel through the book queues in between, which orders the accesses.
+    private int remainingParts;
+    private boolean partExpired;
+
+    public BatchRequest(int id) {
+        this(id, RequestPriority.Normal, 0);
+    }
+
+    /**
+     * @param priority      priority class of every part of the batch
+     * @param deadlineNanos System.nanoTime() after which the results are of no use to the requester, 0 for no deadline
+     */
+    public BatchRequest(int id, RequestPriority priority, long deadlineNanos) {
+        super(id, 0, RequestType.Batch, null, null, priority, deadlineNanos);
+    }
+
+    /**
+     * Add a query. Only before the batch is submitted.
+     *
+     * @return index of the query, to get its result with
+     */
+    public int add(RequestType type, CcyPair pair, Side side, int levels) {
+        return add(type, pair, side, levels, 0);
+    }
+
+    /**
+     * Add a query for one of the per venue request types. Only before the batch is submitted.
+     *
+     * @return index of the query, to get its result with
+     * @throws IllegalArgumentException if the venue is outside 0 to MAX_VENUES - 1
+     */
+    public int add(RequestType type, CcyPair pair, Side side, int levels, int venue) {
+        if (type == RequestType.Batch) {
+            throw new IllegalArgumentException("Batches can't be nested");
+        }
+        if (venue < 0 || venue >= MAX_VENUES) {
+            throw new IllegalArgumentException("Venue " + venue + " is out of range");
+        }
+        if (queryCount == types.length) {
+            grow();
+        }
+
+        int query = queryCount++;
+        types[query] = type;
+        pairs[query] = pair;
+        sides[query] = side;
+        this.levels[query] = levels;
+        venues[query] = venue;
+        results[query] = Double.NaN;
+
+        int slot = pair.ordinal() * Side.values().length + side.ordinal();
+        if (parts[slot] == null) {
+            parts[slot] = new Part(this, pair, side);
+        }
+        parts[slot].add(query);
+        return query;
+    }
+
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+    public RequestType getType(int query) {
+        return types[query];
+    }
+
+    public CcyPair getPair(int query) {
+        return pairs[query];
+    }
+
+    public Side getSide(int query) {
+        return sides[query];
+    }
+
+    public int getLevels(int query) {
+        return levels[query];
+    }
+
+    public int getVenue(int query) {
+        return venues[query];
+    }
+
+    /**
+     * @return result of the query, NaN if its book side expired it
+     */
+    public double getResult(int query) {
+        return results[query];
+    }
+
+    /**
+     * Set the result of a query. Called by the book side the query is for.
+     */
+    public void populateResult(int query, double value) {
+        results[query] = value;
+    }
+
+    /**
+     * Start the batch through the engine. Called by the distributor, which sends the returned parts to their books.
+     *
+     * @return the parts of the batch, null for book sides without queries
+     */
+    public Part[] split() {
+        remainingParts = 0;
+        partExpired = false;
+        for (Part part : parts) {
+            if (part != null) {
+                remainingParts += 1;
+            }
+        }
+        if (remainingParts == 0) {
+            populateResult(0);
+        }
+        return parts;
+    }
+
+    /**
+     * Account for a part coming back from its book. Called by the distributor.
+     *
+     * @return whether this was the last part, and the batch is complete
+     */
+    public boolean onPartCompleted(Part part) {
+        partExpired |= part.isExpired();
+        remainingParts -= 1;
+        if (remainingParts > 0) {
+            return false;
+        }
+        if (partExpired) {
+            expire();
+        } else {
+            populateResult(queryCount);
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to grow the query arrays
+     */
+    private void grow() {
+        int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        pairs = Arrays.copyOf(pairs, capacity);
+        sides = Arrays.copyOf(sides, capacity);
+        levels = Arrays.copyOf(levels, capacity);
+        venues = Arrays.copyOf(venues, capacity);
+        results = Arrays.copyOf(results, capacity);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchRequest{" +
+                "id=" + getId() +
+                ", queries=" + queryCount +
+                ", priority=" + getPriority() +
+                ", expired=" + isExpired() +
+                '}';
+    }
+
+
+    /**
+     * The queries of a batch for one book side, ordered by the number of levels they go over, so that the book can
+     * answer them all on one walk down from the top. Its levels are those of its deepest query.
+     */
+    public static class Part extends Request {
+
+        private final BatchRequest batch;
+        private int[] queries = new int[4];
+        private int queryCount;
+
+        private Part(BatchRequest batch, CcyPair pair, Side side) {
+            super(batch.getId(), 0, RequestType.Batch, side, pair, batch.getPriority(), batch.getDeadlineNanos());
+            this.batch = batch;
+        }
+
+        public BatchRequest getBatch() {
+            return batch;
+        }
+
+        public int getQueryCount() {
+            return queryCount;
+        }
+
+        /**
+         * @param index index within the part, from shallowest to deepest
+         * @return index of the query within the batch
+         */
+        public int getQuery(int index) {
+            return queries[index];
+        }
+
+        @Override
+        public int getLevels() {
+            return queryCount == 0 ? 0 : batch.getLevels(queries[queryCount - 1]);
+        }
+
+        /**
+         * Expire the part, leaving its queries without a result
+         */
+        @Override
+        public void expire() {
+            super.expire();
+            for (int i = 0; i < queryCount; i++) {
+                batch.populateResult(queries[i], Double.NaN);
+            }
+        }
+
+        /**
+         * Helper method to insert a query, keeping the queries ordered by levels
+         */
+        private void add(int query) {
+            if (queryCount == queries.length) {
+                queries = Arrays.copyOf(queries, queryCount * 2);
+            }
+            int position = queryCount++;
+            while (position > 0 && batch.getLevels(queries[position - 1]) > batch.getLevels(query)) {
+                queries[position] = queries[position - 1];
+                position -= 1;
+            }
+            queries[position] = query;
+        }
+    }
+}
@@ -3,7 +3,7 @@ package com.gsr.analytics;
 import com.gsr.data.CcyPair;
 import com.gsr.data.Side;
 
-import java.util.concurrent.atomic.AtomicReference;
+import static com.gsr.data.Constants.MAX_VENUES;
 
 public class Request {
 
@@ -12,15 +12,47 @@ public class Request {
     private final RequestType type;
     private final Side side;
     private final CcyPair pair;
-    private final AtomicReference<Double> requestResult;
+    private final RequestPriority priority;
+    private final long deadlineNanos;
+    private final long submittedNanos;
+    private final int venue;
+    private volatile double requestResult = Double.NaN;
+    private volatile boolean expired;
 
     public Request(int id, int levels, RequestType type, Side side, CcyPair pair) {
+        this(id, levels, type, side, pair, RequestPriority.Normal, 0);
+    }
+
+    /**
+     * @param priority      priority class of the request
+     * @param deadlineNanos System.nanoTime() after which the result is of no use to the requester, 0 for no deadline.
+     *                      Requests past their deadline are not computed, but returned expired.
+     */
+    public Request(int id, int levels, RequestType type, Side side, CcyPair pair, RequestPriority priority, long deadlineNanos) {
+        this(id, levels, type, side, pair, priority, deadlineNanos, 0);
+    }
+
+    /**
+     * @param venue venue to break the book down for, for the per venue request types
+     * @throws IllegalArgumentException if the venue is outside 0 to MAX_VENUES - 1
+     */
+    public Request(int id, int levels, RequestType type, Side side, CcyPair pair, RequestPriority priority, long deadlineNanos, int venue) {
+        if (venue < 0 || venue >= MAX_VENUES) {
+            throw new IllegalArgumentException("Venue " + venue + " is out of range");
+        }
         this.id = id;
         this.levels = levels;
         this.type = type;
         this.side = side;
         this.pair = pair;
-        this.requestResult = new AtomicReference<>();
+        this.priority = priority;
+        this.deadlineNanos = deadlineNanos;
+        this.submittedNanos = System.nanoTime();
+        this.venue = venue;
+    }
+
+    public int getId() {
+        return id;
     }
 
     public int getLevels() {
@@ -32,15 +64,50 @@ public class Request {
     }
 
     public void populateResult(long value){
-        requestResult.set((double) value);
+        requestResult = value;
     }
 
     public void populateResult(double value){
-        requestResult.set( value);
+        requestResult = value;
     }
 
     public double getResult(){
-        return requestResult.get();
+        return requestResult;
+    }
+
+    public int getVenue() {
+        return venue;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return System.nanoTime() after which the result is of no use to the requester, 0 for no deadline
+     */
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public long getSubmittedNanos() {
+        return submittedNanos;
+    }
+
+    public boolean isPastDeadline(long nowNanos) {
+        return deadlineNanos != 0 && nowNanos - deadlineNanos > 0;
+    }
+
+    /**
+     * Mark the request as dropped without computing it, because it expired or was shed under load
+     */
+    public void expire() {
+        requestResult = Double.NaN;
+        expired = true;
+    }
+
+    public boolean isExpired() {
+        return expired;
     }
 
     public Side getSide() {
@@ -59,6 +126,9 @@ public class Request {
                 ", type=" + type +
                 ", side=" + side +
                 ", pair=" + pair +
+                ", venue=" + venue +
+                ", priority=" + priority +
+                ", expired=" + expired +
                 ", requestResult=" + requestResult +
                 '}';
     }
@@ -0,0 +1,11 @@
+package com.gsr.analytics;
+
+/**
+ * Priority classes for analytics requests. Pending requests of a higher class are always serviced first, and the
+ * scheduler never sheds High priority requests because of load -- they only expire when their deadline passes.
+ */
+public enum RequestPriority {
+    High,
+    Normal,
+    Low
+}
@@ -4,5 +4,19 @@ public enum RequestType {
 
     Vwap,
     AverageQuantity,
-    AveragePrice
+    AveragePrice,
+
+    //Rolling window statistics, only answered by books with rolling statistics enabled. The depth is taken over the
+    //number of levels the statistics were configured with, so the levels of the request are ignored.
+    TimeWeightedTopOfBookPrice,
+    TimeWeightedDepth,
+    UpdateRate,
+
+    //Breakdown of a consolidated book for the venue of the request: the quantity the venue shows, and the vwap of
+    //that quantity, over the top levels of the consolidated book
+    VenueQuantity,
+    VenueVwap,
+
+    //Many queries in one submission, see BatchRequest. Book sides receive their part of the batch with this type.
+    Batch
 }
@@ -0,0 +1,129 @@
+package com.gsr.analytics.server;
+
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+
+/**
+ * Client of the {@link AnalyticsServer}. Requests are buffered by {@link #submit} and sent together by {@link #flush()},
+ * responses are read by {@link #poll}, so any number of requests can be in flight at once. The server only reads as
+ * many requests as it has room to answer, so a client sending a large pipeline should poll while it submits.
+ *
+ * Not thread safe: one thread submits and polls.
+ */
+public class AnalyticsClient implements AutoCloseable {
+
+    private static final ResponseStatus[] STATUSES = ResponseStatus.values();
+
+    private final SocketChannel channel;
+    private final ByteBuffer output;
+    private final ByteBuffer input;
+
+    private long nextId = 1;
+
+    /**
+     * @param bufferSize size of the send and receive buffers
+     */
+    public AnalyticsClient(InetSocketAddress address, int bufferSize) throws IOException {
+        this.channel = SocketChannel.open(address);
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.output = ByteBuffer.allocateDirect(bufferSize);
+        this.input = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * @return the id of the request, which its response carries
+     */
+    public long submit(RequestType type, CcyPair pair, Side side, int levels) throws IOException {
+        return submit(type, pair, side, levels, RequestPriority.Normal, 0, 0);
+    }
+
+    /**
+     * Buffer a request, the buffer is flushed when full
+     *
+     * @param venue         venue for the per venue request types
+     * @param timeoutMicros time after which the result is of no use, 0 for no deadline
+     * @return the id of the request, which its response carries
+     */
+    public long submit(RequestType type, CcyPair pair, Side side, int levels, RequestPriority priority, int venue,
+                       int timeoutMicros) throws IOException {
+        if (output.remaining() < AnalyticsProtocol.REQUEST_SIZE) {
+            flush();
+        }
+        long id = nextId++;
+        AnalyticsProtocol.writeRequest(output, id, type, pair, side, levels, priority, venue, timeoutMicros);
+        return id;
+    }
+
+    /**
+     * Send all buffered requests
+     */
+    public void flush() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        output.clear();
+    }
+
+    /**
+     * Read the responses which have arrived, blocking until there is at least one
+     *
+     * @return number of responses handed to the handler
+     */
+    public int poll(AnalyticsResponseHandler handler) throws IOException {
+        int handled = 0;
+        while (handled == 0) {
+            handled = read(handler);
+        }
+        return handled;
+    }
+
+    /**
+     * Read the responses which have arrived, without waiting for any. Switches the connection to non blocking mode,
+     * after which {@link #poll} spins rather than blocks.
+     *
+     * @return number of responses handed to the handler, possibly 0
+     */
+    public int pollNow(AnalyticsResponseHandler handler) throws IOException {
+        if (channel.isBlocking()) {
+            channel.configureBlocking(false);
+        }
+        return read(handler);
+    }
+
+    /**
+     * Helper method to read once from the connection, and hand every complete response to the handler
+     */
+    private int read(AnalyticsResponseHandler handler) throws IOException {
+        if (channel.read(input) < 0) {
+            throw new EOFException("Analytics server closed the connection");
+        }
+        int handled = 0;
+        input.flip();
+        while (input.remaining() >= AnalyticsProtocol.RESPONSE_SIZE) {
+            long id = input.getLong();
+            int status = input.get() & 0xFF;
+            input.position(input.position() + 7);
+            double result = input.getDouble();
+            handler.onResponse(id, STATUSES[status], result);
+            handled += 1;
+        }
+        input.compact();
+        return handled;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,70 @@
+package com.gsr.analytics.server;
+
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Binary protocol of the analytics server. Frames have a fixed size and no header, all values are big endian.
+ *
+ * Request, 24 bytes:
+ * <pre>
+ *   long  id             chosen by the client, echoed in the response
+ *   byte  type           RequestType ordinal, Batch is not supported
+ *   byte  pair           CcyPair ordinal
+ *   byte  side           Side ordinal
+ *   byte  priority       RequestPriority ordinal
+ *   int   levels
+ *   byte  venue          for the per venue request types
+ *   byte[3]              reserved
+ *   int   timeoutMicros  0 for no deadline
+ * </pre>
+ * Response, 24 bytes:
+ * <pre>
+ *   long   id
+ *   byte   status        ResponseStatus ordinal
+ *   byte[7]              reserved
+ *   double result        NaN unless the status is Ok
+ * </pre>
+ * Clients may send any number of requests without waiting for the responses, which can come back in any order.
+ */
+public final class AnalyticsProtocol {
+
+    public static final int REQUEST_SIZE = 24;
+    public static final int RESPONSE_SIZE = 24;
+
+    private AnalyticsProtocol() {
+    }
+
+    /**
+     * Write a request at the buffer's position
+     */
+    public static void writeRequest(ByteBuffer buffer, long id, RequestType type, CcyPair pair, Side side, int levels,
+                                    RequestPriority priority, int venue, int timeoutMicros) {
+        buffer.putLong(id);
+        buffer.put((byte) type.ordinal());
+        buffer.put((byte) pair.ordinal());
+        buffer.put((byte) side.ordinal());
+        buffer.put((byte) priority.ordinal());
+        buffer.putInt(levels);
+        buffer.put((byte) venue);
+        buffer.put((byte) 0).put((byte) 0).put((byte) 0);
+        buffer.putInt(timeoutMicros);
+    }
+
+    /**
+     * Write a response at the buffer's position
+     */
+    public static void writeResponse(ByteBuffer buffer, long id, ResponseStatus status, double result) {
+        buffer.putLong(id);
+        buffer.put((byte) status.ordinal());
+        for (int i = 0; i < 7; i++) {
+            buffer.put((byte) 0);
+        }
+        buffer.putDouble(result);
+    }
+}
@@ -0,0 +1,14 @@
+package com.gsr.analytics.server;
+
+/**
+ * Callback for responses read by an {@link AnalyticsClient}
+ */
+public interface AnalyticsResponseHandler {
+
+    /**
+     * @param id     id the request was sent with
+     * @param status whether the request was answered
+     * @param result the result, NaN unless the status is Ok
+     */
+    void onResponse(long id, ResponseStatus status, double result);
+}
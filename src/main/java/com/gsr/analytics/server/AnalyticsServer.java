@@ -0,0 +1,347 @@
+package com.gsr.analytics.server;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+
+import static com.gsr.data.Constants.MAX_VENUES;
+
+
+/**
+ * Serves analytics requests to remote clients over TCP, in the binary format of {@link AnalyticsProtocol}. One thread
+ * polls a selector: it decodes requests straight from each connection's direct buffer and hands them to the engine,
+ * and writes the engine's responses back to the connections they came in on.
+ *
+ * Clients pipeline: they send requests without waiting, and match the responses on their ids. Responses are not
+ * written one by one. Each poll cycle drains everything the engine has answered into the connections' output buffers,
+ * then flushes every connection which got something, so a burst of answers costs one write per client.
+ *
+ * The server owns the engine's response queue. Responses to requests which didn't come in over the network are
+ * counted and dropped.
+ */
+public class AnalyticsServer {
+
+    private static final RequestType[] TYPES = RequestType.values();
+    private static final CcyPair[] PAIRS = CcyPair.values();
+    private static final Side[] SIDES = Side.values();
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+    private final Queue<Request> requestQueue;
+    private final Queue<Request> responseQueue;
+    private final int bufferSize;
+    private final Selector selector;
+    private final Thread serverThread;
+    private final List<ClientConnection> dirtyConnections = new ArrayList<>();
+
+    private volatile boolean runningFlag;
+    private volatile long requestsReceived;
+    private volatile long responsesSent;
+    private volatile long badRequests;
+    private volatile long foreignResponses;
+    private volatile long flushes;
+
+    private int inFlight;
+
+    /**
+     * @param requestQueue  queue of the engine the requests are submitted to
+     * @param responseQueue queue the engine answers on
+     * @param bufferSize    size of the input and output buffers of each connection, which bounds the requests a client
+     *                      can have in flight to bufferSize / {@link AnalyticsProtocol#RESPONSE_SIZE}
+     */
+    public AnalyticsServer(Queue<Request> requestQueue, Queue<Request> responseQueue, int bufferSize) throws IOException {
+        if (bufferSize < AnalyticsProtocol.REQUEST_SIZE) {
+            throw new IllegalArgumentException("Buffer size must hold at least one frame");
+        }
+        this.requestQueue = requestQueue;
+        this.responseQueue = responseQueue;
+        this.bufferSize = bufferSize;
+        this.selector = Selector.open();
+        this.serverThread = new Thread(this::serve, "Analytics Server");
+    }
+
+    /**
+     * Accept client connections on the given address, call before launch
+     *
+     * @return the address actually bound, useful when binding to port 0
+     */
+    public InetSocketAddress bind(InetSocketAddress address) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    public void start() {
+        runningFlag = true;
+        serverThread.start();
+    }
+
+    public void shutdown() {
+        System.out.println("Shutting down Analytics Server");
+        runningFlag = false;
+        selector.wakeup();
+    }
+
+    public long getRequestsReceived() {
+        return requestsReceived;
+    }
+
+    public long getResponsesSent() {
+        return responsesSent;
+    }
+
+    public long getBadRequests() {
+        return badRequests;
+    }
+
+    /**
+     * @return number of responses dropped because their request didn't come from a client of the server
+     */
+    public long getForeignResponses() {
+        return foreignResponses;
+    }
+
+    /**
+     * @return number of writes to client sockets, against {@link #getResponsesSent()} it shows the batching achieved
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    private void serve() {
+        System.out.println("Analytics Server Running");
+
+        try {
+            while (runningFlag) {
+                //Nothing wakes the selector when the engine answers, so poll it only while answers are due
+                int ready = inFlight > 0 ? selector.selectNow() : selector.select();
+                if (ready > 0) {
+                    handleSelectedKeys();
+                }
+
+                boolean answered = drainResponses();
+                flushConnections();
+                if (ready == 0 && !answered && inFlight > 0) {
+                    Thread.yield();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR: Analytics Server failed, no more requests will be served");
+            e.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Helper method to accept, read from and write to the connections the selector found ready
+     */
+    private void handleSelectedKeys() throws IOException {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                acceptConnection((ServerSocketChannel) key.channel());
+                continue;
+            }
+
+            ClientConnection connection = (ClientConnection) key.attachment();
+            if (key.isWritable()) {
+                flush(connection);
+            }
+            if (key.isValid() && key.isReadable()) {
+                readRequests(connection);
+            }
+        }
+    }
+
+    private void acceptConnection(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new ClientConnection(channel, key, bufferSize));
+    }
+
+    private void readRequests(ClientConnection connection) {
+        ByteBuffer input = connection.getInput();
+        int read;
+        try {
+            read = connection.getChannel().read(input);
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        if (read < 0) {
+            close(connection);
+            return;
+        }
+        decodeRequests(connection);
+    }
+
+    /**
+     * Helper method to submit every complete request in the input buffer for which the response can be reserved.
+     * Reading from the connection is paused while its output is full, and resumed once it is flushed.
+     */
+    private void decodeRequests(ClientConnection connection) {
+        ByteBuffer input = connection.getInput();
+        input.flip();
+        while (input.remaining() >= AnalyticsProtocol.REQUEST_SIZE && connection.canReserveResponse()) {
+            decodeRequest(connection, input);
+        }
+        input.compact();
+
+        SelectionKey key = connection.getKey();
+        boolean full = !connection.canReserveResponse() || !input.hasRemaining();
+        key.interestOps(full ? key.interestOps() & ~SelectionKey.OP_READ : key.interestOps() | SelectionKey.OP_READ);
+    }
+
+    private void decodeRequest(ClientConnection connection, ByteBuffer input) {
+        long id = input.getLong();
+        int type = input.get() & 0xFF;
+        int pair = input.get() & 0xFF;
+        int side = input.get() & 0xFF;
+        int priority = input.get() & 0xFF;
+        int levels = input.getInt();
+        int venue = input.get() & 0xFF;
+        input.position(input.position() + 3);
+        int timeoutMicros = input.getInt();
+
+        requestsReceived += 1;
+        if (type >= TYPES.length || TYPES[type] == RequestType.Batch || pair >= PAIRS.length || side >= SIDES.length
+                || priority >= PRIORITIES.length || levels <= 0 || venue >= MAX_VENUES || timeoutMicros < 0) {
+            badRequests += 1;
+            writeResponse(connection, id, ResponseStatus.BadRequest, Double.NaN);
+            return;
+        }
+
+        long deadlineNanos = timeoutMicros == 0 ? 0 : System.nanoTime() + timeoutMicros * 1000L;
+        connection.reserveResponse();
+        inFlight += 1;
+        requestQueue.offer(new ServerRequest(connection, id, levels, TYPES[type], SIDES[side], PAIRS[pair],
+                PRIORITIES[priority], deadlineNanos, venue));
+    }
+
+    /**
+     * Helper method to move the answered requests into the output buffers of their connections
+     *
+     * @return whether any response was taken off the queue
+     */
+    private boolean drainResponses() {
+        boolean answered = false;
+        Request response;
+        while ((response = responseQueue.poll()) != null) {
+            answered = true;
+            if (!(response instanceof ServerRequest)) {
+                foreignResponses += 1;
+                continue;
+            }
+
+            ServerRequest request = (ServerRequest) response;
+            ClientConnection connection = request.getConnection();
+            connection.releaseResponse();
+            inFlight -= 1;
+            if (!connection.isClosed()) {
+                ResponseStatus status = request.isExpired() ? ResponseStatus.Expired : ResponseStatus.Ok;
+                writeResponse(connection, request.getClientId(), status, request.getResult());
+            }
+        }
+        return answered;
+    }
+
+    private void writeResponse(ClientConnection connection, long id, ResponseStatus status, double result) {
+        AnalyticsProtocol.writeResponse(connection.getOutput(), id, status, result);
+        responsesSent += 1;
+        if (!connection.isDirty()) {
+            connection.setDirty(true);
+            dirtyConnections.add(connection);
+        }
+    }
+
+    private void flushConnections() {
+        for (int i = 0; i < dirtyConnections.size(); i++) {
+            ClientConnection connection = dirtyConnections.get(i);
+            connection.setDirty(false);
+            if (!connection.isClosed()) {
+                flush(connection);
+            }
+        }
+        dirtyConnections.clear();
+    }
+
+    /**
+     * Helper method to write out as much of a connection's output as the socket takes. Whatever is left waits for the
+     * socket to become writable. Requests left in the input buffer while the output was full are taken up again.
+     */
+    private void flush(ClientConnection connection) {
+        ByteBuffer output = connection.getOutput();
+        if (output.position() > 0) {
+            output.flip();
+            try {
+                connection.getChannel().write(output);
+            } catch (IOException e) {
+                output.clear();
+                close(connection);
+                return;
+            }
+            output.compact();
+            flushes += 1;
+        }
+
+        SelectionKey key = connection.getKey();
+        key.interestOps(output.position() > 0 ? key.interestOps() | SelectionKey.OP_WRITE : key.interestOps() & ~SelectionKey.OP_WRITE);
+        decodeRequests(connection);
+    }
+
+    /**
+     * Helper method to drop a client. Its requests still in the engine are answered into the void.
+     */
+    private void close(ClientConnection connection) {
+        connection.markClosed();
+        connection.getKey().cancel();
+        try {
+            connection.getChannel().close();
+        } catch (IOException e) {
+            //Nothing more can be done with the connection
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                //Closing anyway
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            //Closing anyway
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.gsr.analytics.server;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+
+/**
+ * State of one client connection of the analytics server. Only ever touched by the server thread.
+ *
+ * Every request taken off the connection reserves room for its response in the output buffer, so a response always
+ * fits when it comes back from the engine. A client which doesn't read its responses therefore stops being read from
+ * itself, and TCP pushes back on it, rather than the server buffering without bound.
+ */
+final class ClientConnection {
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ByteBuffer input;
+    private final ByteBuffer output;
+
+    private int inFlight;
+    private boolean dirty;
+    private boolean closed;
+
+    ClientConnection(SocketChannel channel, SelectionKey key, int bufferSize) {
+        this.channel = channel;
+        this.key = key;
+        this.input = ByteBuffer.allocateDirect(bufferSize);
+        this.output = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    ByteBuffer getInput() {
+        return input;
+    }
+
+    /**
+     * @return the output buffer, in write mode: its position is the number of bytes waiting to be sent
+     */
+    ByteBuffer getOutput() {
+        return output;
+    }
+
+    /**
+     * @return whether another request can be taken, with room left for its response
+     */
+    boolean canReserveResponse() {
+        return output.position() + (inFlight + 1) * AnalyticsProtocol.RESPONSE_SIZE <= output.capacity();
+    }
+
+    void reserveResponse() {
+        inFlight += 1;
+    }
+
+    void releaseResponse() {
+        inFlight -= 1;
+    }
+
+    int getInFlight() {
+        return inFlight;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void markClosed() {
+        closed = true;
+    }
+}
@@ -0,0 +1,15 @@
+package com.gsr.analytics.server;
+
+/**
+ * Outcome of a request sent to the analytics server
+ */
+public enum ResponseStatus {
+
+    Ok,
+
+    //The request expired or was shed by the book before it was computed
+    Expired,
+
+    //The request could not be decoded, e.g. an unknown instrument, or a request type the server doesn't take
+    BadRequest
+}
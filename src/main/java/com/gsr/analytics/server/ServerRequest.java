@@ -0,0 +1,33 @@
+package com.gsr.analytics.server;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+
+/**
+ * Analytics request received over the network. It carries the connection it came in on and the client's id, so the
+ * server can write the response without any lookup.
+ */
+final class ServerRequest extends Request {
+
+    private final ClientConnection connection;
+    private final long clientId;
+
+    ServerRequest(ClientConnection connection, long clientId, int levels, RequestType type, Side side, CcyPair pair,
+                  RequestPriority priority, long deadlineNanos, int venue) {
+        super((int) clientId, levels, type, side, pair, priority, deadlineNanos, venue);
+        this.connection = connection;
+        this.clientId = clientId;
+    }
+
+    ClientConnection getConnection() {
+        return connection;
+    }
+
+    long getClientId() {
+        return clientId;
+    }
+}
@@ -0,0 +1,184 @@
+package com.gsr.application;
+
+import com.gsr.analytics.BatchRequest;
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.feed.MessageSerializer;
+import com.gsr.feed.ObjectPool;
+import com.gsr.load.SyntheticFeedGenerator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Start up phase which gets the engine to steady state before it goes live.
+ *
+ * A synthetic (or recorded) feed is replayed through the full parse, distribute, book and analytics path -- both the
+ * String and the byte level parser -- so that the JIT compiles the hot paths before the first real tick. The message
+ * and price level pools are filled up front, and once the replay is done every book is cleared again through the
+ * normal market data path and confirmed empty.
+ *
+ * Warm up must run after the engine threads have been launched, but before any real feed or analytics client is
+ * attached, as it consumes the analytics responses it provokes. Market data listeners are attached after it as well,
+ * so that the synthetic feed isn't recorded or replicated.
+ */
+public class EngineWarmup {
+
+    private static final long RESPONSE_TIMEOUT_MILLIS = 5000;
+    private static final int REQUESTS_EVERY = 50;
+    private static final int MAX_LEVELS = 20;
+
+    private final MessageSerializer serializer;
+    private final ObjectPool<Message> messagePool;
+    private final Queue<Message> distributorInboundQueue;
+    private final Queue<Request> analyticsRequestQueue;
+    private final BlockingQueue<Request> analyticsResponseQueue;
+    private final List<OrderBookProcessor> processors;
+    private final ByteBuffer lineBuffer = ByteBuffer.allocateDirect(256);
+
+    private int nextRequestId = Integer.MIN_VALUE;
+
+    public EngineWarmup(MessageSerializer serializer,
+                        ObjectPool<Message> messagePool,
+                        Queue<Message> distributorInboundQueue,
+                        Queue<Request> analyticsRequestQueue,
+                        BlockingQueue<Request> analyticsResponseQueue,
+                        List<OrderBookProcessor> processors) {
+        this.serializer = serializer;
+        this.messagePool = messagePool;
+        this.distributorInboundQueue = distributorInboundQueue;
+        this.analyticsRequestQueue = analyticsRequestQueue;
+        this.analyticsResponseQueue = analyticsResponseQueue;
+        this.processors = processors;
+    }
+
+    /**
+     * Fill the pools, replay a synthetic feed and reset the books
+     *
+     * @param messageCount           number of synthetic messages to replay. Some 10 000 per book side gets the hot
+     *                               paths through C2 on a default JVM.
+     * @param pooledMessages         number of messages to preallocate
+     * @param pooledLevelsPerBook    number of price levels to preallocate for each book side
+     */
+    public void warmUp(int messageCount, int pooledMessages, int pooledLevelsPerBook) throws InterruptedException {
+        messagePool.preallocate(pooledMessages);
+        processors.forEach(p -> p.preallocatePriceLevels(pooledLevelsPerBook));
+
+        SyntheticFeedGenerator generator = new SyntheticFeedGenerator(42, CcyPair.nativePairs());
+        generator.setDepth(MAX_LEVELS);
+        replay(generator.generate(messageCount));
+        resetBooks();
+    }
+
+    /**
+     * Replay a feed through the engine, asking for every kind of analytics along the way
+     *
+     * @param feed market data in the engine's text format, e.g. a recorded capture
+     */
+    public void replay(List<String> feed) throws InterruptedException {
+        Random random = new Random(7);
+        int pendingResponses = 0;
+
+        for (int i = 0; i < feed.size(); i++) {
+            String line = feed.get(i);
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            //Alternate between the String and the byte level entry points, so that both are compiled
+            if ((i & 1) == 0) {
+                serializer.onMessage(line);
+            } else {
+                lineBuffer.clear();
+                lineBuffer.put(line.getBytes(StandardCharsets.US_ASCII));
+                serializer.onMessage(lineBuffer, 0, lineBuffer.position());
+            }
+
+            if (i % REQUESTS_EVERY == 0) {
+                pendingResponses += requestAllAnalytics(random);
+            }
+        }
+
+        awaitResponses(pendingResponses);
+    }
+
+    /**
+     * Clear every book side through the market data path, then wait until each one confirms it is empty
+     */
+    public void resetBooks() throws InterruptedException {
+        for (CcyPair pair : CcyPair.nativePairs()) {
+            for (Side side : Side.values()) {
+                Message clear = messagePool.acquireObject();
+                clear.setType(MessageType.ClearBook);
+                clear.setPair(pair);
+                clear.setSide(side);
+                distributorInboundQueue.add(clear);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + RESPONSE_TIMEOUT_MILLIS;
+        for (CcyPair pair : CcyPair.nativePairs()) {
+            for (Side side : Side.values()) {
+                //Market data and analytics travel separate paths, so the request may overtake the clear. Ask again.
+                while (queryDepth(pair, side) != 0) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new IllegalStateException("Book " + pair + " " + side + " was not cleared after warm up");
+                    }
+                    Thread.sleep(1);
+                }
+            }
+        }
+    }
+
+    private int requestAllAnalytics(Random random) {
+        int sent = 0;
+        BatchRequest batch = new BatchRequest(nextRequestId++);
+        for (CcyPair pair : CcyPair.nativePairs()) {
+            for (Side side : Side.values()) {
+                for (RequestType type : RequestType.values()) {
+                    if (type == RequestType.Batch) {
+                        continue;
+                    }
+                    analyticsRequestQueue.add(new Request(nextRequestId++, 1 + random.nextInt(MAX_LEVELS), type, side, pair));
+                    batch.add(type, pair, side, 1 + random.nextInt(MAX_LEVELS));
+                    sent += 1;
+                }
+            }
+        }
+        analyticsRequestQueue.add(batch);
+        return sent + 1;
+    }
+
+    private void awaitResponses(int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            if (analyticsResponseQueue.poll(RESPONSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) == null) {
+                throw new IllegalStateException("Timed out waiting for warm up analytics, " + (count - i) + " missing");
+            }
+        }
+    }
+
+    private double queryDepth(CcyPair pair, Side side) throws InterruptedException {
+        Request request = new Request(nextRequestId++, 1, RequestType.AverageQuantity, side, pair);
+        analyticsRequestQueue.add(request);
+
+        Request response = analyticsResponseQueue.poll(RESPONSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        while (response != null && response != request) {
+            response = analyticsResponseQueue.poll(RESPONSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        if (response == null) {
+            throw new IllegalStateException("Timed out waiting for book " + pair + " " + side + " after warm up");
+        }
+        return response.getResult();
+    }
+}
@@ -1,6 +1,7 @@
 package com.gsr.application;
 
 import com.gsr.analytics.Request;
+import com.gsr.analytics.server.AnalyticsServer;
 import com.gsr.data.CcyPair;
 
 import com.gsr.data.Message;
@@ -8,10 +9,27 @@ import com.gsr.engine.*;
 import com.gsr.feed.ObjectPool;
 import com.gsr.feed.MessageSerializer;
 import com.gsr.feed.MessageSerializerImpl;
+import com.gsr.feed.NioFeedHandler;
+import com.gsr.feed.ParallelFileIngest;
+import com.gsr.implied.ImpliedBookEngine;
+import com.gsr.replication.ReplicationSource;
+import com.gsr.shm.SharedBookPublisher;
+import com.gsr.store.TickStore;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 
 import static com.gsr.data.Constants.*;
@@ -23,7 +41,89 @@ import static com.gsr.data.Constants.*;
  */
 public class OrderBookReplicatorRunner {
 
-    public static void main(String[] args) throws InterruptedException {
+    private static final int WARMUP_MESSAGES = 60_000;
+    private static final int WARMUP_POOLED_MESSAGES = 16_384;
+    private static final int WARMUP_POOLED_LEVELS = 1024;
+    private static final int SHARED_BOOK_DEPTH = 10;
+    private static final int ANALYTICS_BUFFER_SIZE = 64 * 1024;
+    private static final int INGEST_CHUNK_SIZE = 256 * 1024;
+    private static final long INGEST_MAX_BACKLOG = 1 << 15;
+    private static final int IMPLIED_DEPTH = 10;
+    private static final int FEED_BUFFER_SIZE = 64 * 1024;
+    private static final long REBALANCE_INTERVAL_MILLIS = 1000;
+
+    /**
+     * @param args market data file on the class path, optionally followed by --warmup to warm the engine up before
+     *             loading it. --warmup-only only runs the warm up and exits, e.g. to record a class data sharing
+     *             archive with bin/run-engine.sh. --tickstore=<directory> records the applied market data into a
+     *             tick store in that directory. --shm=<file> publishes the top levels of every book side into a
+     *             shared memory file, e.g. under /dev/shm, for {@link com.gsr.shm.SharedBookReader}s in other processes.
+     *             --ingest=<file> loads a capture file from the file system, plain or gzip compressed, parsing it
+     *             on every core. --replicate=<port> streams the applied market data to a {@link StandbyRunner}
+     *             connecting on that port, which is waited for before anything is applied. --level-ttl-ms=<millis>
+     *             expires levels which haven't been updated for that long. --analytics-port=<port> serves analytics
+     *             requests over TCP once the file is loaded, until the JVM is stopped. --implied=<pair>,<pair>...
+     *             maintains the books of implied pairs such as ETHBTC from their legs, to be queried like any other.
+     *             --feed-port=<port> accepts market data over TCP, until the JVM is stopped. --pairs=<pair>,<pair>...
+     *             only runs the books of those pairs, for an engine owning a partition behind a
+     *             {@link PartitionGatewayRunner}. --workers=<n> runs the book sides on n worker threads rather than
+     *             one thread each, moving them between workers as their load shifts.
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+
+        String fileName = null;
+        boolean warmUp = false;
+        boolean warmUpOnly = false;
+        String tickStoreDirectory = null;
+        String sharedBookFile = null;
+        int analyticsPort = -1;
+        String ingestFile = null;
+        int replicationPort = -1;
+        long levelTimeToLiveMillis = 0;
+        int feedPort = -1;
+        int workerCount = 0;
+        Set<CcyPair> ownedPairs = EnumSet.copyOf(Arrays.asList(CcyPair.nativePairs()));
+        ImpliedBookEngine impliedBookEngine = new ImpliedBookEngine(IMPLIED_DEPTH);
+        for (String arg : args) {
+            if ("--warmup".equals(arg)) {
+                warmUp = true;
+            } else if ("--warmup-only".equals(arg)) {
+                warmUp = true;
+                warmUpOnly = true;
+            } else if (arg.startsWith("--shm=")) {
+                sharedBookFile = arg.substring("--shm=".length());
+            } else if (arg.startsWith("--analytics-port=")) {
+                analyticsPort = Integer.parseInt(arg.substring("--analytics-port=".length()));
+            } else if (arg.startsWith("--replicate=")) {
+                replicationPort = Integer.parseInt(arg.substring("--replicate=".length()));
+            } else if (arg.startsWith("--level-ttl-ms=")) {
+                levelTimeToLiveMillis = Long.parseLong(arg.substring("--level-ttl-ms=".length()));
+            } else if (arg.startsWith("--implied=")) {
+                for (String pair : arg.substring("--implied=".length()).split(",")) {
+                    impliedBookEngine.addPair(CcyPair.valueOf(pair));
+                }
+            } else if (arg.startsWith("--feed-port=")) {
+                feedPort = Integer.parseInt(arg.substring("--feed-port=".length()));
+            } else if (arg.startsWith("--workers=")) {
+                workerCount = Integer.parseInt(arg.substring("--workers=".length()));
+            } else if (arg.startsWith("--pairs=")) {
+                ownedPairs.clear();
+                for (String pair : arg.substring("--pairs=".length()).split(",")) {
+                    ownedPairs.add(CcyPair.valueOf(pair));
+                }
+            } else if (arg.startsWith("--ingest=")) {
+                ingestFile = arg.substring("--ingest=".length());
+            } else if (arg.startsWith("--tickstore=")) {
+                tickStoreDirectory = arg.substring("--tickstore=".length());
+            } else {
+                fileName = arg;
+            }
+        }
+
+        //The warm up drives every book, so it can't run in an engine owning only some of them
+        if (warmUp && ownedPairs.size() < CcyPair.nativePairs().length) {
+            throw new IllegalArgumentException("--warmup can't be combined with --pairs");
+        }
 
         List<ConcurrentLinkedQueue<Message>> queues = new ArrayList<>(6);
         for (int i = 0; i < 6; i++) {
@@ -32,54 +132,178 @@ public class OrderBookReplicatorRunner {
 
         List<ConcurrentLinkedQueue<Request>> requestQueues = new ArrayList<>(6);
         for (int i = 0; i < 6; i++) {
-            queues.add(new ConcurrentLinkedQueue<>());
+            requestQueues.add(new ConcurrentLinkedQueue<>());
         }
 
         List<ConcurrentLinkedQueue<Request>> responseQueues = new ArrayList<>(6);
         for (int i = 0; i < 6; i++) {
-            queues.add(new ConcurrentLinkedQueue<>());
+            responseQueues.add(new ConcurrentLinkedQueue<>());
         }
 
-        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new, 4096, 1 << 16, 64);
 
         ConcurrentLinkedQueue<Message> distributorInboundQueue = new ConcurrentLinkedQueue<>();
         MessageSerializer serializer = new MessageSerializerImpl(distributorInboundQueue, messagePool, 3, 100, MESSAGE_DELIMITER, KEY_VALUE_DELIMITER);
 
         ConcurrentLinkedQueue<Request> analyticsRequestQueue = new ConcurrentLinkedQueue<>();
         LinkedBlockingQueue<Request>  analyticsResponseQueue = new LinkedBlockingQueue<>();
-        OrderBookDistributor orderBookDistributor = new OrderBookDistributor(distributorInboundQueue, analyticsRequestQueue, queues, requestQueues, responseQueues, analyticsResponseQueue);
+        OrderBookDistributor orderBookDistributor = new OrderBookDistributor(distributorInboundQueue, analyticsRequestQueue, queues, requestQueues, responseQueues, analyticsResponseQueue,
+                impliedBookEngine.getPairs(), impliedBookEngine.getRequestQueue(), impliedBookEngine.getResponseQueue());
 
 
-        //Configure instances for each pair and side
+        //Configure instances for each pair and side, at the queue indices the distributor routes to
         OrderBookProcessor btcOfferProcessor = new OfferOrderBookProcessor(CcyPair.BTCUSD,   messagePool, queues.get(0), requestQueues.get(0), responseQueues.get(0)) ;
         OrderBookProcessor btcBidProcessor = new BidOrderBookProcessor(CcyPair.BTCUSD,   messagePool, queues.get(1), requestQueues.get(1), responseQueues.get(1));
-        OrderBookProcessor ethBidProcessor = new BidOrderBookProcessor(CcyPair.ETHUSD,   messagePool, queues.get(2), requestQueues.get(2), responseQueues.get(2));
-        OrderBookProcessor ethOfferProcessor = new OfferOrderBookProcessor(CcyPair.ETHUSD,   messagePool, queues.get(3), requestQueues.get(3), responseQueues.get(3));
-        OrderBookProcessor solBidProcessor = new BidOrderBookProcessor(CcyPair.SOLUSD,   messagePool, queues.get(4), requestQueues.get(4), responseQueues.get(4) );
-        OrderBookProcessor solOfferProcessor = new OfferOrderBookProcessor(CcyPair.SOLUSD,   messagePool, queues.get(5), requestQueues.get(5), responseQueues.get(5));
+        OrderBookProcessor ethOfferProcessor = new OfferOrderBookProcessor(CcyPair.ETHUSD,   messagePool, queues.get(2), requestQueues.get(2), responseQueues.get(2));
+        OrderBookProcessor ethBidProcessor = new BidOrderBookProcessor(CcyPair.ETHUSD,   messagePool, queues.get(3), requestQueues.get(3), responseQueues.get(3));
+        OrderBookProcessor solOfferProcessor = new OfferOrderBookProcessor(CcyPair.SOLUSD,   messagePool, queues.get(4), requestQueues.get(4), responseQueues.get(4));
+        OrderBookProcessor solBidProcessor = new BidOrderBookProcessor(CcyPair.SOLUSD,   messagePool, queues.get(5), requestQueues.get(5), responseQueues.get(5));
+        List<OrderBookProcessor> processors = Arrays.asList(btcOfferProcessor, btcBidProcessor, ethOfferProcessor, ethBidProcessor, solOfferProcessor, solBidProcessor);
 
+        //Drop levels the feed has forgotten about, if asked to
+        if (levelTimeToLiveMillis > 0) {
+            for (OrderBookProcessor processor : processors) {
+                processor.setLevelTimeToLive(TimeUnit.MILLISECONDS.toNanos(levelTimeToLiveMillis));
+            }
+        }
+
+        //Start the treads for each of the order book sides owned by this engine, the others would only spin. With
+        //workers, the book sides share them instead, and are moved between them to even out the load.
+        BookLoadBalancer bookLoadBalancer = workerCount > 0 ? new BookLoadBalancer(workerCount, REBALANCE_INTERVAL_MILLIS) : null;
+        for (OrderBookProcessor processor : processors) {
+            if (!ownedPairs.contains(processor.getCcyPair())) {
+                continue;
+            }
+            if (bookLoadBalancer != null) {
+                bookLoadBalancer.addBook(processor);
+            } else {
+                processor.launchOrderBookThread();
+            }
+        }
+        if (bookLoadBalancer != null) {
+            bookLoadBalancer.start();
+        }
+        if (!impliedBookEngine.getPairs().isEmpty()) {
+            impliedBookEngine.start();
+        }
+
+        //Get the hot paths compiled and the pools filled before the real feed arrives
+        if (warmUp) {
+            long start = System.nanoTime();
+            new EngineWarmup(serializer, messagePool, distributorInboundQueue, analyticsRequestQueue, analyticsResponseQueue, processors)
+                    .warmUp(WARMUP_MESSAGES, WARMUP_POOLED_MESSAGES, WARMUP_POOLED_LEVELS);
+            System.out.println("Warm up completed in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        }
 
-        //Start the treads for each of the order book sides
-        btcOfferProcessor.launchOrderBookThread();
-        btcBidProcessor.launchOrderBookThread();
-        ethOfferProcessor.launchOrderBookThread();
-        ethBidProcessor.launchOrderBookThread();
-        solOfferProcessor.launchOrderBookThread();
-        solBidProcessor.launchOrderBookThread();
+        //Record the history of every book side, and publish its top levels to other processes, if asked to. Only once
+        //the warm up is done, its synthetic feed must not end up in the history, the standby or the implied books.
+        TickStore tickStore = tickStoreDirectory == null ? null : new TickStore(Paths.get(tickStoreDirectory));
+        SharedBookPublisher sharedBookPublisher = sharedBookFile == null ? null : new SharedBookPublisher(Paths.get(sharedBookFile), SHARED_BOOK_DEPTH);
+        ReplicationSource replicationSource = replicationPort < 0 ? null : new ReplicationSource(new InetSocketAddress(replicationPort));
+        for (OrderBookProcessor processor : processors) {
+            MarketDataListener listener = null;
+            if (tickStore != null) {
+                listener = tickStore.recorderFor(processor.getCcyPair(), processor.getSide());
+            }
+            if (sharedBookPublisher != null) {
+                listener = MarketDataListener.both(listener, sharedBookPublisher.writerFor(processor.getCcyPair(), processor.getSide()));
+            }
+            if (replicationSource != null) {
+                listener = MarketDataListener.both(listener, replicationSource.tapFor(processor.getCcyPair(), processor.getSide()));
+            }
+            listener = MarketDataListener.both(listener, impliedBookEngine.listenerFor(processor.getCcyPair(), processor.getSide()));
+            processor.setMarketDataListener(listener);
+        }
 
+        //The standby can't catch up on history, so it has to be there before any market data is applied
+        if (replicationSource != null) {
+            replicationSource.start();
+            System.out.println("Waiting for the replication standby on " + replicationSource.getAddress());
+            while (!replicationSource.isStandbyConnected()) {
+                Thread.sleep(10);
+            }
+        }
 
         //Load the messages from file, send to the engine via the serializer
-        FileLoader fileLoader = new FileLoader();
+        if (!warmUpOnly && fileName != null) {
+            FileLoader fileLoader = new FileLoader();
+
+            fileLoader.readFileEntries(fileName).forEach(serializer::onMessage);
+
+            Thread.sleep(200);
+        }
+
+        //Bulk load a capture on all cores, straight into the book queues, no faster than the books apply it. Pairs
+        //this engine doesn't own would never be applied, so they are left out.
+        if (!warmUpOnly && ingestFile != null) {
+            long start = System.nanoTime();
+            Consumer<Message> sink = message -> {
+                if (ownedPairs.contains(message.getPair())) {
+                    orderBookDistributor.routeMarketData(message);
+                } else {
+                    messagePool.returnObject(message);
+                }
+            };
+            LongSupplier appliedMessages = () -> {
+                long applied = 0;
+                for (OrderBookProcessor processor : processors) {
+                    applied += processor.getMessagesApplied();
+                }
+                return applied;
+            };
+            try (ParallelFileIngest ingest = new ParallelFileIngest(messagePool, sink, Runtime.getRuntime().availableProcessors(),
+                    INGEST_CHUNK_SIZE, appliedMessages, INGEST_MAX_BACKLOG)) {
+                long messages = ingest.ingest(Paths.get(ingestFile));
+                System.out.println("Ingested " + messages + " messages in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+            }
 
-        fileLoader.readFileEntries(args[0]).forEach(serializer::onMessage);
+            Thread.sleep(200);
+        }
 
-        Thread.sleep(200);
+        //Serve remote feeds and clients until the JVM is asked to stop
+        if (!warmUpOnly && (analyticsPort >= 0 || feedPort >= 0)) {
+            NioFeedHandler feedHandler = null;
+            if (feedPort >= 0) {
+                feedHandler = new NioFeedHandler(serializer, FEED_BUFFER_SIZE, false);
+                System.out.println("Accepting market data on " + feedHandler.bindTcp(new InetSocketAddress(feedPort)));
+                feedHandler.start();
+            }
+
+            AnalyticsServer analyticsServer = null;
+            if (analyticsPort >= 0) {
+                analyticsServer = new AnalyticsServer(analyticsRequestQueue, analyticsResponseQueue, ANALYTICS_BUFFER_SIZE);
+                InetSocketAddress address = analyticsServer.bind(new InetSocketAddress(analyticsPort));
+                analyticsServer.start();
+                System.out.println("Serving analytics on " + address);
+            }
+
+            CountDownLatch stopped = new CountDownLatch(1);
+            Runtime.getRuntime().addShutdownHook(new Thread(stopped::countDown));
+            stopped.await();
+            if (feedHandler != null) {
+                feedHandler.shutdown();
+            }
+            if (analyticsServer != null) {
+                analyticsServer.shutdown();
+            }
+        }
 
 
         orderBookDistributor.shutdown();
-        btcBidProcessor.shutDownOrderBookThread();
-        btcOfferProcessor.shutDownOrderBookThread();
-        ethBidProcessor.shutDownOrderBookThread();
-        ethOfferProcessor.shutDownOrderBookThread();
+        processors.forEach(OrderBookProcessor::shutDownOrderBookThread);
+        if (bookLoadBalancer != null) {
+            bookLoadBalancer.shutdown();
+        }
+        impliedBookEngine.shutdown();
+
+        if (tickStore != null) {
+            tickStore.close();
+        }
+        if (sharedBookPublisher != null) {
+            sharedBookPublisher.close();
+        }
+        if (replicationSource != null) {
+            replicationSource.close();
+        }
     }
 }
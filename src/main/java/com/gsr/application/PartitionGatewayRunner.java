@@ -0,0 +1,107 @@
+package com.gsr.application;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.server.AnalyticsServer;
+import com.gsr.data.CcyPair;
+import com.gsr.feed.NioFeedHandler;
+import com.gsr.partition.PartitionFeedRouter;
+import com.gsr.partition.PartitionMap;
+import com.gsr.partition.PartitionRequestRouter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+
+/**
+ * Runs the gateway of a partitioned deployment, in front of several engines each started with --feed-port,
+ * --analytics-port and --pairs for the instruments it owns. Market data is taken in on one port and forwarded to the
+ * engine owning its instrument, analytics requests are taken in on another and routed the same way, so clients see a
+ * single engine.
+ */
+public class PartitionGatewayRunner {
+
+    private static final int FEED_BUFFER_SIZE = 64 * 1024;
+    private static final int ANALYTICS_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @param args --partition=<host>:<feed port>:<analytics port>=<pair>,<pair>... once for each engine, in partition
+     *             order, --feed-port=<port> to accept market data on, --analytics-port=<port> to serve analytics
+     *             requests on, and optionally a market data file on the class path to route before serving
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String> partitions = new ArrayList<>();
+        int feedPort = -1;
+        int analyticsPort = -1;
+        String fileName = null;
+        for (String arg : args) {
+            if (arg.startsWith("--partition=")) {
+                partitions.add(arg.substring("--partition=".length()));
+            } else if (arg.startsWith("--feed-port=")) {
+                feedPort = Integer.parseInt(arg.substring("--feed-port=".length()));
+            } else if (arg.startsWith("--analytics-port=")) {
+                analyticsPort = Integer.parseInt(arg.substring("--analytics-port=".length()));
+            } else {
+                fileName = arg;
+            }
+        }
+
+        PartitionMap partitionMap = new PartitionMap(partitions.size());
+        InetSocketAddress[] feedAddresses = new InetSocketAddress[partitions.size()];
+        InetSocketAddress[] analyticsAddresses = new InetSocketAddress[partitions.size()];
+        for (int i = 0; i < partitions.size(); i++) {
+            String[] addressAndPairs = partitions.get(i).split("=");
+            String[] address = addressAndPairs[0].split(":");
+            feedAddresses[i] = new InetSocketAddress(address[0], Integer.parseInt(address[1]));
+            analyticsAddresses[i] = new InetSocketAddress(address[0], Integer.parseInt(address[2]));
+            for (String pair : addressAndPairs[1].split(",")) {
+                partitionMap.assign(CcyPair.valueOf(pair), i);
+            }
+        }
+
+        PartitionFeedRouter feedRouter = new PartitionFeedRouter(partitionMap, feedAddresses, FEED_BUFFER_SIZE);
+        if (fileName != null) {
+            new FileLoader().readFileEntries(fileName).forEach(feedRouter::onMessage);
+            feedRouter.endOfBatch();
+            System.out.println("Routed " + feedRouter.getMessagesRouted() + " messages from " + fileName);
+        }
+
+        NioFeedHandler feedHandler = null;
+        if (feedPort >= 0) {
+            feedHandler = new NioFeedHandler(feedRouter, FEED_BUFFER_SIZE, false);
+            System.out.println("Accepting market data on " + feedHandler.bindTcp(new InetSocketAddress(feedPort)));
+            feedHandler.start();
+        }
+
+        AnalyticsServer analyticsServer = null;
+        PartitionRequestRouter requestRouter = null;
+        if (analyticsPort >= 0) {
+            ConcurrentLinkedQueue<Request> requestQueue = new ConcurrentLinkedQueue<>();
+            ConcurrentLinkedQueue<Request> responseQueue = new ConcurrentLinkedQueue<>();
+            requestRouter = new PartitionRequestRouter(partitionMap, analyticsAddresses, requestQueue, responseQueue, ANALYTICS_BUFFER_SIZE);
+            analyticsServer = new AnalyticsServer(requestQueue, responseQueue, ANALYTICS_BUFFER_SIZE);
+            InetSocketAddress address = analyticsServer.bind(new InetSocketAddress(analyticsPort));
+            requestRouter.start();
+            analyticsServer.start();
+            System.out.println("Serving analytics on " + address);
+        }
+
+        if (feedHandler != null || analyticsServer != null) {
+            CountDownLatch stopped = new CountDownLatch(1);
+            Runtime.getRuntime().addShutdownHook(new Thread(stopped::countDown));
+            stopped.await();
+        }
+
+        if (feedHandler != null) {
+            feedHandler.shutdown();
+        }
+        if (analyticsServer != null) {
+            analyticsServer.shutdown();
+            requestRouter.shutdown();
+        }
+        feedRouter.close();
+    }
+}
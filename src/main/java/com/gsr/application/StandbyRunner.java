@@ -0,0 +1,69 @@
+package com.gsr.application;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.server.AnalyticsServer;
+import com.gsr.data.Message;
+import com.gsr.engine.OrderBookDistributor;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.feed.ObjectPool;
+import com.gsr.replication.StandbyEngine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+
+/**
+ * Runs a hot standby of an engine started with --replicate=<port>. Reports the standby's lag every second, and takes
+ * over as soon as the primary is lost.
+ */
+public class StandbyRunner {
+
+    private static final int ANALYTICS_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @param args host:port of the primary's replication stream, optionally followed by --analytics-port=<port> to
+     *             serve analytics requests over TCP once promoted
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        String[] primary = args[0].split(":");
+        int analyticsPort = -1;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--analytics-port=")) {
+                analyticsPort = Integer.parseInt(args[i].substring("--analytics-port=".length()));
+            }
+        }
+
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new, 4096, 1 << 16, 64);
+        StandbyEngine standby = new StandbyEngine(messagePool);
+        standby.connect(new InetSocketAddress(primary[0], Integer.parseInt(primary[1])));
+
+        while (standby.isPrimaryConnected()) {
+            System.out.println("Standby lag: " + standby.getLag() + " messages, applied: " + standby.getAppliedMessages()
+                    + (standby.isInSync() ? "" : ", OUT OF SYNC"));
+            Thread.sleep(1000);
+        }
+
+        long start = System.nanoTime();
+        ConcurrentLinkedQueue<Request> analyticsRequestQueue = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Request> analyticsResponseQueue = new ConcurrentLinkedQueue<>();
+        OrderBookDistributor distributor = standby.promote(new ConcurrentLinkedQueue<>(), analyticsRequestQueue, analyticsResponseQueue);
+        System.out.println("Standby promoted in " + (System.nanoTime() - start) / 1000 + "us");
+
+        if (analyticsPort >= 0) {
+            AnalyticsServer analyticsServer = new AnalyticsServer(analyticsRequestQueue, analyticsResponseQueue, ANALYTICS_BUFFER_SIZE);
+            InetSocketAddress address = analyticsServer.bind(new InetSocketAddress(analyticsPort));
+            analyticsServer.start();
+            System.out.println("Serving analytics on " + address);
+
+            CountDownLatch stopped = new CountDownLatch(1);
+            Runtime.getRuntime().addShutdownHook(new Thread(stopped::countDown));
+            stopped.await();
+            analyticsServer.shutdown();
+        }
+
+        distributor.shutdown();
+        standby.getProcessors().forEach(OrderBookProcessor::shutDownOrderBookThread);
+    }
+}
@@ -0,0 +1,164 @@
+package com.gsr.backtest;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.Side;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.feed.ObjectPool;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+
+/**
+ * Deterministic backtest mode. Historical market data runs through the same book and analytics logic as the live
+ * engine, but inline on caller threads instead of through the serializer, distributor and spinning book threads.
+ *
+ * Time is taken from the message timestamps, so analytics queries are evaluated at exact event times and a run gives
+ * the same result every time. Currency pairs are independent of each other and are replayed in parallel on a fork
+ * join pool, one task per pair. Within a pair everything happens in feed order on a single thread. The feed is
+ * streamed, each pair reading it on its own, so it never has to fit in memory.
+ *
+ * An engine instance is good for one run. Its books can be inspected once the run has completed.
+ */
+public class BacktestEngine {
+
+    private final ForkJoinPool forkJoinPool;
+    private final Map<CcyPair, BacktestPartition> partitions = new EnumMap<>(CcyPair.class);
+
+    public BacktestEngine(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+
+        for (CcyPair pair : CcyPair.nativePairs()) {
+            partitions.put(pair, new BacktestPartition(pair, messagePool));
+        }
+    }
+
+    /**
+     * Enable rolling window statistics on every book side of the backtest
+     */
+    public void enableRollingStatistics(long windowLength, int depthLevels, int capacity) {
+        partitions.values().forEach(p -> p.enableRollingStatistics(windowLength, depthLevels, capacity));
+    }
+
+    /**
+     * Replay a feed file, read line by line by each pair
+     *
+     * @param feed    market data in the engine's text format, in feed order
+     * @param queries analytics requests and the feed time to evaluate them at
+     * @return the queries in time order, with their results populated
+     */
+    public List<BacktestQuery> run(Path feed, List<BacktestQuery> queries) throws InterruptedException {
+        return run(() -> new FileLines(feed), queries);
+    }
+
+    /**
+     * Replay the feed and evaluate the queries along the way
+     *
+     * @param feed    market data in the engine's text format, in feed order. It is iterated once for each pair, and
+     *                iterators which are {@link Closeable} are closed once done with.
+     * @param queries analytics requests and the feed time to evaluate them at
+     * @return the queries in time order, with their results populated
+     * @throws IllegalArgumentException if a query isn't on a native pair. Implied books aren't backtested.
+     */
+    public List<BacktestQuery> run(Iterable<String> feed, List<BacktestQuery> queries) throws InterruptedException {
+
+        //Check before anything is replayed, a run can take a while
+        for (BacktestQuery query : queries) {
+            if (!partitions.containsKey(query.getRequest().getPair())) {
+                throw new IllegalArgumentException("Backtest query on " + query.getRequest().getPair()
+                        + ", only the native pairs " + partitions.keySet() + " can be backtested");
+            }
+        }
+
+        partitions.values().forEach(p -> p.setFeed(feed));
+
+        //Stable sort, so queries at the same time are evaluated in the order they were given
+        List<BacktestQuery> sortedQueries = new ArrayList<>(queries);
+        sortedQueries.sort(Comparator.comparingLong(BacktestQuery::getTime));
+        sortedQueries.forEach(q -> partitions.get(q.getRequest().getPair()).addQuery(q));
+
+        for (Future<Void> result : forkJoinPool.invokeAll(partitions.values())) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Backtest partition failed", e.getCause());
+            }
+        }
+
+        return sortedQueries;
+    }
+
+    /**
+     * @return the book side, as it stands after the run
+     */
+    public OrderBookProcessor getProcessor(CcyPair pair, Side side) {
+        return partitions.get(pair).getProcessor(side);
+    }
+
+    /**
+     * @return number of comments and lines of the feed which could not be parsed or have no known pair or side. Every
+     * pair sees the lines without a known pair, so they are counted once, while lines which fail to parse are only
+     * parsed by their own pair.
+     */
+    public long getLinesSkipped() {
+        long skipped = partitions.values().iterator().next().getLinesUnrouted();
+        for (BacktestPartition partition : partitions.values()) {
+            skipped += partition.getLinesRejected();
+        }
+        return skipped;
+    }
+
+    /**
+     * Lines of a file, read as they are iterated
+     */
+    private static final class FileLines implements Iterator<String>, Closeable {
+
+        private final BufferedReader reader;
+        private String next;
+
+        FileLines(Path file) {
+            try {
+                reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII);
+                next = reader.readLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            String line = next;
+            try {
+                next = reader.readLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return line;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.gsr.backtest;
+
+import com.gsr.analytics.Request;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.Side;
+import com.gsr.engine.BidOrderBookProcessor;
+import com.gsr.engine.OfferOrderBookProcessor;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.engine.RollingBookStatistics;
+import com.gsr.feed.ByteMessageParser;
+import com.gsr.feed.ObjectPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER_BYTE;
+
+
+/**
+ * Both sides of the book of one currency pair, replayed inline on whichever thread runs the partition. Pairs are
+ * independent of each other, so partitions can run in parallel without changing the result.
+ *
+ * Each partition streams the whole feed on its own and keeps the messages of its pair, so nothing but the books is
+ * held in memory however long the feed. Only the i= field of a line is looked at to find its pair, lines of other pairs
+ * are never parsed, so adding partitions doesn't add parsing work.
+ */
+class BacktestPartition implements Callable<Void> {
+
+    private static final CcyPair[] PAIRS = CcyPair.nativePairs();
+    private static final String PAIR_KEY = "i" + KEY_VALUE_DELIMITER;
+
+    private final CcyPair pair;
+    private final ByteMessageParser parser;
+    private final OrderBookProcessor bidProcessor;
+    private final OrderBookProcessor offerProcessor;
+    private final SimulatedClock clock = new SimulatedClock();
+    private final List<BacktestQuery> queries = new ArrayList<>();
+    private ByteBuffer lineBuffer = ByteBuffer.allocate(1024);
+    private Iterable<String> feed;
+    private long linesUnrouted;
+    private long linesRejected;
+
+    BacktestPartition(CcyPair pair, ObjectPool<Message> messagePool) {
+        this.pair = pair;
+        this.parser = new ByteMessageParser(messagePool);
+        //The books are driven inline, their threads are never launched and the queues stay empty
+        this.bidProcessor = new BidOrderBookProcessor(pair, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+        this.offerProcessor = new OfferOrderBookProcessor(pair, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+    }
+
+    void enableRollingStatistics(long windowLength, int depthLevels, int capacity) {
+        bidProcessor.setRollingStatistics(new RollingBookStatistics(windowLength, depthLevels, capacity));
+        offerProcessor.setRollingStatistics(new RollingBookStatistics(windowLength, depthLevels, capacity));
+    }
+
+    /**
+     * @param feed market data in the engine's text format, in feed order. Each partition iterates it once.
+     */
+    void setFeed(Iterable<String> feed) {
+        this.feed = feed;
+    }
+
+    /**
+     * @param query query for this pair. Queries must be added in time order.
+     */
+    void addQuery(BacktestQuery query) {
+        queries.add(query);
+    }
+
+    OrderBookProcessor getProcessor(Side side) {
+        return side == Side.Bid ? bidProcessor : offerProcessor;
+    }
+
+    /**
+     * @return number of comments and lines naming no native pair. Every partition sees the same ones.
+     */
+    long getLinesUnrouted() {
+        return linesUnrouted;
+    }
+
+    /**
+     * @return number of lines of this partition's pair which could not be parsed, or have no side
+     */
+    long getLinesRejected() {
+        return linesRejected;
+    }
+
+    /**
+     * Replay the messages in feed order. Before a message moves the clock past a query's time, the query is evaluated
+     * against the book as it stands.
+     */
+    @Override
+    public Void call() throws IOException {
+        int nextQuery = 0;
+
+        Iterator<String> lines = feed.iterator();
+        try {
+            while (lines.hasNext()) {
+                Message message = parse(lines.next());
+                if (message == null) {
+                    continue;
+                }
+                long now = clock.advanceTo(message.getTime());
+                while (nextQuery < queries.size() && queries.get(nextQuery).getTime() < now) {
+                    evaluate(queries.get(nextQuery++));
+                }
+                getProcessor(message.getSide()).applyMarketData(message);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (lines instanceof Closeable) {
+                ((Closeable) lines).close();
+            }
+        }
+
+        //Whatever is left is at or after the last event
+        while (nextQuery < queries.size()) {
+            evaluate(queries.get(nextQuery++));
+        }
+        return null;
+    }
+
+    /**
+     * Helper method to parse a line of this partition's pair through a buffer kept for the purpose
+     *
+     * @return the message if it is for this partition's pair, else null
+     */
+    private Message parse(String line) {
+        CcyPair linePair = findPair(line);
+        if (linePair != pair) {
+            if (linePair == null) {
+                linesUnrouted += 1;
+            }
+            return null;
+        }
+
+        int length = line.length();
+        if (lineBuffer.capacity() < length) {
+            lineBuffer = ByteBuffer.allocate(Math.max(length, lineBuffer.capacity() * 2));
+        }
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            lineBuffer.put(i, (byte) (c < 128 ? c : '?'));
+        }
+
+        Message message = parser.parse(lineBuffer, 0, length);
+        if (message == null) {
+            linesRejected += 1;
+            return null;
+        }
+        return message;
+    }
+
+    /**
+     * Helper method to find the native pair named by the i= field, without parsing the rest of the line
+     *
+     * @return the pair, null for comments and lines naming no native pair
+     */
+    static CcyPair findPair(String line) {
+        if (line.isEmpty() || line.charAt(0) == '#') {
+            return null;
+        }
+        int fieldStart = 0;
+        while (fieldStart < line.length()) {
+            int fieldEnd = line.indexOf(MESSAGE_DELIMITER_BYTE, fieldStart);
+            if (fieldEnd < 0) {
+                fieldEnd = line.length();
+            }
+            if (line.startsWith(PAIR_KEY, fieldStart)) {
+                for (CcyPair candidate : PAIRS) {
+                    String name = candidate.name();
+                    if (fieldEnd - fieldStart - PAIR_KEY.length() == name.length() && line.startsWith(name, fieldStart + PAIR_KEY.length())) {
+                        return candidate;
+                    }
+                }
+                return null;
+            }
+            fieldStart = fieldEnd + 1;
+        }
+        return null;
+    }
+
+    private void evaluate(BacktestQuery query) {
+        Request request = query.getRequest();
+        getProcessor(request.getSide()).serviceRequest(request);
+    }
+}
@@ -0,0 +1,34 @@
+package com.gsr.backtest;
+
+import com.gsr.analytics.Request;
+
+/**
+ * An analytics request to be evaluated at an exact point in feed time during a backtest. The request sees the book
+ * after every message stamped at or before the query time has been applied, and before any later message.
+ */
+public class BacktestQuery {
+
+    private final long time;
+    private final Request request;
+
+    public BacktestQuery(long time, Request request) {
+        this.time = time;
+        this.request = request;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public Request getRequest() {
+        return request;
+    }
+
+    @Override
+    public String toString() {
+        return "BacktestQuery{" +
+                "time=" + time +
+                ", request=" + request +
+                '}';
+    }
+}
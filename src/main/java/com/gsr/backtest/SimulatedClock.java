@@ -0,0 +1,25 @@
+package com.gsr.backtest;
+
+/**
+ * Clock driven by the feed timestamps of replayed messages instead of the wall clock. Time never goes backwards: a
+ * message stamped earlier than one before it is treated as happening at the current time.
+ */
+public class SimulatedClock {
+
+    private long now = Long.MIN_VALUE;
+
+    /**
+     * @param time feed timestamp of the next event
+     * @return the current time after the advance
+     */
+    public long advanceTo(long time) {
+        if (time > now) {
+            now = time;
+        }
+        return now;
+    }
+
+    public long now() {
+        return now;
+    }
+}
@@ -1,7 +1,53 @@
 package com.gsr.data;
 
+/**
+ * Instruments of the engine. Native pairs have books fed by market data. Implied pairs have no feed of their own,
+ * their books are derived from two native legs sharing a quote currency: ETHBTC from ETHUSD over BTCUSD.
+ */
 public enum CcyPair {
     BTCUSD,
     ETHUSD,
-    SOLUSD
+    SOLUSD,
+    ETHBTC(ETHUSD, BTCUSD),
+    SOLBTC(SOLUSD, BTCUSD),
+    SOLETH(SOLUSD, ETHUSD);
+
+    private static final CcyPair[] NATIVE_PAIRS = {BTCUSD, ETHUSD, SOLUSD};
+
+    private final CcyPair baseLeg;
+    private final CcyPair quoteLeg;
+
+    CcyPair() {
+        this(null, null);
+    }
+
+    CcyPair(CcyPair baseLeg, CcyPair quoteLeg) {
+        this.baseLeg = baseLeg;
+        this.quoteLeg = quoteLeg;
+    }
+
+    public boolean isImplied() {
+        return baseLeg != null;
+    }
+
+    /**
+     * @return the leg priced in the numerator, ETHUSD for ETHBTC, or null for a native pair
+     */
+    public CcyPair getBaseLeg() {
+        return baseLeg;
+    }
+
+    /**
+     * @return the leg priced in the denominator, BTCUSD for ETHBTC, or null for a native pair
+     */
+    public CcyPair getQuoteLeg() {
+        return quoteLeg;
+    }
+
+    /**
+     * @return a new array of the pairs which have books fed by market data
+     */
+    public static CcyPair[] nativePairs() {
+        return NATIVE_PAIRS.clone();
+    }
 }
@@ -3,4 +3,18 @@ package com.gsr.data;
 public class Constants {
     public static final String MESSAGE_DELIMITER = "\\|";
     public static final String KEY_VALUE_DELIMITER = "=";
+
+    //Levels of bulk messages, e.g. l=100.5:3,100.25:0 for a multi level update, r=100.5:3,100.25:7 for a snapshot
+    public static final String LEVEL_DELIMITER = ",";
+    public static final String PRICE_QUANTITY_DELIMITER = ":";
+
+    //Byte level equivalents used when parsing straight off the wire
+    public static final byte MESSAGE_DELIMITER_BYTE = '|';
+    public static final byte KEY_VALUE_DELIMITER_BYTE = '=';
+    public static final byte LINE_DELIMITER_BYTE = '\n';
+    public static final byte LEVEL_DELIMITER_BYTE = ',';
+    public static final byte PRICE_QUANTITY_DELIMITER_BYTE = ':';
+
+    //Venues a consolidated book can hold quantities for. Venue ids run from 0 to MAX_VENUES - 1.
+    public static final int MAX_VENUES = 8;
 }
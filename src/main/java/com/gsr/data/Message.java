@@ -1,5 +1,7 @@
 package com.gsr.data;
 
+import java.util.Arrays;
+
 
 /**
  * Representing an instruction type message from clients to the matching engine for processing
@@ -12,6 +14,14 @@ public class Message {
     private volatile long quantity;
     private volatile long price;
     private long time;
+    private long receivedNanos;
+    private long sequence;
+    private int venue;
+
+    //Levels of a bulk message. The arrays stay with the message when it goes back to the pool, so they only grow.
+    private long[] levelPrices = new long[0];
+    private long[] levelQuantities = new long[0];
+    private int levelCount;
 
     public MessageType getType() {
         return type;
@@ -59,12 +69,97 @@ public class Message {
                 "type=" + type +
                 ", pair=" + pair +
                 ", side=" + side +
+                ", venue=" + venue +
                 ", quantity=" + quantity +
                 ", price=" + (double) (price / 100) +
                 '}';
     }
 
+    public long getTime() {
+        return time;
+    }
+
     public void setTime(long time) {
         this.time = time;
     }
+
+    /**
+     * @return System.nanoTime() when the engine accepted the message, 0 if unknown. Used to measure queue age.
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    public void setReceivedNanos(long receivedNanos) {
+        this.receivedNanos = receivedNanos;
+    }
+
+    /**
+     * @return position of the message in the feed, as counted by the serializer which accepted it
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return id of the venue the message came from, 0 for single venue feeds
+     */
+    public int getVenue() {
+        return venue;
+    }
+
+    public void setVenue(int venue) {
+        this.venue = venue;
+    }
+
+    /**
+     * Forget the levels of the message's previous life, call before adding the levels of a bulk message
+     */
+    public void startLevels() {
+        levelCount = 0;
+    }
+
+    /**
+     * Add a level to a bulk message
+     *
+     * @param price    price * 100
+     * @param quantity quantity the venue shows at the price, 0 to remove the venue from the level
+     */
+    public void addLevel(long price, long quantity) {
+        if (levelCount == levelPrices.length) {
+            int capacity = Math.max(16, levelCount * 2);
+            levelPrices = Arrays.copyOf(levelPrices, capacity);
+            levelQuantities = Arrays.copyOf(levelQuantities, capacity);
+        }
+        levelPrices[levelCount] = price;
+        levelQuantities[levelCount] = quantity;
+        levelCount += 1;
+    }
+
+    /**
+     * @return number of levels of a bulk message
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    public long getLevelPrice(int index) {
+        return levelPrices[index];
+    }
+
+    public long getLevelQuantity(int index) {
+        return levelQuantities[index];
+    }
+
+    /**
+     * Overwrite a level of a bulk message, e.g. to put the levels in book order
+     */
+    public void setLevel(int index, long price, long quantity) {
+        levelPrices[index] = price;
+        levelQuantities[index] = quantity;
+    }
 }
@@ -3,5 +3,14 @@ package com.gsr.data;
 public enum MessageType {
 
     AddOrUpdatePriceLevel,
-    RemovePriceLevel
+    RemovePriceLevel,
+
+    //Engine internal control message, e.g. after warm up. Removes every level from one side of a book.
+    ClearBook,
+
+    //Bulk messages, carrying many levels of one venue in the level arrays of the message. A snapshot replaces
+    //everything the venue shows on the side of the book, which for single venue feeds is the whole side. A multi level
+    //update sets each level's quantity for the venue, 0 removing it, like as many single level messages.
+    Snapshot,
+    MultiLevelUpdate
 }
@@ -0,0 +1,121 @@
+package com.gsr.engine;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+
+/**
+ * Scheduler driven by queueing latency targets for market data and analytics.
+ *
+ * The age of the oldest item in each batch is smoothed into a moving average. When one stream misses its target and
+ * the other does not, the late stream's budget is doubled and the other one's is cut by a quarter, within the
+ * configured bounds. Time slices are half of the other stream's target, so neither can starve the other for longer.
+ *
+ * When market data is queueing for longer than its target the book is falling behind the feed, and analytics are shed
+ * instead: Low priority requests are dropped outright, Normal ones once they are older than the analytics target.
+ * High priority requests are never shed.
+ *
+ * Budgets and averages are plain fields owned by the book thread, the getters are for monitoring only.
+ */
+public class AdaptiveLatencyScheduler implements BookScheduler {
+
+    //Weight of a new sample in the moving averages, as a right shift: 1/8
+    private static final int SMOOTHING_SHIFT = 3;
+
+    private final long marketDataTargetNanos;
+    private final long analyticsTargetNanos;
+    private final int minBudget;
+    private final int maxBudget;
+
+    private int marketDataBudget;
+    private int analyticsBudget;
+    private long marketDataAgeNanos;
+    private long analyticsAgeNanos;
+
+    /**
+     * @param marketDataTargetNanos target for the time market data may queue before it is applied
+     * @param analyticsTargetNanos  target for the time analytics requests may queue before they are serviced
+     * @param minBudget             lower bound of the per batch budgets
+     * @param maxBudget             upper bound of the per batch budgets
+     */
+    public AdaptiveLatencyScheduler(long marketDataTargetNanos, long analyticsTargetNanos, int minBudget, int maxBudget) {
+        if (marketDataTargetNanos <= 0 || analyticsTargetNanos <= 0 || minBudget <= 0 || maxBudget < minBudget) {
+            throw new IllegalArgumentException("Targets must be positive and budgets must satisfy 0 < min <= max");
+        }
+        this.marketDataTargetNanos = marketDataTargetNanos;
+        this.analyticsTargetNanos = analyticsTargetNanos;
+        this.minBudget = minBudget;
+        this.maxBudget = maxBudget;
+        this.marketDataBudget = minBudget;
+        this.analyticsBudget = minBudget;
+    }
+
+    @Override
+    public int marketDataBudget() {
+        return marketDataBudget;
+    }
+
+    @Override
+    public int analyticsBudget() {
+        return analyticsBudget;
+    }
+
+    @Override
+    public long marketDataTimeSliceNanos() {
+        return analyticsTargetNanos / 2;
+    }
+
+    @Override
+    public long analyticsTimeSliceNanos() {
+        return marketDataTargetNanos / 2;
+    }
+
+    @Override
+    public void onMarketDataBatch(int applied, long oldestAgeNanos) {
+        marketDataAgeNanos += (oldestAgeNanos - marketDataAgeNanos) >> SMOOTHING_SHIFT;
+        rebalance();
+    }
+
+    @Override
+    public void onAnalyticsBatch(int serviced, int dropped, long oldestAgeNanos) {
+        analyticsAgeNanos += (oldestAgeNanos - analyticsAgeNanos) >> SMOOTHING_SHIFT;
+        rebalance();
+    }
+
+    @Override
+    public boolean shouldShed(Request request, long ageNanos, long marketDataBacklogAgeNanos) {
+        if (request.getPriority() == RequestPriority.High || marketDataBacklogAgeNanos <= marketDataTargetNanos) {
+            return false;
+        }
+        return request.getPriority() == RequestPriority.Low || ageNanos > analyticsTargetNanos;
+    }
+
+    public long getMarketDataAgeNanos() {
+        return marketDataAgeNanos;
+    }
+
+    public long getAnalyticsAgeNanos() {
+        return analyticsAgeNanos;
+    }
+
+    private void rebalance() {
+        boolean marketDataLate = marketDataAgeNanos > marketDataTargetNanos;
+        boolean analyticsLate = analyticsAgeNanos > analyticsTargetNanos;
+
+        if (marketDataLate) {
+            //The feed always wins. If analytics are late too, shedding takes care of them.
+            marketDataBudget = grow(marketDataBudget);
+            analyticsBudget = shrink(analyticsBudget);
+        } else if (analyticsLate) {
+            analyticsBudget = grow(analyticsBudget);
+            marketDataBudget = shrink(marketDataBudget);
+        }
+    }
+
+    private int grow(int budget) {
+        return Math.min(maxBudget, budget * 2);
+    }
+
+    private int shrink(int budget) {
+        return Math.max(minBudget, budget - (budget >> 2));
+    }
+}
@@ -95,7 +95,7 @@ public class BidOrderBookProcessor extends OrderBookProcessor{
                 limitAboveCurrent.setNextLower(priceToInsert);
                 priceToInsert.setNextHigher(limitAboveCurrent);
                 priceToInsert.setNextLower(currentPriceLevel);
-                currentPriceLevel.setNextHigher(currentPriceLevel);
+                currentPriceLevel.setNextHigher(priceToInsert);
             }
             return;
 
@@ -110,7 +110,12 @@ public class BidOrderBookProcessor extends OrderBookProcessor{
     }
 
     @Override
-    protected Side getSide() {
+    public Side getSide() {
         return Side.Bid;
     }
+
+    @Override
+    protected PriceLevel getNextLevelFromTop(PriceLevel priceLevel) {
+        return priceLevel.getNextLower();
+    }
 }
@@ -0,0 +1,220 @@
+package com.gsr.engine;
+
+import com.gsr.logging.EngineLogger;
+import com.gsr.logging.LogEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Spreads book sides over a fixed set of {@link BookWorker}s, and moves them as the traffic shifts between
+ * instruments. Every interval the update and request rates of each book are sampled and smoothed, and if one worker
+ * carries clearly more than another, the book whose move evens them out best is handed over at its next safe point.
+ *
+ * At most one book moves per interval, a book which just moved stays put for a few intervals, and a move is only made
+ * if it narrows the gap, so a steady load doesn't keep books bouncing between workers. Books are only moved to workers
+ * with room for them.
+ */
+public class BookLoadBalancer {
+
+    //A request walks several levels where an update mostly touches one
+    private static final double REQUEST_WEIGHT = 4;
+    private static final double SMOOTHING = 0.5;
+    //Workers this close in load are left as they are
+    private static final double MIN_IMBALANCE = 0.25;
+    private static final int COOLDOWN_INTERVALS = 5;
+
+    private final BookWorker[] workers;
+    private final long intervalMillis;
+    private final Thread balancerThread;
+    private final List<OrderBookProcessor> books = new ArrayList<>();
+    private final List<Integer> initialWorkers = new ArrayList<>();
+
+    //Only touched by whoever calls rebalance, the balancer thread once started
+    private int[] bookWorkers = new int[0];
+    private long[] lastMessages = new long[0];
+    private long[] lastRequests = new long[0];
+    private double[] bookLoads = new double[0];
+    private long[] movedAt = new long[0];
+    private final double[] workerLoads;
+    private long lastSampleNanos;
+    private long intervals;
+
+    private volatile boolean runningFlag;
+    private volatile long migrations;
+
+    /**
+     * @param workerCount    number of worker threads to spread the books over
+     * @param intervalMillis time between two looks at the load
+     */
+    public BookLoadBalancer(int workerCount, long intervalMillis) {
+        this.workers = new BookWorker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new BookWorker("Book Worker " + i);
+        }
+        this.workerLoads = new double[workerCount];
+        this.intervalMillis = intervalMillis;
+        this.lastSampleNanos = System.nanoTime();
+        this.balancerThread = new Thread(this::run, "Book Load Balancer");
+    }
+
+    /**
+     * Add a book, placed on the worker with the fewest books to begin with. Must be called before the balancer is
+     * started, instead of launching the book's own thread.
+     */
+    public void addBook(OrderBookProcessor book) {
+        int[] counts = new int[workers.length];
+        for (int worker : initialWorkers) {
+            counts[worker] += 1;
+        }
+        int emptiest = 0;
+        for (int i = 1; i < counts.length; i++) {
+            if (counts[i] < counts[emptiest]) {
+                emptiest = i;
+            }
+        }
+        addBook(book, emptiest);
+    }
+
+    /**
+     * Add a book on the given worker to begin with. Must be called before the balancer is started.
+     */
+    public void addBook(OrderBookProcessor book, int worker) {
+        books.add(book);
+        initialWorkers.add(worker);
+        workers[worker].addBook(book);
+
+        int count = books.size();
+        bookWorkers = Arrays.copyOf(bookWorkers, count);
+        bookWorkers[count - 1] = worker;
+        lastMessages = Arrays.copyOf(lastMessages, count);
+        lastRequests = Arrays.copyOf(lastRequests, count);
+        bookLoads = Arrays.copyOf(bookLoads, count);
+        movedAt = Arrays.copyOf(movedAt, count);
+        movedAt[count - 1] = -COOLDOWN_INTERVALS;
+    }
+
+    /**
+     * Start the workers, and the balancer thread if there is more than one worker to balance between
+     */
+    public void start() {
+        lastSampleNanos = System.nanoTime();
+        for (BookWorker worker : workers) {
+            worker.start();
+        }
+        if (workers.length > 1) {
+            runningFlag = true;
+            balancerThread.start();
+        }
+    }
+
+    public void shutdown() {
+        System.out.println("Shutting down Book Load Balancer");
+        runningFlag = false;
+        balancerThread.interrupt();
+        for (BookWorker worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    /**
+     * Sample the load of every book, and move one book if the workers are out of balance. Called by the balancer
+     * thread every interval, or directly when the balancer thread isn't running.
+     *
+     * @return true if a book was moved
+     */
+    public boolean rebalance() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastSampleNanos, 1) / 1e9;
+        lastSampleNanos = now;
+        intervals += 1;
+
+        Arrays.fill(workerLoads, 0);
+        for (int i = 0; i < books.size(); i++) {
+            OrderBookProcessor book = books.get(i);
+            long messages = book.getMessagesApplied();
+            long requests = book.getRequestsHandled();
+            double rate = ((messages - lastMessages[i]) + REQUEST_WEIGHT * (requests - lastRequests[i])) / seconds;
+            lastMessages[i] = messages;
+            lastRequests[i] = requests;
+            bookLoads[i] = SMOOTHING * rate + (1 - SMOOTHING) * bookLoads[i];
+            workerLoads[bookWorkers[i]] += bookLoads[i];
+        }
+
+        int hottest = 0;
+        int coolest = -1;
+        for (int i = 0; i < workers.length; i++) {
+            if (workerLoads[i] > workerLoads[hottest]) {
+                hottest = i;
+            }
+            if (workers[i].hasRoom() && (coolest < 0 || workerLoads[i] < workerLoads[coolest])) {
+                coolest = i;
+            }
+        }
+        if (coolest < 0 || hottest == coolest) {
+            return false;
+        }
+        double gap = workerLoads[hottest] - workerLoads[coolest];
+        if (gap <= MIN_IMBALANCE * workerLoads[hottest]) {
+            return false;
+        }
+
+        //Moving a book of load l turns the gap into |gap - 2l|, so the best book is the one closest to half the gap
+        int best = -1;
+        double bestGap = gap;
+        for (int i = 0; i < books.size(); i++) {
+            if (bookWorkers[i] != hottest || intervals - movedAt[i] < COOLDOWN_INTERVALS) {
+                continue;
+            }
+            double newGap = Math.abs(gap - 2 * bookLoads[i]);
+            if (newGap < bestGap) {
+                best = i;
+                bestGap = newGap;
+            }
+        }
+        if (best < 0 || !workers[hottest].moveBook(books.get(best), workers[coolest])) {
+            return false;
+        }
+
+        bookWorkers[best] = coolest;
+        movedAt[best] = intervals;
+        migrations += 1;
+        EngineLogger.log(LogEvent.BookMoved, EngineLogger.ordinal(books.get(best).getCcyPair()),
+                EngineLogger.ordinal(books.get(best).getSide()), hottest, coolest);
+        return true;
+    }
+
+    /**
+     * @return index of the worker the book is on, or on its way to. Only for the thread calling rebalance.
+     */
+    public int getWorkerOf(OrderBookProcessor book) {
+        return bookWorkers[books.indexOf(book)];
+    }
+
+    public BookWorker getWorker(int index) {
+        return workers[index];
+    }
+
+    /**
+     * @return number of books moved between workers so far
+     */
+    public long getMigrations() {
+        return migrations;
+    }
+
+    private void run() {
+        System.out.println("Book Load Balancer Running");
+
+        while (runningFlag) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                //Woken up to shut down
+                continue;
+            }
+            rebalance();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.gsr.engine;
+
+import com.gsr.analytics.Request;
+
+/**
+ * Decides how the order book thread splits its time between applying market data and servicing analytics requests.
+ *
+ * The book thread alternates between a market data batch and an analytics batch. A batch ends when its queue is
+ * empty, or when the other queue has work pending and the batch has used up its budget or its time slice. After each
+ * batch the scheduler is told how old the oldest item of the batch was, so it can adapt the budgets.
+ *
+ * A scheduler instance holds state for one book side and is only ever called from that book's thread.
+ */
+public interface BookScheduler {
+
+    /**
+     * @return maximum number of market data messages to apply while analytics requests are waiting
+     */
+    int marketDataBudget();
+
+    /**
+     * @return maximum number of analytics requests to service while market data is waiting
+     */
+    int analyticsBudget();
+
+    /**
+     * @return maximum time to spend applying market data while analytics requests are waiting
+     */
+    long marketDataTimeSliceNanos();
+
+    /**
+     * @return maximum time to spend servicing analytics requests while market data is waiting
+     */
+    long analyticsTimeSliceNanos();
+
+    /**
+     * @param applied        number of messages applied in the batch
+     * @param oldestAgeNanos time the oldest message of the batch spent queueing
+     */
+    void onMarketDataBatch(int applied, long oldestAgeNanos);
+
+    /**
+     * @param serviced       number of requests computed in the batch
+     * @param dropped        number of requests dropped because they expired or were shed
+     * @param oldestAgeNanos time the oldest request of the batch spent queueing
+     */
+    void onAnalyticsBatch(int serviced, int dropped, long oldestAgeNanos);
+
+    /**
+     * Called for every request before it is computed, to drop stale work when the book is overloaded. Requests past
+     * their deadline are dropped regardless.
+     *
+     * @param request                   the request about to be computed
+     * @param ageNanos                  time the request spent queueing
+     * @param marketDataBacklogAgeNanos age of the oldest market data message waiting, 0 if none
+     * @return true to drop the request without computing it
+     */
+    boolean shouldShed(Request request, long ageNanos, long marketDataBacklogAgeNanos);
+}
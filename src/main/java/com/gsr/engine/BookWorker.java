@@ -0,0 +1,221 @@
+package com.gsr.engine;
+
+import com.gsr.logging.EngineLogger;
+import com.gsr.logging.LogEvent;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A thread driving several book sides, stepping each in turn, so that books can share a core and be moved between
+ * cores while they run. Only one worker ever steps a book at a time, so the single writer model of the book is kept.
+ *
+ * A book is moved at a safe point, between two of its steps. The worker giving it up stops stepping it and hands it
+ * to the other worker through a queue, which publishes the book's state to the new thread. The book's queues go with
+ * it, so messages and requests arriving during the move simply wait in them, and are taken off in order by the new
+ * worker. Nothing is drained or rerouted, and nothing is lost or reordered.
+ *
+ * A worker holds at most {@link #MAX_BOOKS} books. A slot is reserved when a book is given to the worker or a move to
+ * it is asked for, and freed once the worker hands a book on, so a full worker refuses books rather than dropping them.
+ * A move waits while its book is still on its way to the worker. A move for a book the worker neither holds nor expects
+ * is dropped, and doesn't hold up the moves behind it.
+ */
+public class BookWorker {
+
+    public static final int MAX_BOOKS = 64;
+
+    private final Thread workerThread;
+    private final OrderBookProcessor[] books = new OrderBookProcessor[MAX_BOOKS];
+    private final Queue<OrderBookProcessor> arrivals = new ConcurrentLinkedQueue<>();
+    private final Queue<Move> moves = new ConcurrentLinkedQueue<>();
+    //Books given or moved to this worker which haven't arrived yet, with the number of times each is expected
+    private final Map<OrderBookProcessor, Integer> incoming = new ConcurrentHashMap<>();
+    private final AtomicInteger reservedBooks = new AtomicInteger();
+    private int bookCount;
+
+    private volatile boolean runningFlag;
+    private volatile long booksReceived;
+    private volatile long booksReleased;
+    private volatile long staleMoves;
+
+    public BookWorker(String name) {
+        this.workerThread = new Thread(this::run, name);
+    }
+
+    /**
+     * Give a book to this worker. The book's own thread must not be launched, and no other worker may hold it.
+     *
+     * @throws IllegalStateException if the worker already holds or expects {@link #MAX_BOOKS} books
+     */
+    public void addBook(OrderBookProcessor book) {
+        if (!reserve()) {
+            throw new IllegalStateException(getName() + " can't hold more than " + MAX_BOOKS + " books");
+        }
+        book.launchOnWorker();
+        expect(book);
+        arrivals.add(book);
+    }
+
+    /**
+     * Ask this worker to hand one of its books to another worker, at the next safe point. If the book hasn't reached
+     * this worker yet, the move waits until it has.
+     *
+     * @return false if the target has no room for the book, in which case nothing is moved
+     */
+    public boolean moveBook(OrderBookProcessor book, BookWorker target) {
+        if (!target.reserve()) {
+            return false;
+        }
+        target.expect(book);
+        moves.add(new Move(book, target));
+        return true;
+    }
+
+    /**
+     * @return whether the worker can take on another book
+     */
+    public boolean hasRoom() {
+        return reservedBooks.get() < MAX_BOOKS;
+    }
+
+    public void start() {
+        runningFlag = true;
+        workerThread.start();
+    }
+
+    public void shutdown() {
+        System.out.println("Shutting down " + workerThread.getName());
+        runningFlag = false;
+    }
+
+    public String getName() {
+        return workerThread.getName();
+    }
+
+    /**
+     * @return number of books this worker has taken on, including the ones it started with
+     */
+    public long getBooksReceived() {
+        return booksReceived;
+    }
+
+    /**
+     * @return number of books this worker has handed on to other workers
+     */
+    public long getBooksReleased() {
+        return booksReleased;
+    }
+
+    /**
+     * @return number of moves dropped because this worker neither held nor expected the book
+     */
+    public long getStaleMoves() {
+        return staleMoves;
+    }
+
+    private void run() {
+        System.out.println(workerThread.getName() + " Running");
+
+        while (runningFlag) {
+            //Hand overs are rare, so they are only looked for once per round of steps
+            if (!arrivals.isEmpty()) {
+                receiveBooks();
+            }
+            if (!moves.isEmpty()) {
+                releaseBooks();
+            }
+
+            for (int i = 0; i < bookCount; i++) {
+                books[i].step();
+            }
+        }
+    }
+
+    /**
+     * Helper method to take on the books handed over. Each had a slot reserved, so there is always room.
+     */
+    private void receiveBooks() {
+        OrderBookProcessor book;
+        while ((book = arrivals.poll()) != null) {
+            unexpect(book);
+            book.setWorkerThread(workerThread);
+            books[bookCount++] = book;
+            booksReceived += 1;
+        }
+    }
+
+    /**
+     * Helper method to hand books on to other workers, in the order the moves were asked for. We are between two
+     * steps of every book here, which is the safe point.
+     */
+    private void releaseBooks() {
+        Iterator<Move> pending = moves.iterator();
+        while (pending.hasNext()) {
+            Move move = pending.next();
+            int index = indexOf(move.book);
+            if (index >= 0) {
+                pending.remove();
+                books[index] = books[--bookCount];
+                books[bookCount] = null;
+                reservedBooks.decrementAndGet();
+                booksReleased += 1;
+                move.target.arrivals.add(move.book);
+            } else if (!incoming.containsKey(move.book)) {
+                pending.remove();
+                move.target.unexpect(move.book);
+                move.target.reservedBooks.decrementAndGet();
+                staleMoves += 1;
+                EngineLogger.log(LogEvent.StaleBookMove, EngineLogger.ordinal(move.book.getCcyPair()),
+                        EngineLogger.ordinal(move.book.getSide()), workerThread.getId());
+            }
+            //Otherwise it is still on its way from the worker that had it before
+        }
+    }
+
+    private int indexOf(OrderBookProcessor book) {
+        for (int i = 0; i < bookCount; i++) {
+            if (books[i] == book) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Helper method to reserve a slot for a book, atomically as the balancer and workers may race for it
+     */
+    private boolean reserve() {
+        int reserved;
+        do {
+            reserved = reservedBooks.get();
+            if (reserved == MAX_BOOKS) {
+                return false;
+            }
+        } while (!reservedBooks.compareAndSet(reserved, reserved + 1));
+        return true;
+    }
+
+    private void expect(OrderBookProcessor book) {
+        incoming.merge(book, 1, Integer::sum);
+    }
+
+    private void unexpect(OrderBookProcessor book) {
+        incoming.computeIfPresent(book, (b, count) -> count == 1 ? null : count - 1);
+    }
+
+    private static class Move {
+
+        private final OrderBookProcessor book;
+        private final BookWorker target;
+
+        private Move(OrderBookProcessor book, BookWorker target) {
+            this.book = book;
+            this.target = target;
+        }
+    }
+}
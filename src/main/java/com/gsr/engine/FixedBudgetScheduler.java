@@ -0,0 +1,61 @@
+package com.gsr.engine;
+
+import com.gsr.analytics.Request;
+
+/**
+ * Scheduler with fixed budgets, which never sheds requests. The defaults reproduce the original behaviour of the book
+ * thread: 100 items or 20 micros per batch, whichever comes first, once the other queue has work pending.
+ */
+public class FixedBudgetScheduler implements BookScheduler {
+
+    private static final int MAX_PENDING_MD_UPDATES = 100;
+    private static final int MAX_PENDING_ANALYTICS_REQ = 100;
+    private static final long MAX_WAIT_NANOS = 20000;
+
+    private final int marketDataBudget;
+    private final int analyticsBudget;
+    private final long timeSliceNanos;
+
+    public FixedBudgetScheduler() {
+        this(MAX_PENDING_MD_UPDATES, MAX_PENDING_ANALYTICS_REQ, MAX_WAIT_NANOS);
+    }
+
+    public FixedBudgetScheduler(int marketDataBudget, int analyticsBudget, long timeSliceNanos) {
+        this.marketDataBudget = marketDataBudget;
+        this.analyticsBudget = analyticsBudget;
+        this.timeSliceNanos = timeSliceNanos;
+    }
+
+    @Override
+    public int marketDataBudget() {
+        return marketDataBudget;
+    }
+
+    @Override
+    public int analyticsBudget() {
+        return analyticsBudget;
+    }
+
+    @Override
+    public long marketDataTimeSliceNanos() {
+        return timeSliceNanos;
+    }
+
+    @Override
+    public long analyticsTimeSliceNanos() {
+        return timeSliceNanos;
+    }
+
+    @Override
+    public void onMarketDataBatch(int applied, long oldestAgeNanos) {
+    }
+
+    @Override
+    public void onAnalyticsBatch(int serviced, int dropped, long oldestAgeNanos) {
+    }
+
+    @Override
+    public boolean shouldShed(Request request, long ageNanos, long marketDataBacklogAgeNanos) {
+        return false;
+    }
+}
@@ -0,0 +1,124 @@
+package com.gsr.engine;
+
+
+/**
+ * Hashed timing wheel holding the expiry deadlines of the price levels of one book side. Owned by the book thread.
+ *
+ * Time is cut into ticks, and the wheel has a bucket per tick, reused round after round. A level is linked into the
+ * bucket of the tick its deadline falls in, through links held in the level itself, so scheduling, rescheduling and
+ * cancelling are O(1) and never allocate. Advancing the wheel walks the buckets of the ticks which have gone by and
+ * expires the levels due, levels due in a later round stay where they are.
+ *
+ * Deadlines are rounded up to the next tick, so a level expires up to one tick after its time to live.
+ */
+class LevelExpiryWheel {
+
+    interface Expirer {
+        void expire(PriceLevel level);
+    }
+
+    private final long timeToLiveNanos;
+    private final long tickNanos;
+    private final PriceLevel[] buckets;
+    private final int mask;
+    private long currentTick;
+
+    /**
+     * @param timeToLiveNanos time after its last update a level expires
+     * @param tickNanos       resolution of the wheel
+     * @param bucketCount     number of buckets, rounded up to the next power of two
+     * @param nowNanos        current System.nanoTime()
+     */
+    LevelExpiryWheel(long timeToLiveNanos, long tickNanos, int bucketCount, long nowNanos) {
+        int size = Integer.highestOneBit(Math.max(bucketCount, 2));
+        if (size < bucketCount) {
+            size <<= 1;
+        }
+        this.timeToLiveNanos = timeToLiveNanos;
+        this.tickNanos = tickNanos;
+        this.buckets = new PriceLevel[size];
+        this.mask = size - 1;
+        this.currentTick = nowNanos / tickNanos;
+    }
+
+    /**
+     * Start the level's time to live over, moving it to the bucket of its new deadline
+     */
+    void schedule(PriceLevel level, long nowNanos) {
+        cancel(level);
+
+        long tick = (nowNanos + timeToLiveNanos + tickNanos - 1) / tickNanos;
+        int bucket = (int) (tick & mask);
+        PriceLevel head = buckets[bucket];
+        level.setExpiry(tick, bucket, null, head);
+        if (head != null) {
+            head.setExpiryPrevious(level);
+        }
+        buckets[bucket] = level;
+    }
+
+    /**
+     * Take the level off the wheel, if it is on it
+     */
+    void cancel(PriceLevel level) {
+        int bucket = level.getExpiryBucket();
+        if (bucket < 0) {
+            return;
+        }
+        PriceLevel previous = level.getExpiryPrevious();
+        PriceLevel next = level.getExpiryNext();
+        if (previous == null) {
+            buckets[bucket] = next;
+        } else {
+            previous.setExpiryNext(next);
+        }
+        if (next != null) {
+            next.setExpiryPrevious(previous);
+        }
+        level.clearExpiry();
+    }
+
+    /**
+     * Expire every level whose deadline has passed. The expirer must cancel or remove the level it is handed.
+     *
+     * @return number of levels expired
+     */
+    int advance(long nowNanos, Expirer expirer) {
+        long nowTick = nowNanos / tickNanos;
+        if (nowTick <= currentTick) {
+            return 0;
+        }
+
+        //After a long pause every bucket is due, but each only needs walking once
+        long firstTick = Math.max(currentTick + 1, nowTick - mask);
+        int expired = 0;
+        for (long tick = firstTick; tick <= nowTick; tick++) {
+            PriceLevel level = buckets[(int) (tick & mask)];
+            while (level != null) {
+                PriceLevel next = level.getExpiryNext();
+                if (level.getExpiryTick() <= nowTick) {
+                    expirer.expire(level);
+                    expired += 1;
+                }
+                level = next;
+            }
+        }
+        currentTick = nowTick;
+        return expired;
+    }
+
+    /**
+     * Forget every level, for when the book is cleared and its levels go back to the pool
+     */
+    void clear() {
+        for (int i = 0; i < buckets.length; i++) {
+            PriceLevel level = buckets[i];
+            while (level != null) {
+                PriceLevel next = level.getExpiryNext();
+                level.clearExpiry();
+                level = next;
+            }
+            buckets[i] = null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.gsr.engine;
+
+
+/**
+ * Cache of analytics results by number of levels, valid until the book next changes.
+ *
+ * Results are held in a primitive array indexed by levels, and each carries the generation it was computed in.
+ * Clearing the cache only moves the generation on, so neither caching a result nor clearing the cache allocates or
+ * boxes anything. Results over more levels than the cache holds are not cached.
+ */
+class LevelResultCache {
+
+    private static final int MAX_CACHED_LEVELS = 64;
+
+    private final double[] results = new double[MAX_CACHED_LEVELS + 1];
+    private final long[] generations = new long[MAX_CACHED_LEVELS + 1];
+    private long generation = 1;
+
+    boolean contains(int levels) {
+        return levels >= 0 && levels <= MAX_CACHED_LEVELS && generations[levels] == generation;
+    }
+
+    /**
+     * @return the cached result, only valid if {@link #contains(int)} said so
+     */
+    double get(int levels) {
+        return results[levels];
+    }
+
+    /**
+     * @return the result, for chaining
+     */
+    double put(int levels, double result) {
+        if (levels >= 0 && levels <= MAX_CACHED_LEVELS) {
+            results[levels] = result;
+            generations[levels] = generation;
+        }
+        return result;
+    }
+
+    void clear() {
+        generation += 1;
+    }
+}
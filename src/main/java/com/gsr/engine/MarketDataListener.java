@@ -0,0 +1,33 @@
+package com.gsr.engine;
+
+import com.gsr.data.Message;
+
+/**
+ * Callback for market data applied to a book side, e.g. for latency measurement or recording.
+ *
+ * Listeners run on the order book thread, in between market data messages, so they must be quick and must not block.
+ */
+public interface MarketDataListener {
+
+    /**
+     * @param book    the book side the message was applied to, in its state after the message
+     * @param message the applied message. It goes back to the pool once the listener returns, so never hold on to it.
+     */
+    void onMessageApplied(OrderBookProcessor book, Message message);
+
+    /**
+     * @return a listener calling first, then second. Either may be null.
+     */
+    static MarketDataListener both(MarketDataListener first, MarketDataListener second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return (book, message) -> {
+            first.onMessageApplied(book, message);
+            second.onMessageApplied(book, message);
+        };
+    }
+}
@@ -32,7 +32,7 @@ public class OfferOrderBookProcessor extends OrderBookProcessor{
                 newPriceLevel.setNextHigher(currentPriceLevel);
                 topOfBook.set(newPriceLevel);
             }else{
-                lowerBelowCurrent.setNextHigher(currentPriceLevel);
+                lowerBelowCurrent.setNextHigher(newPriceLevel);
                 newPriceLevel.setNextLower(lowerBelowCurrent);
                 newPriceLevel.setNextHigher(currentPriceLevel);
                 currentPriceLevel.setNextLower(newPriceLevel);
@@ -48,10 +48,15 @@ public class OfferOrderBookProcessor extends OrderBookProcessor{
     }
 
     @Override
-    protected Side getSide() {
+    public Side getSide() {
         return Side.Offer;
     }
 
+    @Override
+    protected PriceLevel getNextLevelFromTop(PriceLevel priceLevel) {
+        return priceLevel.getNextHigher();
+    }
+
     @Override
     protected double getTopOfBookPrice() {
         return topOfBook.get() == null ? 0 : (double) topOfBook.get().getPrice() / 100;
@@ -67,7 +72,7 @@ public class OfferOrderBookProcessor extends OrderBookProcessor{
         }
 
         long totalPrice= 0;
-        while(ptr <= levels && currLevel != null){
+        while(ptr < levels && currLevel != null){
             totalPrice += currLevel.getPrice();
             ptr +=1;
             currLevel = currLevel.getNextHigher();
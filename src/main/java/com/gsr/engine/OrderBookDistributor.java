@@ -1,9 +1,11 @@
 package com.gsr.engine;
 
+import com.gsr.analytics.BatchRequest;
 import com.gsr.analytics.Request;
 import com.gsr.data.CcyPair;
 import com.gsr.data.Message;
 import com.gsr.data.Side;
+import com.gsr.monitoring.EngineEvents;
 
 
 import java.util.*;
@@ -29,6 +31,11 @@ public class OrderBookDistributor {
     private final ConcurrentLinkedQueue<Request> incomingAnalyticsRequestQueue;
     private final ConcurrentLinkedQueue<Message> incomingMarketDataQueue;
     private final Queue<Request> analyticsResponseQueue;
+    private final ConcurrentLinkedQueue<Request> unroutedRequestQueue = new ConcurrentLinkedQueue<>();
+
+    private final Thread mdThread;
+    private final Thread analyticsThread;
+    private final Thread responseThread;
 
     private volatile boolean runningFlag = true;
 
@@ -38,6 +45,26 @@ public class OrderBookDistributor {
                                 List<ConcurrentLinkedQueue<Request>> requestQueues,
                                 List<ConcurrentLinkedQueue<Request>> responseQueues,
                                 Queue<Request> responseQueue) {
+        this(incomingMarketDataQueue, incomingAnalyticsRequests, engineQueues, requestQueues, responseQueues,
+                responseQueue, Collections.emptySet(), null, null);
+    }
+
+    /**
+     * Distributor which also sends the requests for implied pairs to the thread maintaining their books
+     *
+     * @param impliedPairs          implied pairs whose books are maintained, both sides of each
+     * @param impliedRequestQueue   queue of the implied book thread, for requests and batch parts on implied pairs
+     * @param impliedResponseQueue  queue the implied book thread answers on
+     */
+    public OrderBookDistributor(ConcurrentLinkedQueue<Message> incomingMarketDataQueue,
+                                ConcurrentLinkedQueue<Request> incomingAnalyticsRequests,
+                                List<ConcurrentLinkedQueue<Message>> engineQueues,
+                                List<ConcurrentLinkedQueue<Request>> requestQueues,
+                                List<ConcurrentLinkedQueue<Request>> responseQueues,
+                                Queue<Request> responseQueue,
+                                Collection<CcyPair> impliedPairs,
+                                Queue<Request> impliedRequestQueue,
+                                Queue<Request> impliedResponseQueue) {
 
         this.analyticsResponseQueue = responseQueue;
 
@@ -75,56 +102,127 @@ public class OrderBookDistributor {
         requestResponseQueues.get(CcyPair.SOLUSD).put(Side.Offer, responseQueues.get(4));
         requestResponseQueues.get(CcyPair.SOLUSD).put(Side.Bid, responseQueues.get(5));
 
+        for (CcyPair pair : impliedPairs) {
+            for (Side side : Side.values()) {
+                outboundRequestQueues.get(pair).put(side, impliedRequestQueue);
+            }
+        }
+
 
         //Configure threads for handling of inbound and outbound traffic
 
-        Thread mdThread = new Thread(() -> {
+        mdThread = new Thread(() -> {
             System.out.println("Order Book Distributor Running");
 
             while (runningFlag) {
                 Message message = this.incomingMarketDataQueue.poll();
                 if (message != null) {
-                    outboundMdQueues.get(message.getPair()).get(message.getSide()).add(message);
+                    routeMarketData(message);
                 }
             }
         }, "Market Data Distributor");
 
-        Thread analyticsThread = new Thread(() -> {
+        analyticsThread = new Thread(() -> {
             System.out.println("Analytics Request Distributor Running");
 
             while (runningFlag) {
                 Request request = null;
                 request = incomingAnalyticsRequestQueue.poll();
 
-                if (request != null) {
-                    outboundRequestQueues.get(request.getPair()).get(request.getSide()).add(request);
+                if (request instanceof BatchRequest) {
+                    distributeBatch((BatchRequest) request);
+                } else if (request != null) {
+                    route(request);
                 }
             }
         }, "Analytics Request Distributor");
 
 
-        Thread responseThread = new Thread(() -> {
+        //Iterating the maps would create an iterator on every pass of the collector loop, so index a list instead
+        List<Queue<Request>> collectedQueues = new ArrayList<>(responseQueues);
+        collectedQueues.add(unroutedRequestQueue);
+        if (impliedResponseQueue != null) {
+            collectedQueues.add(impliedResponseQueue);
+        }
+        responseThread = new Thread(() -> {
             System.out.println("Analytics Response Collector Running");
 
             while (runningFlag) {
-                for (Map<Side, Queue<Request>> map : requestResponseQueues.values()) {
-                    for (Queue<Request> list : map.values()) {
-                        Request request = list.poll();
-                        if (request != null) {
-                            analyticsResponseQueue.add(request);
+                for (int i = 0; i < collectedQueues.size(); i++) {
+                    Request request = collectedQueues.get(i).poll();
+                    if (request instanceof BatchRequest.Part) {
+                        BatchRequest.Part part = (BatchRequest.Part) request;
+                        if (part.getBatch().onPartCompleted(part)) {
+                            analyticsResponseQueue.add(part.getBatch());
                         }
+                    } else if (request != null) {
+                        analyticsResponseQueue.add(request);
                     }
                 }
             }
         }, "Analytics Response Collector");
 
+        EngineEvents.registerQueue("Distributor market data", incomingMarketDataQueue);
+        EngineEvents.registerQueue("Distributor analytics requests", incomingAnalyticsRequests);
+        EngineEvents.registerQueue("Distributor analytics responses", responseQueue);
+
         mdThread.start();
         analyticsThread.start();
         responseThread.start();
     }
 
+    /**
+     * Helper method to send every part of a batch to its book side. A batch without queries is answered right away.
+     */
+    private void distributeBatch(BatchRequest batch) {
+        boolean empty = true;
+        for (BatchRequest.Part part : batch.split()) {
+            if (part != null) {
+                route(part);
+                empty = false;
+            }
+        }
+        if (empty) {
+            analyticsResponseQueue.add(batch);
+        }
+    }
+
+    /**
+     * Helper method to send a request to the queue of its book side. Requests for a pair without books, an implied
+     * pair which is not maintained, are expired and go back through the collector like any answered request.
+     */
+    private void route(Request request) {
+        Queue<Request> queue = outboundRequestQueues.get(request.getPair()).get(request.getSide());
+        if (queue == null) {
+            request.expire();
+            unroutedRequestQueue.add(request);
+        } else {
+            queue.add(request);
+        }
+    }
+
+    /**
+     * Hand a message straight to the queue of its book side, skipping the inbound queue and the market data thread.
+     * For bulk loads which parse on several threads and must not funnel through one queue. Messages for a book side
+     * are applied in the order they are routed, so route from one thread only, and not while the feed is live.
+     */
+    public void routeMarketData(Message message) {
+        outboundMdQueues.get(message.getPair()).get(message.getSide()).add(message);
+    }
+
+    /**
+     * @return ids of the market data, analytics request and analytics response threads, e.g. to measure them
+     */
+    public long[] getThreadIds() {
+        return new long[]{mdThread.getId(), analyticsThread.getId(), responseThread.getId()};
+    }
+
     public void shutdown() {
         System.out.println("Shutting down OrderBook Distributor");
         runningFlag = false;
+
+        EngineEvents.unregisterQueue(incomingMarketDataQueue);
+        EngineEvents.unregisterQueue(incomingAnalyticsRequestQueue);
+        EngineEvents.unregisterQueue(analyticsResponseQueue);
     }
 }
@@ -1,34 +1,73 @@
 package com.gsr.engine;
 
+import com.gsr.analytics.BatchRequest;
 import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
 import com.gsr.data.*;
 import com.gsr.feed.ObjectPool;
+import com.gsr.logging.EngineLogger;
+import com.gsr.logging.LogEvent;
+import com.gsr.monitoring.EngineEvents;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static com.gsr.data.Constants.MAX_VENUES;
+
 /**
  * The OrderBookProcessor is an instance to represent and manage one side of a book for a particular currency pair
  * It holds price levels in a pseudo linked list
  */
 public abstract class OrderBookProcessor {
     private Thread engineThread;
+    private volatile Thread workerThread;
     private final CcyPair ccyPair;
+    private final Queue<Message> marketDataInboundQueue;
+    private final Queue<Request> analyticsRequestQueue;
+    private final Queue<Request> analyticsResponseQueue;
 
-    private final int MAX_PENDING_MD_UPDATES = 100;
-    private final int MAX_PENDING_ANALYTICS_REQ = 100;
-    private final int MAX_WAIT_NANOS = 20000;
+    private static final int PRICE_LEVELS_PREALLOCATED = 1024;
+    private static final int PRICE_LEVEL_POOL_CAPACITY = 1 << 14;
+    private static final int PRICE_LEVEL_POOL_BATCH = 64;
+    private static final int EXPIRY_TICKS_PER_TIME_TO_LIVE = 32;
+    //Requests held in the priority buckets at most, far more than any budget so priorities are seen past it
+    private static final int MAX_PENDING_REQUESTS = 4096;
 
     protected volatile boolean runningFlag;
-    protected final TreeMap<Long, PriceLevel> orderBookPriceIndex = new TreeMap<>();
+    protected final PriceLevelIndex orderBookPriceIndex = new PriceLevelIndex();
     protected final ObjectPool<Message> messageObjectPool;
     private final ObjectPool<PriceLevel> priceLevelObjectPool;
     protected AtomicReference<PriceLevel> topOfBook;
 
-    private final Map<Integer, Long> quantityCalculationsCache = new HashMap<>();
-    private final Map<Integer, Double> vwapCalculationsCache = new HashMap<>();
-    private final Map<Integer, Double> priceCalculationsCache = new HashMap<>();
+    private final LevelResultCache quantityCalculationsCache = new LevelResultCache();
+    private final LevelResultCache vwapCalculationsCache = new LevelResultCache();
+    private final LevelResultCache priceCalculationsCache = new LevelResultCache();
+
+    private RollingBookStatistics rollingStatistics;
+    private BookScheduler scheduler = new FixedBudgetScheduler();
+    private volatile MarketDataListener marketDataListener;
+    private LevelExpiryWheel levelExpiry;
+    private final LevelExpiryWheel.Expirer levelExpirer = this::expireLevel;
+    private long lastMessageTime;
+    private volatile long expiredLevels;
+
+    //Scratch state of bulk messages: the prices a snapshot took the venue off, and the message telling the listener
+    //about each level changed
+    private long[] clearedPrices = new long[64];
+    private int clearedPriceCount;
+    private final Message levelNotification = new Message();
+
+    //Requests taken off the queue but not serviced yet, one bucket per priority class
+    private final List<ArrayDeque<Request>> pendingRequests = new ArrayList<>();
+    private int pendingRequestCount;
+    private volatile long expiredRequests;
+    private volatile long shedRequests;
+
+    //Work done so far, added up once per batch, for load balancing
+    private volatile long messagesApplied;
+    private volatile long requestsHandled;
 
     public OrderBookProcessor(CcyPair ccyPair,
                               ObjectPool<Message> messageObjectPool,
@@ -38,8 +77,15 @@ public abstract class OrderBookProcessor {
 
         this.ccyPair = ccyPair;
         this.messageObjectPool = messageObjectPool;
-        this.priceLevelObjectPool = new ObjectPool<>(PriceLevel::new);
+        this.priceLevelObjectPool = new ObjectPool<>(PriceLevel::new, PRICE_LEVELS_PREALLOCATED, PRICE_LEVEL_POOL_CAPACITY, PRICE_LEVEL_POOL_BATCH);
         this.topOfBook = new AtomicReference<>(null);
+        this.marketDataInboundQueue = marketDataInboundQueue;
+        this.analyticsRequestQueue = analyticsRequestQueue;
+        this.analyticsResponseQueue = analyticsResponseQueue;
+
+        for (int i = 0; i < RequestPriority.values().length; i++) {
+            pendingRequests.add(new ArrayDeque<>());
+        }
 
         configureOrderBookThread(marketDataInboundQueue, analyticsRequestQueue, analyticsResponseQueue);
     }
@@ -48,11 +94,13 @@ public abstract class OrderBookProcessor {
      * Main method to configure the order book thread and its main execution task.
      *
      * The thread will read both market data updates, and service requests for analytics.  How these two conflicting
-     * tasks are balanced is ultimately up to performance considerations.  The key feature here is that no
+     * tasks are balanced is decided by the {@link BookScheduler}.  The key feature here is that no
      * synchronization is required at any time which means 100% cpu utilisation a 100% of the time. Just pin each
      * of these threads to a specific CPU core.
      *
      *
+     * The book can be driven by a {@link BookWorker} instead, which calls {@link #step()} on several books in turn.
+     *
      * @param inboundMdQueue        Queue of inbound market data information
      * @param analyticsRequestQueue Queue of inbound analytics requests
      * @param outboundResultQueue   Queue of outbound responses to analytics requests
@@ -61,72 +109,424 @@ public abstract class OrderBookProcessor {
         engineThread = new Thread(() -> {
             System.out.println("Order Book Processor on ccy: [" + ccyPair + "] on side: [" + getSide() + "] started.");
 
-            long lastMdUpdate = Long.MAX_VALUE;
-            long lastService = Long.MAX_VALUE;
-
             while (runningFlag) {
+                step();
+            }
+        }, "OrderBook-" + ccyPair + "-" + getSide());
+    }
 
-                boolean hasUpdatedBook = false;
+    /**
+     * One pass of the book's main loop: a batch of market data, a batch of analytics requests, and stale levels when
+     * there is nothing else to do. Between two steps the book holds nothing but its own state, so it may then be
+     * handed to another thread, as long as only one thread ever steps it at a time and the hand over is safely
+     * published.
+     */
+    void step() {
+        applyMarketDataBatch(marketDataInboundQueue, analyticsRequestQueue);
+        serviceAnalyticsBatch(analyticsRequestQueue, analyticsResponseQueue, marketDataInboundQueue);
 
-                Message marketDataMessage = inboundMdQueue.poll();
+        //Stale levels are only looked for when there is nothing else to do
+        if (levelExpiry != null && pendingRequestCount == 0 && marketDataInboundQueue.isEmpty() && analyticsRequestQueue.isEmpty()) {
+            expireStaleLevels(System.nanoTime());
+        }
+    }
 
-                while (marketDataMessage != null) {
-                    processMessage(marketDataMessage);
-                    hasUpdatedBook = true;
-                    lastMdUpdate = System.nanoTime();
+    /**
+     * Apply pending market data until the queue is empty, or analytics requests are waiting -- in the queue or already
+     * taken into the priority buckets -- and the scheduler says they should get a go.
+     */
+    private void applyMarketDataBatch(Queue<Message> inboundMdQueue, Queue<Request> analyticsRequestQueue) {
 
-                    if (analyticsRequestQueue.size() > MAX_PENDING_ANALYTICS_REQ || isTimeUp(lastService, analyticsRequestQueue)) {
-                        //If we pooled up too many analytics requests, or we have pending requests, but we've been executing
-                        //for too long, we must give up on the incoming MD and service the analytics requests.
-                        break;
-                    }
-                    marketDataMessage = inboundMdQueue.poll();
-                }
+        Message marketDataMessage = inboundMdQueue.poll();
+        if (marketDataMessage == null) {
+            return;
+        }
 
-                if (hasUpdatedBook) {
-                    //The cached analytics results are now no longer correct and must be removed
-                    clearCalculationResultCache();
-                }
+        long batchStart = System.nanoTime();
+        long oldestAge = ageOf(marketDataMessage, batchStart);
+        int budget = scheduler.marketDataBudget();
+        long timeSlice = scheduler.marketDataTimeSliceNanos();
+        int applied = 0;
 
-                Request request = analyticsRequestQueue.poll();
+        while (marketDataMessage != null) {
+            processMessage(marketDataMessage);
+            applied += 1;
 
-                while (request != null){
+            if ((pendingRequestCount > 0 || !analyticsRequestQueue.isEmpty()) && (applied >= budget || System.nanoTime() - batchStart > timeSlice)) {
+                //Analytics requests are waiting and market data has had its share. We must give up on the
+                //incoming MD and service the analytics requests.
+                break;
+            }
+            marketDataMessage = inboundMdQueue.poll();
+        }
 
-                    switch (request.getType()) {
+        //The cached analytics results are now no longer correct and must be removed
+        clearCalculationResultCache();
+        messagesApplied += applied;
+        scheduler.onMarketDataBatch(applied, oldestAge);
+        EngineEvents.bookApply(ccyPair, getSide(), applied, System.nanoTime() - batchStart, oldestAge);
+    }
 
-                        case Vwap:
-                            request.populateResult(vwapCalculationsCache.computeIfAbsent(request.getLevels(), this::calculateVwapOverLevels));
-                            break;
+    /**
+     * Service pending analytics requests, highest priority first. Requests past their deadline, or which the scheduler
+     * sheds because the book is falling behind the feed, are returned expired without being computed.
+     */
+    private void serviceAnalyticsBatch(Queue<Request> analyticsRequestQueue, Queue<Request> outboundResultQueue, Queue<Message> inboundMdQueue) {
 
-                        case AveragePrice:
-                            request.populateResult(priceCalculationsCache.computeIfAbsent(request.getLevels(), this::calculateAveragePrice));
-                            break;
+        int budget = scheduler.analyticsBudget();
 
-                        case AverageQuantity:
-                            request.populateResult(quantityCalculationsCache.computeIfAbsent(request.getLevels(), this::calculateAccumulatedQuantityOverLevels));
-                            break;
-                    }
-                    outboundResultQueue.add(request);
-                    lastService = System.nanoTime();
-                    if (inboundMdQueue.size() >= MAX_PENDING_MD_UPDATES || isTimeUp(lastMdUpdate, inboundMdQueue)) {
-                        //If we pooled up too many md updates, or we have pending requests, but we've been executing
-                        //for too long, we must give up on the analytics requests and update the book with new MD.
-                        break;
-                    }
-                    request = analyticsRequestQueue.poll();
+        //Sort what is waiting into the priority buckets. All of it, not just a budget's worth in arrival order, or a
+        //High request would wait behind the Low ones which came before it. The limit keeps a flood of requests in the
+        //queue rather than in the buckets.
+        while (pendingRequestCount < MAX_PENDING_REQUESTS) {
+            Request request = analyticsRequestQueue.poll();
+            if (request == null) {
+                break;
+            }
+            pendingRequests.get(request.getPriority().ordinal()).add(request);
+            pendingRequestCount += 1;
+        }
+
+        if (pendingRequestCount == 0) {
+            return;
+        }
+
+        long batchStart = System.nanoTime();
+        long marketDataBacklogAge = ageOf(inboundMdQueue.peek(), batchStart);
+        long timeSlice = scheduler.analyticsTimeSliceNanos();
+        long oldestAge = 0;
+        int serviced = 0;
+        int dropped = 0;
+
+        for (int priority = 0; priority < pendingRequests.size(); priority++) {
+            ArrayDeque<Request> bucket = pendingRequests.get(priority);
+            Request request = bucket.poll();
+
+            while (request != null) {
+                pendingRequestCount -= 1;
+                long now = System.nanoTime();
+                long age = now - request.getSubmittedNanos();
+                oldestAge = Math.max(oldestAge, age);
+
+                if (request.isPastDeadline(now)) {
+                    request.expire();
+                    expiredRequests += 1;
+                    dropped += 1;
+                } else if (scheduler.shouldShed(request, age, marketDataBacklogAge)) {
+                    request.expire();
+                    shedRequests += 1;
+                    dropped += 1;
+                } else {
+                    serviceRequest(request);
+                    serviced += 1;
                 }
+                outboundResultQueue.add(request);
+
+                if (!inboundMdQueue.isEmpty() && (serviced + dropped >= budget || now - batchStart > timeSlice)) {
+                    //Market data is waiting and analytics have had their share. We must give up on the analytics
+                    //requests and update the book with new MD.
+                    requestsHandled += serviced + dropped;
+                    scheduler.onAnalyticsBatch(serviced, dropped, oldestAge);
+                    return;
+                }
+                request = bucket.poll();
             }
-        }, "OrderBook-" + ccyPair + "-" + getSide());
+        }
+        requestsHandled += serviced + dropped;
+        scheduler.onAnalyticsBatch(serviced, dropped, oldestAge);
+    }
+
+    /**
+     * Apply a market data message on the calling thread. Only for use when the order book thread is not running, e.g.
+     * for backtests, as the book must only ever be modified by one thread.
+     *
+     * @param message message to be processed by the orderbook, handed back to the pool afterwards
+     */
+    public void applyMarketData(Message message) {
+        processMessage(message);
+        clearCalculationResultCache();
+    }
+
+    /**
+     * Compute the result of an analytics request against the current state of the book. Called by the order book
+     * thread, or directly when the thread is not running.
+     *
+     * @param request request to populate with a result
+     */
+    public void serviceRequest(Request request) {
+        if (EngineEvents.isAnalyticsComputationEnabled()) {
+            long start = System.nanoTime();
+            boolean cacheHit = isCached(request);
+            computeRequest(request);
+            EngineEvents.analyticsComputation(ccyPair, getSide(), request.getType(), request.getLevels(), cacheHit, System.nanoTime() - start);
+        } else {
+            computeRequest(request);
+        }
+    }
+
+    private void computeRequest(Request request) {
+        if (request.getType() == RequestType.Batch) {
+            if (request instanceof BatchRequest.Part) {
+                serviceBatchPart((BatchRequest.Part) request);
+            } else {
+                request.populateResult(Double.NaN);
+            }
+            return;
+        }
+        request.populateResult(computeQuery(request.getType(), request.getLevels(), request.getVenue()));
+    }
+
+    /**
+     * Helper method to compute the result of a single query against the current state of the book
+     */
+    private double computeQuery(RequestType type, int levels, int venue) {
+
+        switch (type) {
+
+            case Vwap:
+                return vwapCalculationsCache.contains(levels)
+                        ? vwapCalculationsCache.get(levels)
+                        : vwapCalculationsCache.put(levels, calculateVwapOverLevels(levels));
+
+            case AveragePrice:
+                return priceCalculationsCache.contains(levels)
+                        ? priceCalculationsCache.get(levels)
+                        : priceCalculationsCache.put(levels, calculateAveragePrice(levels));
+
+            case AverageQuantity:
+                return quantityCalculationsCache.contains(levels)
+                        ? quantityCalculationsCache.get(levels)
+                        : quantityCalculationsCache.put(levels, calculateAccumulatedQuantityOverLevels(levels));
+
+            case TimeWeightedTopOfBookPrice:
+                return rollingStatistics == null ? Double.NaN : rollingStatistics.getTimeWeightedTopOfBookPrice();
+
+            case TimeWeightedDepth:
+                return rollingStatistics == null ? Double.NaN : rollingStatistics.getTimeWeightedDepth();
+
+            case UpdateRate:
+                return rollingStatistics == null ? Double.NaN : rollingStatistics.getUpdateRate();
+
+            case VenueQuantity:
+                return calculateVenueQuantityOverLevels(venue, levels);
+
+            case VenueVwap:
+                return calculateVenueVwapOverLevels(venue, levels);
+
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Answer this book side's part of a batch. Its queries come ordered by levels, so the sums the level based
+     * queries need are accumulated on a single walk down from the top of the book, and every query is answered as soon
+     * as the walk has covered its levels. Results are the same as those of the single requests.
+     */
+    private void serviceBatchPart(BatchRequest.Part part) {
+        BatchRequest batch = part.getBatch();
+        PriceLevel level = topOfBook.get();
+        boolean emptyBook = level == null;
+
+        int walked = 0;
+        long totalPrice = 0;
+        long totalQuantity = 0;
+        double totalPriceWeight = 0;
+
+        for (int i = 0; i < part.getQueryCount(); i++) {
+            int query = part.getQuery(i);
+            RequestType type = batch.getType(query);
+            int levels = batch.getLevels(query);
+
+            if (type != RequestType.Vwap && type != RequestType.AveragePrice && type != RequestType.AverageQuantity) {
+                batch.populateResult(query, computeQuery(type, levels, batch.getVenue(query)));
+                continue;
+            }
+
+            while (walked < levels && level != null) {
+                totalPrice += level.getPrice();
+                totalQuantity += level.getQuantity();
+                totalPriceWeight += (level.getPrice() * level.getQuantity());
+                walked += 1;
+                level = getNextLevelFromTop(level);
+            }
+
+            //Division by 100 to bring the long representation into double based decimal
+            switch (type) {
+                case Vwap:
+                    batch.populateResult(query, totalPriceWeight / (totalQuantity * 100));
+                    break;
+                case AveragePrice:
+                    batch.populateResult(query, emptyBook ? 0 : (double) totalPrice / (walked * 100));
+                    break;
+                case AverageQuantity:
+                    batch.populateResult(query, totalQuantity);
+                    break;
+            }
+        }
+        part.populateResult(part.getQueryCount());
+    }
+
+    /**
+     * Helper method to tell whether the result of a request is in the calculation cache already
+     */
+    private boolean isCached(Request request) {
+        switch (request.getType()) {
+            case Vwap:
+                return vwapCalculationsCache.contains(request.getLevels());
+            case AveragePrice:
+                return priceCalculationsCache.contains(request.getLevels());
+            case AverageQuantity:
+                return quantityCalculationsCache.contains(request.getLevels());
+            default:
+                return false;
+        }
     }
 
     public void launchOrderBookThread() {
+        registerQueues();
         runningFlag = true;
         engineThread.start();
     }
 
+    /**
+     * Get the book ready to be stepped by a {@link BookWorker} rather than its own thread
+     */
+    void launchOnWorker() {
+        registerQueues();
+    }
+
+    /**
+     * Called by the {@link BookWorker} taking the book on
+     */
+    void setWorkerThread(Thread workerThread) {
+        this.workerThread = workerThread;
+    }
+
+    private void registerQueues() {
+        String hop = ccyPair + "-" + getSide();
+        EngineEvents.registerQueue(hop + " market data", marketDataInboundQueue);
+        EngineEvents.registerQueue(hop + " analytics requests", analyticsRequestQueue);
+        EngineEvents.registerQueue(hop + " analytics responses", analyticsResponseQueue);
+    }
+
+    /**
+     * Enable rolling window statistics on this book side. Must be called before the order book thread is launched,
+     * as the statistics are owned by the book thread from then on.
+     *
+     * @param rollingStatistics statistics to update on every applied message
+     */
+    public void setRollingStatistics(RollingBookStatistics rollingStatistics) {
+        this.rollingStatistics = rollingStatistics;
+    }
+
+    /**
+     * Replace the scheduler balancing market data and analytics. Must be called before the order book thread is
+     * launched. Schedulers hold per book state, so never share an instance between books.
+     *
+     * @param scheduler scheduler to use from now on
+     */
+    public void setScheduler(BookScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Register a listener for applied market data. It can be attached while the book is running, e.g. once the warm up
+     * is done, and sees the messages applied from then on. It must not be taken away again while the book is running.
+     *
+     * @param marketDataListener listener to call on the book thread for every applied message, null for none
+     */
+    public void setMarketDataListener(MarketDataListener marketDataListener) {
+        this.marketDataListener = marketDataListener;
+    }
+
+    /**
+     * Expire levels which haven't been updated for the given time, e.g. ghost levels left behind by deletes the feed
+     * dropped. Levels are checked while the book thread is idle, so a level may outlive its time to live by a little
+     * on a busy book. Expired levels are removed venue by venue, as if the feed had sent the removes, so listeners and
+     * statistics see them like any other update. Must be called before the order book thread is launched.
+     *
+     * @param timeToLiveNanos time after its last update a level expires
+     */
+    public void setLevelTimeToLive(long timeToLiveNanos) {
+        if (timeToLiveNanos <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+        long tickNanos = Math.max(timeToLiveNanos / EXPIRY_TICKS_PER_TIME_TO_LIVE, 1);
+        levelExpiry = new LevelExpiryWheel(timeToLiveNanos, tickNanos, EXPIRY_TICKS_PER_TIME_TO_LIVE * 2, System.nanoTime());
+    }
+
+    /**
+     * @return id of the thread driving the book, e.g. to measure it: the order book thread, or the {@link BookWorker}
+     * which last took the book on. Books move between workers, so for those the id may change.
+     */
+    public long getOrderBookThreadId() {
+        Thread thread = workerThread;
+        return thread != null ? thread.getId() : engineThread.getId();
+    }
+
+    public CcyPair getCcyPair() {
+        return ccyPair;
+    }
+
+    /**
+     * @return number of analytics requests dropped because their deadline had passed
+     */
+    public long getExpiredRequests() {
+        return expiredRequests;
+    }
+
+    /**
+     * @return number of analytics requests the scheduler shed because the book was overloaded
+     */
+    public long getShedRequests() {
+        return shedRequests;
+    }
+
+    /**
+     * @return number of market data messages applied by the book thread so far
+     */
+    public long getMessagesApplied() {
+        return messagesApplied;
+    }
+
+    /**
+     * @return number of analytics requests taken off the queue and answered, serviced or expired, so far
+     */
+    public long getRequestsHandled() {
+        return requestsHandled;
+    }
+
+    /**
+     * @return number of levels removed because their time to live ran out
+     */
+    public long getExpiredLevels() {
+        return expiredLevels;
+    }
+
+    /**
+     * Fill the price level pool up front, so that the book doesn't allocate levels once it is live
+     *
+     * @param count number of price levels to create
+     */
+    public void preallocatePriceLevels(int count) {
+        priceLevelObjectPool.preallocate(count);
+    }
+
+    /**
+     * @return the pool holding the price levels of this book side, for monitoring
+     */
+    public ObjectPool<PriceLevel> getPriceLevelObjectPool() {
+        return priceLevelObjectPool;
+    }
+
     public void shutDownOrderBookThread() {
         System.out.println("Order Book Processor on ccy: [" + ccyPair + "] on side: [" + getSide() + "] shutting down.");
         runningFlag = false;
+
+        EngineEvents.unregisterQueue(marketDataInboundQueue);
+        EngineEvents.unregisterQueue(analyticsRequestQueue);
+        EngineEvents.unregisterQueue(analyticsResponseQueue);
     }
 
     /**
@@ -137,23 +537,240 @@ public abstract class OrderBookProcessor {
      */
     private void processMessage(Message message) {
 
+        lastMessageTime = message.getTime();
         switch (message.getType()) {
             case RemovePriceLevel:
-                PriceLevel levelToRemove = orderBookPriceIndex.remove(message.getPrice());
-                if (levelToRemove != null && levelToRemove.removePriceFromBook()) {
-                    //The price level we removed was the last one in the book. Hence top of book should be set to null
-                    topOfBook.set(null);
-                }
-                System.out.println("Removed from book: [" + message.getPair() + "] side: [" + message.getSide() + "] price: [" + message.getPrice() + "]");
-                messageObjectPool.returnObject(message);
-                return;
+                removeVenueQuantity(message.getPrice(), message.getVenue());
+                EngineLogger.log(LogEvent.PriceLevelRemoved, EngineLogger.ordinal(message.getPair()), EngineLogger.ordinal(message.getSide()), message.getPrice());
+                break;
 
             case AddOrUpdatePriceLevel:
                 addOrUpdatePriceLevel(message);
-                System.out.println("Added to book: [" + message.getPair() + "] side: [" + message.getSide() + "] price: [" + message.getPrice() + "] Quantity: [" + message.getQuantity() + "]");
+                EngineLogger.log(LogEvent.PriceLevelAdded, EngineLogger.ordinal(message.getPair()), EngineLogger.ordinal(message.getSide()), message.getPrice(), message.getQuantity());
+                break;
+
+            case ClearBook:
+                clearBook();
+                EngineLogger.log(LogEvent.BookCleared, EngineLogger.ordinal(ccyPair), EngineLogger.ordinal(getSide()));
+                break;
+
+            case Snapshot:
+            case MultiLevelUpdate:
+                applyLevels(message);
+                EngineLogger.log(LogEvent.LevelsApplied, EngineLogger.ordinal(message.getType()), EngineLogger.ordinal(ccyPair),
+                        EngineLogger.ordinal(getSide()), message.getVenue(), message.getLevelCount());
+                updateRollingStatistics(message);
                 messageObjectPool.returnObject(message);
+                //The listener has been told about each level
+                return;
+        }
+
+        //The listener goes first, so that a subclass mirroring the book through it is up to date when the statistics
+        //query the book
+        if (marketDataListener != null) {
+            marketDataListener.onMessageApplied(this, message);
+        }
+        if (message.getType() != MessageType.ClearBook) {
+            updateRollingStatistics(message);
+        }
+        messageObjectPool.returnObject(message);
+
+    }
+
+    /**
+     * Helper method to remove every level from the book, handing them all back to the pool, and forget the rolling
+     * statistics. The book is left as if it had just been created.
+     */
+    private void clearBook() {
+        if (levelExpiry != null) {
+            levelExpiry.clear();
+        }
+        PriceLevel level = topOfBook.get();
+        topOfBook.set(null);
+        while (level != null) {
+            PriceLevel next = getNextLevelFromTop(level);
+            priceLevelObjectPool.returnObject(level);
+            level = next;
+        }
+        orderBookPriceIndex.clear();
+
+        if (rollingStatistics != null) {
+            rollingStatistics.clear();
+        }
+    }
+
+    /**
+     * Helper method to apply a snapshot or multi level update of one venue in one pass. The levels are put in book
+     * order first, then each new level is linked in from the level before it rather than from the top of the book, so
+     * a full rebuild of an empty side costs one pass over the levels. The listener is told about every level which
+     * changed as if it had come in as a single level message.
+     *
+     * @param message bulk message, its levels are reordered
+     */
+    private void applyLevels(Message message) {
+        int venue = message.getVenue();
+        clearedPriceCount = 0;
+        if (message.getType() == MessageType.Snapshot) {
+            clearVenue(venue);
+        }
+        sortLevels(message);
+
+        //Best level applied so far, the next level goes in below it
+        PriceLevel hint = null;
+        for (int i = 0; i < message.getLevelCount(); i++) {
+            long price = message.getLevelPrice(i);
+            long quantity = message.getLevelQuantity(i);
+            PriceLevel level = orderBookPriceIndex.get(price);
+
+            if (quantity == 0) {
+                if (level != null && level.setVenueQuantity(venue, 0) == 0) {
+                    if (level == hint) {
+                        hint = null;
+                    }
+                    removePriceLevel(price);
+                }
+                continue;
+            }
+
+            if (level == null) {
+                level = addNewPriceLevelToBook(price, hint);
+                orderBookPriceIndex.put(level);
+            }
+            level.setVenueQuantity(venue, quantity);
+            if (levelExpiry != null) {
+                levelExpiry.schedule(level, System.nanoTime());
+            }
+            hint = level;
+        }
+
+        if (marketDataListener != null) {
+            notifyLevels(message);
+        }
+    }
+
+    /**
+     * Helper method to take a venue off every level of the book, ahead of its snapshot. The prices it was taken off
+     * are kept for the listener.
+     */
+    private void clearVenue(int venue) {
+        PriceLevel level = topOfBook.get();
+        while (level != null) {
+            PriceLevel next = getNextLevelFromTop(level);
+            if (level.getVenueQuantity(venue) != 0) {
+                if (marketDataListener != null) {
+                    if (clearedPriceCount == clearedPrices.length) {
+                        clearedPrices = Arrays.copyOf(clearedPrices, clearedPriceCount * 2);
+                    }
+                    clearedPrices[clearedPriceCount++] = level.getPrice();
+                }
+                if (level.setVenueQuantity(venue, 0) == 0) {
+                    removePriceLevel(level.getPrice());
+                }
+            }
+            level = next;
         }
+    }
 
+    /**
+     * Helper method to put the levels of a bulk message in book order, best first. Insertion sort, as feeds mostly
+     * send their levels in order already. Levels at the same price keep their order, so the last one still wins.
+     */
+    private void sortLevels(Message message) {
+        boolean descending = getSide() == Side.Bid;
+        for (int i = 1; i < message.getLevelCount(); i++) {
+            long price = message.getLevelPrice(i);
+            long quantity = message.getLevelQuantity(i);
+            int j = i - 1;
+            while (j >= 0 && (descending ? message.getLevelPrice(j) < price : message.getLevelPrice(j) > price)) {
+                message.setLevel(j + 1, message.getLevelPrice(j), message.getLevelQuantity(j));
+                j -= 1;
+            }
+            message.setLevel(j + 1, price, quantity);
+        }
+    }
+
+    /**
+     * Helper method to tell the listener about each level a bulk message changed, through a reused single level
+     * message: the venue's removal from the levels a snapshot cleared and didn't set again, then the message's levels.
+     */
+    private void notifyLevels(Message message) {
+        int venue = message.getVenue();
+        levelNotification.setPair(ccyPair);
+        levelNotification.setSide(getSide());
+        levelNotification.setVenue(venue);
+        levelNotification.setTime(message.getTime());
+        levelNotification.setSequence(message.getSequence());
+        levelNotification.setReceivedNanos(message.getReceivedNanos());
+
+        for (int i = 0; i < clearedPriceCount; i++) {
+            PriceLevel level = orderBookPriceIndex.get(clearedPrices[i]);
+            if (level == null || level.getVenueQuantity(venue) == 0) {
+                notifyLevel(MessageType.RemovePriceLevel, clearedPrices[i], 0);
+            }
+        }
+        for (int i = 0; i < message.getLevelCount(); i++) {
+            long quantity = message.getLevelQuantity(i);
+            notifyLevel(quantity == 0 ? MessageType.RemovePriceLevel : MessageType.AddOrUpdatePriceLevel, message.getLevelPrice(i), quantity);
+        }
+    }
+
+    private void notifyLevel(MessageType type, long price, long quantity) {
+        levelNotification.setType(type);
+        levelNotification.setPrice(price);
+        levelNotification.setQuantity(quantity);
+        marketDataListener.onMessageApplied(this, levelNotification);
+    }
+
+    /**
+     * Feed the state of the book after an applied message into the rolling statistics, if enabled
+     *
+     * @param message the message which was just applied
+     */
+    private void updateRollingStatistics(Message message) {
+        if (rollingStatistics == null) {
+            return;
+        }
+        PriceLevel top = topOfBook.get();
+        rollingStatistics.onBookUpdate(message.getTime(),
+                top == null ? 0 : top.getPrice(),
+                calculateAccumulatedQuantityOverLevels(rollingStatistics.getDepthLevels()));
+    }
+
+    /**
+     * Helper method to take a venue's quantity off a price level. The level only leaves the book once no venue shows
+     * any quantity at its price.
+     *
+     * @param price price of the level
+     * @param venue venue which no longer quotes the price
+     */
+    private void removeVenueQuantity(long price, int venue) {
+        PriceLevel level = orderBookPriceIndex.get(price);
+        if (level != null && level.setVenueQuantity(venue, 0) == 0) {
+            removePriceLevel(price);
+        }
+    }
+
+    /**
+     * Helper method to unlink a price level from the book and hand it back to the pool
+     *
+     * @param price price of the level to remove
+     */
+    private void removePriceLevel(long price) {
+        PriceLevel levelToRemove = orderBookPriceIndex.remove(price);
+        if (levelToRemove == null) {
+            return;
+        }
+
+        if (levelToRemove == topOfBook.get()) {
+            //The next level in, if any, becomes the new top of book. If it was the last one in the book, top of book
+            //is set to null
+            topOfBook.set(getNextLevelFromTop(levelToRemove));
+        }
+        if (levelExpiry != null) {
+            levelExpiry.cancel(levelToRemove);
+        }
+        levelToRemove.removePriceFromBook();
+        priceLevelObjectPool.returnObject(levelToRemove);
     }
 
     /**
@@ -164,27 +781,83 @@ public abstract class OrderBookProcessor {
      */
     private void addOrUpdatePriceLevel(final Message message) {
 
-        orderBookPriceIndex.compute(message.getPrice(), (priceLevel, limit) -> {
+        PriceLevel level = orderBookPriceIndex.get(message.getPrice());
 
-            //If this is the first order of this price create the new limit book
-            if (limit == null) {
-                limit = addNewPriceLevelToBook(priceLevel, message.getQuantity());
-            } else {
-                limit.adjustQuantity(message.getQuantity());
+        //If this is the first order of this price create the new limit book
+        if (level == null) {
+            level = addNewPriceLevelToBook(message.getPrice());
+            orderBookPriceIndex.put(level);
+        }
+        level.setVenueQuantity(message.getVenue(), message.getQuantity());
+        if (levelExpiry != null) {
+            levelExpiry.schedule(level, System.nanoTime());
+        }
+    }
+
+    /**
+     * Expire the levels whose time to live has run out. Called by the order book thread when it is idle, or directly
+     * when the thread is not running.
+     *
+     * @param nowNanos current System.nanoTime()
+     */
+    void expireStaleLevels(long nowNanos) {
+        int expired = levelExpiry.advance(nowNanos, levelExpirer);
+        if (expired > 0) {
+            expiredLevels += expired;
+            clearCalculationResultCache();
+        }
+    }
+
+    /**
+     * Helper method to remove an expired level through a remove message per venue quoting it, as the feed would
+     *
+     * @param level level to remove
+     */
+    private void expireLevel(PriceLevel level) {
+        long price = level.getPrice();
+        for (int venue = 0; venue < MAX_VENUES && orderBookPriceIndex.get(price) == level; venue++) {
+            if (level.getVenueQuantity(venue) != 0) {
+                Message message = messageObjectPool.acquireObject();
+                message.setType(MessageType.RemovePriceLevel);
+                message.setPair(ccyPair);
+                message.setSide(getSide());
+                message.setPrice(price);
+                message.setQuantity(0);
+                message.setVenue(venue);
+                message.setTime(lastMessageTime);
+                message.setSequence(0);
+                message.setReceivedNanos(0);
+                processMessage(message);
             }
-            return limit;
-        });
+        }
+
+        //A level without any quantity left can't be removed by venue
+        if (orderBookPriceIndex.get(price) == level) {
+            removePriceLevel(price);
+        }
     }
 
     /**
      * Helper method to acquire a new object from pool and insert in to chain of price levels
      *
      * @param price the price for which no current orders exist
-     * @return the newly added price limit
+     * @return the newly added price limit, without any quantity yet
+     */
+    private PriceLevel addNewPriceLevelToBook(long price) {
+        return addNewPriceLevelToBook(price, null);
+    }
+
+    /**
+     * @param hint level at or above the new price to start looking for its place from, null to start from the top
      */
-    private PriceLevel addNewPriceLevelToBook(Long price, long quantity) {
+    private PriceLevel addNewPriceLevelToBook(long price, PriceLevel hint) {
         PriceLevel priceLevel = priceLevelObjectPool.acquireObject();
-        priceLevel.populate(price, quantity);
+        priceLevel.populate(price, 0);
+
+        if (hint != null) {
+            insertPriceInBook(priceLevel, hint);
+            return priceLevel;
+        }
 
         //Unless this is the first price of this book traverse chain and insert.
         //This is not thread safe, but it needs not to be as only one thread ever will make modifications
@@ -197,13 +870,12 @@ public abstract class OrderBookProcessor {
 
 
     /**
-     *
-     * @param lastService last time we serviced a request from the queue
-     * @param queue the queue in question
-     * @return true if we have been executing for too long and the queue has pending messages
+     * @param message oldest message in a queue, may be null
+     * @param now     current System.nanoTime()
+     * @return how long the message has been queueing, 0 if there is no message or it was never stamped
      */
-    private boolean isTimeUp(long lastService, Queue<?> queue) {
-        return !queue.isEmpty() && System.nanoTime() - lastService > MAX_WAIT_NANOS;
+    private long ageOf(Message message, long now) {
+        return message == null || message.getReceivedNanos() == 0 ? 0 : now - message.getReceivedNanos();
     }
 
     /**
@@ -219,7 +891,71 @@ public abstract class OrderBookProcessor {
 
     abstract void insertPriceInBook(PriceLevel newPriceLevel, PriceLevel currentPriceLevel);
 
-    protected abstract Side getSide();
+    public abstract Side getSide();
+
+    /**
+     * @return the level after the given one, walking away from top of book
+     */
+    protected abstract PriceLevel getNextLevelFromTop(PriceLevel priceLevel);
+
+    /**
+     * @return quantity the venue shows over the top levels of the consolidated book
+     */
+    public long calculateVenueQuantityOverLevels(int venue, int levels) {
+        long totalQuantity = 0;
+        PriceLevel level = topOfBook.get();
+        for (int i = 0; i < levels && level != null; i++) {
+            totalQuantity += level.getVenueQuantity(venue);
+            level = getNextLevelFromTop(level);
+        }
+        return totalQuantity;
+    }
+
+    /**
+     * @return vwap of the quantity the venue shows over the top levels of the consolidated book, NaN if it shows none
+     */
+    public double calculateVenueVwapOverLevels(int venue, int levels) {
+        double totalPriceWeight = 0;
+        long totalQuantity = 0;
+        PriceLevel level = topOfBook.get();
+        for (int i = 0; i < levels && level != null; i++) {
+            totalPriceWeight += level.getPrice() * level.getVenueQuantity(venue);
+            totalQuantity += level.getVenueQuantity(venue);
+            level = getNextLevelFromTop(level);
+        }
+
+        //Division by 100 to bring the long representation into double based decimal
+        return totalPriceWeight / (totalQuantity * 100);
+    }
+
+    /**
+     * Quantity at a price, across all venues. Only to be called from the order book thread, e.g. by a listener.
+     *
+     * @return the quantity at the price, 0 if there is no level at it
+     */
+    public long getQuantityAt(long price) {
+        PriceLevel level = orderBookPriceIndex.get(price);
+        return level == null ? 0 : level.getQuantity();
+    }
+
+    /**
+     * Copy the top levels of the book into arrays. Only to be called from the order book thread, e.g. by a listener.
+     *
+     * @param prices     array to fill with prices, from the top of the book. Its length is the number of levels copied.
+     * @param quantities array to fill with the quantities, across all venues, at the same indices
+     * @return number of levels copied, less than the array length if the book is shallower
+     */
+    public int copyTopLevels(long[] prices, long[] quantities) {
+        int count = 0;
+        PriceLevel level = topOfBook.get();
+        while (count < prices.length && level != null) {
+            prices[count] = level.getPrice();
+            quantities[count] = level.getQuantity();
+            count += 1;
+            level = getNextLevelFromTop(level);
+        }
+        return count;
+    }
 
     public abstract double calculateAveragePrice(int levels);
 
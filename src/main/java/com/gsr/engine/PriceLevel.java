@@ -1,30 +1,59 @@
 package com.gsr.engine;
 
+import java.util.Arrays;
+
+import static com.gsr.data.Constants.MAX_VENUES;
+
 /**
  * Representation of one price level for a particular side of an order book.  The limit level holds a double
  * linked list of orders in order to allow O(1) matching of orders and cancelation of orders.
+ *
+ * Books are consolidated across venues: a level holds the quantity each venue shows at its price, and their total,
+ * which is kept up to date on every change so that the analytics never have to add up the venues.
  */
 public class PriceLevel {
 
     private long price;
     private long quantity;
+    private final long[] venueQuantities = new long[MAX_VENUES];
     private PriceLevel nextHigher;
     private PriceLevel nextLower;
 
+    //Links of the level's bucket in the book's expiry wheel, if levels expire
+    private PriceLevel expiryPrevious;
+    private PriceLevel expiryNext;
+    private long expiryTick;
+    private int expiryBucket = -1;
+
     public PriceLevel(){}
 
-    public void populate(Long price, long initialQuantity) {
+    public void populate(long price, long initialQuantity) {
 
         this.price = price;
         this.quantity = initialQuantity;
+        Arrays.fill(venueQuantities, 0);
+        venueQuantities[0] = initialQuantity;
+
+        //Levels are recycled through a pool, so forget about the neighbours of the previous life
+        this.nextHigher = null;
+        this.nextLower = null;
+        clearExpiry();
     }
 
     /**
-     * Method will adjust the quantity at the current price level
-     * @param adjustment to make to price level
+     * Method will set the quantity a venue shows at the current price level, and adjust the total accordingly
+     * @param venue venue id
+     * @param venueQuantity new quantity of the venue, 0 if the venue no longer quotes this price
+     * @return the total quantity of the level across all venues
      */
-    public void adjustQuantity(long adjustment){
-        quantity = adjustment;
+    public long setVenueQuantity(int venue, long venueQuantity){
+        quantity += venueQuantity - venueQuantities[venue];
+        venueQuantities[venue] = venueQuantity;
+        return quantity;
+    }
+
+    public long getVenueQuantity(int venue) {
+        return venueQuantities[venue];
     }
 
     public long getPrice() {
@@ -51,6 +80,44 @@ public class PriceLevel {
         this.nextLower = nextLower;
     }
 
+    void setExpiry(long tick, int bucket, PriceLevel previous, PriceLevel next) {
+        this.expiryTick = tick;
+        this.expiryBucket = bucket;
+        this.expiryPrevious = previous;
+        this.expiryNext = next;
+    }
+
+    void clearExpiry() {
+        setExpiry(0, -1, null, null);
+    }
+
+    long getExpiryTick() {
+        return expiryTick;
+    }
+
+    /**
+     * @return bucket of the expiry wheel the level is in, -1 if it isn't scheduled to expire
+     */
+    int getExpiryBucket() {
+        return expiryBucket;
+    }
+
+    PriceLevel getExpiryPrevious() {
+        return expiryPrevious;
+    }
+
+    PriceLevel getExpiryNext() {
+        return expiryNext;
+    }
+
+    void setExpiryPrevious(PriceLevel expiryPrevious) {
+        this.expiryPrevious = expiryPrevious;
+    }
+
+    void setExpiryNext(PriceLevel expiryNext) {
+        this.expiryNext = expiryNext;
+    }
+
     /**
      * If the quantity of the price is 0, the level does no longer serve any purpose and should be removed
      * from book
@@ -0,0 +1,137 @@
+package com.gsr.engine;
+
+import java.util.Arrays;
+
+
+/**
+ * Index of the price levels of a book side by price, for O(1) access to a level without walking the book.
+ *
+ * An open addressing hash map from primitive long prices to levels, with linear probing. Unlike a TreeMap keyed by
+ * Long it neither boxes prices nor creates an entry object per level, so a book in steady state doesn't allocate when
+ * levels come and go. Order is kept by the book's linked list, so the index needs none.
+ *
+ * The table doubles when it gets half full, which is the only time it allocates. It never shrinks.
+ */
+class PriceLevelIndex {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private long[] prices;
+    private PriceLevel[] levels;
+    private int mask;
+    private int size;
+
+    PriceLevelIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity initial number of slots, rounded up to the next power of two
+     */
+    PriceLevelIndex(int capacity) {
+        allocate(Math.max(2, Integer.highestOneBit(capacity - 1) << 1));
+    }
+
+    /**
+     * @return the level at the price, null if there is none
+     */
+    PriceLevel get(long price) {
+        int slot = slotOf(price);
+        while (levels[slot] != null) {
+            if (prices[slot] == price) {
+                return levels[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Add a level at its price, which must not be in the index yet
+     */
+    void put(PriceLevel level) {
+        if ((size + 1) * 2 > levels.length) {
+            resize();
+        }
+        insert(level.getPrice(), level);
+        size += 1;
+    }
+
+    /**
+     * @return the removed level, null if there was none at the price
+     */
+    PriceLevel remove(long price) {
+        int slot = slotOf(price);
+        while (levels[slot] != null) {
+            if (prices[slot] == price) {
+                PriceLevel removed = levels[slot];
+                closeGap(slot);
+                size -= 1;
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    void clear() {
+        Arrays.fill(levels, null);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Helper method to shift the entries after a removed one back, so that no probe sequence runs into the hole
+     */
+    private void closeGap(int gap) {
+        int slot = (gap + 1) & mask;
+        while (levels[slot] != null) {
+            int home = slotOf(prices[slot]);
+            //Move the entry into the gap unless its home slot lies cyclically between the gap and where it is now
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                prices[gap] = prices[slot];
+                levels[gap] = levels[slot];
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        levels[gap] = null;
+    }
+
+    private void insert(long price, PriceLevel level) {
+        int slot = slotOf(price);
+        while (levels[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        prices[slot] = price;
+        levels[slot] = level;
+    }
+
+    private void resize() {
+        long[] oldPrices = prices;
+        PriceLevel[] oldLevels = levels;
+        allocate(oldLevels.length * 2);
+        for (int i = 0; i < oldLevels.length; i++) {
+            if (oldLevels[i] != null) {
+                insert(oldPrices[i], oldLevels[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        prices = new long[capacity];
+        levels = new PriceLevel[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Prices of neighbouring levels are close together, so scramble them before taking the low bits
+     */
+    private int slotOf(long price) {
+        long hash = price * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
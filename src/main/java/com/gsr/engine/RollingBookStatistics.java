@@ -0,0 +1,199 @@
+package com.gsr.engine;
+
+/**
+ * Rolling window statistics for one side of a book, driven by the feed timestamp of each applied message.
+ *
+ * Every applied update adds a sample (feed time, top of book price, depth over the configured number of levels) to a
+ * fixed size ring of primitives. A sample holds its value until the next sample arrives, which makes it a segment on
+ * the feed time line. Weighted sums of the closed segments are kept as running totals, so adding a sample and
+ * evicting the ones which have fallen out of the window are O(1) and nothing is ever recomputed over history.
+ *
+ * The window always ends at the latest feed time seen by the book. If the ring runs out of capacity before the
+ * window is full, the oldest samples are evicted early and the statistics cover a shorter period -- size the ring
+ * for the peak update rate you expect over one window.
+ *
+ * Only the book thread may update the statistics. Reads happen on the same thread when servicing analytics requests.
+ */
+public class RollingBookStatistics {
+
+    private final long windowLength;
+    private final int depthLevels;
+    private final int mask;
+
+    private final long[] sampleTimes;
+    private final long[] topOfBookPrices;
+    private final long[] depths;
+
+    private int head;
+    private int size;
+
+    //Running sums over closed segments, i.e. all samples but the newest one
+    private double weightedPriceSum;
+    private long pricedDuration;
+    private double weightedDepthSum;
+
+    private long lastTime = Long.MIN_VALUE;
+
+    /**
+     * @param windowLength length of the rolling window, in the same unit as the feed timestamp
+     * @param depthLevels  number of levels from top of book included in the depth statistic
+     * @param capacity     maximum number of samples held, rounded up to the next power of two
+     */
+    public RollingBookStatistics(long windowLength, int depthLevels, int capacity) {
+        if (windowLength <= 0 || depthLevels <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Window length, depth levels and capacity must all be positive");
+        }
+        int ringSize = Integer.highestOneBit(capacity);
+        if (ringSize < capacity) {
+            ringSize <<= 1;
+        }
+
+        this.windowLength = windowLength;
+        this.depthLevels = depthLevels;
+        this.mask = ringSize - 1;
+        this.sampleTimes = new long[ringSize];
+        this.topOfBookPrices = new long[ringSize];
+        this.depths = new long[ringSize];
+    }
+
+    /**
+     * Record the state of the book after an update has been applied.
+     *
+     * @param time           feed timestamp of the applied message. Timestamps going backwards are clamped.
+     * @param topOfBookPrice top of book price in long representation, 0 if the book side is empty
+     * @param depth          accumulated quantity over the configured number of levels
+     */
+    public void onBookUpdate(long time, long topOfBookPrice, long depth) {
+
+        if (time < lastTime) {
+            time = lastTime;
+        }
+
+        if (size > 0) {
+            //Close the segment of the sample which was the newest until now
+            int newest = (head + size - 1) & mask;
+            addSegment(newest, time - sampleTimes[newest], 1);
+        }
+
+        if (size == sampleTimes.length) {
+            evictOldest();
+        }
+
+        int slot = (head + size) & mask;
+        sampleTimes[slot] = time;
+        topOfBookPrices[slot] = topOfBookPrice;
+        depths[slot] = depth;
+        size += 1;
+        lastTime = time;
+
+        //Drop the samples whose segments ended before the window started
+        long windowStart = time - windowLength;
+        while (size > 1 && sampleTimes[(head + 1) & mask] <= windowStart) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * @return time weighted average top of book price over the window as a decimal, or NaN if the book side has
+     * been empty for the whole window
+     */
+    public double getTimeWeightedTopOfBookPrice() {
+        if (size == 0) {
+            return Double.NaN;
+        }
+
+        long clipped = clippedDuration();
+        double priceSum = weightedPriceSum;
+        long duration = pricedDuration;
+        if (clipped > 0 && topOfBookPrices[head] != 0) {
+            priceSum -= (double) topOfBookPrices[head] * clipped;
+            duration -= clipped;
+        }
+
+        if (duration <= 0) {
+            //No time has passed inside the window, the current price is the best we have
+            long current = topOfBookPrices[(head + size - 1) & mask];
+            return current == 0 ? Double.NaN : (double) current / 100;
+        }
+
+        //Division by 100 to bring the long representation into double based decimal
+        return priceSum / (duration * 100);
+    }
+
+    /**
+     * @return time weighted average accumulated quantity over the configured levels during the window
+     */
+    public double getTimeWeightedDepth() {
+        if (size == 0) {
+            return Double.NaN;
+        }
+
+        long clipped = clippedDuration();
+        long duration = lastTime - sampleTimes[head] - clipped;
+        if (duration <= 0) {
+            return depths[(head + size - 1) & mask];
+        }
+
+        return (weightedDepthSum - (double) depths[head] * clipped) / duration;
+    }
+
+    /**
+     * @return number of updates applied during the window, per unit of feed time
+     */
+    public double getUpdateRate() {
+        if (size == 0) {
+            return 0;
+        }
+        int updatesInWindow = sampleTimes[head] <= lastTime - windowLength ? size - 1 : size;
+        return (double) updatesInWindow / windowLength;
+    }
+
+    public int getDepthLevels() {
+        return depthLevels;
+    }
+
+    public long getWindowLength() {
+        return windowLength;
+    }
+
+    /**
+     * Forget all samples, e.g. when the book is reset
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+        weightedPriceSum = 0;
+        pricedDuration = 0;
+        weightedDepthSum = 0;
+        lastTime = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return the part of the oldest segment which lies before the start of the window
+     */
+    private long clippedDuration() {
+        long windowStart = lastTime - windowLength;
+        return sampleTimes[head] < windowStart ? windowStart - sampleTimes[head] : 0;
+    }
+
+    private void evictOldest() {
+        if (size > 1) {
+            int next = (head + 1) & mask;
+            addSegment(head, sampleTimes[next] - sampleTimes[head], -1);
+        } else {
+            weightedPriceSum = 0;
+            pricedDuration = 0;
+            weightedDepthSum = 0;
+        }
+        head = (head + 1) & mask;
+        size -= 1;
+    }
+
+    private void addSegment(int slot, long duration, int sign) {
+        if (topOfBookPrices[slot] != 0) {
+            weightedPriceSum += sign * (double) topOfBookPrices[slot] * duration;
+            pricedDuration += sign * duration;
+        }
+        weightedDepthSum += sign * (double) depths[slot] * duration;
+    }
+}
@@ -0,0 +1,240 @@
+package com.gsr.feed;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER_BYTE;
+import static com.gsr.data.Constants.LEVEL_DELIMITER_BYTE;
+import static com.gsr.data.Constants.MAX_VENUES;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER_BYTE;
+import static com.gsr.data.Constants.PRICE_QUANTITY_DELIMITER_BYTE;
+
+
+/**
+ * Parses the pipe delimited key=value format straight from a byte buffer into a pooled message. Only absolute gets
+ * are used, so the parser never moves the buffer and never creates Strings, arrays or boxed numbers. The level
+ * arrays of bulk messages live in the pooled messages, and only grow while the pool warms up. The parser holds no
+ * state and may be shared between threads.
+ */
+public class ByteMessageParser {
+
+    //Returned by the number parsers for anything but a well formed, non negative number
+    private static final long INVALID = -1;
+
+    private static final CcyPair[] PAIRS = CcyPair.nativePairs();
+    private static final byte[][] PAIR_NAMES = new byte[PAIRS.length][];
+
+    static {
+        for (int i = 0; i < PAIRS.length; i++) {
+            PAIR_NAMES[i] = PAIRS[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final ObjectPool<Message> messageObjectPool;
+
+    public ByteMessageParser(ObjectPool<Message> messageObjectPool) {
+        this.messageObjectPool = messageObjectPool;
+    }
+
+    /**
+     * @param buffer buffer holding the message
+     * @param start  index of the first byte of the message
+     * @param end    index one past the last byte of the message
+     * @return a message acquired from the pool, or null if this was a comment, an empty line, could not be parsed or
+     * lacks the pair, the side or what to do (a quantity or levels)
+     */
+    public Message parse(ByteBuffer buffer, int start, int end) {
+
+        if (start >= end || buffer.get(start) == '#') {
+            return null;
+        }
+
+        //Pooled messages remember their previous life, a line missing a field must not inherit it
+        Message message = messageObjectPool.acquireObject();
+        message.setType(null);
+        message.setPair(null);
+        message.setSide(null);
+        message.setTime(0);
+        message.setPrice(0);
+        message.setQuantity(0);
+        message.setVenue(0);
+        message.startLevels();
+
+        int fieldStart = start;
+        while (fieldStart < end) {
+            int fieldEnd = indexOf(buffer, MESSAGE_DELIMITER_BYTE, fieldStart, end);
+            int valueStart = indexOf(buffer, KEY_VALUE_DELIMITER_BYTE, fieldStart, fieldEnd) + 1;
+
+            //A snapshot without levels is valid, the venue shows nothing on the side any more
+            boolean empty = valueStart == fieldEnd && buffer.get(fieldStart) != 'r';
+            if (valueStart > fieldEnd || empty || !parseField(buffer.get(fieldStart), buffer, valueStart, fieldEnd, message)) {
+                //Malformed field -- don't let a half populated message into the book
+                messageObjectPool.returnObject(message);
+                return null;
+            }
+            fieldStart = fieldEnd + 1;
+        }
+
+        if (message.getType() == null || message.getPair() == null || message.getSide() == null) {
+            //Can't be routed to a book, or the book wouldn't know what to do with it
+            messageObjectPool.returnObject(message);
+            return null;
+        }
+        return message;
+    }
+
+    private boolean parseField(byte key, ByteBuffer buffer, int valueStart, int valueEnd, Message message) {
+        switch (key) {
+            case 't':
+                long time = parseLong(buffer, valueStart, valueEnd);
+                message.setTime(time);
+                return time != INVALID;
+            case 'i':
+                CcyPair pair = parsePair(buffer, valueStart, valueEnd);
+                message.setPair(pair);
+                return pair != null;
+            case 'p':
+                long price = parsePrice(buffer, valueStart, valueEnd);
+                message.setPrice(price);
+                return price != INVALID;
+            case 'q':
+                long quantity = parseLong(buffer, valueStart, valueEnd);
+                if (quantity == INVALID) {
+                    return false;
+                }
+                if (quantity == 0) {
+                    message.setType(MessageType.RemovePriceLevel);
+                } else {
+                    message.setType(MessageType.AddOrUpdatePriceLevel);
+                    message.setQuantity(quantity);
+                }
+                return true;
+            case 's':
+                message.setSide(buffer.get(valueStart) == 'b' ? Side.Bid : Side.Offer);
+                return true;
+            case 'v':
+                long venue = parseLong(buffer, valueStart, valueEnd);
+                message.setVenue((int) venue);
+                return venue >= 0 && venue < MAX_VENUES;
+            case 'l':
+                message.setType(MessageType.MultiLevelUpdate);
+                return parseLevels(buffer, valueStart, valueEnd, message);
+            case 'r':
+                message.setType(MessageType.Snapshot);
+                return parseLevels(buffer, valueStart, valueEnd, message);
+            default:
+                //Unknown fields are ignored, same as the String based serializer
+                return true;
+        }
+    }
+
+    /**
+     * Parses comma separated price:quantity pairs into the levels of a bulk message
+     */
+    private boolean parseLevels(ByteBuffer buffer, int start, int end, Message message) {
+        int levelStart = start;
+        while (levelStart < end) {
+            int levelEnd = indexOf(buffer, LEVEL_DELIMITER_BYTE, levelStart, end);
+            int quantityStart = indexOf(buffer, PRICE_QUANTITY_DELIMITER_BYTE, levelStart, levelEnd) + 1;
+            if (quantityStart >= levelEnd || quantityStart == levelStart + 1) {
+                return false;
+            }
+            long price = parsePrice(buffer, levelStart, quantityStart - 1);
+            long quantity = parseLong(buffer, quantityStart, levelEnd);
+            if (price == INVALID || quantity == INVALID) {
+                return false;
+            }
+            message.addLevel(price, quantity);
+            levelStart = levelEnd + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a whole number. Decimals are allowed as long as they are all zero, e.g. q=0.00, anything which would be
+     * lost by dropping them makes the number invalid rather than being truncated.
+     *
+     * @return the number, or INVALID if it has signs, stray bytes, non zero decimals or is too large
+     */
+    private long parseLong(ByteBuffer buffer, int start, int end) {
+        int point = indexOf(buffer, (byte) '.', start, end);
+        long result = parseDigits(buffer, start, point);
+        for (int i = point + 1; i < end && result != INVALID; i++) {
+            if (buffer.get(i) != '0') {
+                return INVALID;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * We do all representation with 2 decimals.
+     *
+     * @return long representing the price * 100, or INVALID if it isn't a well formed number with at most 2 decimals
+     */
+    private long parsePrice(ByteBuffer buffer, int start, int end) {
+        int point = indexOf(buffer, (byte) '.', start, end);
+        int decimals = point == end ? 0 : end - point - 1;
+        if (decimals > 2) {
+            return INVALID;
+        }
+
+        long whole = parseDigits(buffer, start, point);
+        long fraction = decimals == 0 ? 0 : parseDigits(buffer, point + 1, end);
+        if (whole == INVALID || fraction == INVALID || whole > Long.MAX_VALUE / 100 - 100) {
+            return INVALID;
+        }
+        return whole * 100 + (decimals == 1 ? fraction * 10 : fraction);
+    }
+
+    /**
+     * Helper method to parse a run of at least one decimal digit, nothing else
+     */
+    private static long parseDigits(ByteBuffer buffer, int start, int end) {
+        if (start >= end) {
+            return INVALID;
+        }
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            byte digit = buffer.get(i);
+            if (digit < '0' || digit > '9' || result > (Long.MAX_VALUE - 9) / 10) {
+                return INVALID;
+            }
+            result = result * 10 + (digit - '0');
+        }
+        return result;
+    }
+
+    private CcyPair parsePair(ByteBuffer buffer, int start, int end) {
+        for (int i = 0; i < PAIR_NAMES.length; i++) {
+            byte[] name = PAIR_NAMES[i];
+            if (name.length == end - start && matches(buffer, start, name)) {
+                return PAIRS[i];
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(ByteBuffer buffer, int start, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.get(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return end;
+    }
+}
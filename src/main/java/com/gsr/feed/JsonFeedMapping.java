@@ -0,0 +1,136 @@
+package com.gsr.feed;
+
+import com.gsr.data.CcyPair;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.gsr.data.Constants.MAX_VENUES;
+
+
+/**
+ * Where a venue puts the parts of its depth messages in JSON, for the {@link JsonFeedSerializer}. Most venues send an
+ * object with the symbol, the bids and the asks as fields, the levels being arrays of price and quantity, e.g.
+ * {"s":"BTCUSDT","E":1638848597,"b":[["32.99","1.5"]],"a":[]}. Field names are matched in nested objects too, so
+ * messages wrapped in an envelope such as {"stream":...,"data":{...}} need no extra configuration.
+ *
+ * Names are kept as bytes, so that they are compared straight against the wire. Configure the mapping before the
+ * serializer is used.
+ */
+public class JsonFeedMapping {
+
+    private final int venue;
+    private final byte[] symbolField;
+    private final byte[] bidsField;
+    private final byte[] asksField;
+    private byte[] timeField;
+    private byte[] snapshotField;
+    private byte[] snapshotValue;
+    private int quantityDecimals;
+    private byte[][] symbols = new byte[0][];
+    private CcyPair[] pairs = new CcyPair[0];
+
+    /**
+     * @param venue       venue the messages are applied for
+     * @param symbolField name of the field holding the venue's symbol for the instrument
+     * @param bidsField   name of the field holding the array of bid levels
+     * @param asksField   name of the field holding the array of ask levels
+     */
+    public JsonFeedMapping(int venue, String symbolField, String bidsField, String asksField) {
+        if (venue < 0 || venue >= MAX_VENUES) {
+            throw new IllegalArgumentException("Venue " + venue + " is out of range");
+        }
+        this.venue = venue;
+        this.symbolField = bytes(symbolField);
+        this.bidsField = bytes(bidsField);
+        this.asksField = bytes(asksField);
+    }
+
+    /**
+     * Map a symbol of the venue to one of the engine's pairs
+     */
+    public void addSymbol(String venueSymbol, CcyPair pair) {
+        if (pair.isImplied()) {
+            throw new IllegalArgumentException(pair + " is implied, its book is derived from the legs");
+        }
+        symbols = Arrays.copyOf(symbols, symbols.length + 1);
+        pairs = Arrays.copyOf(pairs, pairs.length + 1);
+        symbols[symbols.length - 1] = bytes(venueSymbol);
+        pairs[pairs.length - 1] = pair;
+    }
+
+    /**
+     * @param timeField name of the field holding the message time, a whole number. Messages without it get time 0.
+     */
+    public void setTimeField(String timeField) {
+        this.timeField = bytes(timeField);
+    }
+
+    /**
+     * Tell snapshots, which replace everything the venue showed on a side, from updates. Without this every message
+     * is an update.
+     *
+     * @param field name of the field, e.g. "type"
+     * @param value string value of the field in snapshots, e.g. "snapshot"
+     */
+    public void setSnapshotWhen(String field, String value) {
+        this.snapshotField = bytes(field);
+        this.snapshotValue = bytes(value);
+    }
+
+    /**
+     * @param quantityDecimals decimals of the venue's quantities kept in the engine's whole number quantities, e.g. 3
+     *                         to count in thousandths. Defaults to 0, the same as the text feed.
+     */
+    public void setQuantityDecimals(int quantityDecimals) {
+        this.quantityDecimals = quantityDecimals;
+    }
+
+    public int getVenue() {
+        return venue;
+    }
+
+    byte[] getSymbolField() {
+        return symbolField;
+    }
+
+    byte[] getBidsField() {
+        return bidsField;
+    }
+
+    byte[] getAsksField() {
+        return asksField;
+    }
+
+    byte[] getTimeField() {
+        return timeField;
+    }
+
+    byte[] getSnapshotField() {
+        return snapshotField;
+    }
+
+    byte[] getSnapshotValue() {
+        return snapshotValue;
+    }
+
+    int getQuantityDecimals() {
+        return quantityDecimals;
+    }
+
+    int getSymbolCount() {
+        return symbols.length;
+    }
+
+    byte[] getSymbol(int index) {
+        return symbols[index];
+    }
+
+    CcyPair getPair(int index) {
+        return pairs[index];
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,479 @@
+package com.gsr.feed;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.logging.EngineLogger;
+import com.gsr.logging.LogEvent;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+
+
+/**
+ * Serializer for venues which publish their depth as JSON, one message per line, e.g. behind a {@link NioFeedHandler}.
+ * The message is tokenized straight from the buffer in one pass, without building a tree and without creating
+ * Strings. The fields are found through the venue's {@link JsonFeedMapping}, and the bid and ask arrays are copied
+ * into the level arrays of two pooled messages, prices and quantities converted to fixed point on the way.
+ *
+ * A JSON message becomes a multi level update for each side with levels, or a snapshot of both sides. Messages
+ * without a symbol, such as subscription acknowledgements, are skipped. Fields which aren't mapped are skipped
+ * without looking inside, unless they are objects, where mapped fields are looked for too.
+ *
+ * Parsing keeps its state in fields, so a serializer must only be used from one thread, like the feed handlers do.
+ */
+public class JsonFeedSerializer implements MessageSerializer {
+
+    private static final int PRICE_DECIMALS = 2;
+    private static final int MAX_NESTING = 8;
+
+    private final Queue<Message> engineMessageQueue;
+    private final ObjectPool<Message> messageObjectPool;
+    private final JsonFeedMapping mapping;
+    private final long offerRetryCount;
+    private final long sleepTimeMillis;
+    private long nextSequence;
+    private ByteBuffer stringBuffer = ByteBuffer.allocate(1024);
+
+    //State of the message being parsed
+    private ByteBuffer buffer;
+    private int position;
+    private int end;
+    private int tokenStart;
+    private int tokenEnd;
+    private Message bids;
+    private Message asks;
+    private CcyPair pair;
+    private boolean symbolSeen;
+    private boolean snapshot;
+    private long time;
+
+    private long malformedMessages;
+    private long unmappedMessages;
+
+    public JsonFeedSerializer(Queue<Message> messageQueue, ObjectPool<Message> objectPool, JsonFeedMapping mapping, long retryCount, long waitTimeMillis) {
+        this.engineMessageQueue = messageQueue;
+        this.messageObjectPool = objectPool;
+        this.mapping = mapping;
+        this.offerRetryCount = retryCount;
+        this.sleepTimeMillis = waitTimeMillis;
+    }
+
+    /**
+     * Copies the message into a buffer kept for the purpose, and parses it from there. Characters outside ASCII can
+     * only be part of strings which aren't mapped, so they are not decoded.
+     */
+    @Override
+    public boolean onMessage(String message) {
+        int length = message.length();
+        if (stringBuffer.capacity() < length) {
+            stringBuffer = ByteBuffer.allocate(Math.max(length, stringBuffer.capacity() * 2));
+        }
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            stringBuffer.put(i, (byte) (c < 128 ? c : '?'));
+        }
+        return onMessage(stringBuffer, 0, length);
+    }
+
+    @Override
+    public boolean onMessage(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.position = start;
+        this.end = end;
+        this.pair = null;
+        this.symbolSeen = false;
+        this.snapshot = false;
+        this.time = 0;
+        this.bids = acquire();
+        this.asks = acquire();
+
+        try {
+            skipWhitespace();
+            if (position == end) {
+                messageObjectPool.returnObject(bids);
+                messageObjectPool.returnObject(asks);
+                return false;
+            }
+
+            boolean parsed = parseObject(0);
+            skipWhitespace();
+            if (!parsed || position != end) {
+                //Malformed message -- don't let half of it into the book
+                malformedMessages += 1;
+                EngineLogger.log(LogEvent.MalformedJson, position - start);
+                messageObjectPool.returnObject(bids);
+                messageObjectPool.returnObject(asks);
+                return false;
+            }
+
+            if (pair == null) {
+                if (symbolSeen) {
+                    unmappedMessages += 1;
+                    EngineLogger.log(LogEvent.UnmappedSymbol, mapping.getVenue());
+                }
+                messageObjectPool.returnObject(bids);
+                messageObjectPool.returnObject(asks);
+                return false;
+            }
+
+            //Not a short circuit or, both sides have to be published
+            return publish(bids, Side.Bid) | publish(asks, Side.Offer);
+        } finally {
+            this.buffer = null;
+            this.bids = null;
+            this.asks = null;
+        }
+    }
+
+    /**
+     * @return number of messages dropped because they were not valid JSON, or had levels which were not numbers
+     */
+    public long getMalformedMessages() {
+        return malformedMessages;
+    }
+
+    /**
+     * @return number of messages dropped because their symbol is not mapped to a pair
+     */
+    public long getUnmappedMessages() {
+        return unmappedMessages;
+    }
+
+    private Message acquire() {
+        Message message = messageObjectPool.acquireObject();
+        message.startLevels();
+        return message;
+    }
+
+    /**
+     * Helper method to send the levels of one side to the engine. A side without levels is only sent in a snapshot,
+     * where it means the venue shows nothing on that side any more.
+     */
+    private boolean publish(Message message, Side side) {
+        if (!snapshot && message.getLevelCount() == 0) {
+            messageObjectPool.returnObject(message);
+            return false;
+        }
+        message.setType(snapshot ? MessageType.Snapshot : MessageType.MultiLevelUpdate);
+        message.setPair(pair);
+        message.setSide(side);
+        message.setVenue(mapping.getVenue());
+        message.setTime(time);
+        return submit(message);
+    }
+
+    private boolean submit(Message message) {
+
+        message.setReceivedNanos(System.nanoTime());
+        message.setSequence(nextSequence++);
+
+        if (!engineMessageQueue.offer(message)) {
+            long currentRetryCount = offerRetryCount;
+
+            while (!engineMessageQueue.offer(message) && currentRetryCount > 0) {
+                EngineLogger.log(LogEvent.QueueFull);
+                try {
+                    Thread.sleep(sleepTimeMillis);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return false;
+                }
+                currentRetryCount -= 1;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean parseObject(int nesting) {
+        if (!consume('{')) {
+            return false;
+        }
+        skipWhitespace();
+        if (consume('}')) {
+            return true;
+        }
+        while (true) {
+            skipWhitespace();
+            if (!parseString()) {
+                return false;
+            }
+            int keyStart = tokenStart;
+            int keyEnd = tokenEnd;
+            skipWhitespace();
+            if (!consume(':')) {
+                return false;
+            }
+            skipWhitespace();
+            if (!parseFieldValue(keyStart, keyEnd, nesting)) {
+                return false;
+            }
+            skipWhitespace();
+            if (!consume(',')) {
+                return consume('}');
+            }
+        }
+    }
+
+    private boolean parseFieldValue(int keyStart, int keyEnd, int nesting) {
+        if (matches(keyStart, keyEnd, mapping.getBidsField())) {
+            return parseLevels(bids);
+        }
+        if (matches(keyStart, keyEnd, mapping.getAsksField())) {
+            return parseLevels(asks);
+        }
+        if (matches(keyStart, keyEnd, mapping.getSymbolField())) {
+            if (!parseString()) {
+                return false;
+            }
+            symbolSeen = true;
+            pair = lookupPair(tokenStart, tokenEnd);
+            return true;
+        }
+        if (matches(keyStart, keyEnd, mapping.getTimeField())) {
+            if (!parseScalar()) {
+                return false;
+            }
+            time = parseFixed(tokenStart, tokenEnd, 0);
+            return time >= 0;
+        }
+        if (matches(keyStart, keyEnd, mapping.getSnapshotField())) {
+            if (!parseScalar()) {
+                return false;
+            }
+            snapshot |= matches(tokenStart, tokenEnd, mapping.getSnapshotValue());
+            return true;
+        }
+        if (peek() == '{' && nesting < MAX_NESTING) {
+            return parseObject(nesting + 1);
+        }
+        return skipValue();
+    }
+
+    /**
+     * Parses an array of levels, each an array starting with the price and the quantity, as strings or as numbers.
+     * Anything after the quantity, such as an order count, is skipped.
+     */
+    private boolean parseLevels(Message message) {
+        if (!consume('[')) {
+            return false;
+        }
+        skipWhitespace();
+        if (consume(']')) {
+            return true;
+        }
+        while (true) {
+            skipWhitespace();
+            if (!consume('[')) {
+                return false;
+            }
+            skipWhitespace();
+            if (!parseScalar()) {
+                return false;
+            }
+            long price = parseFixed(tokenStart, tokenEnd, PRICE_DECIMALS);
+            skipWhitespace();
+            if (!consume(',')) {
+                return false;
+            }
+            skipWhitespace();
+            if (!parseScalar()) {
+                return false;
+            }
+            long quantity = parseFixed(tokenStart, tokenEnd, mapping.getQuantityDecimals());
+            if (price < 0 || quantity < 0) {
+                return false;
+            }
+            if (quantity == 0 && hasNonZeroDigit(tokenStart, tokenEnd)) {
+                //Less than the smallest quantity kept. Rounding it down would make it a delete.
+                quantity = 1;
+            }
+
+            skipWhitespace();
+            while (consume(',')) {
+                skipWhitespace();
+                if (!skipValue()) {
+                    return false;
+                }
+                skipWhitespace();
+            }
+            if (!consume(']')) {
+                return false;
+            }
+            message.addLevel(price, quantity);
+
+            skipWhitespace();
+            if (!consume(',')) {
+                return consume(']');
+            }
+        }
+    }
+
+    /**
+     * Parses a string, leaving its contents between tokenStart and tokenEnd. Escapes are stepped over, not decoded.
+     */
+    private boolean parseString() {
+        if (!consume('"')) {
+            return false;
+        }
+        tokenStart = position;
+        while (position < end) {
+            byte c = buffer.get(position);
+            if (c == '\\') {
+                position += 2;
+            } else if (c == '"') {
+                tokenEnd = position;
+                position += 1;
+                return true;
+            } else {
+                position += 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a string or a bare number or literal, leaving it between tokenStart and tokenEnd
+     */
+    private boolean parseScalar() {
+        if (peek() == '"') {
+            return parseString();
+        }
+        tokenStart = position;
+        while (position < end && isLiteral(buffer.get(position))) {
+            position += 1;
+        }
+        tokenEnd = position;
+        return tokenEnd > tokenStart;
+    }
+
+    /**
+     * Skips a value of any type, counting brackets rather than parsing what is inside them
+     */
+    private boolean skipValue() {
+        byte first = peek();
+        if (first == '"') {
+            return parseString();
+        }
+        if (first != '{' && first != '[') {
+            return parseScalar();
+        }
+
+        int depth = 0;
+        while (position < end) {
+            byte c = buffer.get(position);
+            if (c == '"') {
+                if (!parseString()) {
+                    return false;
+                }
+                continue;
+            }
+            position += 1;
+            if (c == '{' || c == '[') {
+                depth += 1;
+            } else if (c == '}' || c == ']') {
+                depth -= 1;
+                if (depth == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Converts a decimal number to fixed point. Further decimals are truncated.
+     *
+     * @return the number * 10^decimals, -1 if it is not a plain non negative decimal number
+     */
+    private long parseFixed(int start, int end, int decimals) {
+        if (start == end) {
+            return -1;
+        }
+        long result = 0;
+        int fraction = -1;
+        for (int i = start; i < end; i++) {
+            byte c = buffer.get(i);
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            if (fraction == decimals) {
+                continue;
+            }
+            result = result * 10 + (c - '0');
+            if (fraction >= 0) {
+                fraction += 1;
+            }
+        }
+        for (int i = Math.max(fraction, 0); i < decimals; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+
+    private boolean hasNonZeroDigit(int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte c = buffer.get(i);
+            if (c >= '1' && c <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CcyPair lookupPair(int start, int end) {
+        for (int i = 0; i < mapping.getSymbolCount(); i++) {
+            if (matches(start, end, mapping.getSymbol(i))) {
+                return mapping.getPair(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the bytes between start and end are the name, false if there is no name
+     */
+    private boolean matches(int start, int end, byte[] name) {
+        if (name == null || name.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.get(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean consume(char expected) {
+        if (position < end && buffer.get(position) == expected) {
+            position += 1;
+            return true;
+        }
+        return false;
+    }
+
+    private byte peek() {
+        return position < end ? buffer.get(position) : 0;
+    }
+
+    private void skipWhitespace() {
+        while (position < end) {
+            byte c = buffer.get(position);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                return;
+            }
+            position += 1;
+        }
+    }
+
+    private static boolean isLiteral(byte c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '.' || c == '-' || c == '+';
+    }
+}
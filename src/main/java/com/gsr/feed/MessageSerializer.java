@@ -1,6 +1,26 @@
 package com.gsr.feed;
 
+import java.nio.ByteBuffer;
+
 public interface MessageSerializer {
 
     boolean onMessage(String message);
+
+    /**
+     * Parse one framed message straight out of a buffer without turning it into a String first. The buffer position
+     * and limit are left untouched.
+     *
+     * @param buffer buffer holding the message
+     * @param start  index of the first byte of the message
+     * @param end    index one past the last byte of the message
+     * @return true if message was successfully submitted, else false
+     */
+    boolean onMessage(ByteBuffer buffer, int start, int end);
+
+    /**
+     * Called by feed handlers once they have passed on every message of a read, e.g. for a serializer which forwards
+     * the messages to flush them together
+     */
+    default void endOfBatch() {
+    }
 }
@@ -4,9 +4,16 @@ import com.gsr.data.CcyPair;
 import com.gsr.data.Message;
 import com.gsr.data.MessageType;
 import com.gsr.data.Side;
+import com.gsr.logging.EngineLogger;
+import com.gsr.logging.LogEvent;
 
+import java.nio.ByteBuffer;
 import java.util.Queue;
 
+import static com.gsr.data.Constants.LEVEL_DELIMITER;
+import static com.gsr.data.Constants.MAX_VENUES;
+import static com.gsr.data.Constants.PRICE_QUANTITY_DELIMITER;
+
 
 /**
  * Not sure if this was really necessary.  The engine needs some serializer mechanism. This one is stupid.
@@ -15,15 +22,18 @@ public class MessageSerializerImpl implements MessageSerializer {
 
     private final Queue<Message> engineMessageQueue;
     private final ObjectPool<Message> messageObjectPool;
+    private final ByteMessageParser byteMessageParser;
     private final String stringDelimiter;
     private final String valueDelimiter;
     private final long offerRetryCount;
     private final long sleepTimeMillis;
+    private long nextSequence;
 
     public MessageSerializerImpl(Queue<Message> messageQueue, ObjectPool<Message> objectPool, long retryCount, long waitTimeMillis, String delimiter, String keyValueDelimiter) {
 
         engineMessageQueue = messageQueue;
         messageObjectPool = objectPool;
+        byteMessageParser = new ByteMessageParser(objectPool);
         offerRetryCount = retryCount;
         sleepTimeMillis = waitTimeMillis;
         stringDelimiter = delimiter;
@@ -40,13 +50,36 @@ public class MessageSerializerImpl implements MessageSerializer {
         if (message == null) {
             return false;
         }
-        System.out.println("Parsed message: " + message);
+        EngineLogger.log(LogEvent.MessageParsed, EngineLogger.ordinal(message.getType()), EngineLogger.ordinal(message.getPair()),
+                EngineLogger.ordinal(message.getSide()), message.getQuantity(), message.getPrice());
+
+        return submit(message);
+    }
+
+    /**
+     * Byte level entry point for network feed handlers. Nothing is allocated or printed per message.
+     */
+    @Override
+    public boolean onMessage(ByteBuffer buffer, int start, int end) {
+
+        Message message = byteMessageParser.parse(buffer, start, end);
+        if (message == null) {
+            return false;
+        }
+
+        return submit(message);
+    }
+
+    private boolean submit(Message message) {
+
+        message.setReceivedNanos(System.nanoTime());
+        message.setSequence(nextSequence++);
 
         if (!engineMessageQueue.offer(message)) {
             long currentRetryCount = offerRetryCount;
 
             while (!engineMessageQueue.offer(message) && currentRetryCount > 0) {
-                System.out.println("ERROR: Queue is full.  What do I do now? Just wait?");
+                EngineLogger.log(LogEvent.QueueFull);
                 try {
                     Thread.sleep(sleepTimeMillis);
                 } catch (InterruptedException e) {
@@ -64,13 +97,15 @@ public class MessageSerializerImpl implements MessageSerializer {
     private Message deserialize(String msgToDeSerialize) {
 
         if(msgToDeSerialize.charAt(0) == '#'){
-            System.out.println("Comment ignored: ");
+            EngineLogger.log(LogEvent.CommentIgnored);
             return null;
         }
 
 
         String[] messageString = msgToDeSerialize.split(stringDelimiter);
         Message message = messageObjectPool.acquireObject();
+        message.setVenue(0);
+        message.startLevels();
 
         int ptr = 0;
 
@@ -81,7 +116,13 @@ public class MessageSerializerImpl implements MessageSerializer {
                     message.setTime(Long.parseLong(messageString[ptr].split(valueDelimiter)[1]));
                     break;
                 case 'i':
-                    message.setPair(CcyPair.valueOf(messageString[ptr].split(valueDelimiter)[1]));
+                    CcyPair pair = CcyPair.valueOf(messageString[ptr].split(valueDelimiter)[1]);
+                    if (pair.isImplied()) {
+                        EngineLogger.log(LogEvent.ImpliedPairOnFeed, EngineLogger.ordinal(pair));
+                        messageObjectPool.returnObject(message);
+                        return null;
+                    }
+                    message.setPair(pair);
                     break;
                 case 'p':
                     message.setPrice(parsePrice(messageString[ptr].split(valueDelimiter)[1]));
@@ -98,8 +139,25 @@ public class MessageSerializerImpl implements MessageSerializer {
                 case 's':
                     message.setSide(messageString[ptr].split(valueDelimiter)[1].equals("b") ? Side.Bid : Side.Offer);
                     break;
+                case 'v':
+                    int venue = Integer.parseInt(messageString[ptr].split(valueDelimiter)[1]);
+                    if (venue < 0 || venue >= MAX_VENUES) {
+                        EngineLogger.log(LogEvent.InvalidVenue, venue);
+                        messageObjectPool.returnObject(message);
+                        return null;
+                    }
+                    message.setVenue(venue);
+                    break;
+                case 'l':
+                    message.setType(MessageType.MultiLevelUpdate);
+                    parseLevels(messageString[ptr].split(valueDelimiter, 2)[1], message);
+                    break;
+                case 'r':
+                    message.setType(MessageType.Snapshot);
+                    parseLevels(messageString[ptr].split(valueDelimiter, 2)[1], message);
+                    break;
                 default:
-                    System.out.println("I don't understand this field " + messageString[ptr].charAt(0) + ". I will ignore it");
+                    EngineLogger.log(LogEvent.UnknownField, messageString[ptr].charAt(0));
             }
             ptr += 1;
         }
@@ -107,6 +165,20 @@ public class MessageSerializerImpl implements MessageSerializer {
         return message;
     }
 
+    /**
+     * Parse price:quantity pairs into the levels of a bulk message. Quantities are whole numbers, any decimals are
+     * ignored.
+     */
+    private void parseLevels(String levelsString, Message message) {
+        if (levelsString.isEmpty()) {
+            return;
+        }
+        for (String level : levelsString.split(LEVEL_DELIMITER)) {
+            String[] priceAndQuantity = level.split(PRICE_QUANTITY_DELIMITER);
+            message.addLevel(parsePrice(priceAndQuantity[0]), Long.parseLong(priceAndQuantity[1].split("\\.")[0]));
+        }
+    }
+
     /**
      * We do all representation with 2 decimals.
      * @param priceString string representation of price to parse
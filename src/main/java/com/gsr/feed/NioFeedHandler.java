@@ -0,0 +1,256 @@
+package com.gsr.feed;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+
+import static com.gsr.data.Constants.LINE_DELIMITER_BYTE;
+
+
+/**
+ * Feed handler which takes market data straight off TCP streams and UDP datagrams. One dedicated thread polls a
+ * selector and reads into direct buffers, messages are framed in place on newlines and the slices are handed to the
+ * serializer's byte level parser. Buffers are allocated once per channel, so nothing is allocated per message.
+ *
+ * TCP: the handler can accept connections from feed gateways, or connect out to them. A partial line at the end of a
+ * read is kept in the buffer until the rest of it arrives.
+ * UDP: each datagram holds one or more newline separated messages. The last message need not be newline terminated.
+ *
+ * Channels are configured before the handler is started. Connections accepted later are registered on the polling
+ * thread itself, so no locking is required at any time.
+ */
+public class NioFeedHandler {
+
+    private final MessageSerializer serializer;
+    private final int bufferSize;
+    private final boolean busySpin;
+    private final Selector selector;
+    private final ByteBuffer datagramBuffer;
+    private final Thread pollingThread;
+
+    private volatile boolean runningFlag;
+    private volatile long messagesReceived;
+    private volatile long framingErrors;
+
+    /**
+     * @param serializer serializer receiving the framed messages
+     * @param bufferSize size of the receive buffer of each channel, must hold at least one full message
+     * @param busySpin   true to spin on the selector, which gives the lowest latency but burns a core. Otherwise the
+     *                   thread parks in the selector until data arrives.
+     */
+    public NioFeedHandler(MessageSerializer serializer, int bufferSize, boolean busySpin) throws IOException {
+        this.serializer = serializer;
+        this.bufferSize = bufferSize;
+        this.busySpin = busySpin;
+        this.selector = Selector.open();
+        this.datagramBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.pollingThread = new Thread(this::pollChannels, "NIO Feed Handler");
+    }
+
+    /**
+     * Accept TCP connections from feed gateways on the given address
+     *
+     * @return the address actually bound, useful when binding to port 0
+     */
+    public InetSocketAddress bindTcp(InetSocketAddress address) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Connect out to a feed gateway which serves market data over TCP
+     */
+    public void connectTcp(InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        registerStream(channel);
+    }
+
+    /**
+     * Receive UDP datagrams on the given address
+     *
+     * @return the address actually bound, useful when binding to port 0
+     */
+    public InetSocketAddress bindUdp(InetSocketAddress address) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, bufferSize * 16);
+        channel.bind(address);
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    public void start() {
+        runningFlag = true;
+        pollingThread.start();
+    }
+
+    public void shutdown() {
+        System.out.println("Shutting down NIO Feed Handler");
+        runningFlag = false;
+        selector.wakeup();
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    /**
+     * @return number of lines dropped because they did not fit in the receive buffer
+     */
+    public long getFramingErrors() {
+        return framingErrors;
+    }
+
+    private void pollChannels() {
+        System.out.println("NIO Feed Handler Running");
+
+        try {
+            while (runningFlag) {
+                int ready = busySpin ? selector.selectNow() : selector.select();
+                if (ready == 0) {
+                    continue;
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        acceptConnection((ServerSocketChannel) key.channel());
+                    } else if (key.channel() instanceof DatagramChannel) {
+                        readDatagrams((DatagramChannel) key.channel());
+                    } else {
+                        readStream(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR: NIO Feed Handler failed, no more market data will be read");
+            e.printStackTrace();
+        } finally {
+            closeChannels();
+        }
+    }
+
+    private void acceptConnection(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel != null) {
+            registerStream(channel);
+        }
+    }
+
+    private void registerStream(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    private void readStream(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+
+        int read;
+        try {
+            read = channel.read(buffer);
+        } catch (IOException e) {
+            read = -1;
+        }
+
+        if (read < 0) {
+            //Gateway went away. Whatever partial line we hold is lost with it.
+            key.cancel();
+            closeQuietly(channel);
+            return;
+        }
+
+        int consumed = frameMessages(buffer, 0, buffer.position(), false);
+        serializer.endOfBatch();
+
+        if (consumed == 0 && !buffer.hasRemaining()) {
+            //A single line larger than the whole buffer. Nothing sensible to do but drop it.
+            framingErrors += 1;
+            buffer.clear();
+            return;
+        }
+
+        //Move the partial line we hold to the start of the buffer, ready for the next read
+        buffer.limit(buffer.position());
+        buffer.position(consumed);
+        buffer.compact();
+    }
+
+    private void readDatagrams(DatagramChannel channel) throws IOException {
+        SocketAddress sender = receive(channel);
+        while (sender != null) {
+            frameMessages(datagramBuffer, 0, datagramBuffer.position(), true);
+            sender = receive(channel);
+        }
+        serializer.endOfBatch();
+    }
+
+    private SocketAddress receive(DatagramChannel channel) throws IOException {
+        datagramBuffer.clear();
+        return channel.receive(datagramBuffer);
+    }
+
+    /**
+     * Find the newline delimited messages between start and end and pass them on to the serializer
+     *
+     * @param flushTail true if a trailing message without newline is complete, as is the case for datagrams
+     * @return index one past the last byte consumed
+     */
+    private int frameMessages(ByteBuffer buffer, int start, int end, boolean flushTail) {
+        int lineStart = start;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == LINE_DELIMITER_BYTE) {
+                deliver(buffer, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+
+        if (flushTail && lineStart < end) {
+            deliver(buffer, lineStart, end);
+            lineStart = end;
+        }
+        return lineStart;
+    }
+
+    private void deliver(ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end -= 1;
+        }
+        if (serializer.onMessage(buffer, start, end)) {
+            messagesReceived += 1;
+        }
+    }
+
+    private void closeChannels() {
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key.channel());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //Nothing more we can do about it
+        }
+    }
+}
@@ -1,36 +1,323 @@
 package com.gsr.feed;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import com.gsr.monitoring.EngineEvents;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 /**
- * This is an infinitly growing memory pool which can be accessed in a non blocking fashion as it is implemented
- * with an unbounded compare-and-swap based queue. The pool will only grow if it has run out of objects. Ideally
- * Users of the pool should return object once processing with them are completed.  This way references can be held,
- * propagated to the old generation and avoid being garbage collected.
+ * Bounded, preallocated object pool with per thread caches, which can be accessed in a non blocking fashion.
+ *
+ * Objects are held in a fixed size compare-and-swap based ring shared by all threads. Each thread keeps a small cache
+ * of its own in front of the ring, and only touches the ring once per batch: to refill the cache when it runs dry, or
+ * to hand a batch back when it overflows. A thread which only ever acquires (a serializer) and a thread which only
+ * ever returns (a book) therefore exchange objects in batches instead of contending on every single one.
+ *
+ * Nothing is allocated when an object moves in or out of the pool. The pool only creates new objects when it has run
+ * out (a miss), and if the ring is full when a batch is handed back, the surplus objects are discarded and left to the
+ * garbage collector. Preallocate enough objects up front and misses stay at zero in steady state, so references are
+ * held, propagated to the old generation and avoid being garbage collected.
+ *
+ * A thread which dies leaves its cache behind. Before counting a miss, and when a new thread first uses the pool, the
+ * pool hands the objects in the caches of dead threads back to the ring and forgets the caches, so threads coming and
+ * going (e.g. a pool of workers being resized) neither strand objects nor pile up caches.
+ *
+ * Counters for acquisitions, returns, misses and discards are kept so that hit rate and leaks (objects which are
+ * acquired but never returned) can be reported.
  *
  * @param <T> type of object to be held in pool
  */
 public class ObjectPool<T> {
 
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int DEFAULT_BATCH_SIZE = 64;
+
     private final ObjectInstantiator<T> objectCreator;
-    private final ConcurrentLinkedQueue<T> messagePool = new ConcurrentLinkedQueue<T>();
+    private final int batchSize;
+
+    //Bounded multi producer, multi consumer ring. Each slot carries a sequence telling whose turn it is.
+    private final int mask;
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final ThreadLocal<LocalCache<T>> localCache = ThreadLocal.withInitial(this::registerCache);
+    private final List<LocalCache<T>> caches = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    //Counters of the caches of dead threads, which are no longer registered
+    private final AtomicLong retiredAcquired = new AtomicLong();
+    private final AtomicLong retiredReturned = new AtomicLong();
 
     public ObjectPool(ObjectInstantiator<T> objectCreator) {
+        this(objectCreator, 0, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param objectCreator creates new objects when the pool runs out
+     * @param preallocate   number of objects to create up front
+     * @param capacity      maximum number of objects held by the shared ring, rounded up to the next power of two
+     * @param batchSize     number of objects moved between a thread cache and the shared ring at a time
+     */
+    public ObjectPool(ObjectInstantiator<T> objectCreator, int preallocate, int capacity, int batchSize) {
+        if (capacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Capacity and batch size must be positive");
+        }
+        int ringSize = Integer.highestOneBit(capacity);
+        if (ringSize < capacity) {
+            ringSize <<= 1;
+        }
+
         this.objectCreator = objectCreator;
+        this.batchSize = batchSize;
+        this.mask = ringSize - 1;
+        this.slots = new AtomicReferenceArray<>(ringSize);
+        this.sequences = new AtomicLongArray(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            sequences.set(i, i);
+        }
+
+        preallocate(preallocate);
     }
 
-    public T acquireObject(){
+    public T acquireObject() {
+        LocalCache<T> cache = localCache.get();
 
-        T instance = messagePool.poll();
-        if(instance == null){
-            instance =  objectCreator.newInstance();
+        if (cache.size == 0) {
+            refill(cache);
+            if (cache.size == 0 && reclaimDeadCaches()) {
+                refill(cache);
+            }
         }
+
+        T instance;
+        if (cache.size > 0) {
+            instance = cache.objects[--cache.size];
+            cache.objects[cache.size] = null;
+        } else {
+            instance = objectCreator.newInstance();
+            EngineEvents.poolMiss(instance.getClass(), misses.incrementAndGet());
+        }
+        cache.acquired += 1;
         return instance;
     }
 
-    public void returnObject(T instance){
-        messagePool.add(instance);
+    public void returnObject(T instance) {
+        LocalCache<T> cache = localCache.get();
+
+        if (cache.size == cache.objects.length) {
+            //Hand a batch back to the shared ring, so that other threads can have it
+            for (int i = 0; i < batchSize; i++) {
+                T surplus = cache.objects[--cache.size];
+                cache.objects[cache.size] = null;
+                if (!offer(surplus)) {
+                    discarded.incrementAndGet();
+                }
+            }
+        }
+
+        cache.objects[cache.size++] = instance;
+        cache.returned += 1;
+    }
+
+    /**
+     * Create objects and put them in the shared ring, e.g. during start up. Objects which don't fit are discarded.
+     *
+     * @param count number of objects to create
+     */
+    public void preallocate(int count) {
+        for (int i = 0; i < count; i++) {
+            if (!offer(objectCreator.newInstance())) {
+                discarded.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    public long getAcquired() {
+        long acquired = retiredAcquired.get();
+        for (LocalCache<T> cache : caches) {
+            acquired += cache.acquired;
+        }
+        return acquired;
     }
-}
 
+    public long getReturned() {
+        long returned = retiredReturned.get();
+        for (LocalCache<T> cache : caches) {
+            returned += cache.returned;
+        }
+        return returned;
+    }
+
+    /**
+     * @return number of acquisitions which found the pool empty and had to create a new object
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of returned objects which were dropped because the pool was full
+     */
+    public long getDiscarded() {
+        return discarded.get();
+    }
+
+    /**
+     * @return number of objects acquired but not returned. If this keeps growing in steady state, objects leak.
+     */
+    public long getOutstanding() {
+        return getAcquired() - getReturned();
+    }
+
+    /**
+     * @return share of acquisitions served from the pool, 1 if nothing has been acquired yet
+     */
+    public double getHitRate() {
+        long acquired = getAcquired();
+        return acquired == 0 ? 1 : (double) (acquired - getMisses()) / acquired;
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectPool{" +
+                "acquired=" + getAcquired() +
+                ", returned=" + getReturned() +
+                ", outstanding=" + getOutstanding() +
+                ", misses=" + getMisses() +
+                ", discarded=" + getDiscarded() +
+                ", hitRate=" + getHitRate() +
+                '}';
+    }
+
+    /**
+     * @return number of thread caches registered, dead threads' caches which haven't been reclaimed yet included
+     */
+    int getCacheCount() {
+        return caches.size();
+    }
+
+    private LocalCache<T> registerCache() {
+        //A new thread is a good time to let go of the caches of the ones which have gone
+        reclaimDeadCaches();
+        LocalCache<T> cache = new LocalCache<>(batchSize * 2, Thread.currentThread());
+        caches.add(cache);
+        return cache;
+    }
+
+    /**
+     * Helper method to refill a batch from the shared ring
+     */
+    private void refill(LocalCache<T> cache) {
+        T instance = poll();
+        while (instance != null) {
+            cache.objects[cache.size++] = instance;
+            if (cache.size == batchSize) {
+                break;
+            }
+            instance = poll();
+        }
+    }
+
+    /**
+     * Helper method to hand the objects cached by threads which have died back to the shared ring. A thread having
+     * terminated happens before isAlive returns false, so its cache can be read safely. The owner is cleared so only
+     * one thread reclaims a cache, which then moves its counters to the retired totals and unregisters it.
+     *
+     * @return whether any object was put back in the ring
+     */
+    private boolean reclaimDeadCaches() {
+        boolean reclaimed = false;
+        for (LocalCache<T> cache : caches) {
+            Thread owner = cache.owner.get();
+            if (owner == null || owner.isAlive() || !cache.owner.compareAndSet(owner, null)) {
+                continue;
+            }
+            while (cache.size > 0) {
+                T instance = cache.objects[--cache.size];
+                cache.objects[cache.size] = null;
+                if (offer(instance)) {
+                    reclaimed = true;
+                } else {
+                    discarded.incrementAndGet();
+                }
+            }
+            caches.remove(cache);
+            retiredAcquired.addAndGet(cache.acquired);
+            retiredReturned.addAndGet(cache.returned);
+        }
+        return reclaimed;
+    }
+
+    private boolean offer(T instance) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, instance);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                //Full
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private T poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T instance = slots.get(index);
+                    slots.lazySet(index, null);
+                    sequences.lazySet(index, position + mask + 1);
+                    return instance;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                //Empty
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Objects and counters owned by one thread. The counters are only written by the owner, and volatile so the
+     * statistics can be read from anywhere. The owner is cleared once the objects of a dead thread are reclaimed, just
+     * before the cache is dropped.
+     */
+    private static final class LocalCache<T> {
+        private final T[] objects;
+        private final AtomicReference<Thread> owner;
+        private int size;
+        private volatile long acquired;
+        private volatile long returned;
+
+        @SuppressWarnings("unchecked")
+        private LocalCache(int capacity, Thread owner) {
+            this.objects = (T[]) new Object[capacity];
+            this.owner = new AtomicReference<>(owner);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.gsr.feed;
+
+import com.gsr.data.Message;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.zip.GZIPInputStream;
+
+import static com.gsr.data.Constants.LINE_DELIMITER_BYTE;
+
+
+/**
+ * Loads large capture files on all cores. The calling thread reads the file, plain or gzip compressed, into line
+ * aligned chunks and hands them to a pool of workers, which parse them with the byte level parser. The parsed chunks
+ * are then handed on in file order, so every book side sees its messages in the order they were captured.
+ *
+ * Decompression can't be split, so it stays on the calling thread, but it is several times faster than parsing.
+ * A bounded number of chunks is in flight at once, and chunks are reused once handed on. Parsing on every core easily
+ * outruns the books applying the messages, so when the sink only queues them, give the ingest a count of the messages
+ * applied: it then stops handing on chunks while too many messages are waiting, and memory stays flat however large
+ * the file.
+ *
+ * Lines which don't parse, or don't name a pair and a side, are skipped.
+ */
+public class ParallelFileIngest implements AutoCloseable {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final long BACKLOG_WAIT_NANOS = 100_000;
+
+    private final ObjectPool<Message> messagePool;
+    private final ByteMessageParser parser;
+    private final Consumer<Message> sink;
+    private final LongSupplier appliedMessages;
+    private final long maxBacklog;
+    private final int chunkSize;
+    private final int maxChunksInFlight;
+    private final ExecutorService workers;
+    private final ArrayDeque<Chunk> freeChunks = new ArrayDeque<>();
+    private final ArrayDeque<Future<Chunk>> parsing = new ArrayDeque<>();
+
+    private long nextSequence;
+    private long messagesIngested;
+    private long linesSkipped;
+    private long backlogWaits;
+
+    /**
+     * Ingest into a sink which is done with each message when it returns, so there is no backlog to bound
+     *
+     * @param messagePool pool the messages are acquired from
+     * @param sink        receives the parsed messages in file order, on the calling thread
+     * @param workers     number of parsing threads
+     * @param chunkSize   bytes per chunk, a few hundred KB keeps the hand over cost negligible
+     */
+    public ParallelFileIngest(ObjectPool<Message> messagePool, Consumer<Message> sink, int workers, int chunkSize) {
+        this(messagePool, sink, workers, chunkSize, null, 0);
+    }
+
+    /**
+     * @param messagePool     pool the messages are acquired from
+     * @param sink            receives the parsed messages in file order, on the calling thread, e.g. the distributor's
+     *                        {@link com.gsr.engine.OrderBookDistributor#routeMarketData}
+     * @param workers         number of parsing threads
+     * @param chunkSize       bytes per chunk, a few hundred KB keeps the hand over cost negligible
+     * @param appliedMessages running count of the messages the books have applied, e.g. the sum of
+     *                        {@link com.gsr.engine.OrderBookProcessor#getMessagesApplied}, null not to bound the backlog
+     * @param maxBacklog      messages handed to the sink but not applied yet above which the ingest waits
+     */
+    public ParallelFileIngest(ObjectPool<Message> messagePool, Consumer<Message> sink, int workers, int chunkSize,
+                              LongSupplier appliedMessages, long maxBacklog) {
+        if (workers <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Workers and chunk size must be positive");
+        }
+        this.messagePool = messagePool;
+        this.parser = new ByteMessageParser(messagePool);
+        this.sink = sink;
+        this.appliedMessages = appliedMessages;
+        this.maxBacklog = maxBacklog;
+        this.chunkSize = chunkSize;
+        this.maxChunksInFlight = workers * 2;
+        this.workers = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "File Ingest Worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Load a file, gzip compressed files are recognised by their header
+     *
+     * @return number of messages handed to the sink
+     */
+    public long ingest(Path file) throws IOException {
+        try (InputStream stream = open(file)) {
+            return ingest(stream);
+        }
+    }
+
+    /**
+     * Load newline separated messages from a stream, which is not closed
+     *
+     * @return number of messages handed to the sink
+     */
+    public long ingest(InputStream stream) throws IOException {
+        long before = messagesIngested;
+        long appliedBefore = appliedMessages == null ? 0 : appliedMessages.getAsLong();
+        Chunk chunk = acquireChunk();
+        byte[] carry = new byte[0];
+        int carryLength = 0;
+
+        while (true) {
+            //Start the chunk with the partial line left over from the previous one
+            chunk.ensureCapacity(carryLength + chunkSize);
+            System.arraycopy(carry, 0, chunk.bytes, 0, carryLength);
+            int length = carryLength + readFully(stream, chunk.bytes, carryLength, chunkSize);
+            boolean endOfStream = length < carryLength + chunkSize;
+
+            int lineEnd = endOfStream ? length : lastIndexOf(chunk.bytes, LINE_DELIMITER_BYTE, length) + 1;
+            carryLength = length - lineEnd;
+            if (carry.length < carryLength) {
+                carry = new byte[Math.max(carryLength, carry.length * 2)];
+            }
+            System.arraycopy(chunk.bytes, lineEnd, carry, 0, carryLength);
+
+            if (lineEnd > 0) {
+                chunk.length = lineEnd;
+                submit(chunk, before, appliedBefore);
+                chunk = acquireChunk();
+            }
+            if (endOfStream) {
+                break;
+            }
+        }
+
+        freeChunks.add(chunk);
+        while (!parsing.isEmpty()) {
+            publishOldest(before, appliedBefore);
+        }
+        return messagesIngested - before;
+    }
+
+    public long getMessagesIngested() {
+        return messagesIngested;
+    }
+
+    /**
+     * @return number of comments, empty lines and lines which could not be parsed or had no pair or side
+     */
+    public long getLinesSkipped() {
+        return linesSkipped;
+    }
+
+    /**
+     * @return number of times the ingest waited for the books to catch up before handing on a chunk
+     */
+    public long getBacklogWaits() {
+        return backlogWaits;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private InputStream open(Path file) throws IOException {
+        InputStream stream = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        stream.mark(2);
+        int magic = stream.read() | stream.read() << 8;
+        stream.reset();
+        return magic == GZIP_MAGIC ? new GZIPInputStream(stream, 1 << 16) : stream;
+    }
+
+    /**
+     * Helper method to hand a chunk to the workers, first handing on the oldest parsed chunk if too many are in flight
+     */
+    private void submit(Chunk chunk, long ingestedBefore, long appliedBefore) throws IOException {
+        if (parsing.size() >= maxChunksInFlight) {
+            publishOldest(ingestedBefore, appliedBefore);
+        }
+        parsing.add(workers.submit(() -> parse(chunk)));
+    }
+
+    private void publishOldest(long ingestedBefore, long appliedBefore) throws IOException {
+        awaitBacklog(ingestedBefore, appliedBefore);
+        Chunk chunk;
+        try {
+            chunk = parsing.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while ingesting", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to parse chunk", e.getCause());
+        }
+
+        for (int i = 0; i < chunk.messageCount; i++) {
+            Message message = chunk.messages[i];
+            chunk.messages[i] = null;
+            message.setReceivedNanos(System.nanoTime());
+            message.setSequence(nextSequence++);
+            sink.accept(message);
+        }
+        messagesIngested += chunk.messageCount;
+        linesSkipped += chunk.linesSkipped;
+        freeChunks.add(chunk);
+    }
+
+    /**
+     * Helper method to wait until the books have applied enough of what this ingest handed them. Messages applied
+     * from other sources at the same time only make the backlog look smaller.
+     */
+    private void awaitBacklog(long ingestedBefore, long appliedBefore) throws IOException {
+        if (appliedMessages == null) {
+            return;
+        }
+        boolean waited = false;
+        while ((messagesIngested - ingestedBefore) - (appliedMessages.getAsLong() - appliedBefore) > maxBacklog) {
+            waited = true;
+            LockSupport.parkNanos(BACKLOG_WAIT_NANOS);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while ingesting");
+            }
+        }
+        if (waited) {
+            backlogWaits += 1;
+        }
+    }
+
+    /**
+     * Runs on a worker, the chunk is only touched by one thread at a time and the executor publishes it safely
+     */
+    private Chunk parse(Chunk chunk) {
+        ByteBuffer buffer = chunk.buffer;
+        chunk.messageCount = 0;
+        chunk.linesSkipped = 0;
+
+        int start = 0;
+        while (start < chunk.length) {
+            int end = indexOf(chunk.bytes, LINE_DELIMITER_BYTE, start, chunk.length);
+            int messageEnd = end > start && chunk.bytes[end - 1] == '\r' ? end - 1 : end;
+
+            Message message = parser.parse(buffer, start, messageEnd);
+            if (message == null) {
+                chunk.linesSkipped += 1;
+            } else {
+                chunk.add(message);
+            }
+            start = end + 1;
+        }
+        return chunk;
+    }
+
+    private Chunk acquireChunk() {
+        Chunk chunk = freeChunks.poll();
+        return chunk != null ? chunk : new Chunk(chunkSize);
+    }
+
+    private static int readFully(InputStream stream, byte[] target, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = stream.read(target, offset + total, length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte value, int end) {
+        for (int i = end - 1; i >= 0; i--) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Raw bytes of a run of whole lines, and the messages parsed from them
+     */
+    private static final class Chunk {
+
+        private byte[] bytes;
+        private ByteBuffer buffer;
+        private int length;
+        private Message[] messages = new Message[1024];
+        private int messageCount;
+        private int linesSkipped;
+
+        Chunk(int size) {
+            bytes = new byte[size];
+            buffer = ByteBuffer.wrap(bytes);
+        }
+
+        /**
+         * A line longer than a chunk makes the chunk grow, rather than splitting the line
+         */
+        void ensureCapacity(int size) {
+            if (bytes.length < size) {
+                bytes = Arrays.copyOf(bytes, size);
+                buffer = ByteBuffer.wrap(bytes);
+            }
+        }
+
+        void add(Message message) {
+            if (messageCount == messages.length) {
+                messages = Arrays.copyOf(messages, messageCount * 2);
+            }
+            messages[messageCount++] = message;
+        }
+    }
+}
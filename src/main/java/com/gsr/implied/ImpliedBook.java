@@ -0,0 +1,235 @@
+package com.gsr.implied;
+
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+
+/**
+ * One side of an implied pair's book, the top levels reachable by trading through its two legs. An ETHBTC bid sells
+ * ETH on the ETHUSD bids and buys BTC on the BTCUSD offers, so it is the base leg's bids over the quote leg's offers.
+ *
+ * The levels are found by walking down both legs at once. Each step trades the smaller of the two dollar amounts left
+ * at the current leg levels, which exhausts at least one of them, so every implied level has a price of its own. The
+ * state of the walk at the start of each implied level is kept. When a leg changes, the levels built only from leg
+ * levels above the first changed one stay as they are, and the walk resumes from the first level which isn't.
+ *
+ * Prices are in units of the quote leg's currency, BTC per ETH for ETHBTC, and quantities in units of the base leg's,
+ * so neither is a whole number of hundredths. Both are kept as doubles.
+ */
+class ImpliedBook {
+
+    private static final int NOT_CHANGED = Integer.MAX_VALUE;
+
+    private final CcyPair pair;
+    private final Side side;
+    private final int depth;
+    private final LegView baseLeg;
+    private final LegView quoteLeg;
+
+    private final double[] prices;
+    private final double[] quantities;
+    private int count;
+
+    //State of the walk at the start of each implied level, and one past the last
+    private final int[] startBaseLevel;
+    private final int[] startQuoteLevel;
+    private final double[] startBaseConsumed;
+    private final double[] startQuoteConsumed;
+
+    private long recomputedLevels;
+
+    ImpliedBook(CcyPair pair, Side side, int depth, LegPublisher baseLeg, LegPublisher quoteLeg) {
+        this.pair = pair;
+        this.side = side;
+        this.depth = depth;
+        this.baseLeg = new LegView(baseLeg);
+        this.quoteLeg = new LegView(quoteLeg);
+        this.prices = new double[depth];
+        this.quantities = new double[depth];
+        this.startBaseLevel = new int[depth + 1];
+        this.startQuoteLevel = new int[depth + 1];
+        this.startBaseConsumed = new double[depth + 1];
+        this.startQuoteConsumed = new double[depth + 1];
+    }
+
+    CcyPair getPair() {
+        return pair;
+    }
+
+    Side getSide() {
+        return side;
+    }
+
+    int getLevelCount() {
+        return count;
+    }
+
+    double getPrice(int level) {
+        return prices[level];
+    }
+
+    double getQuantity(int level) {
+        return quantities[level];
+    }
+
+    /**
+     * @return number of implied levels computed since the book was created, counting every recomputation
+     */
+    long getRecomputedLevels() {
+        return recomputedLevels;
+    }
+
+    /**
+     * Pick up the latest levels of both legs, and recompute the implied levels they affect
+     *
+     * @return whether either leg had changed
+     */
+    boolean refresh() {
+        int baseChanged = baseLeg.refresh();
+        int quoteChanged = quoteLeg.refresh();
+        if (baseChanged == NOT_CHANGED && quoteChanged == NOT_CHANGED) {
+            return false;
+        }
+
+        int level = 0;
+        while (level < count && startBaseLevel[level] < baseChanged && startQuoteLevel[level] < quoteChanged) {
+            level += 1;
+        }
+        walk(level);
+        return true;
+    }
+
+    /**
+     * Compute a query over the implied levels, the same way a native book side does. Queries deeper than the levels
+     * kept are computed over the levels kept.
+     *
+     * @return result of the query, NaN for the query types which need the book's history or venues
+     */
+    double compute(RequestType type, int levels) {
+        int walked = Math.min(levels, count);
+        double totalPrice = 0;
+        double totalQuantity = 0;
+        double totalPriceWeight = 0;
+        for (int i = 0; i < walked; i++) {
+            totalPrice += prices[i];
+            totalQuantity += quantities[i];
+            totalPriceWeight += prices[i] * quantities[i];
+        }
+
+        switch (type) {
+            case Vwap:
+                return totalPriceWeight / totalQuantity;
+            case AveragePrice:
+                return walked == 0 ? 0 : totalPrice / walked;
+            case AverageQuantity:
+                return totalQuantity;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Helper method to walk down both legs from the saved state at an implied level, to the depth or until a leg runs
+     * out of levels. The state at a level stays valid when the level before it does, as a walk only moves onto a
+     * changed leg level with nothing consumed from it yet.
+     */
+    private void walk(int level) {
+        long[] basePrices = baseLeg.prices;
+        long[] baseQuantities = baseLeg.quantities;
+        long[] quotePrices = quoteLeg.prices;
+        long[] quoteQuantities = quoteLeg.quantities;
+
+        int base = startBaseLevel[level];
+        int quote = startQuoteLevel[level];
+        double baseConsumed = startBaseConsumed[level];
+        double quoteConsumed = startQuoteConsumed[level];
+        int firstLevel = level;
+
+        while (level < depth && base < baseLeg.count && quote < quoteLeg.count) {
+            double basePrice = basePrices[base];
+            double quotePrice = quotePrices[quote];
+            double baseNotional = (baseQuantities[base] - baseConsumed) * basePrice;
+            double quoteNotional = (quoteQuantities[quote] - quoteConsumed) * quotePrice;
+            double notional = Math.min(baseNotional, quoteNotional);
+
+            prices[level] = basePrice / quotePrice;
+            quantities[level] = notional / basePrice;
+            level += 1;
+
+            if (baseNotional <= quoteNotional) {
+                base += 1;
+                baseConsumed = 0;
+            } else {
+                baseConsumed += notional / basePrice;
+            }
+            if (quoteNotional <= baseNotional) {
+                quote += 1;
+                quoteConsumed = 0;
+            } else {
+                quoteConsumed += notional / quotePrice;
+            }
+
+            startBaseLevel[level] = base;
+            startQuoteLevel[level] = quote;
+            startBaseConsumed[level] = baseConsumed;
+            startQuoteConsumed[level] = quoteConsumed;
+        }
+
+        count = level;
+        recomputedLevels += level - firstLevel;
+    }
+
+
+    /**
+     * Copy of the top levels of a leg, as of the last refresh, with the copy before it to find what changed
+     */
+    private static final class LegView {
+
+        private final LegPublisher publisher;
+        private long[] prices;
+        private long[] quantities;
+        private long[] previousPrices;
+        private long[] previousQuantities;
+        private int count;
+        private long version = -1;
+
+        private LegView(LegPublisher publisher) {
+            this.publisher = publisher;
+            this.prices = new long[publisher.getDepth()];
+            this.quantities = new long[publisher.getDepth()];
+            this.previousPrices = new long[publisher.getDepth()];
+            this.previousQuantities = new long[publisher.getDepth()];
+        }
+
+        /**
+         * @return index of the first level which differs from the last refresh, NOT_CHANGED if none does
+         */
+        private int refresh() {
+            long latest = publisher.getVersion();
+            if (latest == version) {
+                return NOT_CHANGED;
+            }
+            //The copy may be newer than the version, which at worst costs a refresh finding nothing changed
+            version = latest;
+
+            long[] swap = previousPrices;
+            previousPrices = prices;
+            prices = swap;
+            swap = previousQuantities;
+            previousQuantities = quantities;
+            quantities = swap;
+
+            int previousCount = count;
+            count = publisher.read(prices, quantities);
+
+            int common = Math.min(count, previousCount);
+            for (int i = 0; i < common; i++) {
+                if (prices[i] != previousPrices[i] || quantities[i] != previousQuantities[i]) {
+                    return i;
+                }
+            }
+            return count == previousCount ? NOT_CHANGED : common;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.gsr.implied;
+
+import com.gsr.analytics.BatchRequest;
+import com.gsr.analytics.Request;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+import com.gsr.engine.MarketDataListener;
+import com.gsr.monitoring.EngineEvents;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * Maintains the books of implied pairs, e.g. ETHBTC from ETHUSD and BTCUSD, on a thread of its own, and answers the
+ * analytics requests on them.
+ *
+ * The leg books publish their top levels through {@link LegPublisher}s, added to their market data listeners. The
+ * implied book thread polls the publishers, and recomputes only the implied levels which a leg change reaches, so a
+ * change deep in a leg costs little and one below the levels used costs nothing. Requests on implied pairs come from
+ * the {@link com.gsr.engine.OrderBookDistributor} like those on native pairs, and go back through its collector.
+ */
+public class ImpliedBookEngine {
+
+    private static final int SIDE_COUNT = Side.values().length;
+
+    private final int depth;
+    private final Map<CcyPair, Map<Side, LegPublisher>> legPublishers = new EnumMap<>(CcyPair.class);
+    private final Set<CcyPair> pairs = EnumSet.noneOf(CcyPair.class);
+    private final List<ImpliedBook> bookList = new ArrayList<>();
+    private final ImpliedBook[] booksBySlot = new ImpliedBook[CcyPair.values().length * SIDE_COUNT];
+    private final ConcurrentLinkedQueue<Request> requestQueue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Request> responseQueue = new ConcurrentLinkedQueue<>();
+
+    private ImpliedBook[] books = new ImpliedBook[0];
+    private Thread thread;
+    private volatile boolean runningFlag = true;
+    private volatile long bookUpdates;
+
+    /**
+     * @param depth number of levels kept for each implied book side, and taken from each leg
+     */
+    public ImpliedBookEngine(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Maintain both sides of an implied pair. Must be called before the leg books are launched, so that their
+     * listeners can be added.
+     */
+    public void addPair(CcyPair pair) {
+        if (!pair.isImplied()) {
+            throw new IllegalArgumentException(pair + " is not an implied pair");
+        }
+        if (!pairs.add(pair)) {
+            return;
+        }
+        //Selling the implied pair sells the base leg and buys the quote leg, buying it does the opposite
+        addBook(new ImpliedBook(pair, Side.Bid, depth, legPublisher(pair.getBaseLeg(), Side.Bid), legPublisher(pair.getQuoteLeg(), Side.Offer)));
+        addBook(new ImpliedBook(pair, Side.Offer, depth, legPublisher(pair.getBaseLeg(), Side.Offer), legPublisher(pair.getQuoteLeg(), Side.Bid)));
+    }
+
+    /**
+     * @return the implied pairs maintained
+     */
+    public Set<CcyPair> getPairs() {
+        return Collections.unmodifiableSet(pairs);
+    }
+
+    /**
+     * @return listener to add to the book side, null if no implied pair has it as a leg
+     */
+    public MarketDataListener listenerFor(CcyPair pair, Side side) {
+        Map<Side, LegPublisher> sides = legPublishers.get(pair);
+        return sides == null ? null : sides.get(side);
+    }
+
+    /**
+     * @return queue of requests and batch parts on the implied pairs, to be routed to by the distributor
+     */
+    public Queue<Request> getRequestQueue() {
+        return requestQueue;
+    }
+
+    /**
+     * @return queue the requests are answered on, to be collected by the distributor
+     */
+    public Queue<Request> getResponseQueue() {
+        return responseQueue;
+    }
+
+    public void start() {
+        thread = new Thread(() -> {
+            System.out.println("Implied Books Running " + pairs);
+            while (runningFlag) {
+                runOnce();
+            }
+        }, "Implied Books");
+        EngineEvents.registerQueue("Implied book requests", requestQueue);
+        thread.start();
+    }
+
+    /**
+     * Refresh every implied book side, then answer the waiting requests. Called in a loop by the implied book thread,
+     * or directly instead of starting it, from one thread only.
+     *
+     * @return whether there was anything to do
+     */
+    public boolean runOnce() {
+        if (books.length != bookList.size()) {
+            books = bookList.toArray(new ImpliedBook[0]);
+        }
+
+        boolean busy = false;
+        for (ImpliedBook book : books) {
+            if (book.refresh()) {
+                bookUpdates += 1;
+                busy = true;
+            }
+        }
+
+        Request request;
+        while ((request = requestQueue.poll()) != null) {
+            if (request instanceof BatchRequest.Part) {
+                serviceBatchPart((BatchRequest.Part) request);
+            } else {
+                ImpliedBook book = bookFor(request.getPair(), request.getSide());
+                if (book == null) {
+                    request.expire();
+                } else {
+                    request.populateResult(book.compute(request.getType(), request.getLevels()));
+                }
+            }
+            responseQueue.add(request);
+            busy = true;
+        }
+        return busy;
+    }
+
+    /**
+     * @return number of times an implied book side was recomputed because a leg changed
+     */
+    public long getBookUpdates() {
+        return bookUpdates;
+    }
+
+    /**
+     * @return number of implied levels computed across all book sides, read from the implied book thread or once it
+     *         has stopped
+     */
+    public long getRecomputedLevels() {
+        long total = 0;
+        for (ImpliedBook book : bookList) {
+            total += book.getRecomputedLevels();
+        }
+        return total;
+    }
+
+    /**
+     * Copy the levels of an implied book side. Read from the implied book thread or once it has stopped.
+     *
+     * @return number of levels copied, at most the length of the arrays
+     */
+    public int copyLevels(CcyPair pair, Side side, double[] prices, double[] quantities) {
+        ImpliedBook book = bookFor(pair, side);
+        if (book == null) {
+            return 0;
+        }
+        int count = Math.min(prices.length, book.getLevelCount());
+        for (int i = 0; i < count; i++) {
+            prices[i] = book.getPrice(i);
+            quantities[i] = book.getQuantity(i);
+        }
+        return count;
+    }
+
+    public void shutdown() {
+        runningFlag = false;
+        EngineEvents.unregisterQueue(requestQueue);
+    }
+
+    /**
+     * Helper method to answer the queries of a batch on one implied book side
+     */
+    private void serviceBatchPart(BatchRequest.Part part) {
+        ImpliedBook book = bookFor(part.getPair(), part.getSide());
+        if (book == null) {
+            part.expire();
+            return;
+        }
+        BatchRequest batch = part.getBatch();
+        for (int i = 0; i < part.getQueryCount(); i++) {
+            int query = part.getQuery(i);
+            batch.populateResult(query, book.compute(batch.getType(query), batch.getLevels(query)));
+        }
+        part.populateResult(part.getQueryCount());
+    }
+
+    private void addBook(ImpliedBook book) {
+        bookList.add(book);
+        booksBySlot[book.getPair().ordinal() * SIDE_COUNT + book.getSide().ordinal()] = book;
+    }
+
+    private ImpliedBook bookFor(CcyPair pair, Side side) {
+        return booksBySlot[pair.ordinal() * SIDE_COUNT + side.ordinal()];
+    }
+
+    /**
+     * Helper method to get the publisher of a leg's book side, shared by the implied books using it
+     */
+    private LegPublisher legPublisher(CcyPair pair, Side side) {
+        return legPublishers.computeIfAbsent(pair, p -> new EnumMap<>(Side.class))
+                .computeIfAbsent(side, s -> new LegPublisher(s, depth));
+    }
+}
@@ -0,0 +1,105 @@
+package com.gsr.implied;
+
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.engine.MarketDataListener;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.shm.Fences;
+
+
+/**
+ * Listener publishing the top levels of a leg's book side to the implied books built on it. Runs on the book thread.
+ *
+ * The same seqlock as the shared book file, over heap arrays: the version is made odd, the levels are copied in, and
+ * the version is made even again, with store fences in between. Updates below the published levels don't change what
+ * the implied books see, so those are skipped.
+ */
+public class LegPublisher implements MarketDataListener {
+
+    private final Side side;
+    private final int depth;
+    private final long[] prices;
+    private final long[] quantities;
+
+    private volatile long version;
+    private int levelCount;
+    private long publishedWorstPrice;
+
+    public LegPublisher(Side side, int depth) {
+        this.side = side;
+        this.depth = depth;
+        this.prices = new long[depth];
+        this.quantities = new long[depth];
+    }
+
+    @Override
+    public void onMessageApplied(OrderBookProcessor book, Message message) {
+        if (message.getType() == MessageType.ClearBook || changesPublishedLevels(message.getPrice())) {
+            publish(book);
+        }
+    }
+
+    /**
+     * Copy the top levels of the book. Only to be called from the order book thread.
+     */
+    public void publish(OrderBookProcessor book) {
+        long next = version + 1;
+        version = next;
+        Fences.storeFence();
+
+        levelCount = book.copyTopLevels(prices, quantities);
+        publishedWorstPrice = levelCount == 0 ? 0 : prices[levelCount - 1];
+
+        Fences.storeFence();
+        version = next + 1;
+    }
+
+    /**
+     * @return version of the published levels, even unless a copy is under way. Changes with every publish.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Copy the published levels, retrying until a copy is not torn by the book thread publishing at the same time
+     *
+     * @param targetPrices     array of at least the depth, filled from the top of the book
+     * @param targetQuantities array of at least the depth, for the quantities at the same indices
+     * @return number of levels copied
+     */
+    public int read(long[] targetPrices, long[] targetQuantities) {
+        while (true) {
+            long before = version;
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+
+            int count = levelCount;
+            System.arraycopy(prices, 0, targetPrices, 0, count);
+            System.arraycopy(quantities, 0, targetQuantities, 0, count);
+
+            Fences.loadFence();
+            if (version == before) {
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Helper method to tell whether an update at a price may have changed the published levels. With fewer levels than
+     * the depth published every level is visible, otherwise only prices up to the worst published one are.
+     */
+    private boolean changesPublishedLevels(long price) {
+        if (levelCount < depth) {
+            return true;
+        }
+        return side == Side.Bid ? price >= publishedWorstPrice : price <= publishedWorstPrice;
+    }
+}
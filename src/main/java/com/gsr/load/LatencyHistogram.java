@@ -0,0 +1,123 @@
+package com.gsr.load;
+
+import java.util.Arrays;
+
+
+/**
+ * Fixed size log linear histogram of latencies in nanoseconds.
+ *
+ * Every power of two range is split into 64 buckets, so recorded values are accurate to within about 1.6% over the
+ * whole range, from single nanoseconds up to hours, in some 30kB. Recording is a few shifts and an array increment,
+ * with no allocation.
+ *
+ * A histogram has a single writer. Read it once the writer is known to be done, or merge the histograms of several
+ * writers with {@link #add(LatencyHistogram)}.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long total;
+    private long max;
+
+    /**
+     * @param value latency to record. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)] += 1;
+        totalCount += 1;
+        total += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        total = 0;
+        max = 0;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) total / totalCount;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100
+     * @return the highest value in the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, highestValueOf(i));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "count=" + totalCount +
+                ", mean=" + (long) getMean() +
+                ", p50=" + getValueAtPercentile(50) +
+                ", p99=" + getValueAtPercentile(99) +
+                ", p99.9=" + getValueAtPercentile(99.9) +
+                ", p99.99=" + getValueAtPercentile(99.99) +
+                ", max=" + max +
+                '}';
+    }
+
+    /**
+     * Values below 64 get a bucket each. Above that, the bucket is given by the position of the highest bit and the
+     * six bits below it.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,373 @@
+package com.gsr.load;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.Side;
+import com.gsr.engine.*;
+import com.gsr.feed.MessageSerializer;
+import com.gsr.feed.MessageSerializerImpl;
+import com.gsr.feed.ObjectPool;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER;
+
+
+/**
+ * Soak and saturation harness. Drives a complete engine -- serializer, distributor and all book sides -- with a
+ * synthetic feed at a fixed target rate, and measures end to end latency from the feed to the book.
+ *
+ * Latency is measured from the time each message was meant to be sent according to the target rate, not from the
+ * time it actually was. When the engine stalls, the sender falls behind, and the messages it should have sent during
+ * the stall would have queued up behind it. Measuring from the actual send time hides exactly those (coordinated
+ * omission); measuring from the intended send time counts them. Both are reported, so the difference shows.
+ *
+ * Analytics requests are interleaved with the feed, and their round trip is measured the same way.
+ *
+ * A run reports throughput, latency percentiles, allocation by all threads, GC activity and the largest queue
+ * backlog seen. Run it at rising rates to find the saturation point:
+ *
+ *   java com.gsr.load.SoakHarness 50000,100000,200000 60 100
+ *
+ * for 60 seconds at each of the three rates, with one analytics request every 100 messages.
+ */
+public class SoakHarness {
+
+    private static final int INTENDED_TIMES_RING = 1 << 22;
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long targetRate;
+    private final long durationNanos;
+    private final int analyticsEvery;
+    private final SyntheticFeedGenerator generator;
+    private int burstSpeedup = 10;
+
+    /**
+     * @param targetRate      messages per second to send
+     * @param durationSeconds how long to send for
+     * @param analyticsEvery  send an analytics request every that many messages, 0 for none
+     * @param generator       feed to send
+     */
+    public SoakHarness(long targetRate, long durationSeconds, int analyticsEvery, SyntheticFeedGenerator generator) {
+        this.targetRate = targetRate;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        this.analyticsEvery = analyticsEvery;
+        this.generator = generator;
+    }
+
+    /**
+     * @param burstSpeedup factor by which the send rate goes up while the feed is in a burst
+     */
+    public void setBurstSpeedup(int burstSpeedup) {
+        this.burstSpeedup = burstSpeedup;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: SoakHarness <rates, comma separated> <seconds per rate> [analytics every n messages]");
+            return;
+        }
+        long seconds = Long.parseLong(args[1]);
+        int analyticsEvery = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        for (String rate : args[0].split(",")) {
+            SyntheticFeedGenerator generator = new SyntheticFeedGenerator(42, CcyPair.nativePairs());
+            SoakResult result = new SoakHarness(Long.parseLong(rate), seconds, analyticsEvery, generator).run();
+            System.out.println(result);
+        }
+    }
+
+    public SoakResult run() throws InterruptedException {
+        long[] intendedSendTimes = new long[INTENDED_TIMES_RING];
+        long[] intendedRequestTimes = new long[INTENDED_TIMES_RING];
+
+        //Engine, wired at the queue indices the distributor routes to
+        List<ConcurrentLinkedQueue<Message>> queues = new ArrayList<>(6);
+        List<ConcurrentLinkedQueue<Request>> requestQueues = new ArrayList<>(6);
+        List<ConcurrentLinkedQueue<Request>> responseQueues = new ArrayList<>(6);
+        for (int i = 0; i < 6; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+            requestQueues.add(new ConcurrentLinkedQueue<>());
+            responseQueues.add(new ConcurrentLinkedQueue<>());
+        }
+
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new, 1 << 16, 1 << 20, 64);
+        ConcurrentLinkedQueue<Message> distributorInboundQueue = new ConcurrentLinkedQueue<>();
+        MessageSerializer serializer = new MessageSerializerImpl(distributorInboundQueue, messagePool, 3, 100, MESSAGE_DELIMITER, KEY_VALUE_DELIMITER);
+        ConcurrentLinkedQueue<Request> analyticsRequestQueue = new ConcurrentLinkedQueue<>();
+        LinkedBlockingQueue<Request> analyticsResponseQueue = new LinkedBlockingQueue<>();
+        OrderBookDistributor distributor = new OrderBookDistributor(distributorInboundQueue, analyticsRequestQueue, queues, requestQueues, responseQueues, analyticsResponseQueue);
+
+        List<OrderBookProcessor> processors = new ArrayList<>(6);
+        List<LatencyRecorder> recorders = new ArrayList<>(6);
+        CcyPair[] pairs = {CcyPair.BTCUSD, CcyPair.ETHUSD, CcyPair.SOLUSD};
+        for (int i = 0; i < 6; i++) {
+            CcyPair pair = pairs[i / 2];
+            OrderBookProcessor processor = i % 2 == 0
+                    ? new OfferOrderBookProcessor(pair, messagePool, queues.get(i), requestQueues.get(i), responseQueues.get(i))
+                    : new BidOrderBookProcessor(pair, messagePool, queues.get(i), requestQueues.get(i), responseQueues.get(i));
+            LatencyRecorder recorder = new LatencyRecorder(intendedSendTimes);
+            processor.setMarketDataListener(recorder);
+            processors.add(processor);
+            recorders.add(recorder);
+        }
+        processors.forEach(OrderBookProcessor::launchOrderBookThread);
+
+        ResponseCollector responseCollector = new ResponseCollector(analyticsResponseQueue, intendedRequestTimes);
+        Thread collectorThread = new Thread(responseCollector, "Soak Response Collector");
+        collectorThread.start();
+
+        //Baselines for allocation and GC
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocatedBefore = allocatedBytes(threads);
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTimeMillis();
+
+        //Send at the target rate
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        long interval = TimeUnit.SECONDS.toNanos(1) / targetRate;
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        long nextReport = start + REPORT_INTERVAL_NANOS;
+        long intended = start;
+        long sent = 0;
+        long requestsSent = 0;
+        long maxBacklog = 0;
+
+        while (intended < end) {
+            long now = System.nanoTime();
+            while (now < intended) {
+                now = System.nanoTime();
+            }
+
+            buffer.clear();
+            generator.next(buffer);
+            intendedSendTimes[(int) (sent & (INTENDED_TIMES_RING - 1))] = intended;
+            if (serializer.onMessage(buffer, 0, buffer.position())) {
+                sent += 1;
+            }
+
+            if (analyticsEvery > 0 && sent % analyticsEvery == 0) {
+                int id = (int) requestsSent;
+                intendedRequestTimes[id & (INTENDED_TIMES_RING - 1)] = intended;
+                analyticsRequestQueue.add(new Request(id, 5, RequestType.values()[id % 3], Side.values()[id % 2], CcyPair.nativePairs()[id % 3]));
+                requestsSent += 1;
+            }
+
+            intended += generator.isInBurst() ? interval / burstSpeedup : interval;
+
+            if (now > nextReport) {
+                long backlog = backlog(distributorInboundQueue, queues);
+                maxBacklog = Math.max(maxBacklog, backlog);
+                System.out.println("Sent " + sent + ", applied " + applied(recorders) + ", backlog " + backlog
+                        + ", behind schedule " + TimeUnit.NANOSECONDS.toMicros(Math.max(0, now - intended)) + "us");
+                nextReport += REPORT_INTERVAL_NANOS;
+            }
+        }
+        long sendDuration = System.nanoTime() - start;
+
+        //Wait for the engine to catch up
+        long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        while ((applied(recorders) < sent || responseCollector.getReceived() < requestsSent) && System.nanoTime() < drainDeadline) {
+            Thread.sleep(1);
+        }
+        long engineDuration = System.nanoTime() - start;
+
+        SoakResult result = new SoakResult();
+        result.targetRate = targetRate;
+        result.messagesSent = sent;
+        result.messagesApplied = applied(recorders);
+        result.offeredRate = sent * TimeUnit.SECONDS.toNanos(1) / sendDuration;
+        result.throughput = result.messagesApplied * TimeUnit.SECONDS.toNanos(1) / engineDuration;
+        result.maxBacklog = maxBacklog;
+        result.allocatedBytes = allocatedBytes(threads) - allocatedBefore;
+        result.gcCount = gcCount() - gcCountBefore;
+        result.gcTimeMillis = gcTimeMillis() - gcTimeBefore;
+        result.poolMisses = messagePool.getMisses();
+        for (LatencyRecorder recorder : recorders) {
+            result.marketDataLatency.add(recorder.correctedLatency);
+            result.uncorrectedMarketDataLatency.add(recorder.uncorrectedLatency);
+        }
+        result.analyticsLatency.add(responseCollector.latency);
+
+        responseCollector.stop();
+        collectorThread.interrupt();
+        collectorThread.join();
+        distributor.shutdown();
+        processors.forEach(OrderBookProcessor::shutDownOrderBookThread);
+
+        return result;
+    }
+
+    private static long applied(List<LatencyRecorder> recorders) {
+        long applied = 0;
+        for (LatencyRecorder recorder : recorders) {
+            applied += recorder.applied;
+        }
+        return applied;
+    }
+
+    private static long backlog(ConcurrentLinkedQueue<Message> distributorInboundQueue, List<ConcurrentLinkedQueue<Message>> queues) {
+        long backlog = distributorInboundQueue.size();
+        for (ConcurrentLinkedQueue<Message> queue : queues) {
+            backlog += queue.size();
+        }
+        return backlog;
+    }
+
+    /**
+     * @return bytes allocated so far by all live threads, -1 if the JVM can't tell
+     */
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        long total = 0;
+        for (long allocated : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, allocated);
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTimeMillis() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    /**
+     * Records the latency of every applied message on the book thread. The histograms are only read once the applied
+     * count, written last, says the book is done.
+     */
+    private static final class LatencyRecorder implements MarketDataListener {
+        private final long[] intendedSendTimes;
+        private final LatencyHistogram correctedLatency = new LatencyHistogram();
+        private final LatencyHistogram uncorrectedLatency = new LatencyHistogram();
+        private volatile long applied;
+
+        private LatencyRecorder(long[] intendedSendTimes) {
+            this.intendedSendTimes = intendedSendTimes;
+        }
+
+        @Override
+        public void onMessageApplied(OrderBookProcessor book, Message message) {
+            long now = System.nanoTime();
+            correctedLatency.record(now - intendedSendTimes[(int) (message.getSequence() & (INTENDED_TIMES_RING - 1))]);
+            uncorrectedLatency.record(now - message.getReceivedNanos());
+            applied += 1;
+        }
+    }
+
+    /**
+     * Takes analytics responses off the engine and records their round trip from the intended send time
+     */
+    private static final class ResponseCollector implements Runnable {
+        private final LinkedBlockingQueue<Request> responseQueue;
+        private final long[] intendedRequestTimes;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private volatile long received;
+        private volatile boolean running = true;
+
+        private ResponseCollector(LinkedBlockingQueue<Request> responseQueue, long[] intendedRequestTimes) {
+            this.responseQueue = responseQueue;
+            this.intendedRequestTimes = intendedRequestTimes;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    Request response = responseQueue.take();
+                    latency.record(System.nanoTime() - intendedRequestTimes[response.getId() & (INTENDED_TIMES_RING - 1)]);
+                    received += 1;
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        long getReceived() {
+            return received;
+        }
+
+        void stop() {
+            running = false;
+        }
+    }
+
+    /**
+     * Outcome of a soak run
+     */
+    public static final class SoakResult {
+        private long targetRate;
+        private long offeredRate;
+        private long throughput;
+        private long messagesSent;
+        private long messagesApplied;
+        private long maxBacklog;
+        private long allocatedBytes;
+        private long gcCount;
+        private long gcTimeMillis;
+        private long poolMisses;
+        private final LatencyHistogram marketDataLatency = new LatencyHistogram();
+        private final LatencyHistogram uncorrectedMarketDataLatency = new LatencyHistogram();
+        private final LatencyHistogram analyticsLatency = new LatencyHistogram();
+
+        public long getThroughput() {
+            return throughput;
+        }
+
+        public long getMessagesApplied() {
+            return messagesApplied;
+        }
+
+        public LatencyHistogram getMarketDataLatency() {
+            return marketDataLatency;
+        }
+
+        public LatencyHistogram getAnalyticsLatency() {
+            return analyticsLatency;
+        }
+
+        /**
+         * @return whether the engine failed to keep up with the offered rate
+         */
+        public boolean isSaturated() {
+            return messagesApplied < messagesSent || throughput < offeredRate * 95 / 100;
+        }
+
+        @Override
+        public String toString() {
+            return "Target rate " + targetRate + "/s, offered " + offeredRate + "/s, throughput " + throughput + "/s"
+                    + (isSaturated() ? " -- SATURATED" : "") + "\n"
+                    + "  Messages sent " + messagesSent + ", applied " + messagesApplied + ", max backlog " + maxBacklog + "\n"
+                    + "  Market data latency (ns, from intended send time) " + marketDataLatency + "\n"
+                    + "  Market data latency (ns, from actual send time)   " + uncorrectedMarketDataLatency + "\n"
+                    + "  Analytics round trip (ns, from intended send time) " + analyticsLatency + "\n"
+                    + "  Allocated " + allocatedBytes + " bytes (" + (messagesSent == 0 ? 0 : allocatedBytes / messagesSent) + " per message)"
+                    + ", GCs " + gcCount + " taking " + gcTimeMillis + "ms, message pool misses " + poolMisses;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.gsr.load;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.gsr.data.Constants.*;
+
+
+/**
+ * Generator for realistic market data in the engine's text format.
+ *
+ * Every instrument has a mid price doing a random walk. Each book side keeps up to a configurable number of levels
+ * within that many ticks of the mid, which are added, updated and removed according to a configurable mix. Every now
+ * and then the feed goes into a burst, which a driver can use to send a run of messages back to back.
+ *
+ * Levels are placed relative to the mid when added, and the mid moves on. A level the mid has moved past is removed
+ * before anything else happens to the instrument, the way a venue pulls orders which would trade, so the books never
+ * cross.
+ *
+ * The generator keeps track of the levels it has created, so removes and updates always hit a live level, just like a
+ * real venue feed. It is seeded, so the same configuration always produces the same feed. Messages can be written
+ * straight into a buffer without allocating anything, so that generating load doesn't distort allocation measurements.
+ *
+ * Generators are not thread safe. Configure before generating the first message.
+ */
+public class SyntheticFeedGenerator {
+
+    private static final long START_TIME = 1_600_000_000L;
+    private static final int MAX_LINE_LENGTH = 128;
+    private static final Side[] SIDES = Side.values();
+
+    private final Random random;
+    private final CcyPair[] pairs;
+    private final byte[][] pairNames;
+    private final long[] midPrices;
+    private final ByteBuffer lineBuffer = ByteBuffer.allocate(MAX_LINE_LENGTH);
+    private final byte[] digits = new byte[20];
+
+    //Live level prices per book side, indexed by pair * 2 + side
+    private long[][] levels;
+    private int[] levelCounts;
+
+    private int depth = 20;
+    private long tickSize = 1;
+    private int maxTicksPerMove = 3;
+    private int addWeight = 35;
+    private int updateWeight = 45;
+    private int removeWeight = 20;
+    private long maxQuantity = 1000;
+    private double burstProbability = 0.001;
+    private int burstLength = 200;
+    private int messagesPerSecond = 1000;
+
+    private long messageCount;
+    private int burstRemaining;
+
+    /**
+     * @param seed  seed for the random generator
+     * @param pairs instruments to generate messages for, in round robin order
+     */
+    public SyntheticFeedGenerator(long seed, CcyPair... pairs) {
+        this.random = new Random(seed);
+        this.pairs = pairs.clone();
+        this.pairNames = new byte[pairs.length][];
+        this.midPrices = new long[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            pairNames[i] = pairs[i].name().getBytes(StandardCharsets.US_ASCII);
+            midPrices[i] = 100_000L * (i + 1);
+        }
+        allocateBooks();
+    }
+
+    /**
+     * @param depth maximum number of levels per book side. Levels are kept within this many ticks of the mid.
+     */
+    public void setDepth(int depth) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("Depth must be positive");
+        }
+        this.depth = depth;
+        allocateBooks();
+    }
+
+    /**
+     * Relative weights of the three kinds of update. Adds turn into updates when a book side is full, and removes and
+     * updates turn into adds when it is empty.
+     */
+    public void setUpdateMix(int addWeight, int updateWeight, int removeWeight) {
+        if (addWeight < 0 || updateWeight < 0 || removeWeight < 0 || addWeight + updateWeight + removeWeight == 0) {
+            throw new IllegalArgumentException("Weights must be non negative and not all zero");
+        }
+        this.addWeight = addWeight;
+        this.updateWeight = updateWeight;
+        this.removeWeight = removeWeight;
+    }
+
+    /**
+     * @param midPrice starting mid price of the instrument, times 100
+     */
+    public void setMidPrice(CcyPair pair, long midPrice) {
+        for (int i = 0; i < pairs.length; i++) {
+            if (pairs[i] == pair) {
+                midPrices[i] = midPrice;
+            }
+        }
+    }
+
+    /**
+     * @param tickSize        price increment, times 100
+     * @param maxTicksPerMove largest step of the mid price random walk, up or down, per message
+     */
+    public void setRandomWalk(long tickSize, int maxTicksPerMove) {
+        this.tickSize = tickSize;
+        this.maxTicksPerMove = maxTicksPerMove;
+    }
+
+    public void setMaxQuantity(long maxQuantity) {
+        this.maxQuantity = maxQuantity;
+    }
+
+    /**
+     * @param burstProbability chance of a burst starting at any message
+     * @param burstLength      number of messages in a burst
+     */
+    public void setBursts(double burstProbability, int burstLength) {
+        this.burstProbability = burstProbability;
+        this.burstLength = burstLength;
+    }
+
+    /**
+     * @param messagesPerSecond feed rate the message timestamps advance at
+     */
+    public void setMessagesPerSecond(int messagesPerSecond) {
+        this.messagesPerSecond = messagesPerSecond;
+    }
+
+    /**
+     * @return whether the last generated message is part of a burst
+     */
+    public boolean isInBurst() {
+        return burstRemaining > 0;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Write the next message into a buffer, without allocating
+     *
+     * @param target buffer to write the message to, at its position. The line delimiter is not written.
+     * @return number of bytes written
+     */
+    public int next(ByteBuffer target) {
+        int start = target.position();
+
+        if (burstRemaining > 0) {
+            burstRemaining -= 1;
+        } else if (random.nextDouble() < burstProbability) {
+            burstRemaining = burstLength;
+        }
+
+        int pair = (int) (messageCount % pairs.length);
+        Side side = random.nextBoolean() ? Side.Bid : Side.Offer;
+        midPrices[pair] = Math.max(depth * tickSize + tickSize, midPrices[pair] + (random.nextInt(2 * maxTicksPerMove + 1) - maxTicksPerMove) * tickSize);
+
+        //Levels the mid has moved past go first, whichever side they are on
+        int staleIndex = -1;
+        for (Side candidate : SIDES) {
+            staleIndex = findStaleLevel(pair * 2 + candidate.ordinal(), pair, candidate);
+            if (staleIndex >= 0) {
+                side = candidate;
+                break;
+            }
+        }
+        int book = pair * 2 + side.ordinal();
+
+        long price;
+        long quantity;
+        int operation = random.nextInt(addWeight + updateWeight + removeWeight);
+        if (staleIndex >= 0) {
+            price = levels[book][staleIndex];
+            levels[book][staleIndex] = levels[book][--levelCounts[book]];
+            quantity = 0;
+        } else if (levelCounts[book] == 0 || operation < addWeight && levelCounts[book] < depth) {
+            price = addLevel(book, pair, side);
+            quantity = 1 + nextQuantity();
+        } else if (operation < addWeight + updateWeight || removeWeight == 0) {
+            price = levels[book][random.nextInt(levelCounts[book])];
+            quantity = 1 + nextQuantity();
+        } else {
+            int index = random.nextInt(levelCounts[book]);
+            price = levels[book][index];
+            levels[book][index] = levels[book][--levelCounts[book]];
+            quantity = 0;
+        }
+
+        target.put((byte) 't').put(KEY_VALUE_DELIMITER_BYTE);
+        putLong(target, START_TIME + messageCount / messagesPerSecond);
+        target.put(MESSAGE_DELIMITER_BYTE).put((byte) 'i').put(KEY_VALUE_DELIMITER_BYTE).put(pairNames[pair]);
+        target.put(MESSAGE_DELIMITER_BYTE).put((byte) 'p').put(KEY_VALUE_DELIMITER_BYTE);
+        putLong(target, price / 100);
+        target.put((byte) '.').put((byte) ('0' + price % 100 / 10)).put((byte) ('0' + price % 10));
+        target.put(MESSAGE_DELIMITER_BYTE).put((byte) 'q').put(KEY_VALUE_DELIMITER_BYTE);
+        putLong(target, quantity);
+        target.put(MESSAGE_DELIMITER_BYTE).put((byte) 's').put(KEY_VALUE_DELIMITER_BYTE).put((byte) (side == Side.Bid ? 'b' : 's'));
+
+        messageCount += 1;
+        return target.position() - start;
+    }
+
+    /**
+     * @return the next message as a String
+     */
+    public String next() {
+        lineBuffer.clear();
+        int length = next(lineBuffer);
+        return new String(lineBuffer.array(), 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return the next count messages
+     */
+    public List<String> generate(int count) {
+        List<String> feed = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            feed.add(next());
+        }
+        return feed;
+    }
+
+    private void allocateBooks() {
+        levels = new long[pairs.length * 2][depth];
+        levelCounts = new int[pairs.length * 2];
+    }
+
+    /**
+     * Helper method to pick a free price within depth ticks of the mid, on the right side of it
+     */
+    private long addLevel(int book, int pair, Side side) {
+        while (true) {
+            long offset = (1 + random.nextInt(depth)) * tickSize;
+            long price = side == Side.Bid ? midPrices[pair] - offset : midPrices[pair] + offset;
+            if (!isLive(book, price)) {
+                levels[book][levelCounts[book]++] = price;
+                return price;
+            }
+        }
+    }
+
+    /**
+     * Helper method to find a level at or beyond the mid, i.e. on the wrong side of it
+     *
+     * @return index of the level, -1 if there is none
+     */
+    private int findStaleLevel(int book, int pair, Side side) {
+        long mid = midPrices[pair];
+        for (int i = 0; i < levelCounts[book]; i++) {
+            if (side == Side.Bid ? levels[book][i] >= mid : levels[book][i] <= mid) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isLive(int book, long price) {
+        for (int i = 0; i < levelCounts[book]; i++) {
+            if (levels[book][i] == price) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long nextQuantity() {
+        return (long) (random.nextDouble() * maxQuantity);
+    }
+
+    private void putLong(ByteBuffer target, long value) {
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (length > 0) {
+            target.put(digits[--length]);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.gsr.logging;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Asynchronous, garbage free logger for the engine hot path.
+ *
+ * Logging threads record a fixed format event with up to six raw long arguments into a ring buffer owned by the
+ * thread itself. Nothing is formatted, allocated or synchronized on the logging thread -- the ring is created once on
+ * the first event of each thread. A single background thread drains the rings, formats the events and writes them.
+ *
+ * Events below the current level are discarded at the call site after one volatile read, so debug events cost next to
+ * nothing when disabled. The level can be changed at any time. If a ring is full the event is dropped and counted.
+ *
+ * The initial level and ring size can be set with the gsr.log.level and gsr.log.ringSize system properties.
+ */
+public final class EngineLogger {
+
+    private static final LogEvent[] EVENTS = LogEvent.values();
+    private static final int RING_SIZE = Integer.getInteger("gsr.log.ringSize", 4096);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final List<LogRing> rings = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<LogRing> threadRing = ThreadLocal.withInitial(EngineLogger::registerRing);
+    private static final AtomicLong droppedByFinishedThreads = new AtomicLong();
+
+    private static volatile int level = LogLevel.valueOf(System.getProperty("gsr.log.level", LogLevel.Info.name())).ordinal();
+    private static volatile PrintStream output = System.out;
+
+    static {
+        Thread writerThread = new Thread(EngineLogger::writeEvents, "Engine Logger");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private EngineLogger() {
+    }
+
+    public static void setLevel(LogLevel newLevel) {
+        level = newLevel.ordinal();
+    }
+
+    public static LogLevel getLevel() {
+        return LogLevel.values()[level];
+    }
+
+    public static boolean isEnabled(LogLevel eventLevel) {
+        return eventLevel.ordinal() >= level;
+    }
+
+    public static void setOutput(PrintStream newOutput) {
+        output = newOutput;
+    }
+
+    /**
+     * @return number of events dropped over the lifetime of the logger because a ring buffer was full
+     */
+    public static long getDroppedEvents() {
+        long dropped = droppedByFinishedThreads.get();
+        for (LogRing ring : rings) {
+            dropped += ring.getDroppedEvents();
+        }
+        return dropped;
+    }
+
+    /**
+     * Helper to record enums as arguments
+     *
+     * @return ordinal of the value, -1 if null
+     */
+    public static long ordinal(Enum<?> value) {
+        return value == null ? -1 : value.ordinal();
+    }
+
+    public static void log(LogEvent event) {
+        log(event, 0, 0, 0, 0, 0, 0);
+    }
+
+    public static void log(LogEvent event, long a0) {
+        log(event, a0, 0, 0, 0, 0, 0);
+    }
+
+    public static void log(LogEvent event, long a0, long a1) {
+        log(event, a0, a1, 0, 0, 0, 0);
+    }
+
+    public static void log(LogEvent event, long a0, long a1, long a2) {
+        log(event, a0, a1, a2, 0, 0, 0);
+    }
+
+    public static void log(LogEvent event, long a0, long a1, long a2, long a3) {
+        log(event, a0, a1, a2, a3, 0, 0);
+    }
+
+    public static void log(LogEvent event, long a0, long a1, long a2, long a3, long a4) {
+        log(event, a0, a1, a2, a3, a4, 0);
+    }
+
+    public static void log(LogEvent event, long a0, long a1, long a2, long a3, long a4, long a5) {
+        if (event.getLevel().ordinal() < level) {
+            return;
+        }
+        threadRing.get().offer(event, a0, a1, a2, a3, a4, a5);
+    }
+
+    private static LogRing registerRing() {
+        LogRing ring = new LogRing(RING_SIZE, Thread.currentThread());
+        rings.add(ring);
+        return ring;
+    }
+
+    /**
+     * Main loop of the background writer. Drains every ring, writes whatever was formatted in one go, and parks for a
+     * short while if there was nothing to do.
+     */
+    private static void writeEvents() {
+        StringBuilder sb = new StringBuilder(1024);
+
+        while (true) {
+            int drained = 0;
+            for (LogRing ring : rings) {
+                drained += ring.drain(sb, EVENTS);
+
+                if (!ring.isOwnerAlive() && ring.isEmpty()) {
+                    //The thread is gone, keep its drop count but let go of the ring
+                    droppedByFinishedThreads.addAndGet(ring.getDroppedEvents());
+                    rings.remove(ring);
+                }
+            }
+
+            if (drained == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+
+            PrintStream out = output;
+            out.print(sb);
+            out.flush();
+            sb.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.gsr.logging;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+
+/**
+ * How a raw long argument of a log event is rendered. Enums are recorded by ordinal, -1 meaning null.
+ */
+public enum LogArgument {
+
+    Pair {
+        @Override
+        void render(StringBuilder sb, long value) {
+            sb.append(value < 0 ? "null" : CcyPair.values()[(int) value].name());
+        }
+    },
+    BookSide {
+        @Override
+        void render(StringBuilder sb, long value) {
+            sb.append(value < 0 ? "null" : Side.values()[(int) value].name());
+        }
+    },
+    Type {
+        @Override
+        void render(StringBuilder sb, long value) {
+            sb.append(value < 0 ? "null" : MessageType.values()[(int) value].name());
+        }
+    },
+    Price {
+        @Override
+        void render(StringBuilder sb, long value) {
+            //Long representation holds 2 decimals
+            if (value < 0) {
+                sb.append('-');
+                value = -value;
+            }
+            long decimals = value % 100;
+            sb.append(value / 100).append('.');
+            if (decimals < 10) {
+                sb.append('0');
+            }
+            sb.append(decimals);
+        }
+    },
+    Number {
+        @Override
+        void render(StringBuilder sb, long value) {
+            sb.append(value);
+        }
+    },
+    Character {
+        @Override
+        void render(StringBuilder sb, long value) {
+            sb.append((char) value);
+        }
+    };
+
+    abstract void render(StringBuilder sb, long value);
+}
@@ -0,0 +1,70 @@
+package com.gsr.logging;
+
+/**
+ * Fixed format log events. Only the event and its raw arguments are recorded on the logging thread, the template is
+ * filled in later by the background writer. Each {} in the template is replaced by the next argument.
+ */
+public enum LogEvent {
+
+    MessageParsed(LogLevel.Debug, "Parsed message: Message{type={}, pair={}, side={}, quantity={}, price={}}",
+            LogArgument.Type, LogArgument.Pair, LogArgument.BookSide, LogArgument.Number, LogArgument.Price),
+    CommentIgnored(LogLevel.Debug, "Comment ignored"),
+    UnknownField(LogLevel.Info, "I don't understand this field {}. I will ignore it", LogArgument.Character),
+    InvalidVenue(LogLevel.Warn, "Venue {} is out of range, message dropped", LogArgument.Number),
+    ImpliedPairOnFeed(LogLevel.Warn, "Market data for implied pair {} dropped, its book is derived from the legs",
+            LogArgument.Pair),
+    MalformedJson(LogLevel.Warn, "Malformed JSON feed message, parsing stopped at byte {}, message dropped",
+            LogArgument.Number),
+    UnmappedSymbol(LogLevel.Info, "JSON feed message for a symbol venue {} has no pair mapped for, message dropped",
+            LogArgument.Number),
+    QueueFull(LogLevel.Warn, "Queue is full, waiting to retry the message"),
+    PriceLevelAdded(LogLevel.Debug, "Added to book: [{}] side: [{}] price: [{}] Quantity: [{}]",
+            LogArgument.Pair, LogArgument.BookSide, LogArgument.Price, LogArgument.Number),
+    PriceLevelRemoved(LogLevel.Debug, "Removed from book: [{}] side: [{}] price: [{}]",
+            LogArgument.Pair, LogArgument.BookSide, LogArgument.Price),
+    BookCleared(LogLevel.Info, "Cleared book: [{}] side: [{}]", LogArgument.Pair, LogArgument.BookSide),
+    LevelsApplied(LogLevel.Debug, "Applied {} to book: [{}] side: [{}] venue: [{}] levels: [{}]",
+            LogArgument.Type, LogArgument.Pair, LogArgument.BookSide, LogArgument.Number, LogArgument.Number),
+    BookMoved(LogLevel.Info, "Moving book: [{}] side: [{}] from Book Worker {} to Book Worker {}",
+            LogArgument.Pair, LogArgument.BookSide, LogArgument.Number, LogArgument.Number),
+    StaleBookMove(LogLevel.Warn, "Move of book: [{}] side: [{}] dropped, the worker on thread {} neither holds it nor expects it",
+            LogArgument.Pair, LogArgument.BookSide, LogArgument.Number),
+    PartitionLinkLost(LogLevel.Error, "Lost the feed connection to partition {}, its market data is dropped from now on",
+            LogArgument.Number);
+
+    private final LogLevel level;
+    private final String template;
+    private final LogArgument[] arguments;
+
+    LogEvent(LogLevel level, String template, LogArgument... arguments) {
+        this.level = level;
+        this.template = template;
+        this.arguments = arguments;
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Render the event into the builder
+     *
+     * @param sb      builder to append to
+     * @param records raw event records
+     * @param offset  index of the first argument of this event in the records
+     */
+    void format(StringBuilder sb, long[] records, int offset) {
+        int argument = 0;
+        int length = template.length();
+        for (int i = 0; i < length; i++) {
+            char c = template.charAt(i);
+            if (c == '{' && i + 1 < length && template.charAt(i + 1) == '}' && argument < arguments.length) {
+                arguments[argument].render(sb, records[offset + argument]);
+                argument += 1;
+                i += 1;
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+}
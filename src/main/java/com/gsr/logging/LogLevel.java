@@ -0,0 +1,8 @@
+package com.gsr.logging;
+
+public enum LogLevel {
+    Debug,
+    Info,
+    Warn,
+    Error
+}
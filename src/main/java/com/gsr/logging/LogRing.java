@@ -0,0 +1,103 @@
+package com.gsr.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Single producer, single consumer ring of fixed size binary log records. The producer is the thread owning the ring,
+ * the consumer is the background writer. Records are plain longs in a preallocated array, so recording an event
+ * never allocates. If the writer falls behind and the ring is full, the event is dropped and counted.
+ */
+class LogRing {
+
+    static final int MAX_ARGUMENTS = 6;
+
+    //Event ordinal, wall clock millis, then the arguments
+    static final int RECORD_LONGS = 2 + MAX_ARGUMENTS;
+
+    private final long[] records;
+    private final int capacity;
+    private final int mask;
+    private final Thread owner;
+    private final String threadName;
+
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    LogRing(int requestedCapacity, Thread owner) {
+        int ringSize = Integer.highestOneBit(Math.max(requestedCapacity, 2));
+        if (ringSize < requestedCapacity) {
+            ringSize <<= 1;
+        }
+        this.capacity = ringSize;
+        this.mask = ringSize - 1;
+        this.records = new long[ringSize * RECORD_LONGS];
+        this.owner = owner;
+        this.threadName = owner.getName();
+    }
+
+    /**
+     * Called by the owning thread only
+     *
+     * @return false if the ring was full and the event was dropped
+     */
+    boolean offer(LogEvent event, long a0, long a1, long a2, long a3, long a4, long a5) {
+        long producer = producerIndex.get();
+        if (producer - consumerIndex.get() >= capacity) {
+            droppedEvents.lazySet(droppedEvents.get() + 1);
+            return false;
+        }
+
+        int base = (int) (producer & mask) * RECORD_LONGS;
+        records[base] = event.ordinal();
+        records[base + 1] = System.currentTimeMillis();
+        records[base + 2] = a0;
+        records[base + 3] = a1;
+        records[base + 4] = a2;
+        records[base + 5] = a3;
+        records[base + 6] = a4;
+        records[base + 7] = a5;
+
+        //Publish the record to the writer
+        producerIndex.lazySet(producer + 1);
+        return true;
+    }
+
+    /**
+     * Called by the background writer only. Formats all pending records into the builder.
+     *
+     * @return number of records drained
+     */
+    int drain(StringBuilder sb, LogEvent[] events) {
+        long consumer = consumerIndex.get();
+        long producer = producerIndex.get();
+
+        for (long i = consumer; i < producer; i++) {
+            int base = (int) (i & mask) * RECORD_LONGS;
+            LogEvent event = events[(int) records[base]];
+
+            sb.append(records[base + 1]).append(' ')
+                    .append(event.getLevel().name()).append(" [")
+                    .append(threadName).append("] ");
+            event.format(sb, records, base + 2);
+            sb.append(System.lineSeparator());
+        }
+
+        //Hand the slots back to the producer
+        consumerIndex.lazySet(producer);
+        return (int) (producer - consumer);
+    }
+
+    boolean isEmpty() {
+        return producerIndex.get() == consumerIndex.get();
+    }
+
+    boolean isOwnerAlive() {
+        return owner.isAlive();
+    }
+
+    long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+}
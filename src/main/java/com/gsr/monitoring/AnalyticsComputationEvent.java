@@ -0,0 +1,31 @@
+package com.gsr.monitoring;
+
+import jdk.jfr.*;
+
+@Name("com.gsr.AnalyticsComputation")
+@Label("Analytics Computation")
+@Category({"GSR Engine", "Analytics"})
+@Description("An analytics request serviced by a book side")
+@StackTrace(false)
+final class AnalyticsComputationEvent extends Event {
+
+    @Label("Currency Pair")
+    String pair;
+
+    @Label("Side")
+    String side;
+
+    @Label("Request Type")
+    String requestType;
+
+    @Label("Levels")
+    int levels;
+
+    @Label("Cache Hit")
+    @Description("Served from the book's calculation cache rather than computed")
+    boolean cacheHit;
+
+    @Label("Computation Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long computationDuration;
+}
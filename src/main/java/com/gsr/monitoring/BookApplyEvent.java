@@ -0,0 +1,29 @@
+package com.gsr.monitoring;
+
+import jdk.jfr.*;
+
+@Name("com.gsr.BookApply")
+@Label("Book Apply Batch")
+@Category({"GSR Engine", "Book"})
+@Description("A batch of market data applied to one side of a book")
+@StackTrace(false)
+final class BookApplyEvent extends Event {
+
+    @Label("Currency Pair")
+    String pair;
+
+    @Label("Side")
+    String side;
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Batch Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long batchDuration;
+
+    @Label("Oldest Message Age")
+    @Description("Time the first message of the batch spent between the serializer and the book")
+    @Timespan(Timespan.NANOSECONDS)
+    long oldestAge;
+}
@@ -0,0 +1,115 @@
+package com.gsr.monitoring;
+
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * Entry point for the engine's JDK Flight Recorder events. The engine only ever talks to this class, which doesn't
+ * touch any JFR type itself, so the engine still runs on JVMs without JFR.
+ *
+ * Events are emitted when JFR is present and not switched off with -Dgsr.jfr=false. Whether they are recorded is up to
+ * the recording settings, e.g. -XX:StartFlightRecording. None of the events take stack traces, and as long as nobody
+ * records them an emit comes down to a flag check, so they are cheap enough to leave on.
+ *
+ * Queues registered here are sampled for their depth once a second while a recording is running.
+ */
+public final class EngineEvents {
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("gsr.jfr")) && isFlightRecorderAvailable();
+
+    private static final List<QueueProbe> queues = new CopyOnWriteArrayList<>();
+
+    static {
+        if (ENABLED) {
+            FlightRecorderEvents.registerQueueDepthSampler(queues);
+        }
+    }
+
+    private EngineEvents() {
+    }
+
+    /**
+     * A batch of market data was applied to a book side
+     */
+    public static void bookApply(CcyPair pair, Side side, int batchSize, long durationNanos, long oldestAgeNanos) {
+        if (ENABLED) {
+            FlightRecorderEvents.bookApply(pair.name(), side.name(), batchSize, durationNanos, oldestAgeNanos);
+        }
+    }
+
+    /**
+     * @return whether analytics computations are being recorded. Timing them costs a clock read either side, so callers
+     * check this first.
+     */
+    public static boolean isAnalyticsComputationEnabled() {
+        return ENABLED && FlightRecorderEvents.isAnalyticsComputationEnabled();
+    }
+
+    /**
+     * An analytics request was computed, or served from the book's calculation cache
+     */
+    public static void analyticsComputation(CcyPair pair, Side side, RequestType type, int levels, boolean cacheHit, long durationNanos) {
+        if (ENABLED) {
+            FlightRecorderEvents.analyticsComputation(pair.name(), side.name(), type.name(), levels, cacheHit, durationNanos);
+        }
+    }
+
+    /**
+     * An object pool ran out and had to create an object
+     */
+    public static void poolMiss(Class<?> objectType, long totalMisses) {
+        if (ENABLED) {
+            FlightRecorderEvents.poolMiss(objectType.getName(), totalMisses);
+        }
+    }
+
+    /**
+     * Sample the depth of a queue while recording
+     *
+     * @param hop   name of the hop the queue sits on, e.g. "BTCUSD-Bid market data"
+     * @param queue queue to sample. Size must be safe to call from another thread.
+     */
+    public static void registerQueue(String hop, Queue<?> queue) {
+        queues.add(new QueueProbe(hop, queue));
+    }
+
+    public static void unregisterQueue(Queue<?> queue) {
+        queues.removeIf(p -> p.getQueue() == queue);
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Registered queue with the name it is reported under
+     */
+    static final class QueueProbe {
+        private final String hop;
+        private final Queue<?> queue;
+
+        private QueueProbe(String hop, Queue<?> queue) {
+            this.hop = hop;
+            this.queue = queue;
+        }
+
+        String getHop() {
+            return hop;
+        }
+
+        Queue<?> getQueue() {
+            return queue;
+        }
+    }
+}
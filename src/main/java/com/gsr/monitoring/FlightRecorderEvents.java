@@ -0,0 +1,73 @@
+package com.gsr.monitoring;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+import java.util.List;
+
+
+/**
+ * The only class which creates JFR events. It is loaded on first use, so only once {@link EngineEvents} has made sure
+ * JFR is available.
+ */
+final class FlightRecorderEvents {
+
+    private static final EventType BOOK_APPLY = EventType.getEventType(BookApplyEvent.class);
+    private static final EventType ANALYTICS_COMPUTATION = EventType.getEventType(AnalyticsComputationEvent.class);
+
+    private FlightRecorderEvents() {
+    }
+
+    static void registerQueueDepthSampler(List<EngineEvents.QueueProbe> queues) {
+        FlightRecorder.addPeriodicEvent(QueueDepthEvent.class, () -> {
+            for (EngineEvents.QueueProbe probe : queues) {
+                QueueDepthEvent event = new QueueDepthEvent();
+                event.hop = probe.getHop();
+                event.depth = probe.getQueue().size();
+                event.commit();
+            }
+        });
+    }
+
+    static void bookApply(String pair, String side, int batchSize, long durationNanos, long oldestAgeNanos) {
+        //Checked first so that the book thread doesn't create an event object per batch while nobody is recording
+        if (!BOOK_APPLY.isEnabled()) {
+            return;
+        }
+        BookApplyEvent event = new BookApplyEvent();
+        if (event.shouldCommit()) {
+            event.pair = pair;
+            event.side = side;
+            event.batchSize = batchSize;
+            event.batchDuration = durationNanos;
+            event.oldestAge = oldestAgeNanos;
+            event.commit();
+        }
+    }
+
+    static boolean isAnalyticsComputationEnabled() {
+        return ANALYTICS_COMPUTATION.isEnabled();
+    }
+
+    static void analyticsComputation(String pair, String side, String type, int levels, boolean cacheHit, long durationNanos) {
+        AnalyticsComputationEvent event = new AnalyticsComputationEvent();
+        if (event.shouldCommit()) {
+            event.pair = pair;
+            event.side = side;
+            event.requestType = type;
+            event.levels = levels;
+            event.cacheHit = cacheHit;
+            event.computationDuration = durationNanos;
+            event.commit();
+        }
+    }
+
+    static void poolMiss(String objectType, long totalMisses) {
+        PoolMissEvent event = new PoolMissEvent();
+        if (event.shouldCommit()) {
+            event.objectType = objectType;
+            event.totalMisses = totalMisses;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.gsr.monitoring;
+
+import jdk.jfr.*;
+
+@Name("com.gsr.PoolMiss")
+@Label("Object Pool Miss")
+@Category({"GSR Engine", "Memory"})
+@Description("An object pool was empty and a new object had to be allocated")
+@StackTrace(false)
+final class PoolMissEvent extends Event {
+
+    @Label("Object Type")
+    String objectType;
+
+    @Label("Total Misses")
+    @Description("Misses of the pool so far, including this one")
+    long totalMisses;
+}
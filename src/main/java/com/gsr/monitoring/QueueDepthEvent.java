@@ -0,0 +1,18 @@
+package com.gsr.monitoring;
+
+import jdk.jfr.*;
+
+@Name("com.gsr.QueueDepth")
+@Label("Queue Depth")
+@Category({"GSR Engine", "Queues"})
+@Description("Number of items waiting on a hop between engine threads")
+@Period("1 s")
+@StackTrace(false)
+final class QueueDepthEvent extends Event {
+
+    @Label("Hop")
+    String hop;
+
+    @Label("Depth")
+    int depth;
+}
@@ -0,0 +1,83 @@
+package com.gsr.partition;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static com.gsr.data.Constants.LINE_DELIMITER_BYTE;
+
+
+/**
+ * Connection to the feed port of one partition's engine. Lines are gathered in a direct buffer and written out when
+ * the buffer is full or flushed. The channel blocks, so a partition which falls behind slows the gateway down rather
+ * than losing market data.
+ *
+ * A failed write kills the link: what was buffered is dropped with the connection, and later lines are refused
+ * without touching the socket.
+ */
+class FeedLink {
+
+    private final SocketChannel channel;
+    private final ByteBuffer output;
+    private boolean dirty;
+    private boolean dead;
+
+    FeedLink(InetSocketAddress address, int bufferSize) throws IOException {
+        this.channel = SocketChannel.open(address);
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.output = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Buffer a line, with its newline, copied with absolute gets so the source buffer is left untouched
+     *
+     * @return false if the line is larger than the whole buffer, or the link is dead
+     */
+    boolean append(ByteBuffer buffer, int start, int end) throws IOException {
+        int length = end - start + 1;
+        if (dead || length > output.capacity()) {
+            return false;
+        }
+        if (output.remaining() < length) {
+            flush();
+        }
+        for (int i = start; i < end; i++) {
+            output.put(buffer.get(i));
+        }
+        output.put(LINE_DELIMITER_BYTE);
+        dirty = true;
+        return true;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * @return true once a write has failed. The link stays dead, nothing more is sent on it.
+     */
+    boolean isDead() {
+        return dead;
+    }
+
+    void flush() throws IOException {
+        output.flip();
+        try {
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+        } catch (IOException e) {
+            dead = true;
+            throw e;
+        } finally {
+            output.clear();
+            dirty = false;
+        }
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
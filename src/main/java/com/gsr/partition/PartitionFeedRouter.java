@@ -0,0 +1,196 @@
+package com.gsr.partition;
+
+import com.gsr.data.CcyPair;
+import com.gsr.feed.MessageSerializer;
+import com.gsr.logging.EngineLogger;
+import com.gsr.logging.LogEvent;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER_BYTE;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER_BYTE;
+
+
+/**
+ * Serializer of the gateway in a partitioned deployment. Rather than parsing messages for a local engine, it finds the
+ * instrument of each message and forwards the message, unchanged, to the engine process of the partition owning the
+ * instrument. Each engine parses only its own instruments, and applies them with the single writer model as before.
+ *
+ * Only the i= field is looked at. Messages are gathered per partition, and each partition which got any is flushed
+ * once at the end of a feed handler's read. Used by one thread, like any serializer.
+ */
+public class PartitionFeedRouter implements MessageSerializer, AutoCloseable {
+
+    private static final CcyPair[] PAIRS = CcyPair.nativePairs();
+    private static final byte[][] PAIR_NAMES = new byte[PAIRS.length][];
+
+    static {
+        for (int i = 0; i < PAIRS.length; i++) {
+            PAIR_NAMES[i] = PAIRS[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final PartitionMap partitionMap;
+    private final FeedLink[] links;
+    private ByteBuffer stringBuffer = ByteBuffer.allocate(1024);
+
+    private long messagesRouted;
+    private long unroutedMessages;
+    private long droppedMessages;
+
+    /**
+     * @param feedAddresses address of the feed port of each partition's engine, by partition
+     * @param bufferSize    size of the send buffer of each partition, must hold at least one full message
+     */
+    public PartitionFeedRouter(PartitionMap partitionMap, InetSocketAddress[] feedAddresses, int bufferSize) throws IOException {
+        if (feedAddresses.length != partitionMap.getPartitionCount()) {
+            throw new IllegalArgumentException("One feed address is needed for each partition");
+        }
+        this.partitionMap = partitionMap;
+        this.links = new FeedLink[feedAddresses.length];
+        for (int i = 0; i < feedAddresses.length; i++) {
+            links[i] = new FeedLink(feedAddresses[i], bufferSize);
+        }
+    }
+
+    /**
+     * Copies the message into a buffer kept for the purpose, and routes it from there
+     */
+    @Override
+    public boolean onMessage(String message) {
+        int length = message.length();
+        if (stringBuffer.capacity() < length) {
+            stringBuffer = ByteBuffer.allocate(Math.max(length, stringBuffer.capacity() * 2));
+        }
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            stringBuffer.put(i, (byte) (c < 128 ? c : '?'));
+        }
+        return onMessage(stringBuffer, 0, length);
+    }
+
+    @Override
+    public boolean onMessage(ByteBuffer buffer, int start, int end) {
+        if (start >= end || buffer.get(start) == '#') {
+            return false;
+        }
+
+        CcyPair pair = findPair(buffer, start, end);
+        int partition = pair == null ? -1 : partitionMap.partitionOf(pair);
+        if (partition < 0) {
+            unroutedMessages += 1;
+            return false;
+        }
+
+        try {
+            if (!links[partition].append(buffer, start, end)) {
+                droppedMessages += 1;
+                return false;
+            }
+        } catch (IOException e) {
+            linkLost(partition);
+            droppedMessages += 1;
+            return false;
+        }
+        messagesRouted += 1;
+        return true;
+    }
+
+    /**
+     * Flush every partition which was sent something since the last flush
+     */
+    @Override
+    public void endOfBatch() {
+        for (int i = 0; i < links.length; i++) {
+            if (links[i].isDirty()) {
+                try {
+                    links[i].flush();
+                } catch (IOException e) {
+                    linkLost(i);
+                }
+            }
+        }
+    }
+
+    public long getMessagesRouted() {
+        return messagesRouted;
+    }
+
+    /**
+     * @return number of messages without an instrument, or for an instrument no partition owns
+     */
+    public long getUnroutedMessages() {
+        return unroutedMessages;
+    }
+
+    /**
+     * @return number of messages lost because they didn't fit in a send buffer, or their partition's connection failed.
+     * Messages still in the send buffer when the connection failed are not counted.
+     */
+    public long getDroppedMessages() {
+        return droppedMessages;
+    }
+
+    @Override
+    public void close() throws IOException {
+        endOfBatch();
+        for (FeedLink link : links) {
+            link.close();
+        }
+    }
+
+    /**
+     * Helper method to report a partition's connection failing. The link is dead from then on and refuses messages
+     * without any I/O, so this happens once per partition.
+     */
+    private void linkLost(int partition) {
+        //The partition's engine is gone, nothing it owns can be applied any more
+        EngineLogger.log(LogEvent.PartitionLinkLost, partition);
+    }
+
+    /**
+     * Helper method to find the pair named by the i= field
+     */
+    private CcyPair findPair(ByteBuffer buffer, int start, int end) {
+        int fieldStart = start;
+        while (fieldStart < end) {
+            int fieldEnd = indexOf(buffer, MESSAGE_DELIMITER_BYTE, fieldStart, end);
+            if (buffer.get(fieldStart) == 'i' && fieldStart + 1 < fieldEnd && buffer.get(fieldStart + 1) == KEY_VALUE_DELIMITER_BYTE) {
+                return matchPair(buffer, fieldStart + 2, fieldEnd);
+            }
+            fieldStart = fieldEnd + 1;
+        }
+        return null;
+    }
+
+    private CcyPair matchPair(ByteBuffer buffer, int start, int end) {
+        for (int i = 0; i < PAIR_NAMES.length; i++) {
+            byte[] name = PAIR_NAMES[i];
+            if (name.length == end - start && matches(buffer, start, name)) {
+                return PAIRS[i];
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(ByteBuffer buffer, int start, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.get(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,46 @@
+package com.gsr.partition;
+
+import com.gsr.data.CcyPair;
+
+import java.util.Arrays;
+
+
+/**
+ * Which engine process owns which instruments, in a partitioned deployment. Both sides of a pair belong to the same
+ * partition, so each book side still has a single writer. An implied pair belongs to the partition owning both of its
+ * legs, as its books are derived from them in process.
+ */
+public class PartitionMap {
+
+    private final int partitionCount;
+    private final int[] partitions = new int[CcyPair.values().length];
+
+    public PartitionMap(int partitionCount) {
+        this.partitionCount = partitionCount;
+        Arrays.fill(partitions, -1);
+    }
+
+    /**
+     * Give an instrument to a partition. Configure the map before it is used for routing.
+     */
+    public void assign(CcyPair pair, int partition) {
+        if (partition < 0 || partition >= partitionCount) {
+            throw new IllegalArgumentException("Partition " + partition + " is out of range");
+        }
+        if (pair.isImplied() && (partitionOf(pair.getBaseLeg()) != partition || partitionOf(pair.getQuoteLeg()) != partition)) {
+            throw new IllegalArgumentException(pair + " must be in the partition owning " + pair.getBaseLeg() + " and " + pair.getQuoteLeg());
+        }
+        partitions[pair.ordinal()] = partition;
+    }
+
+    /**
+     * @return partition owning the instrument, -1 if none does
+     */
+    public int partitionOf(CcyPair pair) {
+        return partitions[pair.ordinal()];
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+}
@@ -0,0 +1,202 @@
+package com.gsr.partition;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.server.AnalyticsClient;
+import com.gsr.analytics.server.AnalyticsResponseHandler;
+import com.gsr.analytics.server.ResponseStatus;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Queue;
+
+
+/**
+ * Routes the gateway's analytics requests to the partition owning their instrument, and its answers back. Takes the
+ * place of the distributor behind the gateway's {@link com.gsr.analytics.server.AnalyticsServer}: requests are read
+ * from the server's request queue, sent over the analytics protocol to the partition's own analytics server, and the
+ * answered requests are put on the server's response queue.
+ *
+ * One thread does everything. Requests of a pass are flushed together, one write per partition, and each partition's
+ * responses are then read without blocking. Requests in flight are found again by their id, in a ring per partition.
+ * Requests for an instrument no partition owns come back expired.
+ */
+public class PartitionRequestRouter implements AnalyticsResponseHandler {
+
+    //Few enough that the requests in flight always fit in the partition server's buffers, so that a flush never waits
+    //on a server which has stopped reading until its responses are read
+    private static final int MAX_IN_FLIGHT = 1024;
+    private static final int ROUTE_BATCH = 1024;
+
+    private final PartitionMap partitionMap;
+    private final Queue<Request> requestQueue;
+    private final Queue<Request> responseQueue;
+    private final AnalyticsClient[] clients;
+    private final boolean[] dirtyClients;
+    private final Request[][] inFlight;
+    private final long[] nextIds;
+    private final Thread routerThread;
+
+    private int respondingPartition;
+    private volatile boolean runningFlag;
+    private volatile long requestsRouted;
+    private volatile long unroutedRequests;
+
+    /**
+     * @param analyticsAddresses address of the analytics server of each partition's engine, by partition
+     * @param requestQueue       queue the gateway's analytics server submits requests to
+     * @param responseQueue      queue the gateway's analytics server answers from
+     * @param bufferSize         size of the send and receive buffers of each partition connection
+     */
+    public PartitionRequestRouter(PartitionMap partitionMap, InetSocketAddress[] analyticsAddresses, Queue<Request> requestQueue,
+                                  Queue<Request> responseQueue, int bufferSize) throws IOException {
+        if (analyticsAddresses.length != partitionMap.getPartitionCount()) {
+            throw new IllegalArgumentException("One analytics address is needed for each partition");
+        }
+        this.partitionMap = partitionMap;
+        this.requestQueue = requestQueue;
+        this.responseQueue = responseQueue;
+        this.clients = new AnalyticsClient[analyticsAddresses.length];
+        this.dirtyClients = new boolean[analyticsAddresses.length];
+        this.inFlight = new Request[analyticsAddresses.length][MAX_IN_FLIGHT];
+        this.nextIds = new long[analyticsAddresses.length];
+        for (int i = 0; i < analyticsAddresses.length; i++) {
+            clients[i] = new AnalyticsClient(analyticsAddresses[i], bufferSize);
+            //The client numbers its requests from 1
+            nextIds[i] = 1;
+        }
+        this.routerThread = new Thread(this::route, "Partition Request Router");
+    }
+
+    public void start() {
+        runningFlag = true;
+        routerThread.start();
+    }
+
+    public void shutdown() {
+        System.out.println("Shutting down Partition Request Router");
+        runningFlag = false;
+    }
+
+    public long getRequestsRouted() {
+        return requestsRouted;
+    }
+
+    /**
+     * @return number of requests answered expired because no partition owns their instrument
+     */
+    public long getUnroutedRequests() {
+        return unroutedRequests;
+    }
+
+    @Override
+    public void onResponse(long id, ResponseStatus status, double result) {
+        int slot = (int) (id & (MAX_IN_FLIGHT - 1));
+        Request request = inFlight[respondingPartition][slot];
+        if (request == null) {
+            return;
+        }
+        inFlight[respondingPartition][slot] = null;
+
+        if (status == ResponseStatus.Ok) {
+            request.populateResult(result);
+        } else {
+            request.expire();
+        }
+        responseQueue.add(request);
+    }
+
+    private void route() {
+        System.out.println("Partition Request Router Running");
+
+        try {
+            while (runningFlag) {
+                boolean busy = false;
+                Request request;
+                for (int i = 0; i < ROUTE_BATCH && (request = requestQueue.poll()) != null; i++) {
+                    routeRequest(request);
+                    busy = true;
+                }
+                flushClients();
+                if (pollClients() > 0) {
+                    busy = true;
+                }
+
+                if (!busy) {
+                    Thread.yield();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR: Partition Request Router lost a partition, no more requests will be routed");
+            e.printStackTrace();
+        } finally {
+            closeClients();
+        }
+    }
+
+    /**
+     * Helper method to send a request to its partition. Requests already past their deadline are answered expired,
+     * the others carry the time they have left.
+     */
+    private void routeRequest(Request request) throws IOException {
+        int partition = partitionMap.partitionOf(request.getPair());
+        if (partition < 0) {
+            request.expire();
+            responseQueue.add(request);
+            unroutedRequests += 1;
+            return;
+        }
+
+        int timeoutMicros = 0;
+        if (request.getDeadlineNanos() != 0) {
+            long remainingNanos = request.getDeadlineNanos() - System.nanoTime();
+            if (remainingNanos <= 0) {
+                request.expire();
+                responseQueue.add(request);
+                return;
+            }
+            timeoutMicros = (int) Math.max(1, Math.min(Integer.MAX_VALUE, remainingNanos / 1000));
+        }
+
+        //Wait for the oldest request in flight to be answered if the ring has come round to it
+        int slot = (int) (nextIds[partition] & (MAX_IN_FLIGHT - 1));
+        while (inFlight[partition][slot] != null) {
+            flushClients();
+            pollClients();
+        }
+
+        long id = clients[partition].submit(request.getType(), request.getPair(), request.getSide(), request.getLevels(),
+                request.getPriority(), request.getVenue(), timeoutMicros);
+        inFlight[partition][(int) (id & (MAX_IN_FLIGHT - 1))] = request;
+        nextIds[partition] = id + 1;
+        dirtyClients[partition] = true;
+        requestsRouted += 1;
+    }
+
+    private void flushClients() throws IOException {
+        for (int i = 0; i < clients.length; i++) {
+            if (dirtyClients[i]) {
+                clients[i].flush();
+                dirtyClients[i] = false;
+            }
+        }
+    }
+
+    private int pollClients() throws IOException {
+        int handled = 0;
+        for (int i = 0; i < clients.length; i++) {
+            respondingPartition = i;
+            handled += clients[i].pollNow(this);
+        }
+        return handled;
+    }
+
+    private void closeClients() {
+        for (AnalyticsClient client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                //Nothing more we can do about it
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.gsr.replication;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+
+/**
+ * Wire format of the replication stream. Frames have a fixed size, all values are big endian.
+ *
+ *   byte  kind              data or heartbeat
+ *   byte  slot              book side, pair ordinal * 2 + side ordinal
+ *   byte  type              MessageType ordinal
+ *   byte  venue
+ *   int                     reserved
+ *   long  sequence          data: position of the message in its book side's stream, starting from 1.
+ *                           heartbeat: number of messages the primary has accepted for the book side so far.
+ *   long  messageSequence   sequence the serializer gave the message
+ *   long  time              time field of the message
+ *   long  price
+ *   long  quantity
+ *
+ * Sequences are per book side, as only the order within a book side matters to the books. A data frame whose sequence
+ * doesn't follow on from the previous one of its book side means the primary dropped messages, and the standby's copy
+ * of that side can no longer be trusted.
+ */
+final class ReplicationFormat {
+
+    static final int FRAME_SIZE = 48;
+
+    static final byte KIND_DATA = 0;
+    static final byte KIND_HEARTBEAT = 1;
+
+    //Implied pairs have no books of their own to replicate, and come after the native pairs
+    static final int SLOTS = CcyPair.nativePairs().length * Side.values().length;
+
+    private ReplicationFormat() {
+    }
+
+    static int slot(CcyPair pair, Side side) {
+        return pair.ordinal() * Side.values().length + side.ordinal();
+    }
+}
@@ -0,0 +1,85 @@
+package com.gsr.replication;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Single producer, single consumer ring of replicated messages, handing them from a book thread to the replication
+ * sender. Messages are plain longs in a preallocated array, so the book thread never allocates and never waits for the
+ * network. If the sender falls behind and the ring is full, the message is dropped and counted.
+ */
+final class ReplicationRing {
+
+    //Sequence, message sequence, time, price, quantity, and type and venue packed together
+    static final int RECORD_LONGS = 6;
+
+    private final long[] records;
+    private final int capacity;
+    private final int mask;
+
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    ReplicationRing(int requestedCapacity) {
+        int ringSize = Integer.highestOneBit(Math.max(requestedCapacity, 2));
+        if (ringSize < requestedCapacity) {
+            ringSize <<= 1;
+        }
+        this.capacity = ringSize;
+        this.mask = ringSize - 1;
+        this.records = new long[ringSize * RECORD_LONGS];
+    }
+
+    /**
+     * Called by the producing book thread only
+     *
+     * @return false if the ring was full and the message was dropped
+     */
+    boolean offer(long sequence, long messageSequence, long time, long price, long quantity, int type, int venue) {
+        long producer = producerIndex.get();
+        if (producer - consumerIndex.get() >= capacity) {
+            droppedMessages.lazySet(droppedMessages.get() + 1);
+            return false;
+        }
+
+        int base = (int) (producer & mask) * RECORD_LONGS;
+        records[base] = sequence;
+        records[base + 1] = messageSequence;
+        records[base + 2] = time;
+        records[base + 3] = price;
+        records[base + 4] = quantity;
+        records[base + 5] = (long) type << 32 | venue;
+
+        //Publish the message to the sender
+        producerIndex.lazySet(producer + 1);
+        return true;
+    }
+
+    /**
+     * Called by the sender only
+     *
+     * @return number of messages waiting
+     */
+    int available() {
+        return (int) (producerIndex.get() - consumerIndex.get());
+    }
+
+    /**
+     * Called by the sender only, read a field of the index'th waiting message
+     */
+    long get(int index, int field) {
+        return records[(int) ((consumerIndex.get() + index) & mask) * RECORD_LONGS + field];
+    }
+
+    /**
+     * Called by the sender only, hand the slots of the first count waiting messages back to the producer
+     */
+    void release(int count) {
+        consumerIndex.lazySet(consumerIndex.get() + count);
+    }
+
+    long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+}
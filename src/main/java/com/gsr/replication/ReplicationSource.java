@@ -0,0 +1,189 @@
+package com.gsr.replication;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Primary end of the replication stream. Streams the market data applied to the primary's books to one
+ * {@link StandbyEngine} over TCP, typically on the loopback interface.
+ *
+ * Each book side gets a {@link ReplicationTap}, to be set as the market data listener of its processor. Taps hand the
+ * messages over to a single sender thread through ring buffers, so the book threads never touch the network. The
+ * sender batches whatever is waiting into one write, and sends a heartbeat per book side when the stream is idle, so
+ * the standby knows how far behind it is.
+ *
+ * The standby must connect before the primary takes market data it can't hold in the rings, as the standby has no
+ * way to catch up on history it missed. Once the standby disconnects, the sender stops and messages are dropped.
+ */
+public class ReplicationSource implements AutoCloseable {
+
+    private static final int RING_SIZE = 1 << 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long HEARTBEAT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final ServerSocketChannel serverChannel;
+    private final List<ReplicationTap> taps = new CopyOnWriteArrayList<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Thread senderThread;
+
+    private volatile boolean runningFlag = true;
+    private volatile boolean standbyConnected;
+    private volatile long messagesSent;
+
+    /**
+     * @param address address the standby connects to
+     */
+    public ReplicationSource(InetSocketAddress address) throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address);
+        this.senderThread = new Thread(this::sendMessages, "Replication Sender");
+        this.senderThread.setDaemon(true);
+    }
+
+    /**
+     * @return the address actually bound, useful when binding to port 0
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Create the tap for a book side. Set it as the listener of the side's processor before the book is launched.
+     */
+    public ReplicationTap tapFor(CcyPair pair, Side side) {
+        ReplicationTap tap = new ReplicationTap(pair, side, RING_SIZE);
+        taps.add(tap);
+        return tap;
+    }
+
+    /**
+     * Wait for the standby to connect and start streaming to it, in the background
+     */
+    public void start() {
+        senderThread.start();
+    }
+
+    public boolean isStandbyConnected() {
+        return standbyConnected;
+    }
+
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    /**
+     * @return number of messages lost over all book sides because the sender fell behind or the standby was gone
+     */
+    public long getDroppedMessages() {
+        long dropped = 0;
+        for (ReplicationTap tap : taps) {
+            dropped += tap.getDroppedMessages();
+        }
+        return dropped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        runningFlag = false;
+        serverChannel.close();
+        try {
+            senderThread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sendMessages() {
+        try (SocketChannel channel = serverChannel.accept()) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            standbyConnected = true;
+            System.out.println("Replication standby connected from " + channel.getRemoteAddress());
+
+            long nextHeartbeat = System.nanoTime();
+            while (runningFlag) {
+                int sent = 0;
+                for (int i = 0; i < taps.size(); i++) {
+                    sent += drain(channel, taps.get(i));
+                }
+
+                long now = System.nanoTime();
+                if (now - nextHeartbeat >= 0) {
+                    for (int i = 0; i < taps.size(); i++) {
+                        ReplicationTap tap = taps.get(i);
+                        putFrame(channel, ReplicationFormat.KIND_HEARTBEAT, tap.getSlot(), 0, 0, tap.getAccepted(), 0, 0, 0, 0);
+                    }
+                    nextHeartbeat = now + HEARTBEAT_NANOS;
+                }
+                flush(channel);
+
+                if (sent == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            //Closed while waiting for the standby, or while sending
+        } catch (IOException e) {
+            System.out.println("ERROR: Replication standby lost, no more market data will be replicated");
+            e.printStackTrace();
+        } finally {
+            standbyConnected = false;
+        }
+    }
+
+    /**
+     * Helper method to move the messages waiting in a tap's ring into the send buffer
+     *
+     * @return number of messages moved
+     */
+    private int drain(SocketChannel channel, ReplicationTap tap) throws IOException {
+        ReplicationRing ring = tap.getRing();
+        int available = ring.available();
+        for (int i = 0; i < available; i++) {
+            long typeAndVenue = ring.get(i, 5);
+            putFrame(channel, ReplicationFormat.KIND_DATA, tap.getSlot(), (int) (typeAndVenue >>> 32), (int) typeAndVenue,
+                    ring.get(i, 0), ring.get(i, 1), ring.get(i, 2), ring.get(i, 3), ring.get(i, 4));
+        }
+        ring.release(available);
+        messagesSent += available;
+        return available;
+    }
+
+    private void putFrame(SocketChannel channel, byte kind, int slot, int type, int venue, long sequence,
+                          long messageSequence, long time, long price, long quantity) throws IOException {
+        if (buffer.remaining() < ReplicationFormat.FRAME_SIZE) {
+            flush(channel);
+        }
+        buffer.put(kind);
+        buffer.put((byte) slot);
+        buffer.put((byte) type);
+        buffer.put((byte) venue);
+        buffer.putInt(0);
+        buffer.putLong(sequence);
+        buffer.putLong(messageSequence);
+        buffer.putLong(time);
+        buffer.putLong(price);
+        buffer.putLong(quantity);
+    }
+
+    private void flush(SocketChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,68 @@
+package com.gsr.replication;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.Side;
+import com.gsr.engine.MarketDataListener;
+import com.gsr.engine.OrderBookProcessor;
+
+
+/**
+ * Listener feeding the market data applied to one book side of the primary into the replication stream. Runs on the
+ * book thread and only copies the message into a ring, the sender thread does the rest.
+ *
+ * The message is replicated as it was applied, venue and venue quantity included, so the standby's book ends up with
+ * the same levels and the same breakdown by venue.
+ */
+public class ReplicationTap implements MarketDataListener {
+
+    private final CcyPair pair;
+    private final Side side;
+    private final int slot;
+    private final ReplicationRing ring;
+
+    //Written by the book thread only, read by the sender for heartbeats
+    private volatile long accepted;
+
+    ReplicationTap(CcyPair pair, Side side, int ringSize) {
+        this.pair = pair;
+        this.side = side;
+        this.slot = ReplicationFormat.slot(pair, side);
+        this.ring = new ReplicationRing(ringSize);
+    }
+
+    @Override
+    public void onMessageApplied(OrderBookProcessor book, Message message) {
+        long sequence = accepted + 1;
+        accepted = sequence;
+        ring.offer(sequence, message.getSequence(), message.getTime(), message.getPrice(), message.getQuantity(),
+                message.getType().ordinal(), message.getVenue());
+    }
+
+    public CcyPair getPair() {
+        return pair;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    /**
+     * @return number of messages lost because the sender fell behind. Any loss puts the standby's side out of sync.
+     */
+    public long getDroppedMessages() {
+        return ring.getDroppedMessages();
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    ReplicationRing getRing() {
+        return ring;
+    }
+
+    long getAccepted() {
+        return accepted;
+    }
+}
@@ -0,0 +1,268 @@
+package com.gsr.replication;
+
+import com.gsr.analytics.Request;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.engine.BidOrderBookProcessor;
+import com.gsr.engine.MarketDataListener;
+import com.gsr.engine.OfferOrderBookProcessor;
+import com.gsr.engine.OrderBookDistributor;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.feed.ObjectPool;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Hot standby engine, fed by the {@link ReplicationSource} of a primary. It runs the same book sides as the primary,
+ * each on its own thread, and applies the replicated messages to them in the order the primary applied them, so its
+ * books stay identical to the primary's, venue breakdown included.
+ *
+ * A receiver thread takes the place of the distributor's market data thread: it decodes the stream straight into
+ * pooled messages and hands them to the book queues. Heartbeats tell the standby how many messages the primary has
+ * accepted, so it can report how far behind it is.
+ *
+ * When the primary is lost, {@link #promote} waits for the books to apply what was received and wires an
+ * {@link OrderBookDistributor} to them. The books are live from then on, with nothing to replay.
+ */
+public class StandbyEngine implements AutoCloseable {
+
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final CcyPair[] PAIRS = CcyPair.nativePairs();
+    private static final Side[] SIDES = Side.values();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ObjectPool<Message> messagePool;
+    private final List<ConcurrentLinkedQueue<Message>> marketDataQueues = new ArrayList<>();
+    private final List<ConcurrentLinkedQueue<Request>> requestQueues = new ArrayList<>();
+    private final List<ConcurrentLinkedQueue<Request>> responseQueues = new ArrayList<>();
+    private final List<OrderBookProcessor> processors = new ArrayList<>();
+
+    //Indexed by replication slot
+    private final List<Queue<Message>> slotQueues = new ArrayList<>(Collections.nCopies(ReplicationFormat.SLOTS, null));
+    private final AppliedCounter[] appliedCounters = new AppliedCounter[ReplicationFormat.SLOTS];
+    private final AtomicLongArray received = new AtomicLongArray(ReplicationFormat.SLOTS);
+    private final AtomicLongArray lastSequence = new AtomicLongArray(ReplicationFormat.SLOTS);
+    private final AtomicLongArray primaryAccepted = new AtomicLongArray(ReplicationFormat.SLOTS);
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private SocketChannel channel;
+    private Thread receiverThread;
+
+    private volatile boolean primaryConnected;
+    private volatile boolean inSync = true;
+    private volatile boolean promoted;
+
+    /**
+     * Create the standby's books, one per pair and side, in the order the distributor expects their queues
+     */
+    public StandbyEngine(ObjectPool<Message> messagePool) {
+        this.messagePool = messagePool;
+
+        for (CcyPair pair : PAIRS) {
+            for (Side side : new Side[]{Side.Offer, Side.Bid}) {
+                ConcurrentLinkedQueue<Message> marketDataQueue = new ConcurrentLinkedQueue<>();
+                ConcurrentLinkedQueue<Request> requestQueue = new ConcurrentLinkedQueue<>();
+                ConcurrentLinkedQueue<Request> responseQueue = new ConcurrentLinkedQueue<>();
+                OrderBookProcessor processor = side == Side.Offer
+                        ? new OfferOrderBookProcessor(pair, messagePool, marketDataQueue, requestQueue, responseQueue)
+                        : new BidOrderBookProcessor(pair, messagePool, marketDataQueue, requestQueue, responseQueue);
+
+                int slot = ReplicationFormat.slot(pair, side);
+                AppliedCounter counter = new AppliedCounter();
+                processor.setMarketDataListener(counter);
+                appliedCounters[slot] = counter;
+                slotQueues.set(slot, marketDataQueue);
+
+                marketDataQueues.add(marketDataQueue);
+                requestQueues.add(requestQueue);
+                responseQueues.add(responseQueue);
+                processors.add(processor);
+            }
+        }
+    }
+
+    /**
+     * @return the standby's books, e.g. to set up rolling statistics before connecting
+     */
+    public List<OrderBookProcessor> getProcessors() {
+        return processors;
+    }
+
+    /**
+     * Launch the books and start applying the primary's stream, in the background
+     */
+    public void connect(InetSocketAddress primary) throws IOException {
+        channel = SocketChannel.open(primary);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        primaryConnected = true;
+
+        processors.forEach(OrderBookProcessor::launchOrderBookThread);
+        receiverThread = new Thread(this::receiveMessages, "Replication Receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    public boolean isPrimaryConnected() {
+        return primaryConnected;
+    }
+
+    /**
+     * @return false once the stream had a gap, after which the books can no longer be trusted to match the primary's
+     */
+    public boolean isInSync() {
+        return inSync;
+    }
+
+    /**
+     * @return number of messages the primary has accepted which the standby's books haven't applied yet, as of the
+     *         last heartbeat received
+     */
+    public long getLag() {
+        long lag = 0;
+        for (int slot = 0; slot < ReplicationFormat.SLOTS; slot++) {
+            //Messages lost in a gap will never be applied, so they don't count against the standby
+            long sequence = lastSequence.get(slot);
+            long missed = sequence - received.get(slot);
+            lag += Math.max(primaryAccepted.get(slot), sequence) - missed - appliedCounters[slot].applied;
+        }
+        return lag;
+    }
+
+    public long getAppliedMessages() {
+        long applied = 0;
+        for (AppliedCounter counter : appliedCounters) {
+            applied += counter.applied;
+        }
+        return applied;
+    }
+
+    /**
+     * Take over from the primary: stop the stream, let the books apply everything received, and start a distributor
+     * in front of them. From then on the books may be given new market data listeners.
+     *
+     * @return the running distributor, fed by the given queues
+     */
+    public OrderBookDistributor promote(ConcurrentLinkedQueue<Message> incomingMarketData,
+                                        ConcurrentLinkedQueue<Request> incomingRequests,
+                                        Queue<Request> responseQueue) throws IOException, InterruptedException {
+        promoted = true;
+        channel.close();
+        receiverThread.join();
+
+        for (int slot = 0; slot < ReplicationFormat.SLOTS; slot++) {
+            while (appliedCounters[slot].applied < received.get(slot)) {
+                Thread.yield();
+            }
+        }
+        if (!inSync) {
+            System.out.println("WARNING: Promoting a standby which missed replicated messages");
+        }
+
+        return new OrderBookDistributor(incomingMarketData, incomingRequests, marketDataQueues, requestQueues,
+                responseQueues, responseQueue);
+    }
+
+    /**
+     * Stop a standby which hasn't been promoted, books included
+     */
+    @Override
+    public void close() throws IOException {
+        if (promoted) {
+            return;
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        processors.forEach(OrderBookProcessor::shutDownOrderBookThread);
+    }
+
+    private void receiveMessages() {
+        try {
+            while (true) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Primary closed the replication stream");
+                }
+                buffer.flip();
+                while (buffer.remaining() >= ReplicationFormat.FRAME_SIZE) {
+                    decodeFrame();
+                }
+                buffer.compact();
+            }
+        } catch (ClosedChannelException e) {
+            //Closed for promotion or shutdown
+        } catch (IOException e) {
+            if (!promoted) {
+                System.out.println("Replication primary lost: " + e.getMessage());
+            }
+        } finally {
+            primaryConnected = false;
+        }
+    }
+
+    private void decodeFrame() {
+        byte kind = buffer.get();
+        int slot = buffer.get();
+        int type = buffer.get();
+        int venue = buffer.get() & 0xFF;
+        buffer.getInt();
+        long sequence = buffer.getLong();
+        long messageSequence = buffer.getLong();
+        long time = buffer.getLong();
+        long price = buffer.getLong();
+        long quantity = buffer.getLong();
+
+        if (kind == ReplicationFormat.KIND_HEARTBEAT) {
+            primaryAccepted.lazySet(slot, sequence);
+            return;
+        }
+
+        if (sequence != lastSequence.get(slot) + 1 && inSync) {
+            inSync = false;
+            System.out.println("ERROR: Replication stream has a gap for " + PAIRS[slot / 2] + " " + SIDES[slot % 2]);
+        }
+
+        Message message = messagePool.acquireObject();
+        message.setType(TYPES[type]);
+        message.setPair(PAIRS[slot / SIDES.length]);
+        message.setSide(SIDES[slot % SIDES.length]);
+        message.setVenue(venue);
+        message.setPrice(price);
+        message.setQuantity(quantity);
+        message.setTime(time);
+        message.setSequence(messageSequence);
+        message.setReceivedNanos(System.nanoTime());
+
+        //Count the message before the book can apply it, so the lag never goes negative
+        received.lazySet(slot, received.get(slot) + 1);
+        lastSequence.lazySet(slot, sequence);
+        slotQueues.get(slot).add(message);
+    }
+
+    /**
+     * Counts the messages a standby book has applied, on the book thread
+     */
+    private static final class AppliedCounter implements MarketDataListener {
+
+        private volatile long applied;
+
+        @Override
+        public void onMessageApplied(OrderBookProcessor book, Message message) {
+            applied = applied + 1;
+        }
+    }
+}
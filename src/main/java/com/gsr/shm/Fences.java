@@ -0,0 +1,29 @@
+package com.gsr.shm;
+
+import java.lang.invoke.VarHandle;
+
+
+/**
+ * Memory fences for the seqlock protocol over the mapped file, and over the heap snapshots of the implied books' legs.
+ * Plain accesses may otherwise be reordered by the JIT, and on weaker memory models by the CPU, across the sequence
+ * number which guards them.
+ */
+public final class Fences {
+
+    private Fences() {
+    }
+
+    /**
+     * No load or store before the fence is reordered with a store after it
+     */
+    public static void storeFence() {
+        VarHandle.releaseFence();
+    }
+
+    /**
+     * No load before the fence is reordered with a load or store after it
+     */
+    public static void loadFence() {
+        VarHandle.acquireFence();
+    }
+}
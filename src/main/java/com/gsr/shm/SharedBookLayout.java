@@ -0,0 +1,65 @@
+package com.gsr.shm;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+
+/**
+ * Layout of the shared book file. All values are little endian, and every region starts on a cache line.
+ *
+ * The file starts with a 64 byte header:
+ * <pre>
+ *   int magic, int version, int depth, int slotCount, int slotSize
+ * </pre>
+ * followed by one slot per book side, at index pair * 2 + side:
+ * <pre>
+ *   long sequence     odd while the publisher is writing the slot, 0 if it was never published
+ *   long timestamp    time of the last publish, in nanoseconds since the epoch
+ *   int  levelCount   number of valid levels, at most depth
+ *   ...  padding up to 64 bytes
+ *   long prices[depth], long quantities[depth]   levels ordered from the top of the book
+ * </pre>
+ */
+final class SharedBookLayout {
+
+    static final int MAGIC = 0x53484D42;
+    static final int VERSION = 1;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int DEPTH_OFFSET = 8;
+    static final int SLOT_COUNT_OFFSET = 12;
+    static final int SLOT_SIZE_OFFSET = 16;
+    static final int HEADER_SIZE = 64;
+
+    static final int SEQUENCE_OFFSET = 0;
+    static final int TIMESTAMP_OFFSET = 8;
+    static final int LEVEL_COUNT_OFFSET = 16;
+    static final int LEVELS_OFFSET = 64;
+
+    static final int SLOT_COUNT = CcyPair.values().length * Side.values().length;
+
+    private SharedBookLayout() {
+    }
+
+    static int slotSize(int depth) {
+        int size = LEVELS_OFFSET + depth * 16;
+        return (size + 63) & ~63;
+    }
+
+    static int fileSize(int depth) {
+        return HEADER_SIZE + SLOT_COUNT * slotSize(depth);
+    }
+
+    static int slotOffset(CcyPair pair, Side side, int slotSize) {
+        return HEADER_SIZE + (pair.ordinal() * Side.values().length + side.ordinal()) * slotSize;
+    }
+
+    static int priceOffset(int level) {
+        return LEVELS_OFFSET + level * 8;
+    }
+
+    static int quantityOffset(int depth, int level) {
+        return LEVELS_OFFSET + (depth + level) * 8;
+    }
+}
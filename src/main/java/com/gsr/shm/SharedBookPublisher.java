@@ -0,0 +1,77 @@
+package com.gsr.shm;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.gsr.shm.SharedBookLayout.*;
+
+
+/**
+ * Publishes the top levels of every book side into a memory mapped file, for other processes on the same host to read
+ * with {@link SharedBookReader}.
+ *
+ * Each book side gets a {@link SharedBookWriter}, to be set as the market data listener of its processor. The writer
+ * copies the top levels into the side's slot of the file whenever an update changes them, guarded by a seqlock: the
+ * slot's sequence number is odd while it is being written. Readers never block the book thread, and any number of
+ * them can read at the same time, as they only ever load from the file.
+ *
+ * Put the file on a memory backed file system such as /dev/shm, so that publishing never causes disk writes.
+ */
+public class SharedBookPublisher implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int depth;
+    private final int slotSize;
+
+    /**
+     * @param file  file to publish into, created or truncated
+     * @param depth number of levels to publish per book side
+     */
+    public SharedBookPublisher(Path file, int depth) throws IOException {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("Depth must be positive");
+        }
+        this.depth = depth;
+        this.slotSize = slotSize(depth);
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(depth));
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        //Readers check the magic last, so the header must be complete before it is there
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(DEPTH_OFFSET, depth);
+        buffer.putInt(SLOT_COUNT_OFFSET, SLOT_COUNT);
+        buffer.putInt(SLOT_SIZE_OFFSET, slotSize);
+        Fences.storeFence();
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+    }
+
+    /**
+     * Create the writer for a book side. Set it as the listener of the side's processor before the book is launched.
+     */
+    public SharedBookWriter writerFor(CcyPair pair, Side side) {
+        return new SharedBookWriter(side, buffer, slotOffset(pair, side, slotSize), depth);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Close the file. The mapping stays valid until it is garbage collected, so writers still running do no harm.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
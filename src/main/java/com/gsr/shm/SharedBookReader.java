@@ -0,0 +1,143 @@
+package com.gsr.shm;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static com.gsr.shm.SharedBookLayout.*;
+
+
+/**
+ * Reads consistent snapshots of the book sides a {@link SharedBookPublisher} publishes, from any process on the same
+ * host. Reading is a handful of loads from the mapped file, with no system calls and no locks, so it takes well under
+ * a microsecond unless the slot is being written at that very moment.
+ *
+ * The seqlock protocol: read the slot's sequence number, wait for it to be even, copy the levels, then read the
+ * sequence number again. If it moved, the publisher wrote the slot in the meantime and the copy is thrown away.
+ *
+ * Readers are not thread safe, but are cheap: give every reading thread its own.
+ */
+public class SharedBookReader implements AutoCloseable {
+
+    private static final int SPIN_ATTEMPTS = 1000;
+    private static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int depth;
+    private final int slotSize;
+
+    private long retries;
+
+    /**
+     * @param file file the engine publishes into
+     * @throws IOException if the file is not a shared book file, or of a different version
+     */
+    public SharedBookReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a shared book file: " + file);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                throw new IOException("Not a shared book file: " + file);
+            }
+            Fences.loadFence();
+            if (buffer.getInt(VERSION_OFFSET) != VERSION || buffer.getInt(SLOT_COUNT_OFFSET) != SLOT_COUNT) {
+                throw new IOException("Unsupported shared book file version or instruments: " + file);
+            }
+            this.depth = buffer.getInt(DEPTH_OFFSET);
+            this.slotSize = buffer.getInt(SLOT_SIZE_OFFSET);
+            if (slotSize != slotSize(depth) || channel.size() < fileSize(depth)) {
+                throw new IOException("Corrupt shared book file: " + file);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a snapshot big enough to hold every published level, for use with {@link #read}
+     */
+    public SharedBookSnapshot newSnapshot() {
+        return new SharedBookSnapshot(depth);
+    }
+
+    /**
+     * Copy the latest published state of a book side into a snapshot
+     *
+     * @param snapshot snapshot to fill, from {@link #newSnapshot()}. Only valid if true is returned.
+     * @return false if the book side was never published, or no consistent copy could be taken within a second, as
+     *         the publisher died half way through writing it
+     */
+    public boolean read(CcyPair pair, Side side, SharedBookSnapshot snapshot) {
+        int slotOffset = slotOffset(pair, side, slotSize);
+
+        long waitStart = 0;
+        for (int attempt = 0; ; attempt++) {
+            if (attempt >= SPIN_ATTEMPTS) {
+                //The publisher may have been descheduled half way through a write, give it the CPU
+                long now = System.nanoTime();
+                if (waitStart == 0) {
+                    waitStart = now;
+                } else if (now - waitStart > MAX_WAIT_NANOS) {
+                    return false;
+                }
+                Thread.yield();
+            }
+
+            long sequence = buffer.getLong(slotOffset + SEQUENCE_OFFSET);
+            if (sequence == 0) {
+                return false;
+            }
+            if ((sequence & 1) != 0) {
+                //The fence keeps the sequence number from being read once for the whole loop
+                retries += 1;
+                Fences.loadFence();
+                continue;
+            }
+            Fences.loadFence();
+
+            long timestamp = buffer.getLong(slotOffset + TIMESTAMP_OFFSET);
+            int levelCount = Math.min(depth, Math.max(0, buffer.getInt(slotOffset + LEVEL_COUNT_OFFSET)));
+            for (int i = 0; i < levelCount; i++) {
+                snapshot.prices[i] = buffer.getLong(slotOffset + priceOffset(i));
+                snapshot.quantities[i] = buffer.getLong(slotOffset + quantityOffset(depth, i));
+            }
+
+            Fences.loadFence();
+            if (buffer.getLong(slotOffset + SEQUENCE_OFFSET) == sequence) {
+                snapshot.populate(pair, side, sequence / 2, timestamp, levelCount);
+                return true;
+            }
+            retries += 1;
+        }
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return number of times a read had to start over because the publisher was writing the slot
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,83 @@
+package com.gsr.shm;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+
+/**
+ * Top levels of a book side as read from the shared book file. Snapshots are reused from read to read, so that
+ * polling readers don't allocate. Levels are ordered from the top of the book, prices are long representations with
+ * 2 decimals like everywhere in the engine.
+ */
+public class SharedBookSnapshot {
+
+    final long[] prices;
+    final long[] quantities;
+
+    private CcyPair pair;
+    private Side side;
+    private long version;
+    private long timestamp;
+    private int levelCount;
+
+    SharedBookSnapshot(int depth) {
+        this.prices = new long[depth];
+        this.quantities = new long[depth];
+    }
+
+    void populate(CcyPair pair, Side side, long version, long timestamp, int levelCount) {
+        this.pair = pair;
+        this.side = side;
+        this.version = version;
+        this.timestamp = timestamp;
+        this.levelCount = levelCount;
+    }
+
+    public CcyPair getPair() {
+        return pair;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    /**
+     * @return number of times the book side was published up to this snapshot. A reader which sees the same version
+     *         twice has seen the same levels twice.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the time the snapshot was published, in nanoseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * @param level level counted from the top of the book, starting at 0
+     */
+    public long getPrice(int level) {
+        return prices[level];
+    }
+
+    public long getQuantity(int level) {
+        return quantities[level];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SharedBookSnapshot{pair=").append(pair).append(", side=").append(side)
+                .append(", version=").append(version).append(", timestamp=").append(timestamp).append(", levels=[");
+        for (int i = 0; i < levelCount; i++) {
+            sb.append(i == 0 ? "" : ", ").append(prices[i] / 100.0).append('x').append(quantities[i]);
+        }
+        return sb.append("]}").toString();
+    }
+}
@@ -0,0 +1,97 @@
+package com.gsr.shm;
+
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.engine.MarketDataListener;
+import com.gsr.engine.OrderBookProcessor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.gsr.shm.SharedBookLayout.*;
+
+
+/**
+ * Listener publishing the top levels of one book side into its slot of the shared book file. Runs on the book thread.
+ *
+ * Updates to levels below the published ones don't change what readers see, so those are skipped without touching the
+ * file. Anything else copies the top levels into the slot: the sequence number is made odd, the levels are written,
+ * and the sequence number is made even again, with store fences in between.
+ */
+public class SharedBookWriter implements MarketDataListener {
+
+    private final Side side;
+    private final ByteBuffer buffer;
+    private final int slotOffset;
+    private final int depth;
+    private final long[] prices;
+    private final long[] quantities;
+    private final long epochOffsetNanos;
+
+    private long sequence;
+    private int publishedLevelCount;
+    private long publishedWorstPrice;
+    private long publishCount;
+
+    SharedBookWriter(Side side, ByteBuffer buffer, int slotOffset, int depth) {
+        this.side = side;
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.slotOffset = slotOffset;
+        this.depth = depth;
+        this.prices = new long[depth];
+        this.quantities = new long[depth];
+        this.epochOffsetNanos = System.currentTimeMillis() * 1_000_000 - System.nanoTime();
+    }
+
+    @Override
+    public void onMessageApplied(OrderBookProcessor book, Message message) {
+        if (message.getType() == MessageType.ClearBook || changesPublishedLevels(message.getPrice())) {
+            publish(book);
+        }
+    }
+
+    /**
+     * Copy the top levels of the book into the slot. Only to be called from the order book thread.
+     */
+    public void publish(OrderBookProcessor book) {
+        int levelCount = book.copyTopLevels(prices, quantities);
+
+        sequence += 1;
+        buffer.putLong(slotOffset + SEQUENCE_OFFSET, sequence);
+        Fences.storeFence();
+
+        buffer.putLong(slotOffset + TIMESTAMP_OFFSET, epochOffsetNanos + System.nanoTime());
+        buffer.putInt(slotOffset + LEVEL_COUNT_OFFSET, levelCount);
+        for (int i = 0; i < levelCount; i++) {
+            buffer.putLong(slotOffset + priceOffset(i), prices[i]);
+            buffer.putLong(slotOffset + quantityOffset(depth, i), quantities[i]);
+        }
+
+        Fences.storeFence();
+        sequence += 1;
+        buffer.putLong(slotOffset + SEQUENCE_OFFSET, sequence);
+
+        publishedLevelCount = levelCount;
+        publishedWorstPrice = levelCount == 0 ? 0 : prices[levelCount - 1];
+        publishCount += 1;
+    }
+
+    /**
+     * @return number of times the slot was written, read from the order book thread or once it has stopped
+     */
+    public long getPublishCount() {
+        return publishCount;
+    }
+
+    /**
+     * Helper method to tell whether an update at a price may have changed the published levels. With fewer levels than
+     * the depth published every level is visible, otherwise only prices up to the worst published one are.
+     */
+    private boolean changesPublishedLevels(long price) {
+        if (publishedLevelCount < depth) {
+            return true;
+        }
+        return side == Side.Bid ? price >= publishedWorstPrice : price <= publishedWorstPrice;
+    }
+}
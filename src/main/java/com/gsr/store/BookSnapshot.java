@@ -0,0 +1,76 @@
+package com.gsr.store;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+
+/**
+ * Book side as it stood at a point in time, rebuilt from the tick store. Levels are ordered from the top of the book.
+ * Prices are long representations with 2 decimals, like everywhere in the engine.
+ */
+public class BookSnapshot {
+
+    private final CcyPair pair;
+    private final Side side;
+    private final long timestamp;
+    private final long[] prices;
+    private final long[] quantities;
+    private final boolean complete;
+
+    BookSnapshot(CcyPair pair, Side side, long timestamp, long[] prices, long[] quantities, boolean complete) {
+        this.pair = pair;
+        this.side = side;
+        this.timestamp = timestamp;
+        this.prices = prices;
+        this.quantities = quantities;
+        this.complete = complete;
+    }
+
+    public CcyPair getPair() {
+        return pair;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    /**
+     * @return the time the snapshot is as of, in nanoseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getLevelCount() {
+        return prices.length;
+    }
+
+    /**
+     * @param level level counted from the top of the book, starting at 0
+     */
+    public long getPrice(int level) {
+        return prices[level];
+    }
+
+    public long getQuantity(int level) {
+        return quantities[level];
+    }
+
+    /**
+     * @return false if ticks were dropped before the snapshot time since the book side was last cleared, in which case
+     * levels may be missing or stale
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("BookSnapshot{pair=").append(pair).append(", side=").append(side)
+                .append(", timestamp=").append(timestamp).append(", complete=").append(complete).append(", levels=[");
+        for (int i = 0; i < prices.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(prices[i] / 100.0).append('x').append(quantities[i]);
+        }
+        return sb.append("]}").toString();
+    }
+}
@@ -0,0 +1,45 @@
+package com.gsr.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * Growable byte array a column is encoded into. Reused from block to block, so it only grows until it fits a block.
+ */
+final class ByteColumn {
+
+    private byte[] bytes;
+    private int size;
+
+    ByteColumn(int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    void writeVarLong(long value) {
+        if (size + 10 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        while ((value & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    void writeZigZag(long value) {
+        writeVarLong(TickFormat.zigZag(value));
+    }
+
+    int size() {
+        return size;
+    }
+
+    ByteBuffer asBuffer() {
+        return ByteBuffer.wrap(bytes, 0, size);
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
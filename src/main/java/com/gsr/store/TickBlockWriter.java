@@ -0,0 +1,161 @@
+package com.gsr.store;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.file.StandardOpenOption.*;
+
+
+/**
+ * Encodes the ticks of one book side into blocks and appends them to its data and index files. Keeps a mirror of the
+ * book side, so that every block can start with a checkpoint. Only used by the store writer thread.
+ *
+ * Gap ticks go into the block like any other tick. After one, the mirror may be missing levels or holding stale ones,
+ * so checkpoints are flagged as incomplete until the book side is cleared.
+ */
+final class TickBlockWriter {
+
+    private final int blockSize;
+    private final FileChannel dataChannel;
+    private final FileChannel indexChannel;
+    private final TreeMap<Long, Long> mirrorBook = new TreeMap<>();
+
+    private final ByteColumn checkpoint = new ByteColumn(1024);
+    private final ByteColumn timestamps = new ByteColumn(4096);
+    private final ByteColumn prices = new ByteColumn(4096);
+    private final ByteColumn quantities = new ByteColumn(4096);
+    private final ByteBuffer header = ByteBuffer.allocate(TickFormat.BLOCK_HEADER_BYTES);
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(TickFormat.INDEX_ENTRY_BYTES);
+
+    private int tickCount;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private long lastPrice;
+    private long blockOpenedNanos;
+    private boolean mirrorIncomplete;
+    private int blockFlags;
+
+    TickBlockWriter(Path directory, CcyPair pair, Side side, int blockSize) throws IOException {
+        this.blockSize = blockSize;
+        this.dataChannel = FileChannel.open(TickFormat.dataFile(directory, pair, side), CREATE, WRITE, APPEND);
+        this.indexChannel = FileChannel.open(TickFormat.indexFile(directory, pair, side), CREATE, WRITE, APPEND);
+    }
+
+    void append(long timestamp, long price, long encodedQuantity) {
+        if (tickCount == 0) {
+            openBlock(timestamp);
+        }
+
+        timestamps.writeZigZag(timestamp - lastTimestamp);
+        prices.writeZigZag(price - lastPrice);
+        quantities.writeVarLong(encodedQuantity);
+        lastTimestamp = timestamp;
+        lastPrice = price;
+        tickCount += 1;
+
+        applyToMirror(price, encodedQuantity);
+
+        if (tickCount == blockSize) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Write the open block, if any, even if it isn't full
+     */
+    void flush() {
+        if (tickCount > 0) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * @return whether a block is open and has been for longer than the given time
+     */
+    boolean isOpenLongerThan(long nanos, long now) {
+        return tickCount > 0 && now - blockOpenedNanos > nanos;
+    }
+
+    void close() throws IOException {
+        flush();
+        dataChannel.force(true);
+        indexChannel.force(true);
+        dataChannel.close();
+        indexChannel.close();
+    }
+
+    private void openBlock(long timestamp) {
+        firstTimestamp = timestamp;
+        lastTimestamp = timestamp;
+        lastPrice = 0;
+        blockOpenedNanos = System.nanoTime();
+        blockFlags = mirrorIncomplete ? TickFormat.FLAG_INCOMPLETE_CHECKPOINT : 0;
+
+        //Checkpoint of the book as it stands before the first tick of the block
+        checkpoint.writeVarLong(mirrorBook.size());
+        long previousPrice = 0;
+        for (Map.Entry<Long, Long> level : mirrorBook.entrySet()) {
+            checkpoint.writeZigZag(level.getKey() - previousPrice);
+            checkpoint.writeVarLong(level.getValue());
+            previousPrice = level.getKey();
+        }
+    }
+
+    private void applyToMirror(long price, long encodedQuantity) {
+        if (encodedQuantity == TickFormat.QUANTITY_CLEAR) {
+            mirrorBook.clear();
+            mirrorIncomplete = false;
+        } else if (encodedQuantity == TickFormat.QUANTITY_GAP) {
+            mirrorIncomplete = true;
+        } else if (encodedQuantity == TickFormat.QUANTITY_REMOVE) {
+            mirrorBook.remove(price);
+        } else {
+            mirrorBook.put(price, TickFormat.decodeQuantity(encodedQuantity));
+        }
+    }
+
+    private void writeBlock() {
+        header.clear();
+        header.putInt(TickFormat.BLOCK_MAGIC)
+                .putInt(tickCount)
+                .putLong(firstTimestamp)
+                .putLong(lastTimestamp)
+                .putInt(checkpoint.size())
+                .putInt(timestamps.size())
+                .putInt(prices.size())
+                .putInt(quantities.size())
+                .putInt(blockFlags);
+        header.flip();
+
+        try {
+            long offset = dataChannel.size();
+            ByteBuffer[] block = {header, checkpoint.asBuffer(), timestamps.asBuffer(), prices.asBuffer(), quantities.asBuffer()};
+            while (block[block.length - 1].hasRemaining()) {
+                dataChannel.write(block);
+            }
+
+            //The block is complete, now it can be found
+            indexEntry.clear();
+            indexEntry.putLong(firstTimestamp).putLong(lastTimestamp).putLong(offset);
+            indexEntry.flip();
+            while (indexEntry.hasRemaining()) {
+                indexChannel.write(indexEntry);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write tick block", e);
+        }
+
+        checkpoint.clear();
+        timestamps.clear();
+        prices.clear();
+        quantities.clear();
+        tickCount = 0;
+    }
+}
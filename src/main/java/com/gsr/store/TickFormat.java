@@ -0,0 +1,83 @@
+package com.gsr.store;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+
+/**
+ * On disk layout of the tick store.
+ *
+ * Every book side has a data file of blocks and an index file. A block holds a checkpoint of the book side as it stood
+ * before the block's first tick, followed by the block's ticks in three columns:
+ *
+ *   header      magic, tick count, first and last timestamp, byte length of the checkpoint and of each column, flags
+ *   checkpoint  level count, then per level, in ascending price order, the zigzag price delta and the quantity
+ *   timestamps  zigzag deltas from the previous timestamp, starting from the block's first timestamp
+ *   prices      zigzag deltas from the previous price, starting from 0
+ *   quantities  the quantity shifted left by one for adds and updates, 0 for removes, 1 for a cleared book and 3 for
+ *               a gap
+ *
+ * A gap tick stands for ticks which were dropped because the writer fell behind, right before the tick following it.
+ * From a gap on the book side may miss levels or hold stale ones, until it is next cleared. Blocks whose checkpoint was
+ * taken in that state are flagged as such.
+ *
+ * All numbers in the checkpoint and the columns are unsigned LEB128 varints, so small deltas take a byte or two. The
+ * index file holds one fixed size entry per block -- first timestamp, last timestamp and file offset -- and is only
+ * written once the block is on disk, so readers never see a partial block.
+ */
+final class TickFormat {
+
+    //TCK2, blocks without flags and gaps were TICK
+    static final int BLOCK_MAGIC = 0x54434B32;
+    static final int BLOCK_HEADER_BYTES = 4 + 4 + 8 + 8 + 4 * 4 + 4;
+    static final int INDEX_ENTRY_BYTES = 8 + 8 + 8;
+
+    static final long QUANTITY_REMOVE = 0;
+    static final long QUANTITY_CLEAR = 1;
+    static final long QUANTITY_GAP = 3;
+
+    //The checkpoint was taken after a gap, before the book side was cleared
+    static final int FLAG_INCOMPLETE_CHECKPOINT = 1;
+
+    private TickFormat() {
+    }
+
+    static Path dataFile(Path directory, CcyPair pair, Side side) {
+        return directory.resolve(pair + "-" + side + ".ticks");
+    }
+
+    static Path indexFile(Path directory, CcyPair pair, Side side) {
+        return directory.resolve(pair + "-" + side + ".index");
+    }
+
+    static long encodeQuantity(long quantity) {
+        return quantity << 1;
+    }
+
+    static long decodeQuantity(long encoded) {
+        return encoded >>> 1;
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
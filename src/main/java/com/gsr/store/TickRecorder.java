@@ -0,0 +1,85 @@
+package com.gsr.store;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.engine.MarketDataListener;
+import com.gsr.engine.OrderBookProcessor;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Listener recording the market data applied to one book side into the tick store. Runs on the book thread and only
+ * copies three longs into a ring buffer, the writer thread does the rest.
+ *
+ * Ticks are stamped with the feed time of their message, converted to nanoseconds since the epoch, so as of queries
+ * line up with the feed rather than with when the engine got round to applying it. Messages without a time (0) are
+ * stamped with the wall clock instead, read once when the recorder is created and advanced with System.nanoTime()
+ * from there on. Stamps never go backwards, a message older than the previous tick gets the previous tick's time.
+ */
+public class TickRecorder implements MarketDataListener {
+
+    private final CcyPair pair;
+    private final Side side;
+    private final TickRing ring;
+    private final TimeUnit feedTimeUnit;
+    private final long epochOffsetNanos;
+    private long lastTimestamp;
+
+    TickRecorder(CcyPair pair, Side side, int ringSize, TimeUnit feedTimeUnit) {
+        this.pair = pair;
+        this.side = side;
+        this.ring = new TickRing(ringSize);
+        this.feedTimeUnit = feedTimeUnit;
+        this.epochOffsetNanos = System.currentTimeMillis() * 1_000_000 - System.nanoTime();
+    }
+
+    @Override
+    public void onMessageApplied(OrderBookProcessor book, Message message) {
+        //Books are consolidated across venues, so the level's total is recorded rather than the venue's quantity
+        record(timestampOf(message), message.getType(), message.getPrice(), book.getQuantityAt(message.getPrice()));
+    }
+
+    /**
+     * Helper method to stamp a message with its feed time, or the wall clock if it has none
+     */
+    long timestampOf(Message message) {
+        long timestamp = message.getTime() > 0 ? feedTimeUnit.toNanos(message.getTime()) : epochOffsetNanos + System.nanoTime();
+        //Blocks are indexed by their first tick, so a late message must not move the side's history backwards
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        return lastTimestamp;
+    }
+
+    void record(long timestamp, MessageType type, long price, long levelQuantity) {
+        switch (type) {
+            case AddOrUpdatePriceLevel:
+            case RemovePriceLevel:
+                ring.offer(timestamp, price, levelQuantity == 0 ? TickFormat.QUANTITY_REMOVE : TickFormat.encodeQuantity(levelQuantity));
+                break;
+            case ClearBook:
+                ring.offer(timestamp, 0, TickFormat.QUANTITY_CLEAR);
+                break;
+        }
+    }
+
+    public CcyPair getPair() {
+        return pair;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    /**
+     * @return number of ticks lost because the writer fell behind
+     */
+    public long getDroppedTicks() {
+        return ring.getDroppedTicks();
+    }
+
+    TickRing getRing() {
+        return ring;
+    }
+}
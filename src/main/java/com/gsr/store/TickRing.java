@@ -0,0 +1,92 @@
+package com.gsr.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Single producer, single consumer ring of ticks, handing applied market data from a book thread to the store writer.
+ * Ticks are plain longs in a preallocated array, so recording never allocates. If the writer falls behind and the ring
+ * is full, the tick is dropped and counted -- the book thread never waits for the disk. The next tick which fits is
+ * preceded by a gap tick, so the store knows where ticks are missing.
+ */
+final class TickRing {
+
+    //Timestamp, price and encoded quantity
+    static final int RECORD_LONGS = 3;
+
+    private final long[] records;
+    private final int capacity;
+    private final int mask;
+
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+    private final AtomicLong droppedTicks = new AtomicLong();
+
+    //Only touched by the producer
+    private boolean gapPending;
+
+    TickRing(int requestedCapacity) {
+        int ringSize = Integer.highestOneBit(Math.max(requestedCapacity, 2));
+        if (ringSize < requestedCapacity) {
+            ringSize <<= 1;
+        }
+        this.capacity = ringSize;
+        this.mask = ringSize - 1;
+        this.records = new long[ringSize * RECORD_LONGS];
+    }
+
+    /**
+     * Called by the producing book thread only
+     *
+     * @return false if the ring was full and the tick was dropped
+     */
+    boolean offer(long timestamp, long price, long encodedQuantity) {
+        long producer = producerIndex.get();
+        //After a drop the tick needs room for the gap tick in front of it
+        if (producer - consumerIndex.get() > capacity - (gapPending ? 2 : 1)) {
+            droppedTicks.lazySet(droppedTicks.get() + 1);
+            gapPending = true;
+            return false;
+        }
+
+        if (gapPending) {
+            write(producer++, timestamp, 0, TickFormat.QUANTITY_GAP);
+            gapPending = false;
+        }
+        write(producer, timestamp, price, encodedQuantity);
+
+        //Publish the tick to the writer
+        producerIndex.lazySet(producer + 1);
+        return true;
+    }
+
+    private void write(long index, long timestamp, long price, long encodedQuantity) {
+        int base = (int) (index & mask) * RECORD_LONGS;
+        records[base] = timestamp;
+        records[base + 1] = price;
+        records[base + 2] = encodedQuantity;
+    }
+
+    /**
+     * Called by the store writer only. Appends all pending ticks to the block writer.
+     *
+     * @return number of ticks drained
+     */
+    int drain(TickBlockWriter writer) {
+        long consumer = consumerIndex.get();
+        long producer = producerIndex.get();
+
+        for (long i = consumer; i < producer; i++) {
+            int base = (int) (i & mask) * RECORD_LONGS;
+            writer.append(records[base], records[base + 1], records[base + 2]);
+        }
+
+        //Hand the slots back to the producer
+        consumerIndex.lazySet(producer);
+        return (int) (producer - consumer);
+    }
+
+    long getDroppedTicks() {
+        return droppedTicks.get();
+    }
+}
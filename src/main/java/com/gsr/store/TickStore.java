@@ -0,0 +1,154 @@
+package com.gsr.store;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * On disk history of the applied market data, for as of queries with {@link TickStoreReader}.
+ *
+ * Each book side gets a {@link TickRecorder}, to be set as the market data listener of its processor. Recorders hand
+ * the ticks over to a single background writer thread through ring buffers, so the book threads never touch the disk.
+ * The writer encodes the ticks of each book side into columnar, delta encoded blocks, each starting with a checkpoint
+ * of the book side, and appends them to the side's data file (see {@link TickFormat}).
+ *
+ * Blocks are written when they are full, when they have been open for longer than the maximum block age, on
+ * {@link #flush()} and on {@link #close()}. Ticks in a block which hasn't been written yet can't be queried.
+ */
+public class TickStore implements AutoCloseable {
+
+    private static final int DEFAULT_BLOCK_SIZE = 4096;
+    private static final int RING_SIZE = 1 << 16;
+    private static final long MAX_BLOCK_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Path directory;
+    private final int blockSize;
+    private final TimeUnit feedTimeUnit;
+    private final List<RecordingSide> sides = new CopyOnWriteArrayList<>();
+    private final Thread writerThread;
+
+    private final AtomicLong flushRequests = new AtomicLong();
+    private volatile long flushesCompleted;
+    private volatile boolean runningFlag = true;
+
+    public TickStore(Path directory) throws IOException {
+        this(directory, DEFAULT_BLOCK_SIZE);
+    }
+
+    public TickStore(Path directory, int blockSize) throws IOException {
+        this(directory, blockSize, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param directory directory to keep the files in, created if it doesn't exist. Existing files are appended to.
+     * @param blockSize number of ticks per block, and so the distance between checkpoints
+     * @param feedTimeUnit unit of the message times, seconds since the epoch for the text feed
+     */
+    public TickStore(Path directory, int blockSize, TimeUnit feedTimeUnit) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.blockSize = blockSize;
+        this.feedTimeUnit = feedTimeUnit;
+
+        this.writerThread = new Thread(this::writeTicks, "Tick Store Writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Create the recorder for a book side. Set it as the listener of the side's processor before the book is launched.
+     */
+    public TickRecorder recorderFor(CcyPair pair, Side side) throws IOException {
+        TickRecorder recorder = new TickRecorder(pair, side, RING_SIZE, feedTimeUnit);
+        sides.add(new RecordingSide(recorder, new TickBlockWriter(directory, pair, side, blockSize)));
+        return recorder;
+    }
+
+    /**
+     * Write everything recorded so far to disk, open blocks included, and wait until it's done
+     */
+    public void flush() throws InterruptedException {
+        long request = flushRequests.incrementAndGet();
+        while (flushesCompleted < request) {
+            if (!writerThread.isAlive()) {
+                throw new IllegalStateException("Tick store writer is not running");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Write everything recorded so far and close the files. Recorders must not be used any more.
+     *
+     * @throws IllegalStateException if interrupted while waiting for the writer, with the interrupt flag restored
+     */
+    @Override
+    public void close() {
+        runningFlag = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while closing the tick store", e);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private void writeTicks() {
+        while (runningFlag) {
+            long flushRequest = flushRequests.get();
+
+            int drained = 0;
+            for (RecordingSide side : sides) {
+                drained += side.recorder.getRing().drain(side.writer);
+            }
+
+            long now = System.nanoTime();
+            for (RecordingSide side : sides) {
+                if (flushRequest > flushesCompleted || side.writer.isOpenLongerThan(MAX_BLOCK_AGE_NANOS, now)) {
+                    side.writer.flush();
+                }
+            }
+            flushesCompleted = flushRequest;
+
+            if (drained == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+
+        //Whatever the book threads have published by now goes to disk as well
+        for (RecordingSide side : sides) {
+            side.recorder.getRing().drain(side.writer);
+            try {
+                side.writer.close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to close tick store files", e);
+            }
+        }
+    }
+
+    /**
+     * Recorder of a book side and the writer of its files
+     */
+    private static final class RecordingSide {
+        private final TickRecorder recorder;
+        private final TickBlockWriter writer;
+
+        private RecordingSide(TickRecorder recorder, TickBlockWriter writer) {
+            this.recorder = recorder;
+            this.writer = writer;
+        }
+    }
+}
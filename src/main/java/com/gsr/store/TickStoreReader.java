@@ -0,0 +1,176 @@
+package com.gsr.store;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+
+/**
+ * As of queries against a tick store directory. A book side is rebuilt by finding the last block which starts at or
+ * before the requested time in the index, loading the checkpoint at its start and replaying only the ticks of that
+ * block up to the requested time.
+ *
+ * If ticks were dropped before the requested time, since the book side was last cleared, the snapshot is flagged as
+ * incomplete rather than silently showing a book which may be wrong.
+ *
+ * Readers can be used while the store is being written, from this or another process. They see every block written
+ * before the query started.
+ */
+public class TickStoreReader {
+
+    private final Path directory;
+
+    public TickStoreReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param epochNanos time to rebuild the book at, in nanoseconds since the epoch. Ticks at exactly that time are
+     *                   included.
+     * @return the book side at that time, empty if nothing was recorded before it
+     */
+    public BookSnapshot asOf(CcyPair pair, Side side, long epochNanos) throws IOException {
+        TreeMap<Long, Long> book = new TreeMap<>();
+        boolean complete = true;
+
+        Path indexFile = TickFormat.indexFile(directory, pair, side);
+        if (Files.exists(indexFile)) {
+            long offset = findBlock(indexFile, epochNanos);
+            if (offset >= 0) {
+                complete = replayBlock(TickFormat.dataFile(directory, pair, side), offset, epochNanos, book);
+            }
+        }
+
+        NavigableMap<Long, Long> fromTop = side == Side.Bid ? book.descendingMap() : book;
+        long[] prices = new long[book.size()];
+        long[] quantities = new long[book.size()];
+        int level = 0;
+        for (Map.Entry<Long, Long> entry : fromTop.entrySet()) {
+            prices[level] = entry.getKey();
+            quantities[level] = entry.getValue();
+            level += 1;
+        }
+        return new BookSnapshot(pair, side, epochNanos, prices, quantities, complete);
+    }
+
+    /**
+     * @return offset of the last block starting at or before the given time, -1 if there is none
+     */
+    private long findBlock(Path indexFile, long epochNanos) throws IOException {
+        ByteBuffer index = readAll(indexFile);
+        int entries = index.remaining() / TickFormat.INDEX_ENTRY_BYTES;
+
+        //Blocks are written in time order, so the index is sorted by first timestamp
+        int low = 0;
+        int high = entries - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (index.getLong(middle * TickFormat.INDEX_ENTRY_BYTES) <= epochNanos) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found < 0 ? -1 : index.getLong(found * TickFormat.INDEX_ENTRY_BYTES + 16);
+    }
+
+    /**
+     * @return false if the book may be missing ticks at the given time
+     */
+    private boolean replayBlock(Path dataFile, long offset, long epochNanos, TreeMap<Long, Long> book) throws IOException {
+        try (FileChannel channel = FileChannel.open(dataFile, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(TickFormat.BLOCK_HEADER_BYTES);
+            readFully(channel, header, offset);
+            header.flip();
+
+            if (header.getInt() != TickFormat.BLOCK_MAGIC) {
+                throw new IOException("No tick block at offset " + offset + " of " + dataFile);
+            }
+            int tickCount = header.getInt();
+            long firstTimestamp = header.getLong();
+            header.getLong();
+            int checkpointLength = header.getInt();
+            int timestampsLength = header.getInt();
+            int pricesLength = header.getInt();
+            int quantitiesLength = header.getInt();
+            boolean complete = (header.getInt() & TickFormat.FLAG_INCOMPLETE_CHECKPOINT) == 0;
+
+            ByteBuffer body = ByteBuffer.allocate(checkpointLength + timestampsLength + pricesLength + quantitiesLength);
+            readFully(channel, body, offset + TickFormat.BLOCK_HEADER_BYTES);
+
+            ByteBuffer checkpoint = slice(body, 0, checkpointLength);
+            ByteBuffer timestamps = slice(body, checkpointLength, timestampsLength);
+            ByteBuffer prices = slice(body, checkpointLength + timestampsLength, pricesLength);
+            ByteBuffer quantities = slice(body, checkpointLength + timestampsLength + pricesLength, quantitiesLength);
+
+            long levels = TickFormat.readVarLong(checkpoint);
+            long price = 0;
+            for (long i = 0; i < levels; i++) {
+                price += TickFormat.unZigZag(TickFormat.readVarLong(checkpoint));
+                book.put(price, TickFormat.readVarLong(checkpoint));
+            }
+
+            long timestamp = firstTimestamp;
+            price = 0;
+            for (int i = 0; i < tickCount; i++) {
+                timestamp += TickFormat.unZigZag(TickFormat.readVarLong(timestamps));
+                if (timestamp > epochNanos) {
+                    return complete;
+                }
+                price += TickFormat.unZigZag(TickFormat.readVarLong(prices));
+                long quantity = TickFormat.readVarLong(quantities);
+
+                if (quantity == TickFormat.QUANTITY_CLEAR) {
+                    book.clear();
+                    complete = true;
+                } else if (quantity == TickFormat.QUANTITY_GAP) {
+                    complete = false;
+                } else if (quantity == TickFormat.QUANTITY_REMOVE) {
+                    book.remove(price);
+                } else {
+                    book.put(price, TickFormat.decodeQuantity(quantity));
+                }
+            }
+            return complete;
+        }
+    }
+
+    private static ByteBuffer readAll(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            //Only whole entries, the writer may be half way through the next one
+            long size = channel.size() / TickFormat.INDEX_ENTRY_BYTES * TickFormat.INDEX_ENTRY_BYTES;
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            readFully(channel, buffer, 0);
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of tick store file");
+            }
+            position += read;
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset).limit(offset + length);
+        return slice.slice();
+    }
+}
@@ -0,0 +1,199 @@
+package com.gsr.analytics.server;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AnalyticsServerTest {
+
+    //Small buffers, so that the server has to hold back reading from the clients
+    private static final int BUFFER_SIZE = 1024;
+    private static final int EXPIRED_LEVELS = 13;
+
+    private final ConcurrentLinkedQueue<Request> requestQueue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Request> responseQueue = new ConcurrentLinkedQueue<>();
+    private volatile boolean engineRunning = true;
+    private Thread engine;
+    private AnalyticsServer server;
+    private InetSocketAddress address;
+
+    @Before
+    public void setUp() throws IOException {
+        //Stands in for the engine: answers levels * 10 + pair, and expires requests for EXPIRED_LEVELS
+        engine = new Thread(() -> {
+            while (engineRunning) {
+                Request request = requestQueue.poll();
+                if (request == null) {
+                    Thread.yield();
+                    continue;
+                }
+                if (request.getLevels() == EXPIRED_LEVELS) {
+                    request.expire();
+                } else {
+                    request.populateResult(request.getLevels() * 10 + request.getPair().ordinal());
+                }
+                responseQueue.offer(request);
+            }
+        });
+        engine.start();
+
+        server = new AnalyticsServer(requestQueue, responseQueue, BUFFER_SIZE);
+        address = server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        server.shutdown();
+        engineRunning = false;
+        engine.join();
+    }
+
+    @Test
+    public void testPipelinedRequestsAreMatchedById() throws IOException {
+        int requests = 5_000;
+        int window = 500;
+        try (AnalyticsClient first = new AnalyticsClient(address, 4096);
+             AnalyticsClient second = new AnalyticsClient(address, 4096)) {
+            Map<Long, Double> firstExpected = new HashMap<>();
+            Map<Long, Double> secondExpected = new HashMap<>();
+            ResponseCheck firstCheck = new ResponseCheck(firstExpected);
+            ResponseCheck secondCheck = new ResponseCheck(secondExpected);
+
+            for (int sent = 0; sent < requests; sent++) {
+                int levels = 1 + sent % 10;
+                firstExpected.put(first.submit(RequestType.Vwap, CcyPair.BTCUSD, Side.Bid, levels), levels * 10.0);
+                secondExpected.put(second.submit(RequestType.AveragePrice, CcyPair.SOLUSD, Side.Offer, levels), levels * 10.0 + 2);
+
+                if (sent % window == window - 1) {
+                    first.flush();
+                    second.flush();
+                    while (firstExpected.size() > window / 2) {
+                        first.poll(firstCheck);
+                    }
+                    while (secondExpected.size() > window / 2) {
+                        second.poll(secondCheck);
+                    }
+                }
+            }
+            first.flush();
+            second.flush();
+            while (!firstExpected.isEmpty()) {
+                first.poll(firstCheck);
+            }
+            while (!secondExpected.isEmpty()) {
+                second.poll(secondCheck);
+            }
+        }
+
+        assertEquals(2 * requests, server.getRequestsReceived());
+        assertEquals(2 * requests, server.getResponsesSent());
+        //Responses go out in batches, not one write each
+        assertTrue(server.getFlushes() < server.getResponsesSent());
+    }
+
+    @Test
+    public void testExpiredAndBadRequests() throws IOException {
+        try (AnalyticsClient client = new AnalyticsClient(address, 4096)) {
+            Map<Long, ResponseStatus> statuses = new HashMap<>();
+            long expired = client.submit(RequestType.Vwap, CcyPair.ETHUSD, Side.Bid, EXPIRED_LEVELS, RequestPriority.Low, 0, 0);
+            long batch = client.submit(RequestType.Batch, CcyPair.ETHUSD, Side.Bid, 5);
+            long noLevels = client.submit(RequestType.Vwap, CcyPair.ETHUSD, Side.Bid, 0);
+            long ok = client.submit(RequestType.Vwap, CcyPair.ETHUSD, Side.Bid, 2);
+            client.flush();
+
+            while (statuses.size() < 4) {
+                client.poll((id, status, result) -> statuses.put(id, status));
+            }
+            assertEquals(ResponseStatus.Expired, statuses.get(expired));
+            assertEquals(ResponseStatus.BadRequest, statuses.get(batch));
+            assertEquals(ResponseStatus.BadRequest, statuses.get(noLevels));
+            assertEquals(ResponseStatus.Ok, statuses.get(ok));
+            assertEquals(2, server.getBadRequests());
+        }
+    }
+
+    @Test
+    public void testUnknownVenuesAreRejected() throws IOException {
+        try (AnalyticsClient client = new AnalyticsClient(address, 4096)) {
+            Map<Long, ResponseStatus> statuses = new HashMap<>();
+            long unknown = client.submit(RequestType.VenueQuantity, CcyPair.BTCUSD, Side.Bid, 3, RequestPriority.Normal, 8, 0);
+            long known = client.submit(RequestType.VenueVwap, CcyPair.BTCUSD, Side.Bid, 3, RequestPriority.Normal, 7, 0);
+            client.flush();
+
+            while (statuses.size() < 2) {
+                client.poll((id, status, result) -> statuses.put(id, status));
+            }
+            assertEquals(ResponseStatus.BadRequest, statuses.get(unknown));
+            assertEquals(ResponseStatus.Ok, statuses.get(known));
+            assertEquals(1, server.getBadRequests());
+        }
+    }
+
+    @Test
+    public void testUnknownOrdinalsAreRejected() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ByteBuffer frame = ByteBuffer.allocate(AnalyticsProtocol.REQUEST_SIZE);
+            AnalyticsProtocol.writeRequest(frame, 7, RequestType.Vwap, CcyPair.BTCUSD, Side.Bid, 3, RequestPriority.Normal, 0, 0);
+            frame.put(9, (byte) 100);
+            frame.flip();
+            channel.write(frame);
+
+            ByteBuffer response = ByteBuffer.allocate(AnalyticsProtocol.RESPONSE_SIZE);
+            while (response.hasRemaining()) {
+                channel.read(response);
+            }
+            assertEquals(7, response.getLong(0));
+            assertEquals(ResponseStatus.BadRequest.ordinal(), response.get(8));
+            assertTrue(Double.isNaN(response.getDouble(16)));
+        }
+    }
+
+    @Test
+    public void testForeignResponsesAreDropped() throws IOException {
+        responseQueue.offer(new Request(1, 5, RequestType.Vwap, Side.Bid, CcyPair.BTCUSD));
+        try (AnalyticsClient client = new AnalyticsClient(address, 4096)) {
+            long id = client.submit(RequestType.Vwap, CcyPair.BTCUSD, Side.Bid, 1);
+            client.flush();
+            client.poll((responseId, status, result) -> {
+                assertEquals(id, responseId);
+                assertEquals(10.0, result, 0);
+            });
+        }
+        assertEquals(1, server.getForeignResponses());
+    }
+
+    private static class ResponseCheck implements AnalyticsResponseHandler {
+
+        private final Map<Long, Double> expected;
+
+        ResponseCheck(Map<Long, Double> expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public void onResponse(long id, ResponseStatus status, double result) {
+            assertEquals(ResponseStatus.Ok, status);
+            assertEquals(expected.remove(id), result, 0);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.gsr.application;
+
+import com.gsr.analytics.Request;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.engine.BidOrderBookProcessor;
+import com.gsr.engine.OfferOrderBookProcessor;
+import com.gsr.engine.OrderBookDistributor;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.engine.PriceLevel;
+import com.gsr.feed.MessageSerializerImpl;
+import com.gsr.feed.ObjectPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER;
+import static org.junit.Assert.assertEquals;
+
+public class EngineWarmupTest {
+
+    private static final int POOLED_MESSAGES = 4096;
+    private static final int POOLED_LEVELS = 4096;
+
+    private ObjectPool<Message> messagePool;
+    private ConcurrentLinkedQueue<Message> distributorInboundQueue;
+    private ConcurrentLinkedQueue<Request> analyticsRequestQueue;
+    private LinkedBlockingQueue<Request> analyticsResponseQueue;
+    private OrderBookDistributor orderBookDistributor;
+    private List<OrderBookProcessor> processors;
+
+    @Before
+    public void setup() {
+        messagePool = new ObjectPool<>(Message::new, 0, 1 << 14, 64);
+        distributorInboundQueue = new ConcurrentLinkedQueue<>();
+        analyticsRequestQueue = new ConcurrentLinkedQueue<>();
+        analyticsResponseQueue = new LinkedBlockingQueue<>();
+
+        List<ConcurrentLinkedQueue<Message>> queues = new ArrayList<>(6);
+        List<ConcurrentLinkedQueue<Request>> requestQueues = new ArrayList<>(6);
+        List<ConcurrentLinkedQueue<Request>> responseQueues = new ArrayList<>(6);
+        for (int i = 0; i < 6; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+            requestQueues.add(new ConcurrentLinkedQueue<>());
+            responseQueues.add(new ConcurrentLinkedQueue<>());
+        }
+
+        orderBookDistributor = new OrderBookDistributor(distributorInboundQueue, analyticsRequestQueue, queues, requestQueues, responseQueues, analyticsResponseQueue);
+        processors = Arrays.asList(
+                new OfferOrderBookProcessor(CcyPair.BTCUSD, messagePool, queues.get(0), requestQueues.get(0), responseQueues.get(0)),
+                new BidOrderBookProcessor(CcyPair.BTCUSD, messagePool, queues.get(1), requestQueues.get(1), responseQueues.get(1)),
+                new OfferOrderBookProcessor(CcyPair.ETHUSD, messagePool, queues.get(2), requestQueues.get(2), responseQueues.get(2)),
+                new BidOrderBookProcessor(CcyPair.ETHUSD, messagePool, queues.get(3), requestQueues.get(3), responseQueues.get(3)),
+                new OfferOrderBookProcessor(CcyPair.SOLUSD, messagePool, queues.get(4), requestQueues.get(4), responseQueues.get(4)),
+                new BidOrderBookProcessor(CcyPair.SOLUSD, messagePool, queues.get(5), requestQueues.get(5), responseQueues.get(5)));
+        processors.forEach(OrderBookProcessor::launchOrderBookThread);
+    }
+
+    @After
+    public void tearDown() {
+        processors.forEach(OrderBookProcessor::shutDownOrderBookThread);
+        orderBookDistributor.shutdown();
+    }
+
+    @Test
+    public void testBooksAreEmptyAndPoolsFilledAfterWarmUp() throws InterruptedException {
+        MessageSerializerImpl serializer = new MessageSerializerImpl(distributorInboundQueue, messagePool, 3, 100, MESSAGE_DELIMITER, KEY_VALUE_DELIMITER);
+        new EngineWarmup(serializer, messagePool, distributorInboundQueue, analyticsRequestQueue, analyticsResponseQueue, processors)
+                .warmUp(2000, POOLED_MESSAGES, POOLED_LEVELS);
+
+        long[] prices = new long[1];
+        long[] quantities = new long[1];
+        for (OrderBookProcessor processor : processors) {
+            assertEquals(processor.getCcyPair() + " " + processor.getSide(), 0, processor.copyTopLevels(prices, quantities));
+        }
+
+        //The warm up fed the books from the preallocated objects, and left enough behind to take more from
+        long messageMisses = messagePool.getMisses();
+        for (int i = 0; i < POOLED_MESSAGES / 2; i++) {
+            messagePool.acquireObject();
+        }
+        assertEquals(messageMisses, messagePool.getMisses());
+        for (OrderBookProcessor processor : processors) {
+            ObjectPool<PriceLevel> levelPool = processor.getPriceLevelObjectPool();
+            long levelMisses = levelPool.getMisses();
+            for (int i = 0; i < POOLED_LEVELS; i++) {
+                levelPool.acquireObject();
+            }
+            assertEquals(levelMisses, levelPool.getMisses());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.gsr.backtest;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class BacktestEngineTest {
+
+    private final double TEST_ACCEPTANCE_DELTA = 0.000000000001;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> feed = Arrays.asList(
+            "#Backtest feed",
+            "t=100|i=BTCUSD|p=1|q=10|s=b",
+            "t=100|i=ETHUSD|p=8|q=40|s=s",
+            "t=101|i=BTCUSD|p=2|q=10|s=b",
+            "t=102|i=BTCUSD|p=6|q=20|s=b",
+            "t=102|i=ETHUSD|p=10|q=80|s=s",
+            "t=103|i=BTCUSD|p=6|q=0|s=b",
+            "t=104|i=ETHUSD|p=12|q=80|s=s");
+
+    @Test
+    public void testQueriesAreEvaluatedAtExactEventTimes() throws InterruptedException {
+
+        BacktestEngine engine = new BacktestEngine(ForkJoinPool.commonPool());
+        List<BacktestQuery> results = engine.run(feed, Arrays.asList(
+                query(103, 1, CcyPair.BTCUSD, Side.Bid, RequestType.AveragePrice),
+                query(99, 2, CcyPair.BTCUSD, Side.Bid, RequestType.AveragePrice),
+                query(101, 3, CcyPair.BTCUSD, Side.Bid, RequestType.AveragePrice),
+                query(102, 4, CcyPair.BTCUSD, Side.Bid, RequestType.AveragePrice),
+                query(102, 5, CcyPair.BTCUSD, Side.Bid, RequestType.Vwap),
+                query(102, 6, CcyPair.ETHUSD, Side.Offer, RequestType.AverageQuantity),
+                query(200, 7, CcyPair.ETHUSD, Side.Offer, RequestType.AverageQuantity)));
+
+        assertEquals(0, results.get(0).getRequest().getResult(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(1.5, results.get(1).getRequest().getResult(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(3.0, results.get(2).getRequest().getResult(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(3.75, results.get(3).getRequest().getResult(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(120, results.get(4).getRequest().getResult(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(1.5, results.get(5).getRequest().getResult(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(200, results.get(6).getRequest().getResult(), TEST_ACCEPTANCE_DELTA);
+    }
+
+    @Test
+    public void testRollingStatisticsUseFeedTime() throws InterruptedException {
+
+        BacktestEngine engine = new BacktestEngine(ForkJoinPool.commonPool());
+        engine.enableRollingStatistics(10, 3, 64);
+        List<BacktestQuery> results = engine.run(feed, Arrays.asList(
+                query(104, 1, CcyPair.BTCUSD, Side.Bid, RequestType.TimeWeightedTopOfBookPrice)));
+
+        //Top of book 1.00 from 100, 2.00 from 101, 6.00 from 102, back to 2.00 from 103 -- statistics end at 103
+        assertEquals((1.0 + 2.0 + 6.0) / 3, results.get(0).getRequest().getResult(), TEST_ACCEPTANCE_DELTA);
+    }
+
+    @Test
+    public void testRunsAreReproducible() throws InterruptedException {
+
+        double first = runVwap(new ForkJoinPool(1));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(first, runVwap(new ForkJoinPool(4)), 0);
+        }
+    }
+
+    @Test
+    public void testLinesWithoutAKnownPairAreSkipped() throws InterruptedException, IOException {
+
+        List<String> dirtyFeed = new ArrayList<>(feed);
+        dirtyFeed.add(2, "t=100|p=5|q=10|s=b");
+        dirtyFeed.add(4, "t=101|i=XRPUSD|p=5|q=10|s=b");
+        dirtyFeed.add(6, "t=101|i=ETHBTC|p=5|q=10|s=b");
+        dirtyFeed.add(8, "t=101|i=BTCUSD|p=5|q=10");
+        Path file = folder.getRoot().toPath().resolve("feed.txt");
+        Files.write(file, dirtyFeed);
+
+        BacktestEngine engine = new BacktestEngine(ForkJoinPool.commonPool());
+        List<BacktestQuery> results = engine.run(file, Arrays.asList(
+                query(102, 1, CcyPair.BTCUSD, Side.Bid, RequestType.AveragePrice),
+                query(200, 2, CcyPair.ETHUSD, Side.Offer, RequestType.AverageQuantity)));
+
+        assertEquals(3.0, results.get(0).getRequest().getResult(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(200, results.get(1).getRequest().getResult(), TEST_ACCEPTANCE_DELTA);
+        //The comment, the line without a pair, the unknown pair, the implied pair and the line without a side
+        assertEquals(5, engine.getLinesSkipped());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQueriesOnImpliedPairsAreRejected() throws InterruptedException {
+        BacktestEngine engine = new BacktestEngine(ForkJoinPool.commonPool());
+        engine.run(feed, Arrays.asList(
+                query(102, 1, CcyPair.BTCUSD, Side.Bid, RequestType.AveragePrice),
+                query(102, 2, CcyPair.ETHBTC, Side.Bid, RequestType.AveragePrice)));
+    }
+
+    @Test
+    public void testPairIsFoundWithoutParsing() {
+        assertEquals(CcyPair.BTCUSD, BacktestPartition.findPair("t=1|i=BTCUSD|p=1|q=10|s=b"));
+        assertEquals(CcyPair.SOLUSD, BacktestPartition.findPair("i=SOLUSD"));
+        assertEquals(null, BacktestPartition.findPair("t=1|i=BTCUSDT|p=1|q=10|s=b"));
+        assertEquals(null, BacktestPartition.findPair("t=1|i=ETHBTC|p=1|q=10|s=b"));
+        assertEquals(null, BacktestPartition.findPair("t=1|xi=BTCUSD|p=1"));
+        assertEquals(null, BacktestPartition.findPair("#i=BTCUSD"));
+        assertEquals(null, BacktestPartition.findPair(""));
+    }
+
+    private double runVwap(ForkJoinPool pool) throws InterruptedException {
+        BacktestEngine engine = new BacktestEngine(pool);
+        return engine.run(feed, Arrays.asList(query(104, 1, CcyPair.ETHUSD, Side.Offer, RequestType.Vwap)))
+                .get(0).getRequest().getResult();
+    }
+
+    private BacktestQuery query(long time, int id, CcyPair pair, Side side, RequestType type) {
+        return new BacktestQuery(time, new Request(id, 3, type, side, pair));
+    }
+}
@@ -0,0 +1,134 @@
+package com.gsr.engine;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.feed.ObjectPool;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveLatencySchedulerTest {
+
+    private final long MD_TARGET = 10_000;
+    private final long ANALYTICS_TARGET = 50_000;
+
+    @Test
+    public void testLateMarketDataTakesBudgetFromAnalytics() {
+
+        AdaptiveLatencyScheduler scheduler = new AdaptiveLatencyScheduler(MD_TARGET, ANALYTICS_TARGET, 8, 256);
+        scheduler.onAnalyticsBatch(8, 0, ANALYTICS_TARGET * 16);
+        int analyticsBudget = scheduler.analyticsBudget();
+        assertTrue(analyticsBudget > 8);
+
+        for (int i = 0; i < 50; i++) {
+            scheduler.onMarketDataBatch(8, MD_TARGET * 16);
+            scheduler.onAnalyticsBatch(8, 0, 0);
+        }
+        assertEquals(256, scheduler.marketDataBudget());
+        assertEquals(8, scheduler.analyticsBudget());
+    }
+
+    @Test
+    public void testStaleAnalyticsAreShedOnlyWhenFeedIsBehind() {
+
+        AdaptiveLatencyScheduler scheduler = new AdaptiveLatencyScheduler(MD_TARGET, ANALYTICS_TARGET, 8, 256);
+        Request high = createRequest(RequestPriority.High);
+        Request normal = createRequest(RequestPriority.Normal);
+        Request low = createRequest(RequestPriority.Low);
+
+        //Keeping up with the feed -- nothing is shed
+        assertFalse(scheduler.shouldShed(low, ANALYTICS_TARGET * 2, MD_TARGET));
+
+        //Falling behind the feed
+        assertTrue(scheduler.shouldShed(low, 0, MD_TARGET * 2));
+        assertFalse(scheduler.shouldShed(normal, ANALYTICS_TARGET, MD_TARGET * 2));
+        assertTrue(scheduler.shouldShed(normal, ANALYTICS_TARGET + 1, MD_TARGET * 2));
+        assertFalse(scheduler.shouldShed(high, ANALYTICS_TARGET * 100, MD_TARGET * 100));
+    }
+
+    @Test
+    public void testHighPriorityIsNotHeldBehindEarlierLowPriority() {
+
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ConcurrentLinkedQueue<Message> marketData = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Request> responses = new ConcurrentLinkedQueue<>();
+        OrderBookProcessor book = new BidOrderBookProcessor(CcyPair.BTCUSD, messagePool, marketData, requests, responses);
+        //Targets long enough for the time slices never to cut a batch, only the budgets
+        book.setScheduler(new AdaptiveLatencyScheduler(1_000_000_000L, 1_000_000_000L, 8, 256));
+
+        for (int i = 0; i < 64; i++) {
+            requests.add(new Request(i, 1, RequestType.Vwap, Side.Bid, CcyPair.BTCUSD, RequestPriority.Low, 0));
+        }
+        requests.add(new Request(64, 1, RequestType.Vwap, Side.Bid, CcyPair.BTCUSD, RequestPriority.High, 0));
+
+        //More market data than one budget of 8, so some is still waiting and cuts the analytics batch at 8 too
+        addMarketData(messagePool, marketData, 16);
+        book.step();
+
+        assertEquals(8, responses.size());
+        assertEquals(64, responses.peek().getId());
+    }
+
+    @Test
+    public void testParkedRequestsAreAnsweredWhileMarketDataKeepsArriving() {
+
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        ConcurrentLinkedQueue<Message> marketData = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Request> responses = new ConcurrentLinkedQueue<>();
+        OrderBookProcessor book = new BidOrderBookProcessor(CcyPair.BTCUSD, messagePool, marketData, requests, responses);
+        book.setScheduler(new AdaptiveLatencyScheduler(1_000_000_000L, 1_000_000_000L, 8, 256));
+
+        //After the first batch of 8, the rest of the requests are parked in the buckets with the queue empty
+        for (int i = 0; i < 40; i++) {
+            requests.add(new Request(i, 1, RequestType.Vwap, Side.Bid, CcyPair.BTCUSD, RequestPriority.High, 0));
+        }
+        addMarketData(messagePool, marketData, 10_000);
+
+        for (int step = 0; step < 5; step++) {
+            book.step();
+            //The feed keeps coming
+            addMarketData(messagePool, marketData, 100);
+        }
+
+        assertEquals(40, responses.size());
+        assertTrue(book.getMessagesApplied() <= 5 * 256);
+    }
+
+    @Test
+    public void testDeadline() {
+
+        long now = System.nanoTime();
+        Request request = new Request(1, 1, RequestType.Vwap, Side.Bid, CcyPair.BTCUSD, RequestPriority.Normal, now + 1000);
+        assertFalse(request.isPastDeadline(now));
+        assertTrue(request.isPastDeadline(now + 1001));
+
+        request.expire();
+        assertTrue(request.isExpired());
+        assertTrue(Double.isNaN(request.getResult()));
+    }
+
+    private void addMarketData(ObjectPool<Message> messagePool, ConcurrentLinkedQueue<Message> marketData, int count) {
+        for (int i = 0; i < count; i++) {
+            Message message = messagePool.acquireObject();
+            message.setType(MessageType.AddOrUpdatePriceLevel);
+            message.setPair(CcyPair.BTCUSD);
+            message.setSide(Side.Bid);
+            message.setPrice(100 + i % 50);
+            message.setQuantity(1 + i);
+            marketData.add(message);
+        }
+    }
+
+    private Request createRequest(RequestPriority priority) {
+        return new Request(1, 1, RequestType.Vwap, Side.Bid, CcyPair.BTCUSD, priority, 0);
+    }
+}
@@ -0,0 +1,209 @@
+package com.gsr.engine;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.Side;
+import com.gsr.feed.MessageSerializerImpl;
+import com.gsr.feed.ObjectPool;
+import com.gsr.load.SyntheticFeedGenerator;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the bytes each engine thread allocates over a steady state replay, after a warm up, and fails when a
+ * thread goes over its budget. Budgets are per message, or per analytics request.
+ *
+ * The only allocation left on the market data path is the node ConcurrentLinkedQueue creates for every element it
+ * takes, some 24 bytes per hop. Everything else -- parsing, routing, applying, the caches and the results -- must be
+ * garbage free.
+ */
+public class AllocationBudgetTest {
+
+    //Serializer and distributor threads each offer the message to one queue
+    private static final double SERIALIZER_BYTES_PER_MESSAGE = 32;
+    private static final double DISTRIBUTOR_BYTES_PER_MESSAGE = 32;
+    private static final double BOOK_BYTES_PER_MESSAGE = 1;
+
+    //Requests pass the distributor, then a book, then the collector, each offering it to one queue
+    private static final double DISTRIBUTOR_BYTES_PER_REQUEST = 32;
+    private static final double BOOK_BYTES_PER_REQUEST = 32;
+    private static final double COLLECTOR_BYTES_PER_REQUEST = 48;
+
+    private static final int WARMUP_MESSAGES = 100_000;
+    private static final int MEASURED_MESSAGES = 100_000;
+    private static final int MAX_IN_FLIGHT = 4096;
+
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new, 1 << 15, 1 << 16, 64);
+    private final ConcurrentLinkedQueue<Message> distributorMdQueue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Request> analyticsRequestQueue = new ConcurrentLinkedQueue<>();
+    private final LinkedBlockingQueue<Request> analyticsResponseQueue = new LinkedBlockingQueue<>();
+    private final MessageSerializerImpl serializer = new MessageSerializerImpl(distributorMdQueue, messagePool, 0, 0, MESSAGE_DELIMITER, KEY_VALUE_DELIMITER);
+    private final List<OrderBookProcessor> processors = new ArrayList<>();
+    private final AtomicLong appliedMessages = new AtomicLong();
+    private final ByteBuffer lineBuffer = ByteBuffer.allocate(256);
+    private final SyntheticFeedGenerator generator = new SyntheticFeedGenerator(11, CcyPair.nativePairs());
+
+    private OrderBookDistributor distributor;
+    private long sentMessages;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        List<ConcurrentLinkedQueue<Message>> queues = new ArrayList<>();
+        List<ConcurrentLinkedQueue<Request>> requestQueues = new ArrayList<>();
+        List<ConcurrentLinkedQueue<Request>> responseQueues = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+            requestQueues.add(new ConcurrentLinkedQueue<>());
+            responseQueues.add(new ConcurrentLinkedQueue<>());
+        }
+        distributor = new OrderBookDistributor(distributorMdQueue, analyticsRequestQueue, queues, requestQueues, responseQueues, analyticsResponseQueue);
+
+        for (int i = 0; i < 6; i++) {
+            CcyPair pair = CcyPair.nativePairs()[i / 2];
+            OrderBookProcessor processor = i % 2 == 0
+                    ? new OfferOrderBookProcessor(pair, messagePool, queues.get(i), requestQueues.get(i), responseQueues.get(i))
+                    : new BidOrderBookProcessor(pair, messagePool, queues.get(i), requestQueues.get(i), responseQueues.get(i));
+            processor.setMarketDataListener((book, message) -> appliedMessages.incrementAndGet());
+            processors.add(processor);
+        }
+        processors.forEach(OrderBookProcessor::launchOrderBookThread);
+    }
+
+    @After
+    public void tearDown() {
+        if (distributor != null) {
+            distributor.shutdown();
+            processors.forEach(OrderBookProcessor::shutDownOrderBookThread);
+        }
+    }
+
+    @Test
+    public void testMarketDataPathStaysWithinBudget() throws InterruptedException {
+        replay(WARMUP_MESSAGES);
+
+        long[] distributorThreads = distributor.getThreadIds();
+        long serializerBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long distributorBefore = threads.getThreadAllocatedBytes(distributorThreads[0]);
+        long[] booksBefore = threads.getThreadAllocatedBytes(bookThreadIds());
+
+        replay(MEASURED_MESSAGES);
+
+        long[] booksAfter = threads.getThreadAllocatedBytes(bookThreadIds());
+        assertWithinBudget("Serializer", threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - serializerBefore,
+                MEASURED_MESSAGES, SERIALIZER_BYTES_PER_MESSAGE);
+        assertWithinBudget("Distributor", threads.getThreadAllocatedBytes(distributorThreads[0]) - distributorBefore,
+                MEASURED_MESSAGES, DISTRIBUTOR_BYTES_PER_MESSAGE);
+        for (int i = 0; i < processors.size(); i++) {
+            OrderBookProcessor book = processors.get(i);
+            assertWithinBudget(book.getCcyPair() + " " + book.getSide(), booksAfter[i] - booksBefore[i],
+                    MEASURED_MESSAGES, BOOK_BYTES_PER_MESSAGE);
+        }
+    }
+
+    @Test
+    public void testAnalyticsPathStaysWithinBudget() throws InterruptedException {
+        //Requests are the client's objects, so they are created up front and not measured
+        int requestCount = 20_000;
+        List<Request> requests = new ArrayList<>(requestCount * 2);
+        for (int i = 0; i < requestCount * 2; i++) {
+            RequestType type = RequestType.values()[i % 3];
+            requests.add(new Request(i, 1 + i % 20, type, Side.values()[i % 2], CcyPair.nativePairs()[i % 3]));
+        }
+        replay(WARMUP_MESSAGES / 4);
+        query(requests.subList(0, requestCount));
+
+        long[] distributorThreads = distributor.getThreadIds();
+        long[] distributorBefore = threads.getThreadAllocatedBytes(distributorThreads);
+        long[] booksBefore = threads.getThreadAllocatedBytes(bookThreadIds());
+
+        query(requests.subList(requestCount, requestCount * 2));
+
+        long[] distributorAfter = threads.getThreadAllocatedBytes(distributorThreads);
+        long[] booksAfter = threads.getThreadAllocatedBytes(bookThreadIds());
+        assertWithinBudget("Request distributor", distributorAfter[1] - distributorBefore[1], requestCount, DISTRIBUTOR_BYTES_PER_REQUEST);
+        assertWithinBudget("Response collector", distributorAfter[2] - distributorBefore[2], requestCount, COLLECTOR_BYTES_PER_REQUEST);
+
+        //Each book answers a sixth of the requests
+        for (int i = 0; i < processors.size(); i++) {
+            OrderBookProcessor book = processors.get(i);
+            assertWithinBudget(book.getCcyPair() + " " + book.getSide(), booksAfter[i] - booksBefore[i],
+                    requestCount / 6, BOOK_BYTES_PER_REQUEST);
+        }
+    }
+
+    /**
+     * Helper method to send synthetic market data through the byte level entry point, and wait until every book has
+     * applied it. The feed is throttled so that the pools never run dry.
+     */
+    private void replay(int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            lineBuffer.clear();
+            generator.next(lineBuffer);
+            serializer.onMessage(lineBuffer, 0, lineBuffer.position());
+            sentMessages += 1;
+            while (sentMessages - appliedMessages.get() > MAX_IN_FLIGHT) {
+                Thread.yield();
+            }
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (appliedMessages.get() < sentMessages) {
+            assertTrue("Books did not apply the feed in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void query(List<Request> requests) throws InterruptedException {
+        int pending = 0;
+        for (Request request : requests) {
+            analyticsRequestQueue.add(request);
+            pending += 1;
+            if (pending == 256) {
+                awaitResponses(pending);
+                pending = 0;
+            }
+        }
+        awaitResponses(pending);
+    }
+
+    private void awaitResponses(int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            assertTrue("Analytics response timed out", analyticsResponseQueue.poll(10, TimeUnit.SECONDS) != null);
+        }
+    }
+
+    private long[] bookThreadIds() {
+        long[] ids = new long[processors.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = processors.get(i).getOrderBookThreadId();
+        }
+        return ids;
+    }
+
+    private void assertWithinBudget(String thread, long allocatedBytes, long count, double budgetPerItem) {
+        double perItem = (double) allocatedBytes / count;
+        assertTrue(String.format("%s allocated %.1f bytes per item, budget is %.1f", thread, perItem, budgetPerItem),
+                perItem <= budgetPerItem);
+    }
+}
@@ -0,0 +1,161 @@
+package com.gsr.engine;
+
+import com.gsr.analytics.BatchRequest;
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.Side;
+import com.gsr.feed.MessageSerializerImpl;
+import com.gsr.feed.ObjectPool;
+import com.gsr.load.SyntheticFeedGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER;
+import static com.gsr.data.Constants.MAX_VENUES;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.junit.Assert.assertTrue;
+
+public class BatchRequestTest {
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final ConcurrentLinkedQueue<Message> distributorMdQueue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Request> analyticsRequestQueue = new ConcurrentLinkedQueue<>();
+    private final LinkedBlockingQueue<Request> analyticsResponseQueue = new LinkedBlockingQueue<>();
+    private final Queue<Message> parsedMessages = new ArrayDeque<>();
+    private final MessageSerializerImpl serializer = new MessageSerializerImpl(parsedMessages, messagePool, 0, 0, MESSAGE_DELIMITER, KEY_VALUE_DELIMITER);
+    private final List<OrderBookProcessor> processors = new ArrayList<>();
+    private OrderBookDistributor distributor;
+
+    @Before
+    public void setUp() {
+        List<ConcurrentLinkedQueue<Message>> queues = new ArrayList<>();
+        List<ConcurrentLinkedQueue<Request>> requestQueues = new ArrayList<>();
+        List<ConcurrentLinkedQueue<Request>> responseQueues = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+            requestQueues.add(new ConcurrentLinkedQueue<>());
+            responseQueues.add(new ConcurrentLinkedQueue<>());
+        }
+        distributor = new OrderBookDistributor(distributorMdQueue, analyticsRequestQueue, queues, requestQueues, responseQueues, analyticsResponseQueue);
+
+        //Processors at the queue indices the distributor routes to, not launched: the test applies market data itself
+        for (int i = 0; i < 6; i++) {
+            CcyPair pair = CcyPair.nativePairs()[i / 2];
+            processors.add(i % 2 == 0
+                    ? new OfferOrderBookProcessor(pair, messagePool, queues.get(i), requestQueues.get(i), responseQueues.get(i))
+                    : new BidOrderBookProcessor(pair, messagePool, queues.get(i), requestQueues.get(i), responseQueues.get(i)));
+        }
+
+        SyntheticFeedGenerator generator = new SyntheticFeedGenerator(7, CcyPair.nativePairs());
+        for (String line : generator.generate(3000)) {
+            Message message = parse(line);
+            processors.get(message.getPair().ordinal() * 2 + (message.getSide() == Side.Offer ? 0 : 1)).applyMarketData(message);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        distributor.shutdown();
+        processors.forEach(OrderBookProcessor::shutDownOrderBookThread);
+    }
+
+    @Test
+    public void testBatchMatchesSingleRequests() throws InterruptedException {
+        Random random = new Random(3);
+        BatchRequest batch = new BatchRequest(1);
+        List<Request> singles = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            RequestType type = RequestType.values()[random.nextInt(RequestType.Batch.ordinal())];
+            CcyPair pair = CcyPair.nativePairs()[random.nextInt(CcyPair.nativePairs().length)];
+            Side side = Side.values()[random.nextInt(2)];
+            int levels = random.nextInt(30);
+            batch.add(type, pair, side, levels, random.nextInt(2));
+            singles.add(new Request(i, levels, type, side, pair, RequestPriority.Normal, 0, batch.getVenue(i)));
+        }
+
+        launch();
+        analyticsRequestQueue.add(batch);
+        assertSame(batch, analyticsResponseQueue.poll(5, TimeUnit.SECONDS));
+        assertFalse(batch.isExpired());
+        assertEquals(200, batch.getResult(), 0);
+        shutDownBooks();
+
+        for (int i = 0; i < singles.size(); i++) {
+            Request single = singles.get(i);
+            processors.get(single.getPair().ordinal() * 2 + (single.getSide() == Side.Offer ? 0 : 1)).serviceRequest(single);
+            assertEquals(single.toString(), single.getResult(), batch.getResult(i), 0);
+        }
+    }
+
+    @Test
+    public void testExpiredPartsLeaveTheirQueriesUnanswered() throws InterruptedException {
+        BatchRequest batch = new BatchRequest(1, RequestPriority.Low, System.nanoTime() - 1);
+        batch.add(RequestType.Vwap, CcyPair.BTCUSD, Side.Bid, 5);
+        batch.add(RequestType.AverageQuantity, CcyPair.SOLUSD, Side.Offer, 5);
+
+        launch();
+        analyticsRequestQueue.add(batch);
+        assertSame(batch, analyticsResponseQueue.poll(5, TimeUnit.SECONDS));
+        assertTrue(batch.isExpired());
+        assertTrue(Double.isNaN(batch.getResult(0)));
+        assertTrue(Double.isNaN(batch.getResult(1)));
+    }
+
+    @Test
+    public void testVenueOutOfRangeIsRejected() {
+        BatchRequest batch = new BatchRequest(1);
+        for (int venue : new int[]{-1, MAX_VENUES}) {
+            try {
+                batch.add(RequestType.VenueQuantity, CcyPair.BTCUSD, Side.Bid, 5, venue);
+                fail("Venue " + venue + " was added to the batch");
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                new Request(2, 5, RequestType.VenueVwap, Side.Bid, CcyPair.BTCUSD, RequestPriority.Normal, 0, venue);
+                fail("Venue " + venue + " was accepted by the request");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assertEquals(0, batch.add(RequestType.VenueQuantity, CcyPair.BTCUSD, Side.Bid, 5, MAX_VENUES - 1));
+    }
+
+    @Test
+    public void testEmptyBatchCompletes() throws InterruptedException {
+        BatchRequest batch = new BatchRequest(1);
+        analyticsRequestQueue.add(batch);
+        assertSame(batch, analyticsResponseQueue.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, batch.getResult(), 0);
+    }
+
+    private void launch() {
+        processors.forEach(OrderBookProcessor::launchOrderBookThread);
+    }
+
+    private void shutDownBooks() throws InterruptedException {
+        processors.forEach(OrderBookProcessor::shutDownOrderBookThread);
+        //Let the book threads finish their loop before the test reads the books itself
+        Thread.sleep(50);
+    }
+
+    private Message parse(String line) {
+        serializer.onMessage(line);
+        return parsedMessages.poll();
+    }
+}
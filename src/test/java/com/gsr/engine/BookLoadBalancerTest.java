@@ -0,0 +1,208 @@
+package com.gsr.engine;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.feed.ObjectPool;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BookLoadBalancerTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+
+    @Test
+    public void testBookMovedWhileLiveKeepsEveryMessageInOrder() throws InterruptedException {
+        int messages = 200_000;
+        ConcurrentLinkedQueue<Message> queue = new ConcurrentLinkedQueue<>();
+        OrderBookProcessor book = new BidOrderBookProcessor(CcyPair.BTCUSD, messagePool, queue, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+
+        //Written by whichever worker has the book, read once the last message is applied
+        long[] applied = new long[messages];
+        int[] appliedCount = new int[1];
+        book.setMarketDataListener((b, message) -> applied[appliedCount[0]++] = message.getTime());
+
+        BookWorker first = new BookWorker("Book Worker A");
+        BookWorker second = new BookWorker("Book Worker B");
+        first.addBook(book);
+        first.start();
+        second.start();
+
+        Thread feed = new Thread(() -> {
+            for (int i = 0; i < messages; i++) {
+                queue.add(message(CcyPair.BTCUSD, 100 + i % 50, i + 1, i));
+            }
+        });
+        feed.start();
+
+        //Bounce the book between the workers while the feed is running, each move queued before the last one is done
+        for (int i = 0; i < 20; i++) {
+            first.moveBook(book, second);
+            second.moveBook(book, first);
+            Thread.sleep(1);
+        }
+        feed.join();
+
+        //The feed may be applied before the last moves are done, so wait for both
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (book.getMessagesApplied() < messages || second.getBooksReceived() < 20 || first.getBooksReceived() < 21) {
+            assertTrue("Timed out waiting for the book", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        first.shutdown();
+        second.shutdown();
+
+        assertEquals(messages, appliedCount[0]);
+        for (int i = 0; i < messages; i++) {
+            assertEquals(i, applied[i]);
+        }
+        //Every price holds the quantity of its last update
+        for (int price = 100; price < 150; price++) {
+            assertEquals(messages - 50 + price - 100 + 1, book.getQuantityAt(price));
+        }
+        assertEquals(20, second.getBooksReceived());
+        assertEquals(21, first.getBooksReceived());
+    }
+
+    @Test
+    public void testHottestBookIsMovedToTheIdleWorker() throws InterruptedException {
+        ConcurrentLinkedQueue<Message> hotQueue = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Message> warmQueue = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Message> coldQueue = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Request> requestQueue = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Request> responseQueue = new ConcurrentLinkedQueue<>();
+        OrderBookProcessor hot = new BidOrderBookProcessor(CcyPair.BTCUSD, messagePool, hotQueue, requestQueue, responseQueue);
+        OrderBookProcessor warm = new BidOrderBookProcessor(CcyPair.ETHUSD, messagePool, warmQueue, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+        OrderBookProcessor cold = new BidOrderBookProcessor(CcyPair.SOLUSD, messagePool, coldQueue, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+
+        //Rebalanced by hand, the balancer thread never gets to it
+        BookLoadBalancer balancer = new BookLoadBalancer(2, 3_600_000);
+        balancer.addBook(hot, 0);
+        balancer.addBook(warm, 0);
+        balancer.addBook(cold, 0);
+        balancer.start();
+
+        try {
+            feed(hot, hotQueue, 1000);
+            feed(warm, warmQueue, 500);
+            feed(cold, coldQueue, 10);
+
+            //Moving the hot book leaves the workers closest to even
+            assertTrue(balancer.rebalance());
+            assertEquals(1, balancer.getWorkerOf(hot));
+            assertEquals(0, balancer.getWorkerOf(warm));
+            assertEquals(1, balancer.getMigrations());
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (balancer.getWorker(1).getBooksReceived() < 1) {
+                assertTrue("Timed out waiting for the move", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+
+            //The new worker carries on where the old one stopped, requests included
+            feed(hot, hotQueue, 100);
+            requestQueue.add(new Request(1, 10, RequestType.AverageQuantity, Side.Bid, CcyPair.BTCUSD));
+            Request response;
+            while ((response = responseQueue.poll()) == null) {
+                assertTrue("Timed out waiting for the response", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+            //Levels 100 to 109 hold the quantities of the last round of updates, 91 to 100
+            assertEquals(955, response.getResult(), 0.0);
+            assertEquals(1, hot.getRequestsHandled());
+        } finally {
+            balancer.shutdown();
+        }
+    }
+
+    @Test
+    public void testStaleMoveDoesNotHoldUpLaterMoves() throws InterruptedException {
+        ConcurrentLinkedQueue<Message> firstQueue = new ConcurrentLinkedQueue<>();
+        OrderBookProcessor first = new BidOrderBookProcessor(CcyPair.BTCUSD, messagePool, firstQueue, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+        OrderBookProcessor second = new BidOrderBookProcessor(CcyPair.ETHUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+        long[] appliedOn = new long[1];
+        first.setMarketDataListener((b, message) -> appliedOn[0] = Thread.currentThread().getId());
+
+        BookWorker from = new BookWorker("Book Worker A");
+        BookWorker to = new BookWorker("Book Worker B");
+        from.addBook(first);
+        from.addBook(second);
+        //The second move of the first book comes after it has left, so the worker neither holds nor expects it
+        assertTrue(from.moveBook(first, to));
+        assertTrue(from.moveBook(first, to));
+        assertTrue(from.moveBook(second, to));
+        from.start();
+        to.start();
+
+        try {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (to.getBooksReceived() < 2) {
+                assertTrue("Timed out waiting for the moves", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+            assertEquals(1, from.getStaleMoves());
+            assertEquals(2, from.getBooksReleased());
+
+            //The book reports the thread of the worker driving it
+            feed(first, firstQueue, 1);
+            assertEquals(appliedOn[0], first.getOrderBookThreadId());
+        } finally {
+            from.shutdown();
+            to.shutdown();
+        }
+    }
+
+    @Test
+    public void testFullWorkerRefusesBooks() {
+        BookWorker full = new BookWorker("Book Worker A");
+        BookWorker other = new BookWorker("Book Worker B");
+        for (int i = 0; i < BookWorker.MAX_BOOKS; i++) {
+            full.addBook(new BidOrderBookProcessor(CcyPair.BTCUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>()));
+        }
+        OrderBookProcessor book = new BidOrderBookProcessor(CcyPair.ETHUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+        other.addBook(book);
+
+        assertFalse(full.hasRoom());
+        assertFalse(other.moveBook(book, full));
+        try {
+            full.addBook(book);
+            fail("Book added to a full worker");
+        } catch (IllegalStateException e) {
+            //Expected
+        }
+    }
+
+    private void feed(OrderBookProcessor book, ConcurrentLinkedQueue<Message> queue, int count) throws InterruptedException {
+        long target = book.getMessagesApplied() + count;
+        for (int i = 0; i < count; i++) {
+            queue.add(message(book.getCcyPair(), 100 + i % 10, i + 1, i));
+        }
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (book.getMessagesApplied() < target) {
+            assertTrue("Timed out waiting for the book", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private Message message(CcyPair pair, long price, long quantity, long time) {
+        Message message = messagePool.acquireObject();
+        message.setType(MessageType.AddOrUpdatePriceLevel);
+        message.setPair(pair);
+        message.setSide(Side.Bid);
+        message.setPrice(price);
+        message.setQuantity(quantity);
+        message.setTime(time);
+        return message;
+    }
+}
@@ -0,0 +1,153 @@
+package com.gsr.engine;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.feed.ByteMessageParser;
+import com.gsr.feed.MessageSerializerImpl;
+import com.gsr.feed.ObjectPool;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BulkMessageTest {
+
+    private final Queue<Message> parsedMessages = new ArrayDeque<>();
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final MessageSerializerImpl serializer = new MessageSerializerImpl(parsedMessages, messagePool, 0, 0, MESSAGE_DELIMITER, KEY_VALUE_DELIMITER);
+    private final ByteMessageParser byteParser = new ByteMessageParser(messagePool);
+    private final OrderBookProcessor bids = new BidOrderBookProcessor(CcyPair.ETHUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+    private final OrderBookProcessor offers = new OfferOrderBookProcessor(CcyPair.ETHUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+
+    @Test
+    public void testSnapshotRebuildsSideInBookOrder() {
+        apply(bids, "t=1|i=ETHUSD|s=b|v=0|r=100:1,102.5:2,101:3,99:4");
+        assertTopLevels(bids, new long[]{10250, 10100, 10000, 9900}, new long[]{2, 3, 1, 4});
+
+        //A second snapshot replaces the first entirely
+        apply(bids, "t=2|i=ETHUSD|s=b|v=0|r=98:5,101:6");
+        assertTopLevels(bids, new long[]{10100, 9800}, new long[]{6, 5});
+
+        apply(offers, "t=1|i=ETHUSD|s=o|v=0|r=103:1,101:2,102:3");
+        assertTopLevels(offers, new long[]{10100, 10200, 10300}, new long[]{2, 3, 1});
+    }
+
+    @Test
+    public void testSnapshotOnlyReplacesItsVenue() {
+        apply(bids, "t=1|i=ETHUSD|p=100|q=5|s=b|v=1");
+        apply(bids, "t=1|i=ETHUSD|p=99|q=5|s=b|v=1");
+        apply(bids, "t=1|i=ETHUSD|s=b|v=0|r=100:1,98:2");
+        apply(bids, "t=2|i=ETHUSD|s=b|v=0|r=99:3");
+        assertTopLevels(bids, new long[]{10000, 9900}, new long[]{5, 8});
+
+        //An empty snapshot takes the venue off the side
+        apply(bids, "t=3|i=ETHUSD|s=b|v=1|r=");
+        assertTopLevels(bids, new long[]{9900}, new long[]{3});
+    }
+
+    @Test
+    public void testMultiLevelUpdateMergesIntoBook() {
+        apply(offers, "t=1|i=ETHUSD|s=o|v=0|r=100:1,102:2,104:3");
+        apply(offers, "t=2|i=ETHUSD|s=o|v=0|l=105:9,102:0,99:4,103:5,104:6");
+        assertTopLevels(offers, new long[]{9900, 10000, 10300, 10400, 10500}, new long[]{4, 1, 5, 6, 9});
+
+        //Removing the best level and adding below it in one update
+        apply(offers, "t=3|i=ETHUSD|s=o|v=0|l=99:0,99.5:7");
+        assertTopLevels(offers, new long[]{9950, 10000, 10300, 10400, 10500}, new long[]{7, 1, 5, 6, 9});
+    }
+
+    @Test
+    public void testListenerSeesEachChangedLevel() {
+        List<String> changes = new ArrayList<>();
+        bids.setMarketDataListener((book, message) -> changes.add(message.getType() + " " + message.getPrice() + " " + book.getQuantityAt(message.getPrice())));
+
+        apply(bids, "t=1|i=ETHUSD|s=b|v=0|r=100:1,99:2");
+        apply(bids, "t=2|i=ETHUSD|s=b|v=0|r=99:3,98:4");
+        apply(bids, "t=3|i=ETHUSD|s=b|v=0|l=98:0");
+
+        List<String> expected = new ArrayList<>();
+        expected.add("AddOrUpdatePriceLevel 10000 1");
+        expected.add("AddOrUpdatePriceLevel 9900 2");
+        expected.add("RemovePriceLevel 10000 0");
+        expected.add("AddOrUpdatePriceLevel 9900 3");
+        expected.add("AddOrUpdatePriceLevel 9800 4");
+        expected.add("RemovePriceLevel 9800 0");
+        assertEquals(expected, changes);
+    }
+
+    @Test
+    public void testByteParserReadsLevels() {
+        Message message = parseBytes("t=1|i=ETHUSD|s=b|v=2|l=100.25:3,99:0");
+        assertEquals(MessageType.MultiLevelUpdate, message.getType());
+        assertEquals(2, message.getVenue());
+        assertEquals(2, message.getLevelCount());
+        assertEquals(10025, message.getLevelPrice(0));
+        assertEquals(3, message.getLevelQuantity(0));
+        assertEquals(9900, message.getLevelPrice(1));
+        assertEquals(0, message.getLevelQuantity(1));
+        messagePool.returnObject(message);
+
+        //Pooled messages forget the levels of their previous life
+        Message snapshot = parseBytes("t=1|i=ETHUSD|s=b|r=");
+        assertEquals(MessageType.Snapshot, snapshot.getType());
+        assertEquals(0, snapshot.getLevelCount());
+
+        assertNull(parseBytes("t=1|i=ETHUSD|s=b|l=100"));
+        assertNull(parseBytes("t=1|i=ETHUSD|s=b|l="));
+    }
+
+    @Test
+    public void testByteParserRejectsMalformedNumbers() {
+        assertNull(parseBytes("t=1|i=ETHUSD|p=-100|q=5|s=b"));
+        assertNull(parseBytes("t=1|i=ETHUSD|p=10x0|q=5|s=b"));
+        assertNull(parseBytes("t=1|i=ETHUSD|p=100.125|q=5|s=b"));
+        assertNull(parseBytes("t=1|i=ETHUSD|p=100|q=0.005|s=b"));
+        assertNull(parseBytes("t=1|i=ETHUSD|p=100|q=+5|s=b"));
+        assertNull(parseBytes("t=1a|i=ETHUSD|p=100|q=5|s=b"));
+        assertNull(parseBytes("t=1|i=ETHUSD|p=.|q=5|s=b"));
+        assertNull(parseBytes("t=1|i=ETHUSD|p=99999999999999999999|q=5|s=b"));
+        assertNull(parseBytes("t=1|i=ETHUSD|s=b|l=100:1,99.999:2"));
+        assertNull(parseBytes("t=1|i=ETHUSD|s=b|l=100:1,99:2x"));
+
+        Message message = parseBytes("t=1|i=ETHUSD|p=100.5|q=5.00|s=b");
+        assertEquals(10050, message.getPrice());
+        assertEquals(5, message.getQuantity());
+        messagePool.returnObject(message);
+
+        Message remove = parseBytes("t=1|i=ETHUSD|p=100.05|q=0.00|s=b");
+        assertEquals(MessageType.RemovePriceLevel, remove.getType());
+        assertEquals(10005, remove.getPrice());
+        messagePool.returnObject(remove);
+    }
+
+    private Message parseBytes(String line) {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII));
+        return byteParser.parse(buffer, 0, buffer.limit());
+    }
+
+    private void apply(OrderBookProcessor book, String line) {
+        serializer.onMessage(line);
+        book.applyMarketData(parsedMessages.poll());
+    }
+
+    private void assertTopLevels(OrderBookProcessor book, long[] prices, long[] quantities) {
+        long[] actualPrices = new long[prices.length + 1];
+        long[] actualQuantities = new long[prices.length + 1];
+        assertEquals(prices.length, book.copyTopLevels(actualPrices, actualQuantities));
+        for (int i = 0; i < prices.length; i++) {
+            assertEquals(prices[i], actualPrices[i]);
+            assertEquals(quantities[i], actualQuantities[i]);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.gsr.engine;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.Side;
+import com.gsr.feed.MessageSerializerImpl;
+import com.gsr.feed.ObjectPool;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ConsolidatedBookTest {
+
+    private final double TEST_ACCEPTANCE_DELTA = 0.000000000001;
+
+    private final Queue<Message> parsedMessages = new ArrayDeque<>();
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final MessageSerializerImpl serializer = new MessageSerializerImpl(parsedMessages, messagePool, 0, 0, MESSAGE_DELIMITER, KEY_VALUE_DELIMITER);
+    private OrderBookProcessor book;
+
+    @Before
+    public void setUp() {
+        book = new OfferOrderBookProcessor(CcyPair.BTCUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+    }
+
+    @Test
+    public void testVenuesAddUpOnTheSameLevel() {
+        apply("t=1|i=BTCUSD|p=10|q=5|s=s|v=0");
+        apply("t=1|i=BTCUSD|p=10|q=7|s=s|v=1");
+        apply("t=1|i=BTCUSD|p=11|q=4|s=s|v=2");
+
+        assertEquals(16, query(RequestType.AverageQuantity, 2, 0), TEST_ACCEPTANCE_DELTA);
+        assertEquals((10.0 * 12 + 11.0 * 4) / 16, query(RequestType.Vwap, 2, 0), TEST_ACCEPTANCE_DELTA);
+        assertEquals(10.5, query(RequestType.AveragePrice, 2, 0), TEST_ACCEPTANCE_DELTA);
+
+        //Updates replace the venue's quantity only
+        apply("t=2|i=BTCUSD|p=10|q=1|s=s|v=1");
+        assertEquals(6, query(RequestType.AverageQuantity, 1, 0), TEST_ACCEPTANCE_DELTA);
+    }
+
+    @Test
+    public void testLevelStaysUntilLastVenueRemoves() {
+        apply("t=1|i=BTCUSD|p=10|q=5|s=s|v=0");
+        apply("t=1|i=BTCUSD|p=10|q=7|s=s|v=1");
+        apply("t=1|i=BTCUSD|p=12|q=3|s=s|v=1");
+
+        apply("t=2|i=BTCUSD|p=10|q=0|s=s|v=0");
+        assertEquals(7, query(RequestType.AverageQuantity, 1, 0), TEST_ACCEPTANCE_DELTA);
+        assertEquals(10, query(RequestType.AveragePrice, 1, 0), TEST_ACCEPTANCE_DELTA);
+
+        apply("t=3|i=BTCUSD|p=10|q=0|s=s|v=1");
+        assertEquals(12, query(RequestType.AveragePrice, 1, 0), TEST_ACCEPTANCE_DELTA);
+        assertEquals(3, query(RequestType.AverageQuantity, 5, 0), TEST_ACCEPTANCE_DELTA);
+    }
+
+    @Test
+    public void testPerVenueBreakdown() {
+        apply("t=1|i=BTCUSD|p=10|q=5|s=s|v=0");
+        apply("t=1|i=BTCUSD|p=10|q=7|s=s|v=3");
+        apply("t=1|i=BTCUSD|p=11|q=2|s=s|v=0");
+        apply("t=1|i=BTCUSD|p=12|q=9|s=s|v=3");
+
+        assertEquals(7, query(RequestType.VenueQuantity, 2, 0), TEST_ACCEPTANCE_DELTA);
+        assertEquals(7, query(RequestType.VenueQuantity, 2, 3), TEST_ACCEPTANCE_DELTA);
+        assertEquals(16, query(RequestType.VenueQuantity, 3, 3), TEST_ACCEPTANCE_DELTA);
+        assertEquals((10.0 * 5 + 11.0 * 2) / 7, query(RequestType.VenueVwap, 3, 0), TEST_ACCEPTANCE_DELTA);
+        assertEquals(Double.NaN, query(RequestType.VenueVwap, 3, 5), 0);
+    }
+
+    @Test
+    public void testVenueOutOfRangeIsRejected() {
+        assertFalse(serializer.onMessage("t=1|i=BTCUSD|p=10|q=5|s=s|v=8"));
+        assertFalse(serializer.onMessage("t=1|i=BTCUSD|p=10|q=5|s=s|v=-1"));
+        assertFalse(onBytes("t=1|i=BTCUSD|p=10|q=5|s=s|v=8"));
+        assertFalse(onBytes("t=1|i=BTCUSD|p=10|q=5|s=s|v=-1"));
+        assertEquals(0, parsedMessages.size());
+    }
+
+    private boolean onBytes(String line) {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII));
+        return serializer.onMessage(buffer, 0, buffer.limit());
+    }
+
+    private void apply(String line) {
+        serializer.onMessage(line);
+        book.applyMarketData(parsedMessages.poll());
+    }
+
+    private double query(RequestType type, int levels, int venue) {
+        Request request = new Request(1, levels, type, Side.Offer, CcyPair.BTCUSD, RequestPriority.Normal, 0, venue);
+        book.serviceRequest(request);
+        return request.getResult();
+    }
+}
@@ -0,0 +1,122 @@
+package com.gsr.engine;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.feed.ObjectPool;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LevelExpiryTest {
+
+    private static final long TIME_TO_LIVE = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final OrderBookProcessor book = new BidOrderBookProcessor(CcyPair.BTCUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+
+    @Test
+    public void testWheelExpiresDueLevelsOnly() {
+        //Four buckets of ten nanos against a time to live of a hundred, so levels wait several rounds
+        LevelExpiryWheel wheel = new LevelExpiryWheel(100, 10, 4, 0);
+        PriceLevel first = level(1);
+        PriceLevel second = level(2);
+        PriceLevel third = level(3);
+        List<PriceLevel> expired = new ArrayList<>();
+        LevelExpiryWheel.Expirer expirer = level -> {
+            wheel.cancel(level);
+            expired.add(level);
+        };
+
+        wheel.schedule(first, 0);
+        wheel.schedule(second, 5);
+        wheel.schedule(third, 0);
+        wheel.cancel(third);
+        assertEquals(0, wheel.advance(95, expirer));
+        assertEquals(1, wheel.advance(100, expirer));
+        assertEquals(first, expired.get(0));
+
+        //Rescheduling starts the time to live over
+        wheel.schedule(second, 100);
+        assertEquals(0, wheel.advance(150, expirer));
+        assertEquals(1, wheel.advance(1_000, expirer));
+        assertEquals(second, expired.get(1));
+        assertEquals(-1, third.getExpiryBucket());
+    }
+
+    @Test
+    public void testStaleLevelsAreRemovedVenueByVenue() throws InterruptedException {
+        book.setLevelTimeToLive(TIME_TO_LIVE);
+        List<String> removes = new ArrayList<>();
+        book.setMarketDataListener((b, message) -> {
+            if (message.getType() == MessageType.RemovePriceLevel) {
+                removes.add(message.getPrice() + "@" + message.getVenue());
+            }
+        });
+
+        apply(MessageType.AddOrUpdatePriceLevel, 100, 5, 0);
+        apply(MessageType.AddOrUpdatePriceLevel, 100, 7, 2);
+        apply(MessageType.AddOrUpdatePriceLevel, 99, 3, 0);
+        apply(MessageType.AddOrUpdatePriceLevel, 98, 4, 1);
+        long scheduled = System.nanoTime();
+
+        //The update keeps 99 alive, the explicit remove takes 98 off the wheel
+        Thread.sleep(20);
+        apply(MessageType.AddOrUpdatePriceLevel, 99, 6, 0);
+        apply(MessageType.RemovePriceLevel, 98, 0, 1);
+
+        book.expireStaleLevels(scheduled + TIME_TO_LIVE / 2);
+        assertEquals(0, book.getExpiredLevels());
+
+        book.expireStaleLevels(scheduled + TIME_TO_LIVE + TIME_TO_LIVE / 16);
+        assertEquals(1, book.getExpiredLevels());
+        assertEquals(0, book.getQuantityAt(100));
+        assertEquals(6, book.getQuantityAt(99));
+        assertEquals(6, book.calculateAccumulatedQuantityOverLevels(5));
+        assertTrue(removes.contains("100@0"));
+        assertTrue(removes.contains("100@2"));
+
+        book.expireStaleLevels(System.nanoTime() + 2 * TIME_TO_LIVE);
+        assertEquals(2, book.getExpiredLevels());
+        assertEquals(0, book.calculateAccumulatedQuantityOverLevels(5));
+        assertEquals(4, removes.size());
+    }
+
+    @Test
+    public void testClearedBookLeavesNothingToExpire() {
+        book.setLevelTimeToLive(TIME_TO_LIVE);
+        apply(MessageType.AddOrUpdatePriceLevel, 100, 5, 0);
+        apply(MessageType.AddOrUpdatePriceLevel, 101, 5, 0);
+        apply(MessageType.ClearBook, 0, 0, 0);
+
+        //Levels reused from the pool start off the wheel
+        apply(MessageType.AddOrUpdatePriceLevel, 102, 1, 0);
+        book.expireStaleLevels(System.nanoTime() + 2 * TIME_TO_LIVE);
+        assertEquals(1, book.getExpiredLevels());
+        assertEquals(0, book.calculateAccumulatedQuantityOverLevels(5));
+    }
+
+    private PriceLevel level(long price) {
+        PriceLevel level = new PriceLevel();
+        level.populate(price, 1);
+        return level;
+    }
+
+    private void apply(MessageType type, long price, long quantity, int venue) {
+        Message message = messagePool.acquireObject();
+        message.setType(type);
+        message.setPair(CcyPair.BTCUSD);
+        message.setSide(Side.Bid);
+        message.setPrice(price);
+        message.setQuantity(quantity);
+        message.setVenue(venue);
+        book.applyMarketData(message);
+    }
+}
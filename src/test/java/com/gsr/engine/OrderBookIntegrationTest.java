@@ -312,5 +312,7 @@ public class OrderBookIntegrationTest {
         btcOfferProcessor.shutDownOrderBookThread();
         ethBidProcessor.shutDownOrderBookThread();
         ethOfferProcessor.shutDownOrderBookThread();
+        solBidProcessor.shutDownOrderBookThread();
+        solOfferProcessor.shutDownOrderBookThread();
     }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.gsr.engine;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PriceLevelIndexTest {
+
+    @Test
+    public void testMatchesHashMapUnderChurn() {
+        PriceLevelIndex index = new PriceLevelIndex(4);
+        Map<Long, PriceLevel> expected = new HashMap<>();
+        Random random = new Random(5);
+
+        //Prices packed closely together, like the levels of a book, so that probe sequences overlap a lot
+        for (int i = 0; i < 200_000; i++) {
+            long price = 100_000 + random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertSame(expected.remove(price), index.remove(price));
+            } else if (!expected.containsKey(price)) {
+                PriceLevel level = new PriceLevel();
+                level.populate(price, 1);
+                expected.put(price, level);
+                index.put(level);
+            }
+            long probe = 100_000 + random.nextInt(500);
+            assertSame(expected.get(probe), index.get(probe));
+        }
+        assertEquals(expected.size(), index.size());
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertNull(index.get(expected.keySet().iterator().next()));
+    }
+}
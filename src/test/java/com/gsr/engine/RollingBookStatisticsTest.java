@@ -0,0 +1,78 @@
+package com.gsr.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RollingBookStatisticsTest {
+
+    private final double TEST_ACCEPTANCE_DELTA = 0.000000000001;
+
+    @Test
+    public void testTimeWeightedValuesOverWindow() {
+
+        RollingBookStatistics statistics = new RollingBookStatistics(10, 3, 16);
+        statistics.onBookUpdate(0, 100, 10);
+        statistics.onBookUpdate(4, 200, 20);
+        statistics.onBookUpdate(10, 300, 30);
+
+        //1.00 held for 4, 2.00 held for 6
+        assertEquals(1.6, statistics.getTimeWeightedTopOfBookPrice(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(16, statistics.getTimeWeightedDepth(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(0.2, statistics.getUpdateRate(), TEST_ACCEPTANCE_DELTA);
+    }
+
+    @Test
+    public void testOldestSegmentIsClippedToWindow() {
+
+        RollingBookStatistics statistics = new RollingBookStatistics(10, 3, 16);
+        statistics.onBookUpdate(0, 100, 10);
+        statistics.onBookUpdate(4, 200, 20);
+        statistics.onBookUpdate(10, 300, 30);
+        statistics.onBookUpdate(15, 300, 30);
+
+        //Window is [5, 15]: 2.00 held for 5, 3.00 held for 5
+        assertEquals(2.5, statistics.getTimeWeightedTopOfBookPrice(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(25, statistics.getTimeWeightedDepth(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(0.2, statistics.getUpdateRate(), TEST_ACCEPTANCE_DELTA);
+    }
+
+    @Test
+    public void testEmptyBookIsExcludedFromPrice() {
+
+        RollingBookStatistics statistics = new RollingBookStatistics(10, 3, 16);
+        statistics.onBookUpdate(0, 100, 10);
+        statistics.onBookUpdate(5, 0, 0);
+        statistics.onBookUpdate(10, 300, 10);
+
+        assertEquals(1.0, statistics.getTimeWeightedTopOfBookPrice(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(5, statistics.getTimeWeightedDepth(), TEST_ACCEPTANCE_DELTA);
+    }
+
+    @Test
+    public void testNoElapsedTimeReturnsCurrentValues() {
+
+        RollingBookStatistics statistics = new RollingBookStatistics(10, 3, 16);
+        assertTrue(Double.isNaN(statistics.getTimeWeightedTopOfBookPrice()));
+
+        statistics.onBookUpdate(7, 150, 10);
+        statistics.onBookUpdate(7, 250, 40);
+
+        assertEquals(2.5, statistics.getTimeWeightedTopOfBookPrice(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(40, statistics.getTimeWeightedDepth(), TEST_ACCEPTANCE_DELTA);
+    }
+
+    @Test
+    public void testCapacityEvictsOldestSamples() {
+
+        RollingBookStatistics statistics = new RollingBookStatistics(100, 3, 2);
+        statistics.onBookUpdate(0, 100, 10);
+        statistics.onBookUpdate(10, 200, 10);
+        statistics.onBookUpdate(20, 400, 10);
+
+        //Only the last two samples fit, so the statistics cover [10, 20]
+        assertEquals(2.0, statistics.getTimeWeightedTopOfBookPrice(), TEST_ACCEPTANCE_DELTA);
+        assertEquals(0.02, statistics.getUpdateRate(), TEST_ACCEPTANCE_DELTA);
+    }
+}
@@ -0,0 +1,134 @@
+package com.gsr.feed;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static org.junit.Assert.*;
+
+public class JsonFeedSerializerTest {
+
+    private final Queue<Message> parsedMessages = new ArrayDeque<>();
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final JsonFeedMapping mapping = new JsonFeedMapping(2, "s", "b", "a");
+    private final JsonFeedSerializer serializer;
+
+    public JsonFeedSerializerTest() {
+        mapping.addSymbol("BTCUSDT", CcyPair.BTCUSD);
+        mapping.addSymbol("ETHUSDT", CcyPair.ETHUSD);
+        mapping.setTimeField("E");
+        mapping.setSnapshotWhen("type", "snapshot");
+        mapping.setQuantityDecimals(3);
+        serializer = new JsonFeedSerializer(parsedMessages, messagePool, mapping, 0, 0);
+    }
+
+    @Test
+    public void testUpdateBecomesOneMessagePerSide() {
+        assertTrue(parse("{\"e\":\"depthUpdate\",\"E\":1638848597,\"s\":\"BTCUSDT\",\"U\":157,\"u\":160,"
+                + "\"b\":[[\"32.99\",\"1.5\"],[\"32.985\",\"0.00000\"]],\"a\":[[33.1, 2, 7]]}"));
+
+        Message bids = parsedMessages.poll();
+        assertEquals(MessageType.MultiLevelUpdate, bids.getType());
+        assertEquals(CcyPair.BTCUSD, bids.getPair());
+        assertEquals(Side.Bid, bids.getSide());
+        assertEquals(2, bids.getVenue());
+        assertEquals(1638848597, bids.getTime());
+        assertEquals(2, bids.getLevelCount());
+        assertEquals(3299, bids.getLevelPrice(0));
+        assertEquals(1500, bids.getLevelQuantity(0));
+        assertEquals(3298, bids.getLevelPrice(1));
+        assertEquals(0, bids.getLevelQuantity(1));
+
+        //Numbers work as well as strings, and the order count after the quantity is skipped
+        Message asks = parsedMessages.poll();
+        assertEquals(Side.Offer, asks.getSide());
+        assertEquals(1, asks.getLevelCount());
+        assertEquals(3310, asks.getLevelPrice(0));
+        assertEquals(2000, asks.getLevelQuantity(0));
+        assertNull(parsedMessages.poll());
+
+        //A side without levels is not sent, and a quantity below the smallest kept is not a delete
+        assertTrue(parse("{\"s\":\"ETHUSDT\",\"b\":[[\"4.5\",\"0.0004\"]],\"a\":[]}"));
+        Message update = parsedMessages.poll();
+        assertEquals(CcyPair.ETHUSD, update.getPair());
+        assertEquals(1, update.getLevelQuantity(0));
+        assertNull(parsedMessages.poll());
+    }
+
+    @Test
+    public void testSnapshotInsideEnvelopeReplacesBothSides() {
+        assertTrue(parse("{\"stream\":\"btcusdt@depth\",\"data\":{\"type\":\"snapshot\",\"s\":\"BTCUSDT\","
+                + "\"meta\":{\"note\":\"a \\\"quoted\\\" [string]\"},\"b\":[[\"100\",\"1\"]],\"a\":[]}}"));
+
+        Message bids = parsedMessages.poll();
+        assertEquals(MessageType.Snapshot, bids.getType());
+        assertEquals(10000, bids.getLevelPrice(0));
+
+        //An empty side of a snapshot means the venue shows nothing there any more
+        Message asks = parsedMessages.poll();
+        assertEquals(MessageType.Snapshot, asks.getType());
+        assertEquals(Side.Offer, asks.getSide());
+        assertEquals(0, asks.getLevelCount());
+    }
+
+    @Test
+    public void testBadMessagesAreDroppedWhole() {
+        assertFalse(parse("{\"result\":null,\"id\":1}"));
+        assertFalse(parse("{\"s\":\"DOGEUSDT\",\"b\":[[\"1\",\"1\"]],\"a\":[]}"));
+        assertFalse(parse("{\"s\":\"BTCUSDT\",\"b\":[[\"1\",\"1\"]],\"a\":[[\"1e5\",\"1\"]]}"));
+        assertFalse(parse("{\"s\":\"BTCUSDT\",\"b\":[[\"1\",\"1\"]"));
+        assertFalse(parse("   "));
+
+        assertNull(parsedMessages.poll());
+        assertEquals(1, serializer.getUnmappedMessages());
+        assertEquals(2, serializer.getMalformedMessages());
+        assertEquals(0, messagePool.getOutstanding());
+    }
+
+    @Test
+    public void testParsingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        buffer.put(("{\"E\":1,\"s\":\"BTCUSDT\",\"b\":[[\"32.99\",\"1.5\"],[\"32.98\",\"2\"]],"
+                + "\"a\":[[\"33.01\",\"0.25\"]],\"x\":{\"y\":[1,2]}}").getBytes(StandardCharsets.US_ASCII));
+        int end = buffer.position();
+
+        for (int i = 0; i < 20_000; i++) {
+            parseAndRelease(buffer, end);
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 100_000; i++) {
+            parseAndRelease(buffer, end);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        assertTrue("Allocated " + allocated + " bytes", allocated < 64 * 1024);
+    }
+
+    private void parseAndRelease(ByteBuffer buffer, int end) {
+        serializer.onMessage(buffer, 0, end);
+        Message message;
+        while ((message = parsedMessages.poll()) != null) {
+            messagePool.returnObject(message);
+        }
+    }
+
+    private boolean parse(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.US_ASCII);
+        //Parse from the middle of a buffer, as the feed handlers do
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 8);
+        buffer.position(4);
+        buffer.put(bytes);
+        return serializer.onMessage(buffer, 4, 4 + bytes.length);
+    }
+}
@@ -0,0 +1,168 @@
+package com.gsr.feed;
+
+import com.gsr.data.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER;
+import static org.junit.Assert.*;
+
+public class NioFeedHandlerTest {
+
+    private final long TIMEOUT_MILLIS = 5000;
+
+    private ConcurrentLinkedQueue<Message> engineQueue;
+    private NioFeedHandler feedHandler;
+    private InetSocketAddress tcpAddress;
+    private InetSocketAddress udpAddress;
+
+    @Before
+    public void setup() throws IOException {
+        engineQueue = new ConcurrentLinkedQueue<>();
+        ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+        MessageSerializer serializer = new MessageSerializerImpl(engineQueue, messagePool, 3, 100, MESSAGE_DELIMITER, KEY_VALUE_DELIMITER);
+
+        feedHandler = new NioFeedHandler(serializer, 1024, false);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        tcpAddress = feedHandler.bindTcp(new InetSocketAddress(loopback, 0));
+        udpAddress = feedHandler.bindUdp(new InetSocketAddress(loopback, 0));
+        feedHandler.start();
+    }
+
+    @Test
+    public void testTcpMessagesSplitAcrossWrites() throws Exception {
+
+        try (SocketChannel client = SocketChannel.open(tcpAddress)) {
+            write(client, "t=1638848597|i=BTCUSD|p=32.99|q=100|s=b\nt=1638848598|i=ETH");
+            write(client, "USD|p=4.5|q=0|s=s\r\n#comment\n");
+
+            Message first = awaitMessage();
+            assertEquals(MessageType.AddOrUpdatePriceLevel, first.getType());
+            assertEquals(CcyPair.BTCUSD, first.getPair());
+            assertEquals(Side.Bid, first.getSide());
+            assertEquals(3299, first.getPrice());
+            assertEquals(100, first.getQuantity());
+            assertEquals(1638848597, first.getTime());
+
+            Message second = awaitMessage();
+            assertEquals(MessageType.RemovePriceLevel, second.getType());
+            assertEquals(CcyPair.ETHUSD, second.getPair());
+            assertEquals(Side.Offer, second.getSide());
+            assertEquals(450, second.getPrice());
+            assertEquals(1638848598, second.getTime());
+        }
+    }
+
+    @Test
+    public void testUdpDatagramWithSeveralMessages() throws Exception {
+
+        try (DatagramChannel client = DatagramChannel.open()) {
+            ByteBuffer datagram = ByteBuffer.wrap("t=1|i=SOLUSD|p=3|q=10|s=b\nt=2|i=SOLUSD|p=4.01|q=20|s=s".getBytes(StandardCharsets.US_ASCII));
+            client.send(datagram, udpAddress);
+
+            Message first = awaitMessage();
+            assertEquals(CcyPair.SOLUSD, first.getPair());
+            assertEquals(300, first.getPrice());
+            assertEquals(10, first.getQuantity());
+
+            Message second = awaitMessage();
+            assertEquals(Side.Offer, second.getSide());
+            assertEquals(401, second.getPrice());
+            assertEquals(20, second.getQuantity());
+        }
+    }
+
+    @Test
+    public void testMalformedMessageIsDropped() throws Exception {
+
+        try (SocketChannel client = SocketChannel.open(tcpAddress)) {
+            write(client, "t=1|i=XRPUSD|p=3|q=10|s=b\nt=2|i=BTCUSD|p=5|q=10|s=s\n");
+
+            Message message = awaitMessage();
+            assertEquals(CcyPair.BTCUSD, message.getPair());
+            assertEquals(1, feedHandler.getMessagesReceived());
+        }
+    }
+
+    @Test
+    public void testMessageWithoutPairOrSideIsDropped() throws Exception {
+
+        try (SocketChannel client = SocketChannel.open(tcpAddress)) {
+            write(client, "t=1|p=3|q=10|s=b\nt=2|i=BTCUSD|p=3|q=10\nt=3|i=BTCUSD|p=5|q=10|s=s\n");
+
+            Message message = awaitMessage();
+            assertEquals(3, message.getTime());
+            assertEquals(1, feedHandler.getMessagesReceived());
+        }
+    }
+
+    @Test
+    public void testMessageWithoutTypeIsDropped() throws Exception {
+
+        try (SocketChannel client = SocketChannel.open(tcpAddress)) {
+            write(client, "t=1|i=BTCUSD|p=3|s=b\nt=2|i=ETHUSD|p=4|q=0|s=s\n");
+
+            Message message = awaitMessage();
+            assertEquals(MessageType.RemovePriceLevel, message.getType());
+            assertEquals(2, message.getTime());
+            assertEquals(1, feedHandler.getMessagesReceived());
+        }
+    }
+
+    @Test
+    public void testPooledMessageFieldsAreNotInherited() {
+
+        ObjectPool<Message> pool = new ObjectPool<>(Message::new);
+        ByteMessageParser parser = new ByteMessageParser(pool);
+
+        Message first = parse(parser, "t=1|i=BTCUSD|p=3|q=10|s=b");
+        pool.returnObject(first);
+        assertNull(parse(parser, "t=2|i=BTCUSD|p=4|s=b"));
+
+        //Same object again, without a time or price of its own
+        Message second = parse(parser, "i=ETHUSD|q=0|s=s");
+        assertSame(first, second);
+        assertEquals(0, second.getTime());
+        assertEquals(0, second.getPrice());
+        assertEquals(0, second.getQuantity());
+    }
+
+    private Message parse(ByteMessageParser parser, String line) {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII));
+        return parser.parse(buffer, 0, buffer.limit());
+    }
+
+    private void write(SocketChannel client, String data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data.getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            client.write(buffer);
+        }
+    }
+
+    private Message awaitMessage() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        Message message = engineQueue.poll();
+        while (message == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+            message = engineQueue.poll();
+        }
+        assertNotNull("Timed out waiting for message", message);
+        return message;
+    }
+
+    @After
+    public void tearDown() {
+        feedHandler.shutdown();
+    }
+}
@@ -0,0 +1,126 @@
+package com.gsr.feed;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ObjectPoolTest {
+
+    private final double TEST_ACCEPTANCE_DELTA = 0.000000000001;
+
+    @Test
+    public void testPreallocatedObjectsAreReused() {
+
+        ObjectPool<Object> pool = new ObjectPool<>(Object::new, 8, 16, 4);
+
+        Object first = pool.acquireObject();
+        pool.returnObject(first);
+        assertSame(first, pool.acquireObject());
+
+        assertEquals(2, pool.getAcquired());
+        assertEquals(1, pool.getReturned());
+        assertEquals(1, pool.getOutstanding());
+        assertEquals(0, pool.getMisses());
+        assertEquals(1.0, pool.getHitRate(), TEST_ACCEPTANCE_DELTA);
+    }
+
+    @Test
+    public void testMissesWhenEmpty() {
+
+        ObjectPool<Object> pool = new ObjectPool<>(Object::new, 2, 16, 4);
+        for (int i = 0; i < 4; i++) {
+            pool.acquireObject();
+        }
+
+        assertEquals(2, pool.getMisses());
+        assertEquals(4, pool.getOutstanding());
+        assertEquals(0.5, pool.getHitRate(), TEST_ACCEPTANCE_DELTA);
+    }
+
+    @Test
+    public void testObjectsTravelBetweenThreadsInBatches() throws InterruptedException {
+
+        ObjectPool<Object> pool = new ObjectPool<>(Object::new, 0, 64, 4);
+        List<Object> acquired = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            acquired.add(pool.acquireObject());
+        }
+
+        //Return everything from another thread. Once its cache overflows, batches go back to the shared ring.
+        Thread returner = new Thread(() -> acquired.forEach(pool::returnObject));
+        returner.start();
+        returner.join();
+
+        long missesBefore = pool.getMisses();
+        for (int i = 0; i < 8; i++) {
+            assertTrue(acquired.contains(pool.acquireObject()));
+        }
+        assertEquals(missesBefore, pool.getMisses());
+        assertEquals(8, pool.getOutstanding());
+    }
+
+    @Test
+    public void testObjectsCachedByDeadThreadsAreReclaimed() throws InterruptedException {
+
+        ObjectPool<Object> pool = new ObjectPool<>(Object::new, 8, 16, 8);
+        List<Object> cached = new ArrayList<>();
+
+        //Takes the whole ring into its cache and dies holding it
+        Thread holder = new Thread(() -> {
+            for (int i = 0; i < 8; i++) {
+                cached.add(pool.acquireObject());
+            }
+            cached.forEach(pool::returnObject);
+        });
+        holder.start();
+        holder.join();
+
+        for (int i = 0; i < 8; i++) {
+            assertTrue(cached.contains(pool.acquireObject()));
+        }
+        assertEquals(0, pool.getMisses());
+        assertEquals(8, pool.getOutstanding());
+
+        //Nothing left anywhere now, so the next one is a miss
+        pool.acquireObject();
+        assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    public void testCachesOfDeadThreadsAreDropped() throws InterruptedException {
+
+        ObjectPool<Object> pool = new ObjectPool<>(Object::new, 16, 64, 8);
+        for (int i = 0; i < 100; i++) {
+            Thread worker = new Thread(() -> pool.returnObject(pool.acquireObject()));
+            worker.start();
+            worker.join();
+        }
+        Thread last = new Thread(() -> pool.acquireObject());
+        last.start();
+        last.join();
+
+        //Every thread cleared out the caches of the ones before it, the counters of all of them are kept
+        assertEquals(1, pool.getCacheCount());
+        assertEquals(101, pool.getAcquired());
+        assertEquals(100, pool.getReturned());
+        assertEquals(0, pool.getMisses());
+    }
+
+    @Test
+    public void testSurplusIsDiscardedWhenFull() {
+
+        ObjectPool<Object> pool = new ObjectPool<>(Object::new, 0, 4, 4);
+        List<Object> acquired = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            acquired.add(pool.acquireObject());
+        }
+        acquired.forEach(pool::returnObject);
+
+        //8 fit in the thread cache, 4 in the ring, the rest has nowhere to go
+        assertEquals(8, pool.getDiscarded());
+        assertEquals(0, pool.getOutstanding());
+    }
+}
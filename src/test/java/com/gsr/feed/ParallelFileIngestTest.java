@@ -0,0 +1,146 @@
+package com.gsr.feed;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.Side;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelFileIngestTest {
+
+    private static final int LINES = 20_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+
+    @Test
+    public void testPlainFileKeepsFileOrder() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("capture.txt");
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            writeCapture(stream);
+        }
+        assertIngested(file);
+    }
+
+    @Test
+    public void testGzipFileKeepsFileOrder() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("capture.txt.gz");
+        try (OutputStream stream = new GZIPOutputStream(Files.newOutputStream(file))) {
+            writeCapture(stream);
+        }
+        assertIngested(file);
+    }
+
+    private void assertIngested(Path file) throws IOException {
+        List<Message> messages = new ArrayList<>();
+        //Chunks smaller than some of the lines, so lines are carried over and chunks grow
+        try (ParallelFileIngest ingest = new ParallelFileIngest(messagePool, messages::add, 4, 100)) {
+            assertEquals(LINES, ingest.ingest(file));
+            assertEquals(LINES / 100 + 2 * LINES / 1000, ingest.getLinesSkipped());
+        }
+
+        assertEquals(LINES, messages.size());
+        for (int i = 0; i < LINES; i++) {
+            Message message = messages.get(i);
+            assertEquals(i, message.getSequence());
+            assertEquals(i, message.getTime());
+            assertEquals(CcyPair.nativePairs()[i % 3], message.getPair());
+            assertEquals(i % 2 == 0 ? Side.Bid : Side.Offer, message.getSide());
+            assertEquals((10_000 + i) * 100L, message.getPrice());
+            assertEquals(1 + i % 7, message.getQuantity());
+        }
+    }
+
+    @Test
+    public void testBacklogOfUnappliedMessagesIsBounded() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("capture.txt");
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            writeCapture(stream);
+        }
+
+        //Stands in for the books, applying far slower than the workers parse
+        ConcurrentLinkedQueue<Message> queue = new ConcurrentLinkedQueue<>();
+        AtomicLong applied = new AtomicLong();
+        AtomicLong maxBacklog = new AtomicLong();
+        AtomicLong handedOn = new AtomicLong();
+        Thread books = new Thread(() -> {
+            while (applied.get() < LINES) {
+                Message message = queue.poll();
+                if (message == null) {
+                    Thread.yield();
+                    continue;
+                }
+                maxBacklog.accumulateAndGet(handedOn.get() - applied.get(), Math::max);
+                long appliedAt = System.nanoTime() + 5_000;
+                while (System.nanoTime() < appliedAt) {
+                    //Applying takes a while
+                }
+                messagePool.returnObject(message);
+                applied.incrementAndGet();
+            }
+        });
+        books.start();
+
+        int backlog = 500;
+        try (ParallelFileIngest ingest = new ParallelFileIngest(messagePool, message -> {
+            handedOn.incrementAndGet();
+            queue.add(message);
+        }, 4, 1000, applied::get, backlog)) {
+            assertEquals(LINES, ingest.ingest(file));
+            assertTrue(ingest.getBacklogWaits() > 0);
+        }
+        books.join();
+
+        //The backlog is checked before each chunk, so it can overshoot by at most one chunk's messages
+        assertTrue("Backlog reached " + maxBacklog.get(), maxBacklog.get() <= backlog + 1000);
+    }
+
+    /**
+     * Helper method to write a capture with comments, lines without a pair or side, CRLF line endings, a padded line
+     * longer than a chunk, and no newline after the last line
+     */
+    private void writeCapture(OutputStream stream) throws IOException {
+        Writer writer = new OutputStreamWriter(stream, StandardCharsets.US_ASCII);
+        for (int i = 0; i < LINES; i++) {
+            if (i % 100 == 0) {
+                writer.write("# comment\n");
+            }
+            if (i % 1000 == 0) {
+                writer.write("t=" + i + "|p=1|q=1|s=b\n");
+                writer.write("t=" + i + "|i=BTCUSD|p=1|q=1\n");
+            }
+            writer.write("t=" + i + "|i=" + CcyPair.nativePairs()[i % 3] + "|p=" + (10_000 + i) + ".00|q=" + (1 + i % 7)
+                    + "|s=" + (i % 2 == 0 ? "b" : "o"));
+            if (i == 500) {
+                StringBuilder padding = new StringBuilder("|x=");
+                for (int j = 0; j < 300; j++) {
+                    padding.append('0');
+                }
+                writer.write(padding.toString());
+            }
+            if (i < LINES - 1) {
+                writer.write(i % 3 == 0 ? "\r\n" : "\n");
+            }
+        }
+        writer.flush();
+    }
+}
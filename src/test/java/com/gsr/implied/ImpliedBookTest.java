@@ -0,0 +1,188 @@
+package com.gsr.implied;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.engine.BidOrderBookProcessor;
+import com.gsr.engine.OfferOrderBookProcessor;
+import com.gsr.engine.OrderBookDistributor;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.feed.ObjectPool;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ImpliedBookTest {
+
+    private static final int DEPTH = 10;
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final OrderBookProcessor ethBids = new BidOrderBookProcessor(CcyPair.ETHUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+    private final OrderBookProcessor ethOffers = new OfferOrderBookProcessor(CcyPair.ETHUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+    private final OrderBookProcessor btcBids = new BidOrderBookProcessor(CcyPair.BTCUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+    private final OrderBookProcessor btcOffers = new OfferOrderBookProcessor(CcyPair.BTCUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+    private final OrderBookProcessor[] legs = {ethBids, ethOffers, btcBids, btcOffers};
+
+    private final ImpliedBookEngine engine = new ImpliedBookEngine(DEPTH);
+
+    @Test
+    public void testImpliedLevelsTradeThroughBothLegs() {
+        listenToLegs(engine);
+
+        //Selling 10 ETH at 2000 raises 20000 USD, which buys 0.5 BTC of the first BTC offer
+        apply(ethBids, 200000, 10);
+        apply(btcOffers, 4000000, 1);
+        apply(btcOffers, 4100000, 2);
+        engine.runOnce();
+
+        double[] prices = new double[DEPTH];
+        double[] quantities = new double[DEPTH];
+        assertEquals(1, engine.copyLevels(CcyPair.ETHBTC, Side.Bid, prices, quantities));
+        assertEquals(0.05, prices[0], 1e-12);
+        assertEquals(10, quantities[0], 1e-12);
+
+        //A deeper ETH bid takes the rest of the first BTC offer, then moves on to the second
+        apply(ethBids, 190000, 20);
+        engine.runOnce();
+        assertEquals(3, engine.copyLevels(CcyPair.ETHBTC, Side.Bid, prices, quantities));
+        assertEquals(1900.0 / 40000, prices[1], 1e-12);
+        assertEquals(20000.0 / 1900, quantities[1], 1e-9);
+        assertEquals(1900.0 / 41000, prices[2], 1e-12);
+        assertEquals(20 - 20000.0 / 1900, quantities[2], 1e-9);
+
+        assertEquals(10, query(RequestType.AverageQuantity, CcyPair.ETHBTC, Side.Bid, 1), 1e-12);
+        assertEquals(0.05, query(RequestType.Vwap, CcyPair.ETHBTC, Side.Bid, 1), 1e-12);
+        assertEquals((0.05 + 1900.0 / 40000) / 2, query(RequestType.AveragePrice, CcyPair.ETHBTC, Side.Bid, 2), 1e-12);
+        assertEquals(0, query(RequestType.AveragePrice, CcyPair.ETHBTC, Side.Offer, 5), 0);
+    }
+
+    @Test
+    public void testChangesBelowTheLevelsUsedAreNotRecomputed() {
+        listenToLegs(engine);
+        for (int i = 0; i < 5; i++) {
+            apply(ethBids, 200000 - i * 100, 1);
+            apply(btcOffers, 4000000 + i * 100, 100);
+        }
+        engine.runOnce();
+        long recomputed = engine.getRecomputedLevels();
+
+        //The first BTC offer pays for every ETH bid, so the deeper offers are never reached
+        apply(btcOffers, 4000300, 7);
+        engine.runOnce();
+        assertEquals(recomputed, engine.getRecomputedLevels());
+
+        //A change at the third ETH bid leaves the two levels above it as they were
+        apply(ethBids, 199800, 2);
+        engine.runOnce();
+        assertEquals(recomputed + 3, engine.getRecomputedLevels());
+    }
+
+    @Test
+    public void testIncrementalUpdatesMatchFullRecomputation() {
+        listenToLegs(engine);
+        Random random = new Random(17);
+        double[] prices = new double[DEPTH];
+        double[] quantities = new double[DEPTH];
+        double[] expectedPrices = new double[DEPTH];
+        double[] expectedQuantities = new double[DEPTH];
+
+        for (int i = 0; i < 2_000; i++) {
+            OrderBookProcessor leg = legs[random.nextInt(legs.length)];
+            long mid = leg.getCcyPair() == CcyPair.BTCUSD ? 4000000 : 200000;
+            long offset = 100L * random.nextInt(30);
+            long price = leg.getSide() == Side.Bid ? mid - 100 - offset : mid + 100 + offset;
+            apply(leg, price, random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(20));
+            engine.runOnce();
+
+            //A new engine computes every level from scratch
+            ImpliedBookEngine reference = new ImpliedBookEngine(DEPTH);
+            reference.addPair(CcyPair.ETHBTC);
+            for (OrderBookProcessor book : legs) {
+                ((LegPublisher) reference.listenerFor(book.getCcyPair(), book.getSide())).publish(book);
+            }
+            reference.runOnce();
+
+            for (Side side : Side.values()) {
+                int count = engine.copyLevels(CcyPair.ETHBTC, side, prices, quantities);
+                assertEquals(reference.copyLevels(CcyPair.ETHBTC, side, expectedPrices, expectedQuantities), count);
+                for (int level = 0; level < count; level++) {
+                    assertEquals(expectedPrices[level], prices[level], 1e-12);
+                    assertEquals(expectedQuantities[level], quantities[level], 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDistributorRoutesImpliedRequests() throws InterruptedException {
+        listenToLegs(engine);
+        apply(ethOffers, 210000, 40);
+        apply(btcBids, 3900000, 1);
+        engine.start();
+
+        List<ConcurrentLinkedQueue<Message>> engineQueues = new ArrayList<>();
+        List<ConcurrentLinkedQueue<Request>> requestQueues = new ArrayList<>();
+        List<ConcurrentLinkedQueue<Request>> responseQueues = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            engineQueues.add(new ConcurrentLinkedQueue<>());
+            requestQueues.add(new ConcurrentLinkedQueue<>());
+            responseQueues.add(new ConcurrentLinkedQueue<>());
+        }
+        ConcurrentLinkedQueue<Request> incomingRequests = new ConcurrentLinkedQueue<>();
+        LinkedBlockingQueue<Request> responses = new LinkedBlockingQueue<>();
+        OrderBookDistributor distributor = new OrderBookDistributor(new ConcurrentLinkedQueue<>(), incomingRequests,
+                engineQueues, requestQueues, responseQueues, responses,
+                engine.getPairs(), engine.getRequestQueue(), engine.getResponseQueue());
+        try {
+            incomingRequests.add(new Request(1, 1, RequestType.AverageQuantity, Side.Offer, CcyPair.ETHBTC));
+            Request answered = responses.poll(5, TimeUnit.SECONDS);
+            assertNotNull(answered);
+            assertEquals(39000.0 / 2100, answered.getResult(), 1e-9);
+
+            //SOLETH is not maintained, so its request is expired rather than lost
+            incomingRequests.add(new Request(2, 1, RequestType.Vwap, Side.Bid, CcyPair.SOLETH));
+            Request expired = responses.poll(5, TimeUnit.SECONDS);
+            assertNotNull(expired);
+            assertTrue(expired.isExpired());
+        } finally {
+            distributor.shutdown();
+            engine.shutdown();
+        }
+    }
+
+    private void listenToLegs(ImpliedBookEngine impliedBookEngine) {
+        impliedBookEngine.addPair(CcyPair.ETHBTC);
+        for (OrderBookProcessor book : legs) {
+            book.setMarketDataListener(impliedBookEngine.listenerFor(book.getCcyPair(), book.getSide()));
+        }
+    }
+
+    private double query(RequestType type, CcyPair pair, Side side, int levels) {
+        Request request = new Request(0, levels, type, side, pair);
+        engine.getRequestQueue().add(request);
+        engine.runOnce();
+        assertSame(request, engine.getResponseQueue().poll());
+        return request.getResult();
+    }
+
+    private void apply(OrderBookProcessor book, long price, long quantity) {
+        Message message = messagePool.acquireObject();
+        message.setType(quantity == 0 ? MessageType.RemovePriceLevel : MessageType.AddOrUpdatePriceLevel);
+        message.setPair(book.getCcyPair());
+        message.setSide(book.getSide());
+        message.setPrice(price);
+        message.setQuantity(quantity);
+        message.setVenue(0);
+        book.applyMarketData(message);
+    }
+}
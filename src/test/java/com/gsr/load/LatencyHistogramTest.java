@@ -0,0 +1,52 @@
+package com.gsr.load;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentilesAreWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1_000_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(1_000_000, histogram.getCount());
+        assertEquals(1_000_000_000L, histogram.getMax());
+        assertWithinPrecision(500_000_000L, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(990_000_000L, histogram.getValueAtPercentile(99));
+        assertWithinPrecision(999_900_000L, histogram.getValueAtPercentile(99.99));
+        assertEquals(500_000_500.0, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        for (long value : new long[]{0, 1, 63, 64, 65, 127, 128, 1000, 123_456_789L, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(value <= LatencyHistogram.highestValueOf(index));
+            assertTrue(index == 0 || value > LatencyHistogram.highestValueOf(index - 1));
+        }
+    }
+
+    @Test
+    public void testHistogramsMerge() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(30);
+        second.record(-5);
+
+        first.add(second);
+        assertEquals(3, first.getCount());
+        assertEquals(30, first.getMax());
+        assertEquals(0, first.getValueAtPercentile(1));
+        assertEquals(30, first.getValueAtPercentile(100));
+    }
+
+    private void assertWithinPrecision(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 60);
+    }
+}
@@ -0,0 +1,69 @@
+package com.gsr.load;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.feed.ByteMessageParser;
+import com.gsr.feed.ObjectPool;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SyntheticFeedGeneratorTest {
+
+    @Test
+    public void testFeedIsReproducible() {
+        SyntheticFeedGenerator first = new SyntheticFeedGenerator(7, CcyPair.nativePairs());
+        SyntheticFeedGenerator second = new SyntheticFeedGenerator(7, CcyPair.nativePairs());
+
+        assertEquals(first.generate(1000), second.generate(1000));
+    }
+
+    @Test
+    public void testFeedKeepsConsistentBooks() {
+        int depth = 10;
+        SyntheticFeedGenerator generator = new SyntheticFeedGenerator(11, CcyPair.nativePairs());
+        generator.setDepth(depth);
+        generator.setUpdateMix(1, 1, 1);
+
+        ByteMessageParser parser = new ByteMessageParser(new ObjectPool<>(Message::new));
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        Map<String, Set<Long>> books = new HashMap<>();
+        int removes = 0;
+
+        for (int i = 0; i < 100_000; i++) {
+            buffer.clear();
+            int length = generator.next(buffer);
+            Message message = parser.parse(buffer, 0, length);
+            assertNotNull(message);
+
+            Set<Long> book = books.computeIfAbsent(message.getPair() + "-" + message.getSide(), k -> new HashSet<>());
+            if (message.getType() == MessageType.RemovePriceLevel) {
+                assertTrue("Removed a level which isn't there", book.remove(message.getPrice()));
+                removes += 1;
+            } else {
+                book.add(message.getPrice());
+                assertTrue("Book deeper than configured", book.size() <= depth);
+            }
+
+            Set<Long> bids = books.getOrDefault(message.getPair() + "-" + Side.Bid, Collections.emptySet());
+            Set<Long> offers = books.getOrDefault(message.getPair() + "-" + Side.Offer, Collections.emptySet());
+            if (!bids.isEmpty() && !offers.isEmpty()) {
+                assertTrue("Crossed book", Collections.max(bids) < Collections.min(offers));
+            }
+        }
+
+        assertEquals(6, books.size());
+        assertTrue(removes > 10_000);
+    }
+}
@@ -0,0 +1,66 @@
+package com.gsr.logging;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Side;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EngineLoggerTest {
+
+    private final long TIMEOUT_MILLIS = 5000;
+
+    private ByteArrayOutputStream captured;
+    private LogLevel originalLevel;
+
+    @Before
+    public void setup() {
+        captured = new ByteArrayOutputStream();
+        originalLevel = EngineLogger.getLevel();
+        EngineLogger.setOutput(new PrintStream(captured, true));
+    }
+
+    @Test
+    public void testEventsAreFormattedInTheBackground() throws InterruptedException {
+
+        EngineLogger.setLevel(LogLevel.Debug);
+        EngineLogger.log(LogEvent.PriceLevelAdded, EngineLogger.ordinal(CcyPair.ETHUSD), EngineLogger.ordinal(Side.Offer), 1205, 40);
+
+        String output = awaitOutput("Quantity");
+        assertTrue(output, output.contains("Debug [main] Added to book: [ETHUSD] side: [Offer] price: [12.05] Quantity: [40]"));
+    }
+
+    @Test
+    public void testEventsBelowLevelAreDiscarded() throws InterruptedException {
+
+        EngineLogger.setLevel(LogLevel.Warn);
+        EngineLogger.log(LogEvent.PriceLevelRemoved, EngineLogger.ordinal(CcyPair.BTCUSD), EngineLogger.ordinal(Side.Bid), 100);
+        EngineLogger.log(LogEvent.QueueFull);
+
+        String output = awaitOutput("Queue is full");
+        assertFalse(output, output.contains("Removed from book"));
+    }
+
+    private String awaitOutput(String expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        String output = new String(captured.toByteArray(), StandardCharsets.UTF_8);
+        while (!output.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+            output = new String(captured.toByteArray(), StandardCharsets.UTF_8);
+        }
+        return output;
+    }
+
+    @After
+    public void tearDown() {
+        EngineLogger.setLevel(originalLevel);
+        EngineLogger.setOutput(System.out);
+    }
+}
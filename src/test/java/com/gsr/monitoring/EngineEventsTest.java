@@ -0,0 +1,72 @@
+package com.gsr.monitoring;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.engine.BidOrderBookProcessor;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.feed.ObjectPool;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EngineEventsTest {
+
+    @Test
+    public void testAnalyticsCacheHitsAndPoolMissesAreRecorded() throws IOException {
+        assertTrue(EngineEvents.ENABLED);
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("com.gsr.AnalyticsComputation");
+            recording.enable("com.gsr.PoolMiss");
+            recording.start();
+
+            ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+            OrderBookProcessor processor = new BidOrderBookProcessor(CcyPair.BTCUSD, messagePool,
+                    new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+
+            Message message = messagePool.acquireObject();
+            message.setType(MessageType.AddOrUpdatePriceLevel);
+            message.setPair(CcyPair.BTCUSD);
+            message.setSide(Side.Bid);
+            message.setPrice(100);
+            message.setQuantity(10);
+            processor.applyMarketData(message);
+
+            processor.serviceRequest(new Request(1, 1, RequestType.Vwap, Side.Bid, CcyPair.BTCUSD));
+            processor.serviceRequest(new Request(2, 1, RequestType.Vwap, Side.Bid, CcyPair.BTCUSD));
+
+            recording.stop();
+            Path file = Files.createTempFile("engine-events", ".jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+            Files.delete(file);
+        }
+
+        List<RecordedEvent> computations = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.gsr.AnalyticsComputation"))
+                .collect(Collectors.toList());
+        assertEquals(2, computations.size());
+        assertEquals("Vwap", computations.get(0).getString("requestType"));
+        assertEquals(false, computations.get(0).getBoolean("cacheHit"));
+        assertEquals(true, computations.get(1).getBoolean("cacheHit"));
+
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("com.gsr.PoolMiss")
+                && e.getString("objectType").equals(Message.class.getName())));
+    }
+}
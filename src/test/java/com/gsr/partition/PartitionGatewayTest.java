@@ -0,0 +1,221 @@
+package com.gsr.partition;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestType;
+import com.gsr.analytics.server.AnalyticsClient;
+import com.gsr.analytics.server.AnalyticsServer;
+import com.gsr.analytics.server.ResponseStatus;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.Side;
+import com.gsr.feed.MessageSerializerImpl;
+import com.gsr.feed.NioFeedHandler;
+import com.gsr.feed.ObjectPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.gsr.data.Constants.KEY_VALUE_DELIMITER;
+import static com.gsr.data.Constants.MESSAGE_DELIMITER;
+import static org.junit.Assert.*;
+
+public class PartitionGatewayTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+    private static final int BUFFER_SIZE = 4096;
+
+    private final Partition[] partitions = new Partition[2];
+    private final PartitionMap partitionMap = new PartitionMap(2);
+
+    private PartitionFeedRouter feedRouter;
+    private AnalyticsServer gatewayServer;
+    private PartitionRequestRouter requestRouter;
+    private InetSocketAddress gatewayAddress;
+
+    @Before
+    public void setUp() throws IOException {
+        //ETHUSD is left to nobody
+        partitionMap.assign(CcyPair.BTCUSD, 0);
+        partitionMap.assign(CcyPair.SOLUSD, 1);
+
+        InetSocketAddress[] feedAddresses = new InetSocketAddress[partitions.length];
+        InetSocketAddress[] analyticsAddresses = new InetSocketAddress[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(i);
+            feedAddresses[i] = partitions[i].feedAddress;
+            analyticsAddresses[i] = partitions[i].analyticsAddress;
+        }
+
+        feedRouter = new PartitionFeedRouter(partitionMap, feedAddresses, BUFFER_SIZE);
+
+        ConcurrentLinkedQueue<Request> requestQueue = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Request> responseQueue = new ConcurrentLinkedQueue<>();
+        requestRouter = new PartitionRequestRouter(partitionMap, analyticsAddresses, requestQueue, responseQueue, BUFFER_SIZE);
+        gatewayServer = new AnalyticsServer(requestQueue, responseQueue, BUFFER_SIZE);
+        gatewayAddress = gatewayServer.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        requestRouter.start();
+        gatewayServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        gatewayServer.shutdown();
+        requestRouter.shutdown();
+        feedRouter.close();
+        for (Partition partition : partitions) {
+            partition.shutdown();
+        }
+    }
+
+    @Test
+    public void testMarketDataReachesOnlyTheOwningPartition() throws Exception {
+        assertTrue(feedRouter.onMessage("t=1|i=BTCUSD|p=32.99|q=100|s=b"));
+        assertTrue(feedRouter.onMessage("t=2|i=SOLUSD|p=4.5|q=10|s=s"));
+        assertFalse(feedRouter.onMessage("t=3|i=ETHUSD|p=1.5|q=10|s=s"));
+        assertTrue(feedRouter.onMessage("t=4|i=BTCUSD|p=33|q=0|s=s"));
+        feedRouter.endOfBatch();
+
+        Message first = partitions[0].awaitMessage();
+        assertEquals(CcyPair.BTCUSD, first.getPair());
+        assertEquals(3299, first.getPrice());
+        Message second = partitions[0].awaitMessage();
+        assertEquals(4, second.getTime());
+        assertEquals(Side.Offer, second.getSide());
+
+        Message third = partitions[1].awaitMessage();
+        assertEquals(CcyPair.SOLUSD, third.getPair());
+        assertEquals(450, third.getPrice());
+
+        assertTrue(partitions[0].marketData.isEmpty());
+        assertTrue(partitions[1].marketData.isEmpty());
+        assertEquals(3, feedRouter.getMessagesRouted());
+        assertEquals(1, feedRouter.getUnroutedMessages());
+    }
+
+    @Test
+    public void testLostPartitionIsDroppedAndTheOthersCarryOn() throws Exception {
+        partitions[0].feedHandler.shutdown();
+
+        //The first writes may still be accepted by the socket, the failure shows up on a later flush
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        long sent = 0;
+        while (feedRouter.onMessage("t=1|i=BTCUSD|p=32.99|q=100|s=b")) {
+            sent += 1;
+            feedRouter.endOfBatch();
+            assertTrue("The lost partition was never noticed", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+
+        //Once dead, the partition's messages are counted and dropped, every time
+        long dropped = feedRouter.getDroppedMessages();
+        for (int i = 0; i < 10; i++) {
+            assertFalse(feedRouter.onMessage("t=2|i=BTCUSD|p=33|q=100|s=b"));
+            feedRouter.endOfBatch();
+        }
+        assertEquals(dropped + 10, feedRouter.getDroppedMessages());
+        assertEquals(sent, feedRouter.getMessagesRouted());
+
+        assertTrue(feedRouter.onMessage("t=3|i=SOLUSD|p=4.5|q=10|s=s"));
+        feedRouter.endOfBatch();
+        assertEquals(3, partitions[1].awaitMessage().getTime());
+    }
+
+    @Test
+    public void testRequestsAreAnsweredByTheOwningPartition() throws IOException {
+        try (AnalyticsClient client = new AnalyticsClient(gatewayAddress, BUFFER_SIZE)) {
+            Map<Long, ResponseStatus> statuses = new HashMap<>();
+            Map<Long, Double> results = new HashMap<>();
+            long btc = client.submit(RequestType.Vwap, CcyPair.BTCUSD, Side.Bid, 3);
+            long sol = client.submit(RequestType.AveragePrice, CcyPair.SOLUSD, Side.Offer, 4);
+            long eth = client.submit(RequestType.Vwap, CcyPair.ETHUSD, Side.Bid, 5);
+            client.flush();
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (statuses.size() < 3 && System.currentTimeMillis() < deadline) {
+                client.poll((id, status, result) -> {
+                    statuses.put(id, status);
+                    results.put(id, result);
+                });
+            }
+
+            assertEquals(ResponseStatus.Ok, statuses.get(btc));
+            assertEquals(3.0, results.get(btc), 0.0);
+            assertEquals(ResponseStatus.Ok, statuses.get(sol));
+            assertEquals(1004.0, results.get(sol), 0.0);
+            assertEquals(ResponseStatus.Expired, statuses.get(eth));
+        }
+
+        assertEquals(1, partitions[0].requestsAnswered);
+        assertEquals(1, partitions[1].requestsAnswered);
+        assertEquals(2, requestRouter.getRequestsRouted());
+        assertEquals(1, requestRouter.getUnroutedRequests());
+    }
+
+    /**
+     * Stands in for the engine process of a partition: parses its feed into a queue, and answers its analytics
+     * requests with partition * 1000 + levels
+     */
+    private static class Partition {
+
+        private final ConcurrentLinkedQueue<Message> marketData = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Request> requestQueue = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Request> responseQueue = new ConcurrentLinkedQueue<>();
+        private final NioFeedHandler feedHandler;
+        private final AnalyticsServer analyticsServer;
+        private final InetSocketAddress feedAddress;
+        private final InetSocketAddress analyticsAddress;
+        private final Thread engine;
+        private volatile boolean engineRunning = true;
+        private volatile int requestsAnswered;
+
+        Partition(int partition) throws IOException {
+            InetAddress loopback = InetAddress.getLoopbackAddress();
+            feedHandler = new NioFeedHandler(new MessageSerializerImpl(marketData, new ObjectPool<>(Message::new), 3, 100,
+                    MESSAGE_DELIMITER, KEY_VALUE_DELIMITER), BUFFER_SIZE, false);
+            feedAddress = feedHandler.bindTcp(new InetSocketAddress(loopback, 0));
+            feedHandler.start();
+
+            analyticsServer = new AnalyticsServer(requestQueue, responseQueue, BUFFER_SIZE);
+            analyticsAddress = analyticsServer.bind(new InetSocketAddress(loopback, 0));
+            analyticsServer.start();
+
+            engine = new Thread(() -> {
+                while (engineRunning) {
+                    Request request = requestQueue.poll();
+                    if (request == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    request.populateResult(partition * 1000 + request.getLevels());
+                    requestsAnswered += 1;
+                    responseQueue.offer(request);
+                }
+            });
+            engine.start();
+        }
+
+        Message awaitMessage() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            Message message;
+            while ((message = marketData.poll()) == null) {
+                assertTrue("Timed out waiting for a message", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+            return message;
+        }
+
+        void shutdown() throws InterruptedException {
+            analyticsServer.shutdown();
+            feedHandler.shutdown();
+            engineRunning = false;
+            engine.join();
+        }
+    }
+}
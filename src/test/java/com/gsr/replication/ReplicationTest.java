@@ -0,0 +1,144 @@
+package com.gsr.replication;
+
+import com.gsr.analytics.Request;
+import com.gsr.analytics.RequestPriority;
+import com.gsr.analytics.RequestType;
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.engine.BidOrderBookProcessor;
+import com.gsr.engine.OfferOrderBookProcessor;
+import com.gsr.engine.OrderBookDistributor;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.feed.ObjectPool;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicationTest {
+
+    private static final RequestType[] CHECKED_TYPES = {RequestType.Vwap, RequestType.AverageQuantity, RequestType.VenueQuantity};
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final List<ConcurrentLinkedQueue<Message>> primaryQueues = new ArrayList<>();
+    private final List<ConcurrentLinkedQueue<Request>> primaryRequests = new ArrayList<>();
+    private final List<ConcurrentLinkedQueue<Request>> primaryResponses = new ArrayList<>();
+    private final List<OrderBookProcessor> primaryBooks = new ArrayList<>();
+
+    @Test
+    public void testStandbyMatchesPrimaryAndTakesOver() throws IOException, InterruptedException {
+        ReplicationSource source = new ReplicationSource(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        for (CcyPair pair : CcyPair.nativePairs()) {
+            for (Side side : new Side[]{Side.Offer, Side.Bid}) {
+                ConcurrentLinkedQueue<Message> queue = new ConcurrentLinkedQueue<>();
+                ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+                ConcurrentLinkedQueue<Request> responses = new ConcurrentLinkedQueue<>();
+                OrderBookProcessor book = side == Side.Offer
+                        ? new OfferOrderBookProcessor(pair, messagePool, queue, requests, responses)
+                        : new BidOrderBookProcessor(pair, messagePool, queue, requests, responses);
+                book.setMarketDataListener(source.tapFor(pair, side));
+                primaryQueues.add(queue);
+                primaryRequests.add(requests);
+                primaryResponses.add(responses);
+                primaryBooks.add(book);
+            }
+        }
+        primaryBooks.forEach(OrderBookProcessor::launchOrderBookThread);
+        source.start();
+
+        StandbyEngine standby = new StandbyEngine(messagePool);
+        standby.connect(source.getAddress());
+
+        //Adds, updates and removes over a few venues, with a cleared book in between
+        Random random = new Random(42);
+        int messages = 30_000;
+        for (int i = 0; i < messages; i++) {
+            int index = random.nextInt(primaryQueues.size());
+            Message message = messagePool.acquireObject();
+            message.setPair(CcyPair.nativePairs()[index / 2]);
+            message.setSide(index % 2 == 0 ? Side.Offer : Side.Bid);
+            message.setVenue(random.nextInt(3));
+            message.setPrice(10_000 + random.nextInt(200));
+            message.setQuantity(1 + random.nextInt(50));
+            message.setTime(i);
+            message.setSequence(i);
+            message.setType(i == messages / 2 ? MessageType.ClearBook
+                    : random.nextInt(4) == 0 ? MessageType.RemovePriceLevel : MessageType.AddOrUpdatePriceLevel);
+            primaryQueues.get(index).add(message);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((standby.getAppliedMessages() < messages || standby.getLag() > 0) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(messages, source.getMessagesSent());
+        assertEquals(0, source.getDroppedMessages());
+        assertEquals(0, standby.getLag());
+        assertEquals(messages, standby.getAppliedMessages());
+        assertTrue(standby.isInSync());
+
+        List<double[]> primaryResults = new ArrayList<>();
+        for (int index = 0; index < primaryBooks.size(); index++) {
+            primaryResults.add(query(primaryRequests.get(index), primaryResponses.get(index), index));
+        }
+
+        //Lose the primary, then promote the standby and query it through its new distributor
+        source.close();
+        primaryBooks.forEach(OrderBookProcessor::shutDownOrderBookThread);
+        while (standby.isPrimaryConnected()) {
+            Thread.sleep(1);
+        }
+
+        ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Request> responses = new ConcurrentLinkedQueue<>();
+        OrderBookDistributor distributor = standby.promote(new ConcurrentLinkedQueue<>(), requests, responses);
+        try {
+            for (int index = 0; index < primaryBooks.size(); index++) {
+                double[] standbyResults = query(requests, responses, index);
+                for (int i = 0; i < standbyResults.length; i++) {
+                    assertEquals(primaryResults.get(index)[i], standbyResults[i], 0);
+                }
+            }
+        } finally {
+            distributor.shutdown();
+            standby.getProcessors().forEach(OrderBookProcessor::shutDownOrderBookThread);
+        }
+        assertFalse(standby.isPrimaryConnected());
+    }
+
+    /**
+     * Helper method to run the checked request types against the book side at the distributor's queue index
+     */
+    private double[] query(Queue<Request> requests, Queue<Request> responses, int index) throws InterruptedException {
+        CcyPair pair = CcyPair.nativePairs()[index / 2];
+        Side side = index % 2 == 0 ? Side.Offer : Side.Bid;
+        double[] results = new double[CHECKED_TYPES.length * 3];
+        for (int venue = 0; venue < 3; venue++) {
+            for (int t = 0; t < CHECKED_TYPES.length; t++) {
+                Request request = new Request(t, 25, CHECKED_TYPES[t], side, pair,
+                        RequestPriority.Normal, 0, venue);
+                requests.add(request);
+                Request response;
+                while ((response = responses.poll()) == null) {
+                    Thread.sleep(1);
+                }
+                assertEquals(request, response);
+                results[venue * CHECKED_TYPES.length + t] = response.getResult();
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,147 @@
+package com.gsr.shm;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.engine.BidOrderBookProcessor;
+import com.gsr.engine.OrderBookProcessor;
+import com.gsr.feed.ObjectPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SharedBookTest {
+
+    private static final int DEPTH = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectPool<Message> messagePool = new ObjectPool<>(Message::new);
+    private final OrderBookProcessor book = new BidOrderBookProcessor(CcyPair.ETHUSD, messagePool, new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>(), new ConcurrentLinkedQueue<>());
+
+    @Test
+    public void testReaderSeesTopLevels() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("books");
+        try (SharedBookPublisher publisher = new SharedBookPublisher(file, DEPTH);
+             SharedBookReader reader = new SharedBookReader(file)) {
+            SharedBookWriter writer = publisher.writerFor(CcyPair.ETHUSD, Side.Bid);
+            book.setMarketDataListener(writer);
+            SharedBookSnapshot snapshot = reader.newSnapshot();
+
+            assertEquals(DEPTH, reader.getDepth());
+            assertFalse(reader.read(CcyPair.ETHUSD, Side.Bid, snapshot));
+
+            for (int i = 1; i <= 8; i++) {
+                apply(MessageType.AddOrUpdatePriceLevel, 1000 + i, i);
+            }
+            assertTrue(reader.read(CcyPair.ETHUSD, Side.Bid, snapshot));
+            assertEquals(DEPTH, snapshot.getLevelCount());
+            for (int level = 0; level < DEPTH; level++) {
+                assertEquals(1008 - level, snapshot.getPrice(level));
+                assertEquals(8 - level, snapshot.getQuantity(level));
+            }
+            assertEquals(8, snapshot.getVersion());
+            assertTrue(snapshot.getTimestamp() > 0);
+
+            //Updates below the published levels leave the slot alone, updates within them are published
+            apply(MessageType.AddOrUpdatePriceLevel, 1001, 50);
+            assertEquals(8, writer.getPublishCount());
+            apply(MessageType.RemovePriceLevel, 1006, 0);
+            assertTrue(reader.read(CcyPair.ETHUSD, Side.Bid, snapshot));
+            assertEquals(9, snapshot.getVersion());
+            assertEquals(1003, snapshot.getPrice(DEPTH - 1));
+
+            apply(MessageType.ClearBook, 0, 0);
+            assertTrue(reader.read(CcyPair.ETHUSD, Side.Bid, snapshot));
+            assertEquals(0, snapshot.getLevelCount());
+
+            //Other book sides were never published
+            assertFalse(reader.read(CcyPair.ETHUSD, Side.Offer, snapshot));
+            assertFalse(reader.read(CcyPair.BTCUSD, Side.Bid, snapshot));
+        }
+    }
+
+    @Test
+    public void testReadsAreConsistentWhileWriting() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("books");
+        try (SharedBookPublisher publisher = new SharedBookPublisher(file, DEPTH);
+             SharedBookReader reader = new SharedBookReader(file)) {
+            book.setMarketDataListener(publisher.writerFor(CcyPair.ETHUSD, Side.Bid));
+
+            //Update the levels round robin with an increasing counter as quantity. Every book state the writer
+            //publishes holds DEPTH consecutive counter values, one per level.
+            for (int i = 1; i <= DEPTH; i++) {
+                apply(MessageType.AddOrUpdatePriceLevel, 1000 + i, i);
+            }
+            int updates = 200_000;
+            Thread writerThread = new Thread(() -> {
+                for (int i = DEPTH + 1; i <= updates; i++) {
+                    apply(MessageType.AddOrUpdatePriceLevel, 1000 + 1 + (i - 1) % DEPTH, i);
+                }
+            });
+
+            AtomicReference<String> inconsistency = new AtomicReference<>();
+            Thread readerThread = new Thread(() -> {
+                SharedBookSnapshot snapshot = reader.newSnapshot();
+                long lastVersion = 0;
+                while (lastVersion < updates) {
+                    if (!reader.read(CcyPair.ETHUSD, Side.Bid, snapshot)) {
+                        inconsistency.set("No consistent read");
+                        return;
+                    }
+                    long min = Long.MAX_VALUE;
+                    long max = Long.MIN_VALUE;
+                    for (int level = 0; level < snapshot.getLevelCount(); level++) {
+                        min = Math.min(min, snapshot.getQuantity(level));
+                        max = Math.max(max, snapshot.getQuantity(level));
+                    }
+                    if (snapshot.getLevelCount() != DEPTH || max - min != DEPTH - 1 || max != snapshot.getVersion()
+                            || snapshot.getVersion() < lastVersion) {
+                        inconsistency.set(snapshot.toString());
+                        return;
+                    }
+                    lastVersion = snapshot.getVersion();
+                }
+            });
+
+            readerThread.start();
+            writerThread.start();
+            writerThread.join();
+            readerThread.join(10_000);
+
+            assertNull(inconsistency.get());
+            assertFalse(readerThread.isAlive());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("other");
+        Files.write(file, new byte[128]);
+        new SharedBookReader(file).close();
+    }
+
+    private void apply(MessageType type, long price, long quantity) {
+        Message message = messagePool.acquireObject();
+        message.setType(type);
+        message.setPair(CcyPair.ETHUSD);
+        message.setSide(Side.Bid);
+        message.setPrice(price);
+        message.setQuantity(quantity);
+        message.setVenue(0);
+        book.applyMarketData(message);
+    }
+}
@@ -0,0 +1,179 @@
+package com.gsr.store;
+
+import com.gsr.data.CcyPair;
+import com.gsr.data.Message;
+import com.gsr.data.MessageType;
+import com.gsr.data.Side;
+import com.gsr.feed.ByteMessageParser;
+import com.gsr.feed.ObjectPool;
+import com.gsr.load.SyntheticFeedGenerator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TickStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAsOfMatchesReplayFromScratch() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        List<Message> feed = bidFeed(5000);
+
+        try (TickStore store = new TickStore(directory, 64)) {
+            TickRecorder recorder = store.recorderFor(CcyPair.BTCUSD, Side.Bid);
+            for (int i = 0; i < feed.size(); i++) {
+                record(recorder, i, feed.get(i));
+            }
+            store.flush();
+        }
+
+        TickStoreReader reader = new TickStoreReader(directory);
+        for (int i : new int[]{0, 1, 63, 64, 65, 1000, 2345, 4999}) {
+            BookSnapshot snapshot = reader.asOf(CcyPair.BTCUSD, Side.Bid, timeOf(i) + 5);
+            assertBookEquals(replayFromScratch(feed, i), snapshot);
+        }
+
+        //Before the first tick the book is empty, long after the last one it is the final book
+        assertEquals(0, reader.asOf(CcyPair.BTCUSD, Side.Bid, timeOf(0) - 1).getLevelCount());
+        assertBookEquals(replayFromScratch(feed, feed.size() - 1), reader.asOf(CcyPair.BTCUSD, Side.Bid, Long.MAX_VALUE));
+        assertEquals(0, reader.asOf(CcyPair.ETHUSD, Side.Bid, Long.MAX_VALUE).getLevelCount());
+    }
+
+    @Test
+    public void testClearedBookAndCompactEncoding() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        List<Message> feed = bidFeed(10_000);
+
+        try (TickStore store = new TickStore(directory)) {
+            TickRecorder recorder = store.recorderFor(CcyPair.BTCUSD, Side.Bid);
+            for (int i = 0; i < feed.size(); i++) {
+                record(recorder, i, feed.get(i));
+            }
+            recorder.record(timeOf(feed.size()), MessageType.ClearBook, 0, 0);
+        }
+
+        TickStoreReader reader = new TickStoreReader(directory);
+        assertEquals(0, reader.asOf(CcyPair.BTCUSD, Side.Bid, timeOf(feed.size())).getLevelCount());
+        assertBookEquals(replayFromScratch(feed, feed.size() - 1), reader.asOf(CcyPair.BTCUSD, Side.Bid, timeOf(feed.size()) - 1));
+
+        //Small deltas and quantities should take a handful of bytes per tick, not the 24 of the raw longs
+        long bytesPerTick = Files.size(TickFormat.dataFile(directory, CcyPair.BTCUSD, Side.Bid)) / feed.size();
+        assertTrue(bytesPerTick < 8);
+    }
+
+    @Test
+    public void testDroppedTicksAreFlaggedUntilTheBookIsCleared() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        TickRecorder recorder = new TickRecorder(CcyPair.BTCUSD, Side.Bid, 4, TimeUnit.SECONDS);
+        TickBlockWriter writer = new TickBlockWriter(directory, CcyPair.BTCUSD, Side.Bid, 2);
+
+        //Ticks 4 and 5 don't fit, tick 6 goes in behind a gap
+        for (int i = 0; i < 6; i++) {
+            recorder.record(timeOf(i), MessageType.AddOrUpdatePriceLevel, 100 + i, 1);
+        }
+        assertEquals(4, recorder.getRing().drain(writer));
+        recorder.record(timeOf(6), MessageType.AddOrUpdatePriceLevel, 106, 1);
+        recorder.record(timeOf(7), MessageType.AddOrUpdatePriceLevel, 107, 1);
+        recorder.record(timeOf(8), MessageType.ClearBook, 0, 0);
+        assertEquals(2, recorder.getDroppedTicks());
+        assertEquals(4, recorder.getRing().drain(writer));
+        recorder.record(timeOf(9), MessageType.AddOrUpdatePriceLevel, 109, 1);
+        recorder.record(timeOf(10), MessageType.AddOrUpdatePriceLevel, 110, 1);
+        recorder.getRing().drain(writer);
+        writer.close();
+
+        TickStoreReader reader = new TickStoreReader(directory);
+        BookSnapshot beforeGap = reader.asOf(CcyPair.BTCUSD, Side.Bid, timeOf(5));
+        assertTrue(beforeGap.isComplete());
+        assertEquals(4, beforeGap.getLevelCount());
+        assertFalse(reader.asOf(CcyPair.BTCUSD, Side.Bid, timeOf(6)).isComplete());
+        //Its block starts from a checkpoint taken after the gap
+        assertFalse(reader.asOf(CcyPair.BTCUSD, Side.Bid, timeOf(7)).isComplete());
+        assertTrue(reader.asOf(CcyPair.BTCUSD, Side.Bid, timeOf(8)).isComplete());
+        BookSnapshot afterClear = reader.asOf(CcyPair.BTCUSD, Side.Bid, timeOf(10));
+        assertTrue(afterClear.isComplete());
+        assertEquals(2, afterClear.getLevelCount());
+    }
+
+    @Test
+    public void testTicksAreStampedWithFeedTime() {
+        TickRecorder recorder = new TickRecorder(CcyPair.BTCUSD, Side.Bid, 4, TimeUnit.SECONDS);
+        Message message = new Message();
+
+        message.setTime(1_600_000_000L);
+        assertEquals(1_600_000_000_000_000_000L, recorder.timestampOf(message));
+        //A late message keeps the previous stamp rather than going back in time
+        message.setTime(1_599_999_999L);
+        assertEquals(1_600_000_000_000_000_000L, recorder.timestampOf(message));
+
+        //Without a feed time the wall clock is used
+        long before = System.currentTimeMillis() * 1_000_000;
+        message.setTime(0);
+        long wallClock = recorder.timestampOf(message);
+        assertTrue(wallClock >= before - 1_000_000_000L && wallClock <= System.currentTimeMillis() * 1_000_000 + 1_000_000_000L);
+    }
+
+    private void record(TickRecorder recorder, int tick, Message message) {
+        long quantity = message.getType() == MessageType.RemovePriceLevel ? 0 : message.getQuantity();
+        recorder.record(timeOf(tick), message.getType(), message.getPrice(), quantity);
+    }
+
+    private long timeOf(int tick) {
+        return 1_600_000_000_000_000_000L + tick * 10L;
+    }
+
+    private List<Message> bidFeed(int count) {
+        SyntheticFeedGenerator generator = new SyntheticFeedGenerator(3, CcyPair.BTCUSD);
+        ByteMessageParser parser = new ByteMessageParser(new ObjectPool<>(Message::new));
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        List<Message> feed = new ArrayList<>();
+        while (feed.size() < count) {
+            buffer.clear();
+            Message message = parser.parse(buffer, 0, generator.next(buffer));
+            if (message.getSide() == Side.Bid) {
+                feed.add(message);
+            }
+        }
+        return feed;
+    }
+
+    private TreeMap<Long, Long> replayFromScratch(List<Message> feed, int lastTick) {
+        TreeMap<Long, Long> book = new TreeMap<>();
+        for (int i = 0; i <= lastTick; i++) {
+            Message message = feed.get(i);
+            if (message.getType() == MessageType.RemovePriceLevel) {
+                book.remove(message.getPrice());
+            } else {
+                book.put(message.getPrice(), message.getQuantity());
+            }
+        }
+        return book;
+    }
+
+    private void assertBookEquals(TreeMap<Long, Long> expected, BookSnapshot snapshot) {
+        long[] prices = new long[snapshot.getLevelCount()];
+        long[] quantities = new long[snapshot.getLevelCount()];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = snapshot.getPrice(i);
+            quantities[i] = snapshot.getQuantity(i);
+        }
+        assertArrayEquals(expected.descendingMap().keySet().stream().mapToLong(Long::longValue).toArray(), prices);
+        assertArrayEquals(expected.descendingMap().values().stream().mapToLong(Long::longValue).toArray(), quantities);
+    }
+}